@@ -94,11 +94,8 @@ public class OnceRowPipe implements RowPipe, RowSequence {
     }
 
     public synchronized void acceptRow( Object[] row ) throws IOException {
-        if ( seqClosed_ ) {
-            throw new IOException( "Stream closed at reading end" );
-        }
         try {
-            while ( rowQueue_.size() > queueSize_ ) {
+            while ( rowQueue_.size() > queueSize_ && ! seqClosed_ ) {
                 wait();
             }
         }
@@ -106,6 +103,9 @@ public class OnceRowPipe implements RowPipe, RowSequence {
             throw (IOException) new IOException ( "Thread interrupted" )
                                .initCause( e );
         }
+        if ( seqClosed_ ) {
+            throw new IOException( "Stream closed at reading end" );
+        }
         rowQueue_.addLast( row );
         notifyAll();
     }
@@ -183,6 +183,7 @@ public class OnceRowPipe implements RowPipe, RowSequence {
 
     public synchronized void close() {
         seqClosed_ = true;
+        notifyAll();
     }
 
     /**
@@ -0,0 +1,81 @@
+package uk.ac.starlink.table;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import uk.ac.starlink.util.SplitCollector;
+import uk.ac.starlink.util.SplitPolicy;
+import uk.ac.starlink.util.SplitProcessor;
+
+/**
+ * SplitCollector implementation for accumulating results from the
+ * rows of a table, possibly in parallel.
+ *
+ * <p>Concrete subclasses implement the {@link #accumulateRows} method
+ * to consume rows from a RowSplittable, as well as the
+ * {@link #createAccumulator} and {@link #combine} methods.
+ * The {@link #collect collect} method can then be used to obtain
+ * the result for a whole table.
+ *
+ * @param  <A>  accumulator type
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public abstract class RowCollector<A>
+        implements SplitCollector<RowSplittable,A> {
+
+    /**
+     * Consumes all the rows of a splittable, collecting results
+     * into the supplied accumulator.
+     * The splittable should not be closed by this method.
+     *
+     * @param  rseq  row splittable, positioned before its first row
+     * @param  acc   accumulator
+     */
+    public abstract void accumulateRows( RowSplittable rseq, A acc )
+            throws IOException;
+
+    /**
+     * Invokes {@link #accumulateRows} and closes the splittable.
+     * Any IOException is rethrown as an UncheckedIOException.
+     */
+    public void accumulate( RowSplittable rseq, A acc ) {
+        try {
+            try {
+                accumulateRows( rseq, acc );
+            }
+            finally {
+                rseq.close();
+            }
+        }
+        catch ( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * Collects the result for all the rows of a table.
+     * If parallel processing is requested and the table supports
+     * random access, the work may be split between multiple threads
+     * according to the default concurrency policy;
+     * otherwise it is done sequentially in the current thread.
+     *
+     * @param  table  table
+     * @param  parallel  true to permit multi-threaded processing
+     * @return  accumulated result
+     */
+    public A collect( StarTable table, boolean parallel ) throws IOException {
+        SplitProcessor<RowSplittable> processor =
+              parallel && table.isRandom()
+            ? SplitProcessor.createBasicParallelProcessor( SplitPolicy
+                                                          .DFLT_POLICY )
+            : SplitProcessor.createSequentialProcessor();
+        RowSplittable rseq = RowSplittable.createRowSplittable( table );
+        try {
+            return processor.collect( this, rseq );
+        }
+        catch ( UncheckedIOException e ) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package uk.ac.starlink.table;
+
+import java.io.Closeable;
+import java.io.IOException;
+import uk.ac.starlink.util.Splittable;
+
+/**
+ * Iterator over a range of the rows of a table,
+ * which may be split into parts for concurrent processing.
+ *
+ * <p>Instances are obtained from the {@link #createRowSplittable}
+ * factory method.  For random-access tables, splitting divides the
+ * row range in two, and the parts read rows using the (thread-safe)
+ * {@link StarTable#getRow} method.
+ * For sequential-only tables, rows are read from a single
+ * {@link RowSequence} and no splitting is possible.
+ *
+ * <p>Like a RowSequence, a given instance should only be used
+ * from a single thread at a time.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public abstract class RowSplittable
+        implements Splittable<RowSplittable>, Closeable {
+
+    /**
+     * Attempts to advance the current row to the next one.
+     * Must be called before the first row is accessed.
+     *
+     * @return  true iff the current row is now a valid row
+     */
+    public abstract boolean next() throws IOException;
+
+    /**
+     * Returns the contents of the current row.
+     *
+     * @return  array of cell values
+     */
+    public abstract Object[] getRow() throws IOException;
+
+    /**
+     * Returns the index in the underlying table of the current row.
+     *
+     * @return  row index
+     */
+    public abstract long getRowIndex();
+
+    /**
+     * Releases any resources associated with this object.
+     */
+    public abstract void close() throws IOException;
+
+    /**
+     * Returns a splittable covering all the rows of a given table.
+     *
+     * @param  table  table
+     * @return  new splittable
+     */
+    public static RowSplittable createRowSplittable( StarTable table )
+            throws IOException {
+        long nrow = table.getRowCount();
+        return table.isRandom() && nrow >= 0
+             ? new RandomRowSplittable( table, 0, nrow )
+             : new SequentialRowSplittable( table );
+    }
+
+    /**
+     * RowSplittable implementation based on random access.
+     */
+    private static class RandomRowSplittable extends RowSplittable {
+
+        private final StarTable table_;
+        private long irow_;
+        private long end_;
+
+        /**
+         * Constructor.
+         *
+         * @param  table  random-access table
+         * @param  start  index of first row in range
+         * @param  end    index after last row in range
+         */
+        RandomRowSplittable( StarTable table, long start, long end ) {
+            table_ = table;
+            irow_ = start - 1;
+            end_ = end;
+        }
+
+        public RowSplittable split() {
+            long start = irow_ + 1;
+            if ( end_ - start < 2 ) {
+                return null;
+            }
+            long mid = start + ( end_ - start ) / 2;
+            RowSplittable other = new RandomRowSplittable( table_, mid, end_ );
+            end_ = mid;
+            return other;
+        }
+
+        public long splittableSize() {
+            return end_ - irow_ - 1;
+        }
+
+        public boolean next() {
+            if ( irow_ + 1 < end_ ) {
+                irow_++;
+                return true;
+            }
+            else {
+                irow_ = end_;
+                return false;
+            }
+        }
+
+        public Object[] getRow() throws IOException {
+            return table_.getRow( irow_ );
+        }
+
+        public long getRowIndex() {
+            return irow_;
+        }
+
+        public void close() {
+        }
+    }
+
+    /**
+     * RowSplittable implementation based on a RowSequence.
+     * It cannot be split.
+     */
+    private static class SequentialRowSplittable extends RowSplittable {
+
+        private final RowSequence rseq_;
+        private final long nrow_;
+        private long irow_;
+
+        /**
+         * Constructor.
+         *
+         * @param  table  table
+         */
+        SequentialRowSplittable( StarTable table ) throws IOException {
+            rseq_ = table.getRowSequence();
+            nrow_ = table.getRowCount();
+            irow_ = -1;
+        }
+
+        public RowSplittable split() {
+            return null;
+        }
+
+        public long splittableSize() {
+            return nrow_;
+        }
+
+        public boolean next() throws IOException {
+            if ( rseq_.next() ) {
+                irow_++;
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+
+        public Object[] getRow() throws IOException {
+            return rseq_.getRow();
+        }
+
+        public long getRowIndex() {
+            return irow_;
+        }
+
+        public void close() throws IOException {
+            rseq_.close();
+        }
+    }
+}
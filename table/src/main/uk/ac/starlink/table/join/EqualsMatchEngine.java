@@ -162,7 +162,7 @@ public class EqualsMatchEngine implements MatchEngine {
      * @param   obj  object; null is permitted
      * @return  hash code
      */
-    private static int getHash( Object obj ) {
+    static int getHash( Object obj ) {
         if ( Tables.isBlank( obj ) ) {
             return 0;
         }
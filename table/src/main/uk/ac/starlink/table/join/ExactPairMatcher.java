@@ -0,0 +1,626 @@
+package uk.ac.starlink.table.join;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.RowCollector;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.RowSplittable;
+import uk.ac.starlink.table.RowStore;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.StoragePolicy;
+import uk.ac.starlink.table.TableFormatException;
+import uk.ac.starlink.table.Tables;
+import uk.ac.starlink.table.storage.ByteStoreRowStore;
+import uk.ac.starlink.table.storage.ListRowStore;
+
+/**
+ * Finds pair matches for the {@link EqualsMatchEngine} using a hash join.
+ *
+ * <p>Each non-blank key value is reduced to a 64-bit primitive key
+ * and a small kind code.  Integer-valued numbers of magnitude up to
+ * 2<sup>53</sup> use their value as the key, other numbers use the
+ * bit pattern of their double precision value,
+ * and strings and other objects use a 64-bit hash.
+ * Since the match engine compares integers with floating point values
+ * in double precision, larger integers are keyed by their value
+ * converted to double, so that they meet any floating point value
+ * they are equal to.
+ * Rows of the table to be searched are entered into an open hash index
+ * of primitive arrays, and rows of the other table are then looked up
+ * in it, in parallel if that table provides random access.
+ * Where the primitive key does not guarantee equality
+ * (hashed values, or numbers which might compare differently
+ * across types), candidate pairs are confirmed using the match engine.
+ *
+ * <p>If there are too many rows to index in memory, both tables are
+ * first radix-partitioned on key hash into temporary byte stores,
+ * and each pair of partitions is joined separately.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+class ExactPairMatcher {
+
+    private final MatchEngine engine_;
+    private final ProgressIndicator indicator_;
+    private final long entryLimit_;
+
+    /** Kind code for blank values, which never match. */
+    private static final byte KIND_BLANK = 0;
+
+    /** Kind code for integer values up to MAX_EXACT, key is the value. */
+    private static final byte KIND_INT = 1;
+
+    /** Kind code for other numeric values, key is the double bits. */
+    private static final byte KIND_FLOAT = 2;
+
+    /** Kind code for strings, key is a hash. */
+    private static final byte KIND_STRING = 3;
+
+    /** Kind code for other objects, key is a hash. */
+    private static final byte KIND_OBJECT = 4;
+
+    /** Flag bit added to kind code if a match must be confirmed. */
+    private static final byte VERIFY_FLAG = 0x10;
+
+    /** Largest magnitude up to which all integers are exact doubles. */
+    private static final long MAX_EXACT = 1L << 53;
+
+    /** Approximate number of bytes of heap per index entry. */
+    private static final int ENTRY_BYTES = 40;
+
+    /** Maximum number of partitions. */
+    private static final int MAX_PARTS = 1024;
+
+    /** Number of rows between progress updates in parallel scans. */
+    private static final int PROGRESS_STEP = 16 * 1024;
+
+    /**
+     * Constructor.
+     *
+     * @param  engine   match engine, expected to be an EqualsMatchEngine
+     * @param  indicator  progress indicator
+     * @param  entryLimit  maximum number of rows to index in memory,
+     *                     or -1 for a default based on heap size
+     */
+    public ExactPairMatcher( MatchEngine engine, ProgressIndicator indicator,
+                             long entryLimit ) {
+        engine_ = engine;
+        indicator_ = indicator;
+        entryLimit_ = entryLimit >= 0
+                    ? Math.max( 1, entryLimit )
+                    : Math.max( 100000, Math.min( Integer.MAX_VALUE / 2,
+                                                  Runtime.getRuntime()
+                                                 .maxMemory() / 3
+                                                  / ENTRY_BYTES ) );
+    }
+
+    /**
+     * Locates matched pairs between two tuple tables.
+     *
+     * @param  tableR  table to be indexed; must be random access
+     * @param  indexR  index of tableR in the matcher's table list
+     * @param  tableS  table to be scanned
+     * @param  indexS  index of tableS in the matcher's table list
+     * @param  bestOnly  if true, only the first match in tableR
+     *                   is retained for each row of tableS
+     * @param  linkSet  link set to which RowLink2 pairs are added
+     */
+    public void scanForPairs( StarTable tableR, int indexR,
+                              StarTable tableS, int indexS,
+                              boolean bestOnly, LinkSet linkSet )
+            throws IOException, InterruptedException {
+        long nrowR = tableR.getRowCount();
+        List<RowLink2> links;
+        if ( nrowR >= 0 && nrowR <= entryLimit_ ) {
+            links = join( tableR, -1, indexR, tableS, -1, indexS, bestOnly );
+        }
+        else {
+            links = partitionJoin( tableR, indexR, tableS, indexS,
+                                   bestOnly, nrowR );
+        }
+        for ( RowLink2 link : links ) {
+            linkSet.addLink( link );
+        }
+    }
+
+    /**
+     * Performs an in-memory hash join between two tables.
+     *
+     * @param  tableR  table to be indexed; must be random access
+     * @param  icolR   column of tableR giving the original row index,
+     *                 or -1 if the row index is the original one
+     * @param  indexR  table index for links to rows of tableR
+     * @param  tableS  table to be scanned
+     * @param  icolS   column of tableS giving the original row index,
+     *                 or -1 if the row index is the original one
+     * @param  indexS  table index for links to rows of tableS
+     * @param  bestOnly  if true, only the first match in tableR
+     *                   is retained for each row of tableS
+     * @return  list of pair links
+     */
+    private List<RowLink2> join( final StarTable tableR, final int icolR,
+                                 final int indexR,
+                                 StarTable tableS, final int icolS,
+                                 final int indexS, final boolean bestOnly )
+            throws IOException, InterruptedException {
+
+        /* Index the rows of table R. */
+        final KeyIndex index = new KeyIndex( tableR.getRowCount() );
+        ProgressRowSequence rseq =
+            new ProgressRowSequence( tableR, indicator_,
+                                     "Indexing rows for table "
+                                   + ( indexR + 1 ) );
+        long nrowR = 0;
+        try {
+            for ( ; rseq.nextProgress(); nrowR++ ) {
+                Object value = rseq.getCell( 0 );
+                byte kind = getKind( value );
+                if ( kind != KIND_BLANK ) {
+                    index.add( kind, getKey( value, kind ), nrowR );
+                }
+            }
+        }
+        finally {
+            rseq.close();
+        }
+        index.ready();
+        indicator_.logMessage( index.size() + " keys indexed for "
+                             + nrowR + " rows" );
+
+        /* Look up the rows of table S in the index. */
+        final long nrowS = tableS.getRowCount();
+        final AtomicLong progCount = new AtomicLong();
+        RowCollector<List<RowLink2>> collector =
+                new RowCollector<List<RowLink2>>() {
+            public List<RowLink2> createAccumulator() {
+                return new ArrayList<RowLink2>();
+            }
+            public void accumulateRows( RowSplittable sseq,
+                                        List<RowLink2> links )
+                    throws IOException {
+                long nstep = 0;
+                while ( sseq.next() ) {
+                    if ( ++nstep >= PROGRESS_STEP ) {
+                        reportProgress( progCount.addAndGet( nstep ), nrowS );
+                        nstep = 0;
+                    }
+                    Object[] srow = sseq.getRow();
+                    Object value = srow[ 0 ];
+                    byte kind = getKind( value );
+                    if ( kind != KIND_BLANK ) {
+                        long irowS = icolS >= 0
+                                   ? ((Number) srow[ icolS ]).longValue()
+                                   : sseq.getRowIndex();
+                        probe( index, kind, getKey( value, kind ), srow,
+                               tableR, icolR, indexR, irowS, indexS,
+                               bestOnly, links );
+                    }
+                }
+                reportProgress( progCount.addAndGet( nstep ), nrowS );
+            }
+            public List<RowLink2> combine( List<RowLink2> links1,
+                                           List<RowLink2> links2 ) {
+                if ( links2.size() > links1.size() ) {
+                    links2.addAll( links1 );
+                    return links2;
+                }
+                else {
+                    links1.addAll( links2 );
+                    return links1;
+                }
+            }
+        };
+        indicator_.startStage( "Scanning rows for table " + ( indexS + 1 ) );
+        try {
+            return collector.collect( tableS, true );
+        }
+        catch ( InterruptedIOException e ) {
+            throw (InterruptedException)
+                  new InterruptedException( e.getMessage() ).initCause( e );
+        }
+        finally {
+            indicator_.endStage();
+        }
+    }
+
+    /**
+     * Looks up a key from table S in the index and adds any matched
+     * pairs to a list.
+     *
+     * @param  index  index of table R keys
+     * @param  kind   key kind
+     * @param  key    primitive key
+     * @param  srow   tuple for table S row
+     * @param  tableR  indexed table
+     * @param  icolR   column of tableR giving the original row index,
+     *                 or -1
+     * @param  indexR  table index for links to rows of tableR
+     * @param  irowS   original row index in table S
+     * @param  indexS  table index for links to rows of tableS
+     * @param  bestOnly  if true, retain only the first match
+     * @param  links   list to which matched pairs are added
+     */
+    private void probe( KeyIndex index, byte kind, long key, Object[] srow,
+                        StarTable tableR, int icolR, int indexR,
+                        long irowS, int indexS, boolean bestOnly,
+                        List<RowLink2> links )
+            throws IOException {
+        for ( int ie = index.first( kind, key ); ie >= 0;
+              ie = index.next( ie, kind, key ) ) {
+            long lrowR = index.rows_[ ie ];
+            boolean verify = ( ( kind | index.kinds_[ ie ] ) & VERIFY_FLAG )
+                             != 0;
+            if ( ! verify ||
+                 engine_.matchScore( srow, tableR.getRow( lrowR ) ) >= 0 ) {
+                long irowR = icolR >= 0
+                           ? ((Number) tableR.getCell( lrowR, icolR ))
+                                             .longValue()
+                           : lrowR;
+                RowLink2 link = new RowLink2( new RowRef( indexR, irowR ),
+                                              new RowRef( indexS, irowS ) );
+                link.setScore( 0.0 );
+                links.add( link );
+                if ( bestOnly ) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Performs a hash join by first partitioning both tables into
+     * temporary storage according to key hash.
+     *
+     * @param  tableR  table to be indexed
+     * @param  indexR  index of tableR in the matcher's table list
+     * @param  tableS  table to be scanned
+     * @param  indexS  index of tableS in the matcher's table list
+     * @param  bestOnly  if true, only the first match in tableR
+     *                   is retained for each row of tableS
+     * @param  nrowR   row count of tableR, or -1 if not known
+     * @return  list of pair links
+     */
+    private List<RowLink2> partitionJoin( StarTable tableR, int indexR,
+                                          StarTable tableS, int indexS,
+                                          boolean bestOnly, long nrowR )
+            throws IOException, InterruptedException {
+        long ntarget = Math.max( 2, 2 * ( nrowR / entryLimit_ + 1 ) );
+        int nbit = 1;
+        while ( ( 1 << nbit ) < ntarget && ( 1 << nbit ) < MAX_PARTS ) {
+            nbit++;
+        }
+        indicator_.logMessage( "Partitioning into " + ( 1 << nbit )
+                             + " parts" );
+        StarTable[] partsR = partition( tableR, indexR, nbit );
+        StarTable[] partsS = partition( tableS, indexS, nbit );
+        List<RowLink2> links = new ArrayList<RowLink2>();
+        for ( int ip = 0; ip < partsR.length; ip++ ) {
+            StarTable partR = partsR[ ip ];
+            StarTable partS = partsS[ ip ];
+            partsR[ ip ] = null;
+            partsS[ ip ] = null;
+            if ( partR.getRowCount() > 0 && partS.getRowCount() > 0 ) {
+                links.addAll( join( partR, 1, indexR, partS, 1, indexS,
+                                    bestOnly ) );
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Partitions the non-blank rows of a tuple table into temporary
+     * storage according to key hash.
+     * Each output table has two columns: the key value,
+     * and the row index in the input table.
+     *
+     * @param  table   input tuple table
+     * @param  itable  index of table in the matcher's table list
+     * @param  nbit    base-2 logarithm of partition count
+     * @return  array of partition tables
+     */
+    private StarTable[] partition( StarTable table, int itable, int nbit )
+            throws IOException, InterruptedException {
+        int npart = 1 << nbit;
+        StarTable meta = new RowListStarTable( new ColumnInfo[] {
+            new ColumnInfo( table.getColumnInfo( 0 ) ),
+            new ColumnInfo( "irow", Long.class, null ),
+        } );
+        RowStore[] stores = new RowStore[ npart ];
+        for ( int ip = 0; ip < npart; ip++ ) {
+            stores[ ip ] = createStore( meta );
+        }
+        ProgressRowSequence rseq =
+            new ProgressRowSequence( table, indicator_,
+                                     "Partitioning rows for table "
+                                   + ( itable + 1 ) );
+        try {
+            for ( long lrow = 0; rseq.nextProgress(); lrow++ ) {
+                Object value = rseq.getCell( 0 );
+                byte kind = getKind( value );
+                if ( kind != KIND_BLANK ) {
+                    long h = mix( getKey( value, kind )
+                                + ( kind & ~VERIFY_FLAG ) );
+                    int ip = (int) ( h >>> ( 64 - nbit ) );
+                    stores[ ip ].acceptRow( new Object[] {
+                        value, Long.valueOf( lrow ),
+                    } );
+                }
+            }
+        }
+        finally {
+            rseq.close();
+        }
+        StarTable[] parts = new StarTable[ npart ];
+        for ( int ip = 0; ip < npart; ip++ ) {
+            stores[ ip ].endRows();
+            parts[ ip ] = stores[ ip ].getStarTable();
+        }
+        return parts;
+    }
+
+    /**
+     * Reports progress of a parallel scan.
+     *
+     * @param  count  number of rows processed so far
+     * @param  nrow   total number of rows, or -1 if not known
+     * @throws  InterruptedIOException  if the indicator signals that
+     *          the match should be interrupted
+     */
+    private void reportProgress( long count, long nrow )
+            throws InterruptedIOException {
+        if ( nrow > 0 ) {
+            try {
+                synchronized ( indicator_ ) {
+                    indicator_.setLevel( Math.min( 1.0,
+                                                   count / (double) nrow ) );
+                }
+            }
+            catch ( InterruptedException e ) {
+                throw new InterruptedIOException( e.getMessage() );
+            }
+        }
+    }
+
+    /**
+     * Returns the kind code for a key value.
+     *
+     * @param  value  key value
+     * @return  kind code, possibly including the verify flag
+     */
+    static byte getKind( Object value ) {
+        if ( Tables.isBlank( value ) ) {
+            return KIND_BLANK;
+        }
+        else if ( value instanceof Long || value instanceof Integer ||
+                  value instanceof Short || value instanceof Byte ) {
+            long lval = ((Number) value).longValue();
+
+            /* Integers too large to be exact doubles are keyed as the
+             * double they compare equal to, but two of them with the
+             * same key may still differ. */
+            return lval >= -MAX_EXACT && lval <= MAX_EXACT
+                 ? KIND_INT
+                 : (byte) ( getFloatKind( (double) lval ) | VERIFY_FLAG );
+        }
+        else if ( value instanceof Double || value instanceof Float ) {
+            return getFloatKind( ((Number) value).doubleValue() );
+        }
+        else if ( value instanceof String ) {
+            return (byte) ( KIND_STRING | VERIFY_FLAG );
+        }
+        else {
+            return (byte) ( KIND_OBJECT | VERIFY_FLAG );
+        }
+    }
+
+    /**
+     * Returns the kind code for a floating point value.
+     *
+     * @param  dval  non-blank value
+     * @return  kind code
+     */
+    private static byte getFloatKind( double dval ) {
+        return dval == Math.rint( dval ) && Math.abs( dval ) <= MAX_EXACT
+             ? (byte) ( KIND_INT | VERIFY_FLAG )
+             : KIND_FLOAT;
+    }
+
+    /**
+     * Returns the primitive key for a key value.
+     *
+     * @param  value  non-blank key value
+     * @param  kind   kind code for value
+     * @return  primitive key
+     */
+    static long getKey( Object value, byte kind ) {
+        switch ( kind & ~VERIFY_FLAG ) {
+            case KIND_INT:
+                return ( kind & VERIFY_FLAG ) == 0
+                     ? ((Number) value).longValue()
+                     : (long) ((Number) value).doubleValue();
+            case KIND_FLOAT:
+                return Double.doubleToLongBits( ((Number) value)
+                                               .doubleValue() );
+            case KIND_STRING:
+                String txt = (String) value;
+                long h = 0xcbf29ce484222325L;
+                int leng = txt.length();
+                for ( int i = 0; i < leng; i++ ) {
+                    h = ( h ^ txt.charAt( i ) ) * 0x100000001b3L;
+                }
+                return h;
+            default:
+                return EqualsMatchEngine.getHash( value );
+        }
+    }
+
+    /**
+     * Scrambles the bits of a 64-bit integer.
+     * This is the finalisation step of the SplitMix64 generator.
+     *
+     * @param  z  input value
+     * @return  well-mixed output value
+     */
+    private static long mix( long z ) {
+        z = ( z ^ ( z >>> 30 ) ) * 0xbf58476d1ce4e5b9L;
+        z = ( z ^ ( z >>> 27 ) ) * 0x94d049bb133111ebL;
+        return z ^ ( z >>> 31 );
+    }
+
+    /**
+     * Creates a new row store, using byte storage if possible.
+     *
+     * @param  meta  table metadata
+     * @return  row store ready to accept rows
+     */
+    private static RowStore createStore( StarTable meta ) {
+        ByteStoreRowStore store =
+            new ByteStoreRowStore( StoragePolicy.getDefaultPolicy()
+                                  .makeByteStore() );
+        try {
+            store.acceptMetadata( meta );
+            return store;
+        }
+        catch ( TableFormatException e ) {
+            ListRowStore lstore = new ListRowStore();
+            lstore.acceptMetadata( meta );
+            return lstore;
+        }
+    }
+
+    /**
+     * Hash index mapping primitive keys to row indices,
+     * stored in primitive arrays.
+     * Entries with equal keys are chained in order of insertion.
+     */
+    private static class KeyIndex {
+        long[] keys_;
+        byte[] kinds_;
+        long[] rows_;
+        private int[] next_;
+        private int[] heads_;
+        private int mask_;
+        private int n_;
+
+        /**
+         * Constructor.
+         *
+         * @param  nrow  expected number of entries, or -1 if not known
+         */
+        KeyIndex( long nrow ) {
+            int size = (int) Math.max( 16, Math.min( nrow,
+                                                     Integer.MAX_VALUE / 2 ) );
+            keys_ = new long[ size ];
+            kinds_ = new byte[ size ];
+            rows_ = new long[ size ];
+        }
+
+        /**
+         * Adds an entry.  Must be called before {@link #ready}.
+         *
+         * @param  kind  kind code
+         * @param  key   primitive key
+         * @param  lrow  row index
+         */
+        void add( byte kind, long key, long lrow ) {
+            if ( n_ == keys_.length ) {
+                int size = (int) Math.min( Integer.MAX_VALUE - 8,
+                                           2L * keys_.length );
+                if ( size <= n_ ) {
+                    throw new OutOfMemoryError( "Too many index entries" );
+                }
+                keys_ = Arrays.copyOf( keys_, size );
+                kinds_ = Arrays.copyOf( kinds_, size );
+                rows_ = Arrays.copyOf( rows_, size );
+            }
+            keys_[ n_ ] = key;
+            kinds_[ n_ ] = kind;
+            rows_[ n_ ] = lrow;
+            n_++;
+        }
+
+        /**
+         * Builds the hash table.  Must be called after all entries have
+         * been added and before any lookups.
+         */
+        void ready() {
+            int nslot = Integer.highestOneBit( Math.max( 1, n_ ) ) * 2;
+            mask_ = nslot - 1;
+            heads_ = new int[ nslot ];
+            Arrays.fill( heads_, -1 );
+            next_ = new int[ n_ ];
+            for ( int ie = n_ - 1; ie >= 0; ie-- ) {
+                int slot = slot( kinds_[ ie ], keys_[ ie ] );
+                next_[ ie ] = heads_[ slot ];
+                heads_[ slot ] = ie;
+            }
+        }
+
+        /**
+         * Returns the number of entries.
+         *
+         * @return  entry count
+         */
+        int size() {
+            return n_;
+        }
+
+        /**
+         * Returns the first entry matching a given key.
+         *
+         * @param  kind  kind code
+         * @param  key   primitive key
+         * @return  entry index, or -1 if none
+         */
+        int first( byte kind, long key ) {
+            return scan( heads_[ slot( kind, key ) ], kind, key );
+        }
+
+        /**
+         * Returns the next entry following a given one matching a given key.
+         *
+         * @param  ie   previous entry index
+         * @param  kind  kind code
+         * @param  key   primitive key
+         * @return  entry index, or -1 if none
+         */
+        int next( int ie, byte kind, long key ) {
+            return scan( next_[ ie ], kind, key );
+        }
+
+        /**
+         * Follows a chain to the first entry matching a given key.
+         *
+         * @param  ie  starting entry index, or -1
+         * @param  kind  kind code
+         * @param  key   primitive key
+         * @return  entry index, or -1 if none
+         */
+        private int scan( int ie, byte kind, long key ) {
+            int k = kind & ~VERIFY_FLAG;
+            while ( ie >= 0 &&
+                    ( keys_[ ie ] != key ||
+                      ( kinds_[ ie ] & ~VERIFY_FLAG ) != k ) ) {
+                ie = next_[ ie ];
+            }
+            return ie;
+        }
+
+        /**
+         * Returns the hash slot for a key.
+         *
+         * @param  kind  kind code
+         * @param  key   primitive key
+         * @return  slot index
+         */
+        private int slot( byte kind, long key ) {
+            return (int) mix( key + ( kind & ~VERIFY_FLAG ) ) & mask_;
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package uk.ac.starlink.table.join;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import uk.ac.starlink.table.AbstractStarTable;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.ColumnPermutedStarTable;
+import uk.ac.starlink.table.JoinFixAction;
+import uk.ac.starlink.table.JoinStarTable;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.Tables;
+
+/**
+ * Sequential table which performs an exact-value pair match between
+ * two input tables that are both already sorted on their key values.
+ *
+ * <p>The two inputs are read in lockstep, a run of equal keys at a time,
+ * so that memory use is independent of table size (it only grows with
+ * the number of rows sharing a single key value) and no random access
+ * is required.  The sort order is checked as the rows go by, and an
+ * IOException is thrown on reading if an input turns out not to be
+ * in ascending key order.
+ * Key values are compared numerically if they are both numbers,
+ * and otherwise using their natural ordering.
+ * Blank keys match nothing, and may appear anywhere in the input.
+ *
+ * <p>Matching is in the sense of {@link EqualsMatchEngine}, and the
+ * output rows are the same as those that
+ * {@link MatchStarTables#makeJoinTable} would produce for the given
+ * pair mode and join type, except that they appear in key order,
+ * and that group columns, if requested, are always present.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class MergeJoinStarTable extends AbstractStarTable {
+
+    private final StarTable[] tables_;
+    private final int[] ikeys_;
+    private final int[][] colMaps_;
+    private final PairMode pairMode_;
+    private final boolean[] useFlags_;
+    private final boolean useLinks_;
+    private final boolean[] useUnmatched_;
+    private final boolean addGroups_;
+    private final int[] colOffsets_;
+    private final ColumnInfo[] colInfos_;
+
+    /**
+     * Constructor.
+     *
+     * @param  table1  first input table
+     * @param  ikey1   index of the key column in <code>table1</code>
+     * @param  table2  second input table
+     * @param  ikey2   index of the key column in <code>table2</code>
+     * @param  pairMode  pair matching mode
+     * @param  joinType  output row selection type
+     * @param  addGroups  whether to add {@link MatchStarTables#GRP_ID_INFO}
+     *                    and {@link MatchStarTables#GRP_SIZE_INFO} columns
+     *                    if the pair mode may produce groups
+     * @param  fixActs   actions to take for deduplicating column names
+     *                   (2-element array)
+     */
+    public MergeJoinStarTable( StarTable table1, int ikey1,
+                               StarTable table2, int ikey2,
+                               PairMode pairMode, JoinType joinType,
+                               boolean addGroups, JoinFixAction[] fixActs ) {
+        tables_ = new StarTable[] { table1, table2 };
+        ikeys_ = new int[] { ikey1, ikey2 };
+        pairMode_ = pairMode;
+        useFlags_ = joinType.getUsedTableFlags();
+
+        /* Find out what kinds of row the join type wants to see. */
+        boolean[] joinFlags = getJoinFlags( joinType );
+        useLinks_ = joinFlags[ 0 ];
+        useUnmatched_ = new boolean[] { joinFlags[ 1 ], joinFlags[ 2 ] };
+        addGroups_ = addGroups && useLinks_ && pairMode.mayProduceGroups();
+
+        /* Set up output column metadata: all the non-key columns of
+         * each used table, followed by group columns if required. */
+        List<StarTable> metaList = new ArrayList<StarTable>();
+        List<JoinFixAction> fixList = new ArrayList<JoinFixAction>();
+        colMaps_ = new int[ 2 ][];
+        colOffsets_ = new int[ 2 ];
+        int ncol = 0;
+        for ( int it = 0; it < 2; it++ ) {
+            StarTable table = tables_[ it ];
+            int nc = table.getColumnCount();
+            int[] colMap = new int[ nc - 1 ];
+            for ( int ic = 0, jc = 0; ic < nc; ic++ ) {
+                if ( ic != ikeys_[ it ] ) {
+                    colMap[ jc++ ] = ic;
+                }
+            }
+            colMaps_[ it ] = colMap;
+            colOffsets_[ it ] = ncol;
+            if ( useFlags_[ it ] ) {
+                final boolean nullable = useUnmatched_[ 1 - it ];
+                metaList.add( new ColumnPermutedStarTable( table, colMap ) {
+                    public ColumnInfo getColumnInfo( int icol ) {
+                        ColumnInfo info =
+                            new ColumnInfo( super.getColumnInfo( icol ) );
+                        if ( nullable ) {
+                            info.setNullable( true );
+                        }
+                        return info;
+                    }
+                } );
+                fixList.add( fixActs[ it ] );
+                ncol += colMap.length;
+            }
+        }
+        if ( addGroups_ ) {
+            metaList.add( new RowListStarTable( new ColumnInfo[] {
+                new ColumnInfo( MatchStarTables.GRP_ID_INFO ),
+                new ColumnInfo( MatchStarTables.GRP_SIZE_INFO ),
+            } ) );
+            fixList.add( JoinFixAction.NO_ACTION );
+        }
+        StarTable meta =
+            new JoinStarTable( metaList.toArray( new StarTable[ 0 ] ),
+                               fixList.toArray( new JoinFixAction[ 0 ] ) );
+        colInfos_ = new ColumnInfo[ meta.getColumnCount() ];
+        for ( int ic = 0; ic < colInfos_.length; ic++ ) {
+            colInfos_[ ic ] = meta.getColumnInfo( ic );
+        }
+        setName( "Joined" );
+    }
+
+    public int getColumnCount() {
+        return colInfos_.length;
+    }
+
+    public ColumnInfo getColumnInfo( int icol ) {
+        return colInfos_[ icol ];
+    }
+
+    public long getRowCount() {
+        return -1L;
+    }
+
+    public RowSequence getRowSequence() throws IOException {
+        return new MergeRowSequence();
+    }
+
+    /**
+     * Compares two non-blank key values.  Numbers are compared
+     * on numeric value, consistently with the equality test used by
+     * {@link EqualsMatchEngine}, and other values using their natural
+     * ordering.
+     *
+     * @param  k1  first key
+     * @param  k2  second key
+     * @return  negative, zero or positive according to whether
+     *          <code>k1</code> is less than, equal to or greater than
+     *          <code>k2</code>
+     * @throws  IOException  if the keys cannot be compared
+     */
+    @SuppressWarnings("unchecked")
+    static int compareKeys( Object k1, Object k2 ) throws IOException {
+        if ( k1 instanceof Number && k2 instanceof Number ) {
+            Number n1 = (Number) k1;
+            Number n2 = (Number) k2;
+            if ( isInteger( n1 ) && isInteger( n2 ) ) {
+                return Long.compare( n1.longValue(), n2.longValue() );
+            }
+            else {
+                double d1 = n1.doubleValue();
+                double d2 = n2.doubleValue();
+                return d1 < d2 ? -1 : ( d1 > d2 ? +1 : 0 );
+            }
+        }
+        else if ( k1 instanceof Comparable &&
+                  k1.getClass().equals( k2.getClass() ) ) {
+            return ((Comparable<Object>) k1).compareTo( k2 );
+        }
+        else {
+            throw new IOException( "Can't compare key values "
+                                 + k1 + " and " + k2 + " for merge join" );
+        }
+    }
+
+    /**
+     * Indicates whether a number is of integral type.
+     *
+     * @param  num  number
+     * @return   true for Byte, Short, Integer or Long
+     */
+    private static boolean isInteger( Number num ) {
+        return num instanceof Integer
+            || num instanceof Long
+            || num instanceof Short
+            || num instanceof Byte;
+    }
+
+    /**
+     * Determines which kinds of output row a join type retains.
+     * This is done by offering it a single matched pair
+     * and one unmatched row from each table, which works for any
+     * JoinType implementation.
+     *
+     * @param  joinType  join type
+     * @return  3-element array: flags for whether matched pairs,
+     *          unmatched table 1 rows and unmatched table 2 rows
+     *          are retained respectively
+     */
+    private static boolean[] getJoinFlags( JoinType joinType ) {
+        LinkSet links = new HashSetLinkSet();
+        links.addLink( new RowLink2( new RowRef( 0, 0 ), new RowRef( 1, 0 ) ) );
+        boolean[] flags = new boolean[ 3 ];
+        for ( RowLink link : joinType.processLinks( links,
+                                                    new int[] { 2, 2 } ) ) {
+            if ( link.size() == 2 ) {
+                flags[ 0 ] = true;
+            }
+            else if ( link.size() == 1 && link.getRef( 0 ).getRowIndex() > 0 ){
+                flags[ 1 + link.getRef( 0 ).getTableIndex() ] = true;
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Reads runs of rows with equal keys from one of the input tables.
+     */
+    private class GroupReader {
+        final int itab_;
+        final int ikey_;
+        final RowSequence rseq_;
+        final List<Object[]> rows_;
+        final List<Object[]> blanks_;
+        Object[] nextRow_;
+        long nextIrow_;
+        Object lastKey_;
+        Object key_;
+
+        /**
+         * Constructor.
+         *
+         * @param  itab  input table index
+         */
+        GroupReader( int itab ) throws IOException {
+            itab_ = itab;
+            ikey_ = ikeys_[ itab ];
+            rseq_ = tables_[ itab ].getRowSequence();
+            rows_ = new ArrayList<Object[]>();
+            blanks_ = new ArrayList<Object[]>();
+            nextIrow_ = -1;
+            advance();
+        }
+
+        /**
+         * Reads the next group of rows.  On success the keyed rows are in
+         * <code>rows_</code> and their common key in <code>key_</code>,
+         * and any blank-keyed rows encountered on the way are in
+         * <code>blanks_</code>.  At the end of the table the group may
+         * consist only of blank-keyed rows, in which case the key is null.
+         *
+         * @return  true iff a group was read
+         */
+        boolean readGroup() throws IOException {
+            rows_.clear();
+            blanks_.clear();
+            key_ = null;
+            while ( nextRow_ != null && Tables.isBlank( nextRow_[ ikey_ ] ) ) {
+                blanks_.add( nextRow_ );
+                advance();
+            }
+            if ( nextRow_ == null ) {
+                return blanks_.size() > 0;
+            }
+            Object key = nextRow_[ ikey_ ];
+            if ( lastKey_ != null && compareKeys( key, lastKey_ ) < 0 ) {
+                throw new IOException( "Table " + ( itab_ + 1 )
+                                     + " not sorted on match key at row "
+                                     + ( nextIrow_ + 1 ) );
+            }
+            rows_.add( nextRow_ );
+            advance();
+            while ( nextRow_ != null ) {
+                Object k = nextRow_[ ikey_ ];
+                if ( Tables.isBlank( k ) ) {
+                    blanks_.add( nextRow_ );
+                }
+                else if ( compareKeys( k, key ) == 0 ) {
+                    rows_.add( nextRow_ );
+                }
+                else {
+                    break;
+                }
+                advance();
+            }
+            key_ = key;
+            lastKey_ = key;
+            return true;
+        }
+
+        /**
+         * Reads the next row from the underlying sequence.
+         */
+        private void advance() throws IOException {
+            if ( rseq_.next() ) {
+                nextRow_ = rseq_.getRow().clone();
+                nextIrow_++;
+            }
+            else {
+                nextRow_ = null;
+            }
+        }
+
+        void close() throws IOException {
+            rseq_.close();
+        }
+    }
+
+    /**
+     * RowSequence implementation which does the merge.
+     */
+    private class MergeRowSequence implements RowSequence {
+        final GroupReader[] readers_;
+        final boolean[] hasGroups_;
+        final Queue<Object[]> queue_;
+        final List<Object[]> noRows_;
+        Object[] row_;
+        int igrp_;
+
+        MergeRowSequence() throws IOException {
+            readers_ = new GroupReader[ 2 ];
+            hasGroups_ = new boolean[ 2 ];
+            for ( int it = 0; it < 2; it++ ) {
+                readers_[ it ] = new GroupReader( it );
+                hasGroups_[ it ] = readers_[ it ].readGroup();
+            }
+            queue_ = new ArrayDeque<Object[]>();
+            noRows_ = new ArrayList<Object[]>();
+        }
+
+        public boolean next() throws IOException {
+            while ( queue_.isEmpty() ) {
+                if ( ! hasGroups_[ 0 ] && ! hasGroups_[ 1 ] ) {
+                    row_ = null;
+                    return false;
+                }
+                mergeStep();
+            }
+            row_ = queue_.remove();
+            return true;
+        }
+
+        public Object getCell( int icol ) {
+            checkRow();
+            return row_[ icol ];
+        }
+
+        public Object[] getRow() {
+            checkRow();
+            return row_;
+        }
+
+        public void close() throws IOException {
+            for ( GroupReader reader : readers_ ) {
+                reader.close();
+            }
+        }
+
+        /**
+         * Consumes the lowest-keyed group from one or both inputs,
+         * queueing any output rows that result.
+         */
+        private void mergeStep() throws IOException {
+            GroupReader r1 = readers_[ 0 ];
+            GroupReader r2 = readers_[ 1 ];
+            boolean has1 = hasGroups_[ 0 ];
+            boolean has2 = hasGroups_[ 1 ];
+            int cmp;
+            if ( ! has2 || ( has1 && r1.key_ == null ) ) {
+                cmp = -1;
+            }
+            else if ( ! has1 || r2.key_ == null ) {
+                cmp = +1;
+            }
+            else {
+                cmp = compareKeys( r1.key_, r2.key_ );
+            }
+            emit( cmp <= 0 ? r1.rows_ : noRows_,
+                  cmp >= 0 ? r2.rows_ : noRows_ );
+            if ( cmp <= 0 ) {
+                emit( r1.blanks_, noRows_ );
+                hasGroups_[ 0 ] = r1.readGroup();
+            }
+            if ( cmp >= 0 ) {
+                emit( noRows_, r2.blanks_ );
+                hasGroups_[ 1 ] = r2.readGroup();
+            }
+        }
+
+        /**
+         * Queues the output rows for a pair of equal-keyed groups.
+         *
+         * @param  rows1  rows from table 1, possibly empty
+         * @param  rows2  rows from table 2, possibly empty
+         */
+        private void emit( List<Object[]> rows1, List<Object[]> rows2 ) {
+            int n1 = rows1.size();
+            int n2 = rows2.size();
+            boolean[] used1 = new boolean[ n1 ];
+            boolean[] used2 = new boolean[ n2 ];
+            if ( n1 > 0 && n2 > 0 ) {
+                List<int[]> pairs = new ArrayList<int[]>();
+                switch ( pairMode_ ) {
+                    case ALL:
+                        for ( int i1 = 0; i1 < n1; i1++ ) {
+                            for ( int i2 = 0; i2 < n2; i2++ ) {
+                                pairs.add( new int[] { i1, i2 } );
+                            }
+                        }
+                        break;
+                    case BEST:
+
+                        /* All candidates score equally, so the symmetric
+                         * best match is just the first pairing. */
+                        pairs.add( new int[] { 0, 0 } );
+                        break;
+                    case BEST1:
+                        for ( int i1 = 0; i1 < n1; i1++ ) {
+                            pairs.add( new int[] { i1, 0 } );
+                        }
+                        break;
+                    case BEST2:
+                        for ( int i2 = 0; i2 < n2; i2++ ) {
+                            pairs.add( new int[] { 0, i2 } );
+                        }
+                        break;
+                    default:
+                        throw new AssertionError( pairMode_ );
+                }
+                int npair = pairs.size();
+                Integer grpId = null;
+                Integer grpSize = null;
+                if ( npair > 1 ) {
+                    grpId = Integer.valueOf( ++igrp_ );
+                    grpSize = Integer.valueOf( npair );
+                }
+                for ( int[] pair : pairs ) {
+                    used1[ pair[ 0 ] ] = true;
+                    used2[ pair[ 1 ] ] = true;
+                    if ( useLinks_ ) {
+                        Object[] row = new Object[ colInfos_.length ];
+                        copyRow( 0, rows1.get( pair[ 0 ] ), row );
+                        copyRow( 1, rows2.get( pair[ 1 ] ), row );
+                        if ( addGroups_ ) {
+                            row[ colInfos_.length - 2 ] = grpId;
+                            row[ colInfos_.length - 1 ] = grpSize;
+                        }
+                        queue_.add( row );
+                    }
+                }
+            }
+            if ( useUnmatched_[ 0 ] ) {
+                for ( int i1 = 0; i1 < n1; i1++ ) {
+                    if ( ! used1[ i1 ] ) {
+                        Object[] row = new Object[ colInfos_.length ];
+                        copyRow( 0, rows1.get( i1 ), row );
+                        queue_.add( row );
+                    }
+                }
+            }
+            if ( useUnmatched_[ 1 ] ) {
+                for ( int i2 = 0; i2 < n2; i2++ ) {
+                    if ( ! used2[ i2 ] ) {
+                        Object[] row = new Object[ colInfos_.length ];
+                        copyRow( 1, rows2.get( i2 ), row );
+                        queue_.add( row );
+                    }
+                }
+            }
+        }
+
+        /**
+         * Copies the output columns of an input row into an output row.
+         *
+         * @param  itab  input table index
+         * @param  inRow  input row
+         * @param  outRow  output row
+         */
+        private void copyRow( int itab, Object[] inRow, Object[] outRow ) {
+            if ( useFlags_[ itab ] ) {
+                int[] colMap = colMaps_[ itab ];
+                int off = colOffsets_[ itab ];
+                for ( int ic = 0; ic < colMap.length; ic++ ) {
+                    outRow[ off + ic ] = inRow[ colMap[ ic ] ];
+                }
+            }
+        }
+
+        /**
+         * Ensures that there is a current row.
+         *
+         * @throws  IllegalStateException  if not
+         */
+        private void checkRow() {
+            if ( row_ == null ) {
+                throw new IllegalStateException( "No current row" );
+            }
+        }
+    }
+}
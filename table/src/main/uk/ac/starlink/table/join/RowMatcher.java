@@ -152,6 +152,21 @@ public class RowMatcher {
             range = new NdRange( ncol );
         }
 
+        /* For exact value matching, there is no point in calculating
+         * ranges; just index the table with fewer rows. */
+        else if ( engine instanceof EqualsMatchEngine ) {
+            range = new NdRange( ncol );
+            if ( tables[ index1 ].getRowCount() <
+                 tables[ index2 ].getRowCount() ) {
+                indexR = index1;
+                indexS = index2;
+            }
+            else {
+                indexR = index2;
+                indexS = index1;
+            }
+        }
+
         /* If both tables have random access, calculate the possible match
          * ranges.  Then use the one with the smaller number of rows in range
          * as the random access one, since this should be cheaper. */
@@ -199,6 +214,15 @@ public class RowMatcher {
                           boolean bestOnly )
             throws IOException, InterruptedException {
 
+        /* Exact value matches can use a dedicated hash join. */
+        if ( engine instanceof EqualsMatchEngine ) {
+            LinkSet linkSet = createLinkSet();
+            new ExactPairMatcher( engine, indicator, -1L )
+               .scanForPairs( tables[ indexR ], indexR, tables[ indexS ],
+                              indexS, bestOnly, linkSet );
+            return linkSet;
+        }
+
         /* Bin the row indices for the random table. */
         ProgressRowSequence rseq =
             new ProgressRowSequence( tables[ indexR ], indicator,
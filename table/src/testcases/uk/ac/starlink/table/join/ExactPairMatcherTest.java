@@ -0,0 +1,166 @@
+package uk.ac.starlink.table.join;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.util.TestCase;
+
+public class ExactPairMatcherTest extends TestCase {
+
+    private final MatchEngine engine_ = new EqualsMatchEngine();
+
+    public ExactPairMatcherTest( String name ) {
+        super( name );
+    }
+
+    public void testJoin() throws IOException, InterruptedException {
+        Random rnd = new Random( 23001 );
+        StarTable tR = createTable( rnd, 500, Long.class );
+        StarTable tS = createTable( rnd, 800, Integer.class );
+        checkJoin( tR, tS );
+        checkJoin( tS, tR );
+        checkJoin( createTable( rnd, 300, String.class ),
+                   createTable( rnd, 400, String.class ) );
+        checkJoin( createTable( rnd, 300, Double.class ),
+                   createTable( rnd, 400, Short.class ) );
+        checkJoin( createTable( rnd, 300, Double.class ),
+                   createTable( rnd, 400, Float.class ) );
+    }
+
+    public void testLargeIntegers() throws IOException, InterruptedException {
+        long p53 = 1L << 53;
+        long p62 = 1L << 62;
+        StarTable tL = createTable( Long.class, new Object[] {
+            Long.valueOf( p53 + 1 ), Long.valueOf( p62 ),
+            Long.valueOf( p53 ), Long.valueOf( p62 + 1 ),
+        } );
+        StarTable tD = createTable( Double.class, new Object[] {
+            Double.valueOf( p53 ), Double.valueOf( p62 ),
+        } );
+        Set<String> expect = new HashSet<String>();
+        expect.add( "0:0" );
+        expect.add( "1:1" );
+        expect.add( "2:0" );
+        expect.add( "3:1" );
+        ExactPairMatcher matcher =
+            new ExactPairMatcher( engine_, new NullProgressIndicator(), -1 );
+        assertEquals( expect, getPairs( matcher, tL, tD, false ) );
+
+        /* Distinct longs equal to the same double do not match
+         * each other. */
+        Set<String> expectL = new HashSet<String>();
+        for ( int i = 0; i < 4; i++ ) {
+            expectL.add( i + ":" + i );
+        }
+        assertEquals( expectL, getPairs( matcher, tL, tL, false ) );
+
+        /* Source_id-like keys compared with their double values. */
+        Random rnd = new Random( 4401 );
+        int n = 400;
+        Object[] lvals = new Object[ n ];
+        Object[] dvals = new Object[ n ];
+        for ( int i = 0; i < n; i++ ) {
+            long base = i % 2 == 0 ? p53 : p62;
+            long lval = base + rnd.nextInt( 5000 ) * ( ( i % 3 ) + 1 );
+            lvals[ i ] = Long.valueOf( i % 5 == 0 ? -lval : lval );
+            dvals[ ( i * 7 ) % n ] =
+                Double.valueOf( ((Long) lvals[ i ]).doubleValue() );
+        }
+        checkJoin( createTable( Long.class, lvals ),
+                   createTable( Double.class, dvals ) );
+        checkJoin( createTable( Double.class, dvals ),
+                   createTable( Long.class, lvals ) );
+    }
+
+    private void checkJoin( StarTable tR, StarTable tS )
+            throws IOException, InterruptedException {
+        Set<String> expectAll = new HashSet<String>();
+        Set<String> expectBest = new HashSet<String>();
+        for ( long is = 0; is < tS.getRowCount(); is++ ) {
+            boolean found = false;
+            for ( long ir = 0; ir < tR.getRowCount(); ir++ ) {
+                if ( engine_.matchScore( tR.getRow( ir ),
+                                         tS.getRow( is ) ) >= 0 ) {
+                    expectAll.add( ir + ":" + is );
+                    if ( ! found ) {
+                        expectBest.add( ir + ":" + is );
+                        found = true;
+                    }
+                }
+            }
+        }
+        assertTrue( expectAll.size() > 10 );
+        for ( long limit : new long[] { -1, 0, 7 } ) {
+            ExactPairMatcher matcher =
+                new ExactPairMatcher( engine_, new NullProgressIndicator(),
+                                      limit );
+            assertEquals( expectAll, getPairs( matcher, tR, tS, false ) );
+            assertEquals( expectBest, getPairs( matcher, tR, tS, true ) );
+        }
+    }
+
+    private static Set<String> getPairs( ExactPairMatcher matcher,
+                                         StarTable tR, StarTable tS,
+                                         boolean bestOnly )
+            throws IOException, InterruptedException {
+        LinkSet links = new HashSetLinkSet();
+        matcher.scanForPairs( tR, 0, tS, 1, bestOnly, links );
+        Set<String> pairs = new HashSet<String>();
+        for ( RowLink link : links ) {
+            assertEquals( 2, link.size() );
+            assertEquals( 0, link.getRef( 0 ).getTableIndex() );
+            assertEquals( 1, link.getRef( 1 ).getTableIndex() );
+            assertTrue( pairs.add( link.getRef( 0 ).getRowIndex() + ":"
+                                 + link.getRef( 1 ).getRowIndex() ) );
+        }
+        return pairs;
+    }
+
+    private static StarTable createTable( Class<?> clazz, Object[] values ) {
+        RowListStarTable table = new RowListStarTable( new ColumnInfo[] {
+            new ColumnInfo( "key", clazz, null ),
+        } );
+        for ( Object value : values ) {
+            table.addRow( new Object[] { value } );
+        }
+        return table;
+    }
+
+    private static StarTable createTable( Random rnd, int nrow,
+                                          Class<?> clazz ) {
+        RowListStarTable table = new RowListStarTable( new ColumnInfo[] {
+            new ColumnInfo( "key", clazz, null ),
+        } );
+        for ( int i = 0; i < nrow; i++ ) {
+            int ival = rnd.nextInt( nrow );
+            final Object value;
+            if ( ival % 17 == 0 ) {
+                value = null;
+            }
+            else if ( clazz == Long.class ) {
+                value = Long.valueOf( ival );
+            }
+            else if ( clazz == Integer.class ) {
+                value = Integer.valueOf( ival );
+            }
+            else if ( clazz == Short.class ) {
+                value = Short.valueOf( (short) ival );
+            }
+            else if ( clazz == Double.class ) {
+                value = Double.valueOf( ival % 2 == 0 ? ival : ival * 0.5 );
+            }
+            else if ( clazz == Float.class ) {
+                value = Float.valueOf( ival % 2 == 0 ? ival : ival * 0.5f );
+            }
+            else {
+                value = "s" + ival;
+            }
+            table.addRow( new Object[] { value } );
+        }
+        return table;
+    }
+}
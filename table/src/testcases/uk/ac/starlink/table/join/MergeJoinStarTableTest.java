@@ -0,0 +1,149 @@
+package uk.ac.starlink.table.join;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.ColumnPermutedStarTable;
+import uk.ac.starlink.table.JoinFixAction;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.util.TestCase;
+
+public class MergeJoinStarTableTest extends TestCase {
+
+    private static final JoinFixAction[] FIXES = new JoinFixAction[] {
+        JoinFixAction.makeRenameDuplicatesAction( "_1" ),
+        JoinFixAction.makeRenameDuplicatesAction( "_2" ),
+    };
+
+    public MergeJoinStarTableTest( String name ) {
+        super( name );
+    }
+
+    public void testMerge() throws IOException, InterruptedException {
+        Random rnd = new Random( 3801 );
+        StarTable t1 = createSortedTable( rnd, 300, 1000 );
+        StarTable t2 = createSortedTable( rnd, 200, 2000 );
+        for ( PairMode pairMode : PairMode.values() ) {
+            RowMatcher matcher =
+                new RowMatcher( new EqualsMatchEngine(),
+                                new StarTable[] { keyTable( t1 ),
+                                                  keyTable( t2 ) } );
+            LinkSet pairs = matcher.findPairMatches( pairMode );
+            for ( JoinType joinType : JoinType.getPairTypes() ) {
+                LinkSet links = new HashSetLinkSet();
+                for ( RowLink link : pairs ) {
+                    links.addLink( link );
+                }
+                StarTable expect =
+                    MatchStarTables
+                   .makeJoinTable( t1, t2, links, joinType, false,
+                                   FIXES, null );
+                StarTable merged =
+                    new MergeJoinStarTable( t1, 0, t2, 0, pairMode, joinType,
+                                            false, FIXES );
+                String label = pairMode + "/" + joinType;
+                assertTrue( ! merged.isRandom() );
+                int ncol = merged.getColumnCount();
+                assertEquals( label, expect.getColumnCount(), 2 * ncol );
+                for ( int ic = 0; ic < ncol; ic++ ) {
+                    assertEquals( expect.getColumnInfo( 2 * ic + 1 )
+                                        .getName(),
+                                  merged.getColumnInfo( ic ).getName() );
+                }
+                assertEquals( label, readRows( expect, true ),
+                              readRows( merged, false ) );
+            }
+        }
+    }
+
+    public void testUnsorted() throws IOException {
+        RowListStarTable t1 = new RowListStarTable( new ColumnInfo[] {
+            new ColumnInfo( "k", Integer.class, null ),
+        } );
+        for ( int k : new int[] { 1, 2, 4, 3 } ) {
+            t1.addRow( new Object[] { Integer.valueOf( k ) } );
+        }
+        StarTable merged =
+            new MergeJoinStarTable( t1, 0, t1, 0, PairMode.ALL,
+                                    JoinType._1AND2, true, FIXES );
+        RowSequence rseq = merged.getRowSequence();
+        try {
+            while ( rseq.next() ) {
+            }
+            fail();
+        }
+        catch ( IOException e ) {
+        }
+        rseq.close();
+    }
+
+    public void testCompare() throws IOException {
+        assertEquals( 0, MergeJoinStarTable
+                        .compareKeys( Integer.valueOf( 3 ),
+                                      Double.valueOf( 3.0 ) ) );
+        assertTrue( MergeJoinStarTable
+                   .compareKeys( Long.valueOf( Long.MAX_VALUE ),
+                                 Long.valueOf( Long.MAX_VALUE - 1 ) ) > 0 );
+        assertTrue( MergeJoinStarTable.compareKeys( "a", "b" ) < 0 );
+        try {
+            MergeJoinStarTable.compareKeys( "a", Integer.valueOf( 1 ) );
+            fail();
+        }
+        catch ( IOException e ) {
+        }
+    }
+
+    /**
+     * Returns a table with a sorted integer key column, with some
+     * blank keys scattered about, and a unique tag column.
+     */
+    private static StarTable createSortedTable( Random rnd, int nrow,
+                                                int tag0 ) {
+        int[] keys = new int[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            keys[ i ] = rnd.nextInt( nrow / 2 );
+        }
+        Arrays.sort( keys );
+        RowListStarTable table = new RowListStarTable( new ColumnInfo[] {
+            new ColumnInfo( "key", Integer.class, null ),
+            new ColumnInfo( "tag", Integer.class, null ),
+        } );
+        for ( int i = 0; i < nrow; i++ ) {
+            Integer key = i % 29 == 0 ? null : Integer.valueOf( keys[ i ] );
+            table.addRow( new Object[] { key, Integer.valueOf( tag0 + i ) } );
+        }
+        return table;
+    }
+
+    private static StarTable keyTable( StarTable table ) throws IOException {
+        return new ColumnPermutedStarTable( table, new int[] { 0 } );
+    }
+
+    /**
+     * Reads the tag values of a join table as a sorted list of strings.
+     * Key columns may optionally be skipped.
+     */
+    private static List<String> readRows( StarTable table, boolean hasKeys )
+            throws IOException {
+        List<String> list = new ArrayList<String>();
+        RowSequence rseq = table.getRowSequence();
+        while ( rseq.next() ) {
+            Object[] row = rseq.getRow();
+            StringBuffer sbuf = new StringBuffer();
+            for ( int ic = hasKeys ? 1 : 0; ic < row.length;
+                  ic += hasKeys ? 2 : 1 ) {
+                sbuf.append( row[ ic ] ).append( ';' );
+            }
+            list.add( sbuf.toString() );
+        }
+        rseq.close();
+        Collections.sort( list );
+        return list;
+    }
+}
@@ -2,10 +2,12 @@ package uk.ac.starlink.topcat;
 
 import java.awt.Component;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.awt.event.KeyEvent;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -16,6 +18,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.swing.Action;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
@@ -33,18 +36,20 @@ import javax.swing.table.TableModel;
 import uk.ac.starlink.table.ColumnInfo;
 import uk.ac.starlink.table.DefaultValueInfo;
 import uk.ac.starlink.table.DescribedValue;
+import uk.ac.starlink.table.RowCollector;
 import uk.ac.starlink.table.RowListStarTable;
-import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.RowSplittable;
 import uk.ac.starlink.table.StarTable; 
 import uk.ac.starlink.table.StarTableOutput;
 import uk.ac.starlink.table.TableSource;
 import uk.ac.starlink.table.ValueInfo;
 import uk.ac.starlink.table.formats.AsciiTableWriter;
 import uk.ac.starlink.table.gui.NumericCellRenderer;
-import uk.ac.starlink.table.gui.ProgressBarStarTable;
 import uk.ac.starlink.table.gui.StarJTable;
 import uk.ac.starlink.table.gui.StarTableColumn;
 import uk.ac.starlink.ttools.filter.QuantCalc;
+import uk.ac.starlink.ttools.filter.SketchQuantCalc;
+import uk.ac.starlink.ttools.filter.UnivariateStats;
 import uk.ac.starlink.util.gui.SizingScrollPane;
 
 /**
@@ -65,6 +70,7 @@ public class StatsWindow extends AuxWindow {
     private final MetaColumnTableModel statsTableModel_;
     private final BitSet hideColumns_ = new BitSet();
     private final Action recalcAct_;
+    private final ToggleButtonModel approxModel_;
     private StatsCalculator activeCalculator_;
     private StatsCalculator lastCalc_;
     private SaveTableQueryWindow saveWindow_;
@@ -189,6 +195,27 @@ public class StatsWindow extends AuxWindow {
             }
         };
 
+        /* Provide an option to estimate quantiles approximately
+         * rather than calculating them exactly.  This is much cheaper
+         * on memory for large tables. */
+        approxModel_ =
+            new ToggleButtonModel( "Approximate Quantiles", null,
+                                   "Estimate quantiles and median absolute "
+                                 + "deviations in fixed memory rather than "
+                                 + "calculating them exactly" );
+        approxModel_.addActionListener( new ActionListener() {
+            public void actionPerformed( ActionEvent evt ) {
+                StatsCalculator calc = activeCalculator_;
+                if ( calc == null ) {
+                    calc = lastCalc_;
+                }
+                if ( calc != null && calc.hasQuant ) {
+                    calcMap_.clear();
+                    recalcAct_.actionPerformed( null );
+                }
+            }
+        } );
+
         /* Add actions to toolbar. */
         getToolBar().add( saveAct );
         getToolBar().add( importAct );
@@ -205,6 +232,7 @@ public class StatsWindow extends AuxWindow {
         JMenu statsMenu = new JMenu( "Statistics" );
         statsMenu.setMnemonic( KeyEvent.VK_S );
         statsMenu.add( new JMenuItem( recalcAct_ ) );
+        statsMenu.add( approxModel_.createMenuItem() );
         getJMenuBar().add( statsMenu );
 
         /* Add a menu for controlling column display. */
@@ -290,7 +318,9 @@ public class StatsWindow extends AuxWindow {
         /* Otherwise, kick off a new thread which will perform the
          * calculations and display the results in due course. */
         else {
-            activeCalculator_ = new StatsCalculator( rset, hasQuant, hasMad );
+            activeCalculator_ =
+                new StatsCalculator( rset, hasQuant, hasMad,
+                                     approxModel_.isSelected() );
             activeCalculator_.start();
         }
     }
@@ -856,6 +886,7 @@ public class StatsWindow extends AuxWindow {
         private final RowSubset rset;
         private final boolean hasQuant;
         private final boolean hasMad;
+        private final boolean isApprox;
 
         int ncol;
         long ngoodrow;
@@ -879,9 +910,6 @@ public class StatsWindow extends AuxWindow {
         double[] skews;
         double[] kurts;
         double[] sums;
-        double[] sum2s;
-        double[] sum3s;
-        double[] sum4s;
         int[] cards;
         List<Map<Double,Number>> quantiles;
         QuantCalc[] quantCalcs;
@@ -893,13 +921,15 @@ public class StatsWindow extends AuxWindow {
          * @param  rset the RowSubset to do calculations for
          * @param  hasQuant  true if quantiles need calculating
          * @param  hasMad  true if median absolute deviations need calculating
+         * @param  isApprox  true if quantiles may be estimated approximately
          */
         public StatsCalculator( RowSubset rset, boolean hasQuant,
-                                boolean hasMad ) {
+                                boolean hasMad, boolean isApprox ) {
             super( "StatsCalculator" );
             this.rset = rset;
             this.hasQuant = hasQuant || hasMad; 
             this.hasMad = hasMad;
+            this.isApprox = isApprox;
         }
 
         /**
@@ -937,7 +967,8 @@ public class StatsWindow extends AuxWindow {
                         "are much more expensive to calculate than other",
                         "statistical quantities.",
                         "To calculate statistics for this table you will",
-                        "need to undisplay these columns, or start again",
+                        "need to undisplay these columns, select the",
+                        "Approximate Quantiles option, or start again",
                         "with more memory.",
                     };
                     SwingUtilities.invokeLater( new Runnable() {
@@ -968,9 +999,9 @@ public class StatsWindow extends AuxWindow {
          * Performs the calculations, storing the results in the member
          * variables of this StatsCalculator object.
          * An IOException may indicate that the thread was interrupted
-         * deliberately, or that some other error occurred.  Either way,
-         * some sensible results should be returned based on the number of
-         * rows which have been got through so far.
+         * deliberately, or that some other error occurred.
+         * The rows may be processed in parallel if all the requested
+         * quantities permit it.
          *
          * @throws  IOException if calculation is not complete
          */
@@ -998,23 +1029,11 @@ public class StatsWindow extends AuxWindow {
             skews = new double[ ncol ];
             kurts = new double[ ncol ];
             sums = new double[ ncol ];
-            sum2s = new double[ ncol ];
-            sum3s = new double[ ncol ];
-            sum4s = new double[ ncol ];
             cards = new int[ ncol ];
             quantiles = new ArrayList<Map<Double,Number>>( ncol );
-            quantCalcs = new QuantCalc[ ncol ];
-
-            boolean[] badcompars = new boolean[ ncol ];
-            double[] dmins = new double[ ncol ];
-            double[] dmaxs = new double[ ncol ];
-            List<Set<Object>> valuesets = new ArrayList<Set<Object>>( ncol );
             for ( int i = 0; i < ncol; i++ ) {
                 quantiles.add( null );
-                valuesets.add( null );
             }
-            Arrays.fill( dmins, Double.MAX_VALUE );
-            Arrays.fill( dmaxs, -Double.MAX_VALUE );
 
             /* If we are going to calculate quantiles it's useful to work out
              * how many rows there are in the subset up front.  This is a
@@ -1039,273 +1058,484 @@ public class StatsWindow extends AuxWindow {
                                                  .isAssignableFrom( clazz );
                 isBoolean[ icol ] = clazz.equals( Boolean.class );
                 isCardinal[ icol ] = ! clazz.equals( Boolean.class );
-                if ( isCardinal[ icol ] ) {
-                    valuesets.set( icol, new HashSet<Object>() );
-                }
-                if ( hasQuant && isNumber[ icol ] ) {
-                    @SuppressWarnings("unchecked")
-                    Class<? extends Number> nclazz =
-                        (Class<? extends Number>) clazz;
-                    quantCalcs[ icol ] = QuantCalc.createInstance( nclazz, nr );
-                }
             }
 
-            /* Iterate over the selected rows in the table. */
-            RowSequence rseq = new ProgressBarStarTable( dataModel_, progBar_ )
-                              .getRowSequence();
-            int cardlimit = getCardinalityLimit( dataModel_.getRowCount() );
-            IOException interruption = null;
-            long lrow = 0L;
-            ngoodrow = 0L;
-            for ( ; true; lrow++ ) {
-                long lrow1 = lrow;
-
-                /* A thread interruption may manifest itself here as an
-                 * exception (see ProgressBarStarTable).  If so, save the
-                 * exception and break out. */
-                try {
-                    if ( ! rseq.next() ) {
-                        break;
+            /* Accumulate statistics over the selected rows in the table.
+             * Exact quantile calculations can't be split between threads,
+             * but everything else can. */
+            ColumnCollector collector = new ColumnCollector( nr );
+            boolean parallel = ! hasQuant || isApprox;
+            ColumnAccumulator acc;
+            setProgressZero( dataModel_.getRowCount() );
+            try {
+                acc = collector.collect( dataModel_, parallel );
+            }
+            finally {
+                SwingUtilities.invokeLater( new Runnable() {
+                    public void run() {
+                        progBar_.setValue( 0 );
                     }
-                }
-                catch ( IOException e ) {
-                    interruption = e;
-                    break;
-                }
-
-                if ( rset.isIncluded( lrow ) ) {
-                    ngoodrow++;
-                    Object[] row = rseq.getRow();
+                } );
+            }
+            ngoodrow = acc.ngoodrow_;
+            quantCalcs = acc.quantCalcs_;
 
-                    /* Accumulate statistics as appropriate. */
-                    for ( int icol = 0; icol < ncol; icol++ ) {
-                        Object val = row[ icol ];
-                        boolean good;
-                        if ( val == null ) {
-                            good = false;
-                        }
-                        else {
-                            if ( isNumber[ icol ] ) {
-                                double dval = Double.NaN;
-                                if ( ! ( val instanceof Number ) ) {
-                                    System.err.println(
-                                        "Error in table data: not numeric at " +
-                                        lrow1 + "," + icol + "(" + val + ")" );
-                                    good = false;
-                                }
-                                else {
-                                    dval = ((Number) val).doubleValue();
-                                }
-                                if ( Double.isNaN( dval ) ) {
-                                    good = false;
-                                }
-                                else {
-                                    good = true;
-                                }
-                                if ( good ) {
-                                    if ( dval < dmins[ icol ] ) {
-                                        dmins[ icol ] = dval;
-                                        mins[ icol ] = val;
-                                        imins[ icol ] = lrow1;
-                                    }
-                                    if ( dval > dmaxs[ icol ] ) {
-                                        dmaxs[ icol ] = dval;
-                                        maxs[ icol ] = val;
-                                        imaxs[ icol ] = lrow1;
-                                    }
-                                    double s1 = dval;
-                                    double s2 = dval * s1;
-                                    double s3 = dval * s2;
-                                    double s4 = dval * s3;
-                                    sums[ icol ] += s1;
-                                    sum2s[ icol ] += s2;
-                                    sum3s[ icol ] += s3;
-                                    sum4s[ icol ] += s4;
-                                    if ( hasQuant ) {
-                                        quantCalcs[ icol ].acceptDatum( val );
-                                    }
-                                }
+            /* Calculate the actual statistics based on the accumulated
+             * values.  Make sure any resources held by the quantile
+             * calculators are released, even on error. */
+            try {
+                for ( int icol = 0; icol < ncol; icol++ ) {
+                    UnivariateStats stats = acc.stats_[ icol ];
+                    long ngood = stats == null ? acc.ngoods_[ icol ]
+                                               : stats.getCount();
+                    ngoods[ icol ] = ngood;
+                    nbads[ icol ] = ngoodrow - ngood;
+                    ntrues[ icol ] = acc.ntrues_[ icol ];
+                    if ( stats != null ) {
+                        mins[ icol ] = stats.getMinimum();
+                        maxs[ icol ] = stats.getMaximum();
+                        imins[ icol ] = stats.getMinPos();
+                        imaxs[ icol ] = stats.getMaxPos();
+                        sums[ icol ] = stats.getSum();
+                    }
+                    else {
+                        mins[ icol ] = acc.mins_[ icol ];
+                        maxs[ icol ] = acc.maxs_[ icol ];
+                        imins[ icol ] = acc.imins_[ icol ];
+                        imaxs[ icol ] = acc.imaxs_[ icol ];
+                    }
+                    isCardinal[ icol ] = acc.valuesets_.get( icol ) != null;
+                    if ( ngood > 0 ) {
+                        if ( isNumber[ icol ] ) {
+                            double dcount = (double) ngood;
+                            double mean = stats.getMean();
+                            double nvar = stats.getCentralSum2();
+                            means[ icol ] = mean;
+                            popvars[ icol ] = nvar / dcount;
+                            popsdevs[ icol ] = Math.sqrt( popvars[ icol ] );
+                            if ( ngood > 1 ) {
+                                sampvars[ icol ] = nvar / ( dcount - 1 );
+                                sampsdevs[ icol ] =
+                                    Math.sqrt( sampvars[ icol ] );
                             }
-                            else if ( isBoolean[ icol ] ) {
-                                if ( ! ( val instanceof Boolean ) ) {
-                                    System.err.println(
-                                        "Error in table data: not boolean at " +
-                                        lrow1 + "," + icol + "(" + val + ")" );
-                                    good = false;
-                                }
-                                else {
-                                    good = true;
-                                }
-                                if ( good ) {
-                                    boolean bval =
-                                        ((Boolean) val).booleanValue();
-                                    if ( bval ) {
-                                        ntrues[ icol ]++;
-                                    }
-                                }
+                            else {
+                                sampvars[ icol ] = Double.NaN;
+                                sampsdevs[ icol ] = Double.NaN;
                             }
-                            else if ( isComparable[ icol ] ) {
-                                if ( ! ( val instanceof Comparable ) ) {
-                                    System.err.println(
-                                        "Error in table data: not Comparable " +
-                                        " at " + lrow1 + "," + icol + "(" +
-                                        val + ")" );
-                                    good = false;
-                                }
-                                else {
-                                    good = true;
-                                }
-                                if ( good ) {
-                                    @SuppressWarnings("unchecked")
-                                    Comparable<Object> cval =
-                                        (Comparable<Object>) val;
-                                    if ( mins[ icol ] == null ) {
-                                        assert maxs[ icol ] == null;
-                                        mins[ icol ] = val;
-                                        maxs[ icol ] = val;
-                                        imins[ icol ] = lrow1;
-                                        imaxs[ icol ] = lrow1;
-                                    }
-                                    else {
-                                        try {
-                                            if ( cval.compareTo( mins[ icol ] )
-                                                 < 0 ) {
-                                                mins[ icol ] = val;
-                                                imins[ icol ] = lrow1;
-                                            }
-                                            else if ( cval
-                                                     .compareTo( maxs[ icol ] )
-                                                      > 0 ) {
-                                                maxs[ icol ] = val;
-                                                imaxs[ icol ] = lrow1;
-                                            }
-                                        }
-
-                                        /* It is possible for two objects in the
-                                         * same column both to be Comparable,
-                                         * but not to each other.  In this case,
-                                         * there does not exist a well-defined
-                                         * min/max for that column. */
-                                        catch ( ClassCastException e ) {
-                                            badcompars[ icol ] = true;
-                                        }
-                                    }
-                                }
+                            skews[ icol ] =
+                                Math.sqrt( dcount ) / Math.pow( nvar, 1.5 )
+                                * stats.getCentralSum3();
+                            kurts[ icol ] =
+                                dcount / ( nvar * nvar )
+                                * stats.getCentralSum4() - 3.0;
+                        }
+                        else if ( isBoolean[ icol ] ) {
+                            means[ icol ] = (double) ntrues[ icol ] / ngood;
+                        }
+                        if ( isCardinal[ icol ] ) {
+                            int card = acc.valuesets_.get( icol ).size();
+                            if ( card <= getCardinalityLimit( ngood ) ) {
+                                cards[ icol ] = card;
                             }
                             else {
-                                good = true;
+                                cards[ icol ] = 0;
+                                isCardinal[ icol ] = false;
                             }
-                            if ( good ) {
-                                ngoods[ icol ]++;
+                        }
+                        QuantCalc quantCalc = quantCalcs[ icol ];
+                        if ( quantCalc != null ) {
+                            quantCalc.ready();
+                            quantiles.set( icol, new HashMap<Double,Number>() );
+                            for ( Double qval : NAMED_QUANTILES.keySet() ) {
+                                quantiles.get( icol )
+                               .put( qval, quantCalc.getQuantile( qval ) );
                             }
+                            mads[ icol ] =
+                                hasMad
+                                    ? QuantCalc
+                                     .calculateMedianAbsoluteDeviation(
+                                          quantCalc )
+                                    : Double.NaN;
+                            quantCalc.close();
+                            quantCalcs[ icol ] = null;
                         }
+                    }
+                    else {
+                        means[ icol ] = Double.NaN;
+                        popsdevs[ icol ] = Double.NaN;
+                        popvars[ icol ] = Double.NaN;
+                        sampvars[ icol ] = Double.NaN;
+                        sampsdevs[ icol ] = Double.NaN;
+                        mads[ icol ] = Double.NaN;
+                        skews[ icol ] = Double.NaN;
+                        kurts[ icol ] = Double.NaN;
+                    }
+                    if ( acc.badcompars_[ icol ] ) {
+                        mins[ icol ] = null;
+                        maxs[ icol ] = null;
+                        imins[ icol ] = -1L;
+                        imaxs[ icol ] = -1L;
+                    }
+                }
+            }
+            finally {
+                for ( QuantCalc qc : quantCalcs ) {
+                    if ( qc != null ) {
+                        qc.close();
+                    }
+                }
+            }
+        }
 
-                        /* Maybe calculate the cardinalities. */
-                        if ( good && isCardinal[ icol ] ) {
-                            valuesets.get( icol ).add( val );
-                            if ( valuesets.get( icol ).size() > cardlimit ) {
-                                isCardinal[ icol ] = false;
-                                valuesets.set( icol, null );
+        /**
+         * Resets the progress bar ready for a scan of a given number of rows.
+         *
+         * @param  nrow  row count, or -1 if not known
+         */
+        private void setProgressZero( final long nrow ) {
+            SwingUtilities.invokeLater( new Runnable() {
+                public void run() {
+                    progBar_.setMinimum( 0 );
+                    progBar_.setValue( 0 );
+                    boolean determinate = nrow > 0 && nrow < Integer.MAX_VALUE;
+                    progBar_.setIndeterminate( ! determinate );
+                    if ( determinate ) {
+                        progBar_.setMaximum( (int) nrow );
+                    }
+                }
+            } );
+        }
+
+        /**
+         * Holds the per-column state accumulated from a set of table rows.
+         */
+        private class ColumnAccumulator {
+            final UnivariateStats[] stats_;
+            final long[] ngoods_;
+            final long[] ntrues_;
+            final Object[] mins_;
+            final Object[] maxs_;
+            final long[] imins_;
+            final long[] imaxs_;
+            final boolean[] badcompars_;
+            final List<Set<Object>> valuesets_;
+            final QuantCalc[] quantCalcs_;
+            long ngoodrow_;
+
+            /**
+             * Constructor.
+             *
+             * @param  nr  number of rows expected, or -1 if unknown
+             */
+            ColumnAccumulator( long nr ) throws IOException {
+                stats_ = new UnivariateStats[ ncol ];
+                ngoods_ = new long[ ncol ];
+                ntrues_ = new long[ ncol ];
+                mins_ = new Object[ ncol ];
+                maxs_ = new Object[ ncol ];
+                imins_ = new long[ ncol ];
+                imaxs_ = new long[ ncol ];
+                badcompars_ = new boolean[ ncol ];
+                valuesets_ = new ArrayList<Set<Object>>( ncol );
+                quantCalcs_ = new QuantCalc[ ncol ];
+                for ( int icol = 0; icol < ncol; icol++ ) {
+                    valuesets_.add( isCardinal[ icol ] ? new HashSet<Object>()
+                                                       : null );
+                    if ( isNumber[ icol ] ) {
+                        @SuppressWarnings("unchecked")
+                        Class<? extends Number> nclazz =
+                            (Class<? extends Number>)
+                            dataModel_.getColumnInfo( icol )
+                                      .getContentClass();
+                        stats_[ icol ] = UnivariateStats.createStats( nclazz );
+                        if ( hasQuant ) {
+                            quantCalcs_[ icol ] =
+                                isApprox
+                                    ? QuantCalc
+                                     .createApproximateInstance( nclazz )
+                                    : QuantCalc.createInstance( nclazz, nr );
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * RowCollector implementation which accumulates the statistics
+         * for the selected rows of the table.
+         */
+        private class ColumnCollector extends RowCollector<ColumnAccumulator> {
+
+            private final long nr_;
+            private final int cardlimit_;
+            private final long progStep_;
+            private final AtomicLong progCount_;
+
+            /**
+             * Constructor.
+             *
+             * @param  nr  number of rows expected, or -1 if unknown
+             */
+            ColumnCollector( long nr ) {
+                nr_ = nr;
+                long nrow = dataModel_.getRowCount();
+                cardlimit_ = getCardinalityLimit( nrow );
+                progStep_ = nrow > 0 ? Math.max( nrow / 200L, 1024 ) : 1024;
+                progCount_ = new AtomicLong();
+            }
+
+            public ColumnAccumulator createAccumulator() {
+                try {
+                    return new ColumnAccumulator( nr_ );
+                }
+                catch ( IOException e ) {
+                    throw new UncheckedIOException( e );
+                }
+            }
+
+            public void accumulateRows( RowSplittable rseq,
+                                        ColumnAccumulator acc )
+                    throws IOException {
+                long nstep = 0;
+                while ( rseq.next() ) {
+
+                    /* Update progress and check for interruption. */
+                    if ( ++nstep >= progStep_ ) {
+                        reportProgress( nstep );
+                        nstep = 0;
+                    }
+                    long lrow = rseq.getRowIndex();
+                    if ( rset.isIncluded( lrow ) ) {
+                        acc.ngoodrow_++;
+                        accumulateRow( rseq.getRow(), lrow, acc );
+                    }
+                }
+                reportProgress( nstep );
+            }
+
+            public ColumnAccumulator combine( ColumnAccumulator acc1,
+                                              ColumnAccumulator acc2 ) {
+                acc1.ngoodrow_ += acc2.ngoodrow_;
+                for ( int icol = 0; icol < ncol; icol++ ) {
+                    if ( acc1.stats_[ icol ] != null ) {
+                        acc1.stats_[ icol ].combine( acc2.stats_[ icol ] );
+                    }
+                    acc1.ngoods_[ icol ] += acc2.ngoods_[ icol ];
+                    acc1.ntrues_[ icol ] += acc2.ntrues_[ icol ];
+                    acc1.badcompars_[ icol ] |= acc2.badcompars_[ icol ];
+                    combineComparables( acc1, acc2, icol );
+                    Set<Object> vset1 = acc1.valuesets_.get( icol );
+                    Set<Object> vset2 = acc2.valuesets_.get( icol );
+                    if ( vset1 != null ) {
+                        if ( vset2 == null ) {
+                            acc1.valuesets_.set( icol, null );
+                        }
+                        else {
+                            vset1.addAll( vset2 );
+                            if ( vset1.size() > cardlimit_ ) {
+                                acc1.valuesets_.set( icol, null );
                             }
                         }
                     }
+                    QuantCalc qc1 = acc1.quantCalcs_[ icol ];
+                    if ( qc1 != null ) {
+                        ((SketchQuantCalc) qc1)
+                       .merge( (SketchQuantCalc) acc2.quantCalcs_[ icol ] );
+                    }
                 }
+                return acc1;
             }
-            rseq.close();
-            long nrow = lrow;
 
-            /* Calculate the actual statistics based on the accumulated
-             * values.  We do this even if the summation was interrupted,
-             * since the partially-accumulated values may be of interest. */
-            for ( int icol = 0; icol < ncol; icol++ ) {
-                long ngood = ngoods[ icol ];
-                nbads[ icol ] = ngoodrow - ngood;
-                if ( ngood > 0 ) {
-                    if ( isNumber[ icol ] ) {
-                        double dcount = (double) ngood;
-                        double sum0 = dcount;
-                        double sum1 = sums[ icol ];
-                        double sum2 = sum2s[ icol ];
-                        double sum3 = sum3s[ icol ];
-                        double sum4 = sum4s[ icol ];
-                        double mean = sum1 / dcount;
-                        double nvar = ( sum2 - sum1 * sum1 / dcount );
-                        means[ icol ] = mean;
-                        popvars[ icol ] = nvar / dcount;
-                        popsdevs[ icol ] = Math.sqrt( popvars[ icol ] );
-                        if ( ngood > 1 ) {
-                            sampvars[ icol ] = nvar / ( dcount - 1 );
-                            sampsdevs[ icol ] = Math.sqrt( sampvars[ icol ] );
+            /**
+             * Accumulates the statistics for a single row.
+             *
+             * @param  row  row data
+             * @param  lrow1  row index
+             * @param  acc   accumulator
+             */
+            private void accumulateRow( Object[] row, long lrow1,
+                                        ColumnAccumulator acc )
+                    throws IOException {
+                for ( int icol = 0; icol < ncol; icol++ ) {
+                    Object val = row[ icol ];
+                    boolean good;
+                    if ( val == null ) {
+                        good = false;
+                    }
+                    else if ( isNumber[ icol ] ) {
+                        if ( ! ( val instanceof Number ) ) {
+                            System.err.println(
+                                "Error in table data: not numeric at " +
+                                lrow1 + "," + icol + "(" + val + ")" );
+                            good = false;
                         }
                         else {
-                            sampvars[ icol ] = Double.NaN;
-                            sampsdevs[ icol ] = Double.NaN;
+                            good = ! Double.isNaN( ((Number) val)
+                                                  .doubleValue() );
+                        }
+                        if ( good ) {
+                            acc.stats_[ icol ].acceptDatum( val, lrow1 );
+                            if ( hasQuant ) {
+                                acc.quantCalcs_[ icol ].acceptDatum( val );
+                            }
                         }
-                        skews[ icol ] =
-                            Math.sqrt( dcount ) / Math.pow( nvar, 1.5 ) *
-                            ( + 1 * sum3 
-                              - 3 * mean * sum2 
-                              + 3 * mean * mean * sum1
-                              - 1 * mean * mean * mean * sum0 );
-                        kurts[ icol ] =
-                            dcount / ( nvar * nvar ) *
-                            ( + 1 * sum4
-                              - 4 * mean * sum3
-                              + 6 * mean * mean * sum2
-                              - 4 * mean * mean * mean * sum1
-                              + 1 * mean * mean * mean * mean * sum0 ) - 3.0;
                     }
                     else if ( isBoolean[ icol ] ) {
-                        means[ icol ] = (double) ntrues[ icol ] / ngood;
+                        if ( ! ( val instanceof Boolean ) ) {
+                            System.err.println(
+                                "Error in table data: not boolean at " +
+                                lrow1 + "," + icol + "(" + val + ")" );
+                            good = false;
+                        }
+                        else {
+                            good = true;
+                            if ( ((Boolean) val).booleanValue() ) {
+                                acc.ntrues_[ icol ]++;
+                            }
+                        }
                     }
-                    if ( isCardinal[ icol ] ) {
-                        int card = valuesets.get( icol ).size();
-                        if ( card <= getCardinalityLimit( ngood ) ) {
-                            cards[ icol ] = card;
+                    else if ( isComparable[ icol ] ) {
+                        if ( ! ( val instanceof Comparable ) ) {
+                            System.err.println(
+                                "Error in table data: not Comparable " +
+                                " at " + lrow1 + "," + icol + "(" +
+                                val + ")" );
+                            good = false;
                         }
                         else {
-                            cards[ icol ] = 0;
-                            isCardinal[ icol ] = false;
-                            valuesets.set( icol, null );
+                            good = true;
+                            acceptComparable( acc, icol, val, lrow1 );
                         }
                     }
-                    QuantCalc quantCalc = quantCalcs[ icol ];
-                    if ( quantCalc != null ) {
-                        quantCalc.ready();
-                        quantiles.set( icol, new HashMap<Double,Number>() );
-                        for ( Double qval : NAMED_QUANTILES.keySet() ) {
-                            quantiles.get( icol )
-                           .put( qval, quantCalc.getQuantile( qval ) );
+                    else {
+                        good = true;
+                    }
+                    if ( good ) {
+                        acc.ngoods_[ icol ]++;
+                    }
+
+                    /* Maybe calculate the cardinalities. */
+                    if ( good ) {
+                        Set<Object> vset = acc.valuesets_.get( icol );
+                        if ( vset != null ) {
+                            vset.add( val );
+                            if ( vset.size() > cardlimit_ ) {
+                                acc.valuesets_.set( icol, null );
+                            }
                         }
-                        mads[ icol ] =
-                            hasMad
-                                ? QuantCalc
-                                 .calculateMedianAbsoluteDeviation( quantCalc )
-                                : Double.NaN;
-                        quantCalcs[ icol ] = null;
                     }
                 }
+            }
+
+            /**
+             * Updates the minimum and maximum of a non-numeric
+             * comparable column with a new value.
+             *
+             * @param  acc  accumulator
+             * @param  icol  column index
+             * @param  val   comparable value
+             * @param  lrow  row index
+             */
+            private void acceptComparable( ColumnAccumulator acc, int icol,
+                                           Object val, long lrow ) {
+                @SuppressWarnings("unchecked")
+                Comparable<Object> cval = (Comparable<Object>) val;
+                if ( acc.mins_[ icol ] == null ) {
+                    assert acc.maxs_[ icol ] == null;
+                    acc.mins_[ icol ] = val;
+                    acc.maxs_[ icol ] = val;
+                    acc.imins_[ icol ] = lrow;
+                    acc.imaxs_[ icol ] = lrow;
+                }
                 else {
-                    means[ icol ] = Double.NaN;
-                    popsdevs[ icol ] = Double.NaN;
-                    popvars[ icol ] = Double.NaN;
-                    sampvars[ icol ] = Double.NaN;
-                    sampsdevs[ icol ] = Double.NaN;
-                    mads[ icol ] = Double.NaN;
-                    skews[ icol ] = Double.NaN;
-                    kurts[ icol ] = Double.NaN;
+                    try {
+                        if ( cval.compareTo( acc.mins_[ icol ] ) < 0 ) {
+                            acc.mins_[ icol ] = val;
+                            acc.imins_[ icol ] = lrow;
+                        }
+                        else if ( cval.compareTo( acc.maxs_[ icol ] ) > 0 ) {
+                            acc.maxs_[ icol ] = val;
+                            acc.imaxs_[ icol ] = lrow;
+                        }
+                    }
+
+                    /* It is possible for two objects in the same column
+                     * both to be Comparable, but not to each other.
+                     * In this case, there does not exist a well-defined
+                     * min/max for that column. */
+                    catch ( ClassCastException e ) {
+                        acc.badcompars_[ icol ] = true;
+                    }
                 }
-                if ( badcompars[ icol ] ) {
-                    mins[ icol ] = null;
-                    maxs[ icol ] = null;
-                    imins[ icol ] = -1L;
-                    imaxs[ icol ] = -1L;
+            }
+
+            /**
+             * Merges the non-numeric comparable minimum and maximum
+             * from one accumulator into another.
+             *
+             * @param  acc1  destination accumulator
+             * @param  acc2  source accumulator
+             * @param  icol  column index
+             */
+            private void combineComparables( ColumnAccumulator acc1,
+                                             ColumnAccumulator acc2,
+                                             int icol ) {
+                Object min2 = acc2.mins_[ icol ];
+                Object max2 = acc2.maxs_[ icol ];
+                if ( min2 == null ) {
+                    return;
+                }
+                if ( acc1.mins_[ icol ] == null ) {
+                    acc1.mins_[ icol ] = min2;
+                    acc1.maxs_[ icol ] = max2;
+                    acc1.imins_[ icol ] = acc2.imins_[ icol ];
+                    acc1.imaxs_[ icol ] = acc2.imaxs_[ icol ];
+                    return;
+                }
+                try {
+                    @SuppressWarnings("unchecked")
+                    Comparable<Object> cmin2 = (Comparable<Object>) min2;
+                    @SuppressWarnings("unchecked")
+                    Comparable<Object> cmax2 = (Comparable<Object>) max2;
+                    int cmin = cmin2.compareTo( acc1.mins_[ icol ] );
+                    if ( cmin < 0 ||
+                         ( cmin == 0 &&
+                           acc2.imins_[ icol ] < acc1.imins_[ icol ] ) ) {
+                        acc1.mins_[ icol ] = min2;
+                        acc1.imins_[ icol ] = acc2.imins_[ icol ];
+                    }
+                    int cmax = cmax2.compareTo( acc1.maxs_[ icol ] );
+                    if ( cmax > 0 ||
+                         ( cmax == 0 &&
+                           acc2.imaxs_[ icol ] < acc1.imaxs_[ icol ] ) ) {
+                        acc1.maxs_[ icol ] = max2;
+                        acc1.imaxs_[ icol ] = acc2.imaxs_[ icol ];
+                    }
+                }
+                catch ( ClassCastException e ) {
+                    acc1.badcompars_[ icol ] = true;
                 }
             }
 
-            /* Re-throw any interruption-type exception we picked up. */
-            if ( interruption != null ) {
-                throw interruption;
+            /**
+             * Records that a number of rows have been processed,
+             * updating the progress bar as required.
+             * If the calculation thread has been interrupted,
+             * an exception is thrown.
+             *
+             * @param  nr  number of rows processed since last call
+             */
+            private void reportProgress( long nr ) throws IOException {
+                final long count = progCount_.addAndGet( nr );
+                SwingUtilities.invokeLater( new Runnable() {
+                    public void run() {
+                        progBar_.setValue( (int) Math.min( count,
+                                                  Integer.MAX_VALUE ) );
+                    }
+                } );
+                if ( StatsCalculator.this.isInterrupted() ) {
+                    throw new IOException( "Operation interrupted" );
+                }
             }
         }
     }
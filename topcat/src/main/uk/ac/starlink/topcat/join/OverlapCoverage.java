@@ -4,6 +4,7 @@ import cds.moc.HealpixMoc;
 import java.io.IOException;
 import uk.ac.starlink.ttools.cone.MocCoverage;
 import uk.ac.starlink.ttools.cone.CdsHealpix;
+import uk.ac.starlink.ttools.cone.RangeMoc;
 
 /**
  * Footprint implementation that represents the overlap of two other
@@ -30,24 +31,24 @@ public class OverlapCoverage extends MocCoverage {
 
     @Override
     protected HealpixMoc createMoc() throws IOException {
+        RangeMoc rmoc = createRangeMoc();
+        return rmoc == null ? null : rmoc.toHealpixMoc();
+    }
+
+    @Override
+    protected RangeMoc createRangeMoc() throws IOException {
         MocCoverage cov0 = coverages_[ 0 ];
         cov0.initCoverage();
-        HealpixMoc moc = cov0.getMoc();
+        RangeMoc moc = cov0.getRangeMoc();
         for ( int i = 1; i < coverages_.length; i++ ) {
             MocCoverage cov1 = coverages_[ i ];
             cov1.initCoverage();
-            HealpixMoc moc1 = cov1.getMoc();
-            if ( moc1 == null ) {
+            RangeMoc moc1 = cov1.getRangeMoc();
+            if ( moc == null || moc1 == null ) {
                 return null;
             }
-            try {
-                moc = moc.intersection( moc1 );
-            }
-            catch ( Exception e ) {
-                throw (IOException)
-                      new IOException( "MOC trouble" ).initCause( e );
-            }
+            moc = moc.intersection( moc1 );
         }
         return moc;
-    } 
+    }
 }
@@ -2,6 +2,7 @@ package uk.ac.starlink.topcat.plot2;
 
 import uk.ac.starlink.ttools.plot2.data.DataSpec;
 import uk.ac.starlink.ttools.plot2.data.DataStore;
+import uk.ac.starlink.ttools.plot2.data.SpatialQuery;
 import uk.ac.starlink.ttools.plot2.data.TupleRunner;
 import uk.ac.starlink.ttools.plot2.data.TupleSequence;
 import uk.ac.starlink.ttools.plot2.data.WrapperTuple;
@@ -44,16 +45,23 @@ public class CountDataStore implements DataStore {
     }
 
     public synchronized TupleSequence getTupleSequence( DataSpec spec ) {
-        assert spec instanceof GuiDataSpec;
-        long count = spec instanceof GuiDataSpec
-                   ? ((GuiDataSpec) spec).getRowCount()
-                   : spec.getSourceTable().getRowCount();
-        tupleCount_ = count >= 0 ? tupleCount_ + count
-                                 : -1;
+        addCount( spec );
         return new TruncatedTupleSequence( base_.getTupleSequence( spec ),
                                            maxCount_ );
     }
 
+    /**
+     * The tuple count is incremented as for the unrestricted sequence,
+     * so the total reported is an upper limit.
+     */
+    public synchronized TupleSequence getTupleSequence( DataSpec spec,
+                                                        SpatialQuery query ) {
+        addCount( spec );
+        return new TruncatedTupleSequence( base_.getTupleSequence( spec,
+                                                                   query ),
+                                           maxCount_ );
+    }
+
     public TupleRunner getTupleRunner() {
         return base_.getTupleRunner();
     }
@@ -69,6 +77,21 @@ public class CountDataStore implements DataStore {
         return tupleCount_;
     }
 
+    /**
+     * Adds the number of rows represented by a data spec to the
+     * running total.
+     *
+     * @param  spec  data spec
+     */
+    private void addCount( DataSpec spec ) {
+        assert spec instanceof GuiDataSpec;
+        long count = spec instanceof GuiDataSpec
+                   ? ((GuiDataSpec) spec).getRowCount()
+                   : spec.getSourceTable().getRowCount();
+        tupleCount_ = count >= 0 ? tupleCount_ + count
+                                 : -1;
+    }
+
     /**
      * TupleSequence wrapper implementation which limits the number of
      * tuples dispensed to some given number.
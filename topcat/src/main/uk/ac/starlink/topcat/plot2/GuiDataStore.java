@@ -5,6 +5,7 @@ import javax.swing.BoundedRangeModel;
 import uk.ac.starlink.ttools.plot2.data.AbortTupleSequence;
 import uk.ac.starlink.ttools.plot2.data.DataSpec;
 import uk.ac.starlink.ttools.plot2.data.DataStore;
+import uk.ac.starlink.ttools.plot2.data.SpatialQuery;
 import uk.ac.starlink.ttools.plot2.data.TupleRunner;
 import uk.ac.starlink.ttools.plot2.data.TupleSequence;
 import uk.ac.starlink.ttools.plot2.data.WrapperTuple;
@@ -67,6 +68,22 @@ public class GuiDataStore implements DataStore {
     }
 
     public TupleSequence getTupleSequence( DataSpec dataSpec ) {
+        return wrapTupleSequence( base_.getTupleSequence( dataSpec ) );
+    }
+
+    public TupleSequence getTupleSequence( DataSpec dataSpec,
+                                           SpatialQuery query ) {
+        return wrapTupleSequence( base_.getTupleSequence( dataSpec, query ) );
+    }
+
+    /**
+     * Decorates a tuple sequence from the base store with interruption
+     * checking and, if applicable, progress reporting.
+     *
+     * @param  baseSeq  tuple sequence from base data store
+     * @return   decorated sequence
+     */
+    private TupleSequence wrapTupleSequence( TupleSequence baseSeq ) {
         if ( ! isInit_ ) {
             if ( progresser_ != null ) {
                 progresser_.init();
@@ -74,8 +91,7 @@ public class GuiDataStore implements DataStore {
             isInit_ = true;
         }
         AbortTupleSequence tseq =
-            new AbortTupleSequence( base_.getTupleSequence( dataSpec ),
-                                    GuiDataStore::isInterrupted );
+            new AbortTupleSequence( baseSeq, GuiDataStore::isInterrupted );
         return progresser_ == null
              ? tseq
              : new ProgressTupleSequence( tseq, progresser_ );
@@ -74,6 +74,7 @@ import uk.ac.starlink.ttools.plot2.config.StyleKeys;
 import uk.ac.starlink.ttools.plot2.data.DataSpec;
 import uk.ac.starlink.ttools.plot2.data.DataStore;
 import uk.ac.starlink.ttools.plot2.data.DataStoreFactory;
+import uk.ac.starlink.ttools.plot2.data.SpatialQuery;
 import uk.ac.starlink.ttools.plot2.data.StepDataStore;
 import uk.ac.starlink.ttools.plot2.data.TupleRunner;
 import uk.ac.starlink.ttools.plot2.data.TupleSequence;
@@ -1008,6 +1009,10 @@ public class PlotPanel<P,A> extends JComponent implements ActionListener {
             public TupleSequence getTupleSequence( DataSpec spec ) {
                 throw new IllegalArgumentException();
             }
+            public TupleSequence getTupleSequence( DataSpec spec,
+                                                   SpatialQuery query ) {
+                throw new IllegalArgumentException();
+            }
             public TupleRunner getTupleRunner() {
                 return TupleRunner.SEQUENTIAL;
             }
@@ -1738,7 +1743,9 @@ public class PlotPanel<P,A> extends JComponent implements ActionListener {
                         reports = new ReportMap[ nl ];
                         for ( int il = 0; il < nl; il++ ) {
                             reports[ il ] =
-                                drawings[ il ].getReport( plans[ il ] );
+                                PlotUtil.reportPlanReuse(
+                                    drawings[ il ].getReport( plans[ il ] ),
+                                    oldPlans.contains( plans[ il ] ) );
                         }
                         long startPaint = System.currentTimeMillis();
                         dataIcon = zone.paperType_
@@ -99,6 +99,7 @@ public class Stilts {
         taskFactory_.register( "cdsskymatch", taskPkg + "CdsUploadSkyMatch" );
         taskFactory_.register( "cone", taskPkg + "TableCone" );
         taskFactory_.register( "coneskymatch", taskPkg + "MultiCone" );
+        taskFactory_.register( "coneserver", taskPkg + "ConeServer" );
         taskFactory_.register( "datalinklint", taskPkg + "DatalinkLint" );
         taskFactory_.register( "funcs", taskPkg + "ShowFunctions" );
         taskFactory_.register( "pixfoot", taskPkg + "PixFootprint" );
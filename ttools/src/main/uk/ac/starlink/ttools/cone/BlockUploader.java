@@ -1,10 +1,21 @@
 package uk.ac.starlink.ttools.cone;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 import uk.ac.starlink.table.ColumnInfo;
 import uk.ac.starlink.table.JoinFixAction;
 import uk.ac.starlink.table.RandomStarTable;
+import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.RowStore;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.StoragePolicy;
@@ -12,6 +23,7 @@ import uk.ac.starlink.table.TableFormatException;
 import uk.ac.starlink.table.TableSink;
 import uk.ac.starlink.table.Tables;
 import uk.ac.starlink.table.WrapperStarTable;
+import uk.ac.starlink.task.IntegerParameter;
 
 /**
  * Works with an UploadMatcher dividing the input table into chunks and
@@ -33,6 +45,8 @@ public class BlockUploader {
     private final boolean oneToOne_;
     private final boolean uploadEmpty_;
     private String truncationAdvice_;
+    private int parallelism_;
+    private int nRetry_;
 
     private static final Logger logger_ =
         Logger.getLogger( "uk.ac.starlink.ttools.task" );
@@ -66,6 +80,7 @@ public class BlockUploader {
         serviceMode_ = serviceMode;
         oneToOne_ = oneToOne;
         uploadEmpty_ = uploadEmpty;
+        parallelism_ = 1;
         if ( oneToOne_ && ! serviceMode.supportsOneToOne() ) {
             throw new IllegalArgumentException( "Mode " + serviceMode
                                               + " doesn't support 1:1" );
@@ -110,44 +125,14 @@ public class BlockUploader {
                                ? new IntegerMapper()
                                : new LongMapper();
 
-        /* Perform an upload/match operation for each block of rows.
-         * Each block takes its input from the next lot of rows from the
-         * complete input query sequence, and appends its output to the
-         * same single row store. */
-        int nOverflow = 0;
-        long totOut = 0;
-        boolean done = false;
-        int iblock = 0;
-        while ( ! done && ( maxrec_ < 0 || totOut < maxrec_ ) ) {
-            PreviewBlockSequence blockSeq =
-                new PreviewBlockSequence( coneSeq, blocksize_ );
-            boolean isFirst = iblock == 0;
-            boolean hasNext = blockSeq.hasNext();
-            if ( isFirst && ! hasNext && ! uploadEmpty_ ) {
-                throw new IOException( "No candidate rows for upload match" );
-            }
-            if ( hasNext || isFirst ) {
-                BlockSink blockSink = new BlockSink( rawResultStore, isFirst );
-                long nRemain = maxrec_ >= 0 ? maxrec_ - totOut : -1;
-                boolean over =
-                    umatcher_.streamRawResult( blockSeq, blockSink, rowMapper,
-                                               nRemain );
-                int nIn = blockSeq.getProducedCount();
-                long nOut = blockSink.getCount();
-                nOverflow += over ? 1 : 0;
-                logger_.info( "Match block " + ( iblock + 1 ) + ": "
-                            + nIn + " uploaded, " + nOut + " received"
-                            + ( over ? " (truncated)" : "" ) );
-                if ( over ) {
-                    logger_.warning( "Block " + ( iblock + 1 )
-                                   + " truncated at " + nOut + " rows" );
-                }
-                totOut += nOut;
-                iblock++;
-            }
-            done = ! hasNext;
-        };
-        int nblock = iblock;
+        /* Perform an upload/match operation for each block of rows. */
+        BlockCounts counts = parallelism_ > 1 || nRetry_ > 0
+                           ? runConcurrentBlocks( coneSeq, rawResultStore,
+                                                  rowMapper, storage )
+                           : runSequentialBlocks( coneSeq, rawResultStore,
+                                                  rowMapper );
+        int nblock = counts.nblock_;
+        int nOverflow = counts.nOverflow_;
         coneSeq.close();
         rawResultStore.endRows();
         if ( nOverflow > 0 ) {
@@ -242,6 +227,265 @@ public class BlockUploader {
         return outTable;
     }
 
+    /**
+     * Performs the upload/match operations one block at a time.
+     * Each block takes its input from the next lot of rows from the
+     * complete input query sequence, and appends its output to the
+     * same single row store.
+     *
+     * @param  coneSeq  query sequence for whole input table
+     * @param  rawResultStore  destination for raw result rows
+     * @param  rowMapper   row mapper
+     * @return  block statistics
+     */
+    private BlockCounts runSequentialBlocks( ConeQueryRowSequence coneSeq,
+                                             RowStore rawResultStore,
+                                             RowMapper<?> rowMapper )
+            throws IOException {
+        int nOverflow = 0;
+        long totOut = 0;
+        boolean done = false;
+        int iblock = 0;
+        while ( ! done && ( maxrec_ < 0 || totOut < maxrec_ ) ) {
+            PreviewBlockSequence blockSeq =
+                new PreviewBlockSequence( coneSeq, blocksize_ );
+            boolean isFirst = iblock == 0;
+            boolean hasNext = blockSeq.hasNext();
+            if ( isFirst && ! hasNext && ! uploadEmpty_ ) {
+                throw new IOException( "No candidate rows for upload match" );
+            }
+            if ( hasNext || isFirst ) {
+                BlockSink blockSink = new BlockSink( rawResultStore, isFirst );
+                long nRemain = maxrec_ >= 0 ? maxrec_ - totOut : -1;
+                boolean over =
+                    umatcher_.streamRawResult( blockSeq, blockSink, rowMapper,
+                                               nRemain );
+                int nIn = blockSeq.getProducedCount();
+                long nOut = blockSink.getCount();
+                nOverflow += over ? 1 : 0;
+                logger_.info( "Match block " + ( iblock + 1 ) + ": "
+                            + nIn + " uploaded, " + nOut + " received"
+                            + ( over ? " (truncated)" : "" ) );
+                if ( over ) {
+                    logger_.warning( "Block " + ( iblock + 1 )
+                                   + " truncated at " + nOut + " rows" );
+                }
+                totOut += nOut;
+                iblock++;
+            }
+            done = ! hasNext;
+        }
+        BlockCounts counts = new BlockCounts();
+        counts.nblock_ = iblock;
+        counts.nOverflow_ = nOverflow;
+        return counts;
+    }
+
+    /**
+     * Performs the upload/match operations for several blocks concurrently.
+     * Blocks are read in turn from the input query sequence and buffered,
+     * and up to the configured parallelism are submitted at once.
+     * The result of each is stored separately and appended to the
+     * output row store in input order.  A block that fails is retried
+     * from its buffered copy up to the configured number of times.
+     *
+     * @param  coneSeq  query sequence for whole input table
+     * @param  rawResultStore  destination for raw result rows
+     * @param  rowMapper   row mapper
+     * @param  storage   storage policy for per-block results
+     * @return  block statistics
+     */
+    private BlockCounts runConcurrentBlocks( ConeQueryRowSequence coneSeq,
+                                             RowStore rawResultStore,
+                                             RowMapper<?> rowMapper,
+                                             StoragePolicy storage )
+            throws IOException {
+        ExecutorService uploadService =
+            Executors.newFixedThreadPool( parallelism_, new ThreadFactory() {
+                int ithread_;
+                public synchronized Thread newThread( Runnable r ) {
+                    Thread thread =
+                        new Thread( r, "Upload Block " + ++ithread_ );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        Deque<Future<BlockResult>> pending =
+            new ArrayDeque<Future<BlockResult>>();
+        BlockCounts counts = new BlockCounts();
+        try {
+            boolean done = false;
+            int iblock = 0;
+            while ( ! done && ( maxrec_ < 0 || counts.nOut_ < maxrec_ ) ) {
+                ConeBlock block = new ConeBlock( coneSeq, blocksize_ );
+                boolean isFirst = iblock == 0;
+                boolean hasNext = block.nrow_ > 0;
+                if ( isFirst && ! hasNext && ! uploadEmpty_ ) {
+                    throw new IOException( "No candidate rows "
+                                         + "for upload match" );
+                }
+                if ( hasNext || isFirst ) {
+                    pending.add( uploadService
+                                .submit( createBlockTask( block, iblock,
+                                                          rowMapper,
+                                                          storage ) ) );
+                    iblock++;
+                }
+                done = ! hasNext;
+
+                /* Collect any blocks that are complete, in order.
+                 * If too many are outstanding, wait for the earliest. */
+                while ( pending.size() >= parallelism_ ||
+                        ( pending.size() > 0 &&
+                          ( done || pending.peek().isDone() ) ) ) {
+                    appendBlock( pending.remove(), rawResultStore, counts );
+                }
+            }
+        }
+        finally {
+            for ( Future<BlockResult> future : pending ) {
+                future.cancel( true );
+            }
+            uploadService.shutdownNow();
+        }
+        return counts;
+    }
+
+    /**
+     * Returns a task that performs the upload/match for a single block,
+     * with retries.
+     *
+     * @param  block  buffered query block
+     * @param  iblock  index of block
+     * @param  rowMapper  row mapper
+     * @param  storage   storage policy for block result
+     * @return  block upload task
+     */
+    private Callable<BlockResult>
+            createBlockTask( final ConeBlock block, final int iblock,
+                             final RowMapper<?> rowMapper,
+                             final StoragePolicy storage ) {
+        return new Callable<BlockResult>() {
+            public BlockResult call() throws IOException, InterruptedException {
+                for ( int iTry = 0; ; iTry++ ) {
+                    RowStore store = storage.makeRowStore();
+                    try {
+                        boolean over =
+                            umatcher_.streamRawResult( block.createSequence(),
+                                                       store, rowMapper,
+                                                       maxrec_ );
+                        return new BlockResult( iblock, block.nrow_,
+                                                store.getStarTable(), over );
+                    }
+                    catch ( IOException e ) {
+                        if ( iTry >= nRetry_ ) {
+                            throw e;
+                        }
+                        int delay = 1 << Math.min( iTry, 5 );
+                        logger_.warning( "Block " + ( iblock + 1 ) + " attempt "
+                                       + ( iTry + 1 ) + " failed (" + e + ")"
+                                       + "; retry in " + delay + " sec" );
+                        Thread.sleep( delay * 1000L );
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Waits for a block upload to complete and appends its result rows
+     * to the output row store.
+     *
+     * @param  future  future for block upload task
+     * @param  rawResultStore  destination for raw result rows
+     * @param  counts   block statistics, updated by this call
+     */
+    private void appendBlock( Future<BlockResult> future,
+                              RowStore rawResultStore, BlockCounts counts )
+            throws IOException {
+        BlockResult result;
+        try {
+            result = future.get();
+        }
+        catch ( InterruptedException e ) {
+            throw (IOException)
+                  new InterruptedIOException( "Interrupted" ).initCause( e );
+        }
+        catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+                throw (IOException) cause;
+            }
+            else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            else if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            else {
+                throw (IOException)
+                      new IOException( "Upload error: " + cause )
+                     .initCause( cause );
+            }
+        }
+        StarTable table = result.table_;
+        if ( counts.nblock_ == 0 ) {
+            rawResultStore.acceptMetadata( table );
+        }
+        boolean over = result.over_;
+        long nOut = 0;
+        RowSequence rseq = table.getRowSequence();
+        try {
+            while ( rseq.next() ) {
+                if ( maxrec_ >= 0 && counts.nOut_ >= maxrec_ ) {
+                    over = true;
+                    break;
+                }
+                rawResultStore.acceptRow( rseq.getRow() );
+                counts.nOut_++;
+                nOut++;
+            }
+        }
+        finally {
+            rseq.close();
+        }
+        int iblock = result.iblock_;
+        logger_.info( "Match block " + ( iblock + 1 ) + ": "
+                    + result.nIn_ + " uploaded, " + nOut + " received"
+                    + ( over ? " (truncated)" : "" ) );
+        if ( over ) {
+            logger_.warning( "Block " + ( iblock + 1 )
+                           + " truncated at " + nOut + " rows" );
+            counts.nOverflow_++;
+        }
+        counts.nblock_++;
+    }
+
+    /**
+     * Sets the number of block upload/match operations that may be
+     * in progress at any one time.  The default is 1, which means
+     * blocks are processed strictly one after another.
+     *
+     * @param  parallelism  maximum number of concurrent block uploads
+     */
+    public void setParallelism( int parallelism ) {
+        if ( parallelism <= 0 ) {
+            throw new IllegalArgumentException( "Non-positive parallelism" );
+        }
+        parallelism_ = parallelism;
+    }
+
+    /**
+     * Sets the number of times that a failed block upload/match operation
+     * will be retried before the whole match fails.
+     * The default is zero.
+     *
+     * @param  nRetry  maximum number of retries per block
+     */
+    public void setRetries( int nRetry ) {
+        nRetry_ = Math.max( nRetry, 0 );
+    }
+
     /**
      * Sets a string that can be issued to the user as additional advice
      * if there are truncations in block results.
@@ -252,6 +496,75 @@ public class BlockUploader {
         truncationAdvice_ = truncationAdvice;
     }
 
+    /**
+     * Returns a new parameter for configuring the number of blocks
+     * that may be uploaded concurrently,
+     * suitable for use with {@link #setParallelism}.
+     *
+     * @param  blocksizeParamName  name of the parameter controlling
+     *                             block size
+     * @param  serviceName  user-readable name of the remote service
+     * @return  new parameter named "parallel"
+     */
+    public static IntegerParameter
+            createParallelParameter( String blocksizeParamName,
+                                     String serviceName ) {
+        IntegerParameter param = new IntegerParameter( "parallel" );
+        param.setPrompt( "Number of blocks to upload in parallel" );
+        param.setUsage( "<n>" );
+        param.setIntDefault( 1 );
+        param.setMinimum( 1 );
+        param.setMaximum( ParallelResultRowSequence.getMaxParallelism() );
+        param.setDescription( new String[] {
+            "<p>Allows multiple blocks to be matched concurrently.",
+            "If the input is broken into several blocks",
+            "(see <code>" + blocksizeParamName + "</code>),",
+            "by default each request to the " + serviceName,
+            "is only sent when the previous one has completed.",
+            "If this parameter is set to <code>&lt;n&gt;</code>,",
+            "up to <code>&lt;n&gt;</code> requests may be in progress",
+            "at any one time, which can considerably reduce the",
+            "elapsed time of a large match.",
+            "The result rows are assembled in the same order as for",
+            "a sequential match.",
+            "</p>",
+            "<p>Don't set this too high, since that may overload",
+            "the service.",
+            "The maximum value permitted is",
+            ParallelResultRowSequence.getMaxParallelism() + ";",
+            "that may be changed using the",
+            ParallelResultRowSequence.MAXPAR_PROP + " system property,",
+            "but only do that if you have permission",
+            "from the service operators.",
+            "</p>",
+        } );
+        return param;
+    }
+
+    /**
+     * Returns a new parameter for configuring the number of times
+     * a failed block is retried, suitable for use with {@link #setRetries}.
+     *
+     * @return  new parameter named "blockretry"
+     */
+    public static IntegerParameter createRetryParameter() {
+        IntegerParameter param = new IntegerParameter( "blockretry" );
+        param.setPrompt( "Number of retries for each failed block" );
+        param.setUsage( "<n>" );
+        param.setIntDefault( 0 );
+        param.setMinimum( 0 );
+        param.setDescription( new String[] {
+            "<p>Gives the number of times a request for a single block",
+            "will be repeated if it fails.",
+            "Only the failed block is resent, after a short delay;",
+            "blocks already completed are not affected.",
+            "If the block still fails after this many retries,",
+            "the whole match fails.",
+            "</p>",
+        } );
+        return param;
+    }
+
     /**
      * Turns a rowId value into an index into the upload table.
      *
@@ -544,6 +857,119 @@ public class BlockUploader {
         }
     }
 
+    /**
+     * Buffered copy of the cone query parameters for one block of rows,
+     * which can be replayed as often as required.
+     */
+    private static class ConeBlock {
+        int nrow_;
+        double[] ras_;
+        double[] decs_;
+        double[] radii_;
+        long[] indices_;
+
+        /**
+         * Constructor.  The next block of rows is read from a given
+         * query sequence, whose rows are filtered as for
+         * {@link BlockSequence}.
+         *
+         * @param  baseSeq  base query sequence
+         * @param  maxrow   maximum number of rows in block
+         */
+        ConeBlock( ConeQueryRowSequence baseSeq, int maxrow )
+                throws IOException {
+            int size = Math.min( maxrow, 1024 );
+            ras_ = new double[ size ];
+            decs_ = new double[ size ];
+            radii_ = new double[ size ];
+            indices_ = new long[ size ];
+            BlockSequence blockSeq = new BlockSequence( baseSeq, maxrow );
+            while ( blockSeq.next() ) {
+                if ( nrow_ == size ) {
+                    size = (int) Math.min( size * 2L, maxrow );
+                    ras_ = Arrays.copyOf( ras_, size );
+                    decs_ = Arrays.copyOf( decs_, size );
+                    radii_ = Arrays.copyOf( radii_, size );
+                    indices_ = Arrays.copyOf( indices_, size );
+                }
+                ras_[ nrow_ ] = blockSeq.getRa();
+                decs_[ nrow_ ] = blockSeq.getDec();
+                radii_[ nrow_ ] = blockSeq.getRadius();
+                indices_[ nrow_ ] = blockSeq.getIndex();
+                nrow_++;
+            }
+        }
+
+        /**
+         * Returns a new query sequence over the rows of this block.
+         * Only the query parameters are available, not the table cells.
+         *
+         * @return  new query sequence
+         */
+        ConeQueryRowSequence createSequence() {
+            return new ConeQueryRowSequence() {
+                int irow_ = -1;
+                public boolean next() {
+                    return ++irow_ < nrow_;
+                }
+                public double getRa() {
+                    return ras_[ irow_ ];
+                }
+                public double getDec() {
+                    return decs_[ irow_ ];
+                }
+                public double getRadius() {
+                    return radii_[ irow_ ];
+                }
+                public long getIndex() {
+                    return indices_[ irow_ ];
+                }
+                public Object getCell( int icol ) {
+                    throw new UnsupportedOperationException();
+                }
+                public Object[] getRow() {
+                    throw new UnsupportedOperationException();
+                }
+                public void close() {
+                }
+            };
+        }
+    }
+
+    /**
+     * Holds the outcome of a single block upload/match.
+     */
+    private static class BlockResult {
+        final int iblock_;
+        final int nIn_;
+        final StarTable table_;
+        final boolean over_;
+
+        /**
+         * Constructor.
+         *
+         * @param  iblock  block index
+         * @param  nIn   number of rows uploaded
+         * @param  table  raw result table
+         * @param  over   true iff the result was truncated by the service
+         */
+        BlockResult( int iblock, int nIn, StarTable table, boolean over ) {
+            iblock_ = iblock;
+            nIn_ = nIn;
+            table_ = table;
+            over_ = over;
+        }
+    }
+
+    /**
+     * Accumulates statistics over all blocks of a match.
+     */
+    private static class BlockCounts {
+        int nblock_;
+        int nOverflow_;
+        long nOut_;
+    }
+
     /**
      * RowMapper that uses Integer objects as IDs.
      */
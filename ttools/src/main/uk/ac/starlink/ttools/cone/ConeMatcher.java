@@ -430,7 +430,7 @@ public class ConeMatcher {
      * @param   unitString  unit string value
      * @return   factor to multiply angles by to get degrees
      */
-    private static double getAngleUnit( String unitString ) {
+    static double getAngleUnit( String unitString ) {
         if ( unitString == null || unitString.trim().length() == 0 ) {
             return 1.0;
         }
@@ -5,7 +5,6 @@ import cds.moc.HealpixImpl;
 import cds.moc.HealpixMoc;
 import java.io.IOException;
 import java.io.InterruptedIOException;
-import uk.ac.starlink.ttools.mode.MocMode;
 
 /**
  * Coverage implementation giving the area defined by a sequence of
@@ -34,22 +33,19 @@ public class ConeQueryCoverage extends MocCoverage {
 
     @Override
     protected HealpixMoc createMoc() throws IOException {
+        return createRangeMoc().toHealpixMoc();
+    }
+
+    @Override
+    protected RangeMoc createRangeMoc() throws IOException {
 
-        /* Initialise a MOC object with the right resolution. */
+        /* Initialise a MOC builder with the right resolution. */
         Nsider nsider = new Nsider();
         int maxOrder = Math.min( nsider.calcOrder( resolutionDeg_ ),
-                                 HealpixMoc.MAXORDER );
-        HealpixMoc moc;
-        try {
-            moc = new HealpixMoc( maxOrder );
-        }
-        catch ( Exception e ) {
-            throw (Error) new AssertionError( "Trouble creating HealpixMoc??" )
-                         .initCause( e );
-        }
+                                 RangeMoc.MAX_ORDER );
+        RangeMoc.Builder builder = new RangeMoc.Builder( maxOrder );
 
         /* Add coverage for each item in the query sequence. */
-        MocMode.setChecked( moc, false );
         try {
             HealpixImpl healpix = CdsHealpix.getInstance();
             while ( qseq_.next() ) {
@@ -75,19 +71,11 @@ public class ConeQueryCoverage extends MocCoverage {
                              .initCause( e );
                     }
                     for ( int ip = 0; ip < pixels.length; ip++ ) {
-                        try {
-                            moc.add( order, pixels[ ip ] );
-                        }
-                        catch ( Exception e ) {
-                            throw (IOException)
-                                  new IOException( "HEALPix processing error" )
-                                 .initCause( e );
-                        }
+                        builder.addCell( order, pixels[ ip ] );
                     }
                 }
             }
-            MocMode.setChecked( moc, true );
-            return moc;
+            return builder.build();
         }
         finally {
             try {
@@ -128,9 +116,9 @@ public class ConeQueryCoverage extends MocCoverage {
            .createQuerySequence( new uk.ac.starlink.table.StarTableFactory()
                                 .makeStarTable( tname ) );
         long start = System.currentTimeMillis();
-        HealpixMoc moc = new ConeQueryCoverage( qseq, resDeg ).createMoc();
+        RangeMoc moc = new ConeQueryCoverage( qseq, resDeg ).createRangeMoc();
         long time = System.currentTimeMillis() - start;
-        System.out.println( summariseMoc( moc ) );
+        System.out.println( moc.getSummary() );
         System.out.println( "time: " + time + " ms" );
     }
 }
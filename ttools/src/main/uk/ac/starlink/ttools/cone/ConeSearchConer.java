@@ -203,6 +203,19 @@ public class ConeSearchConer implements Coner {
                                coding );
     }
 
+    /**
+     * Indicates whether the service in use is a plain Cone Search
+     * service, which returns point-like objects whose positions
+     * can be matched locally.  This is not the case for instance for
+     * SIA or SSA services, which return products that overlap the cone.
+     *
+     * @param  env  execution environment
+     * @return  true iff the configured service type is Cone Search
+     */
+    public boolean isConeService( Environment env ) throws TaskException {
+        return serviceParam_.objectValue( env ) instanceof ConeServiceType;
+    }
+
     public Coverage getCoverage( Environment env ) throws TaskException {
         ServiceType serviceType = serviceParam_.objectValue( env );
         URL url = urlParam_.objectValue( env );
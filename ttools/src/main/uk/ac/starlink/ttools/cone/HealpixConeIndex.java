@@ -0,0 +1,263 @@
+package uk.ac.starlink.ttools.cone;
+
+import cds.healpix.Healpix;
+import cds.healpix.HealpixNestedBMOC;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Logger;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.Tables;
+import uk.ac.starlink.ttools.func.CoordsDegrees;
+
+/**
+ * Spatial index of sky positions suitable for answering cone queries.
+ * Positions are sorted by their HEALPix NESTED index at a fixed order,
+ * so that the rows within any HEALPix cell at that order or lower
+ * occupy a contiguous run of the index and can be located by
+ * binary search.
+ *
+ * <p>Instances are immutable once constructed,
+ * so may be queried concurrently from multiple threads.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class HealpixConeIndex {
+
+    private final int order_;
+    private final int nrow_;
+    private final long[] pixels_;
+    private final int[] irows_;
+    private final double[] ras_;
+    private final double[] decs_;
+    private final int[] ipos_;
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.ttools.cone" );
+
+    /**
+     * Constructs an index from arrays of positions.
+     * Positions with blank coordinates are ignored.
+     *
+     * @param  ras   right ascension values in degrees, one per row
+     * @param  decs  declination values in degrees, one per row
+     * @param  order  HEALPix order at which to index positions
+     */
+    public HealpixConeIndex( double[] ras, double[] decs, int order ) {
+        order_ = order;
+        nrow_ = ras.length;
+        CdsHealpix hpix = CdsHealpix.getInstance();
+
+        /* Pack the pixel index and row index into a single long so that
+         * a primitive sort gives the required ordering. */
+        int rowBits = 64 - Long.numberOfLeadingZeros( Math.max( nrow_, 1 ) );
+        if ( 4 + 2 * order + rowBits > 63 ) {
+            throw new IllegalArgumentException( "Order " + order
+                                              + " too large for "
+                                              + nrow_ + " rows" );
+        }
+        long[] keys = new long[ nrow_ ];
+        int n = 0;
+        for ( int ir = 0; ir < nrow_; ir++ ) {
+            double ra = ras[ ir ];
+            double dec = decs[ ir ];
+            if ( ! Double.isNaN( ra ) && dec >= -90 && dec <= 90 ) {
+                long ipix = hpix.ang2pix( order, ra, dec );
+                keys[ n++ ] = ( ipix << rowBits ) | ir;
+            }
+        }
+        Arrays.sort( keys, 0, n );
+        long rowMask = ( 1L << rowBits ) - 1;
+        pixels_ = new long[ n ];
+        irows_ = new int[ n ];
+        ras_ = new double[ n ];
+        decs_ = new double[ n ];
+        ipos_ = new int[ nrow_ ];
+        Arrays.fill( ipos_, -1 );
+        for ( int i = 0; i < n; i++ ) {
+            int ir = (int) ( keys[ i ] & rowMask );
+            pixels_[ i ] = keys[ i ] >>> rowBits;
+            irows_[ i ] = ir;
+            ipos_[ ir ] = i;
+            ras_[ i ] = ras[ ir ];
+            decs_[ i ] = decs[ ir ];
+        }
+    }
+
+    /**
+     * Returns the HEALPix order at which positions are indexed.
+     *
+     * @return  order
+     */
+    public int getOrder() {
+        return order_;
+    }
+
+    /**
+     * Returns the number of rows in the indexed table,
+     * including those with blank positions.
+     *
+     * @return  row count
+     */
+    public int getRowCount() {
+        return nrow_;
+    }
+
+    /**
+     * Returns the right ascension of a given row.
+     *
+     * @param  irow  row index
+     * @return  right ascension in degrees, or NaN if the row has no position
+     */
+    public double getRa( long irow ) {
+        int ipos = ipos_[ Tables.checkedLongToInt( irow ) ];
+        return ipos >= 0 ? ras_[ ipos ] : Double.NaN;
+    }
+
+    /**
+     * Returns the declination of a given row.
+     *
+     * @param  irow  row index
+     * @return  declination in degrees, or NaN if the row has no position
+     */
+    public double getDec( long irow ) {
+        int ipos = ipos_[ Tables.checkedLongToInt( irow ) ];
+        return ipos >= 0 ? decs_[ ipos ] : Double.NaN;
+    }
+
+    /**
+     * Returns the indices of all indexed rows within a given cone.
+     *
+     * @param  ra  central right ascension in degrees
+     * @param  dec  central declination in degrees
+     * @param  sr  search radius in degrees
+     * @return   indices of rows within the cone, in ascending order
+     */
+    public long[] query( double ra, double dec, double sr ) {
+        if ( Double.isNaN( ra ) || ! ( dec >= -90 && dec <= 90 ) ||
+             ! ( sr >= 0 ) ) {
+            return new long[ 0 ];
+        }
+        long[] found = new long[ 16 ];
+        int nf = 0;
+
+        /* A radius of 180 degrees or more covers the whole sky. */
+        if ( sr >= 180 ) {
+            found = new long[ irows_.length ];
+            for ( int i = 0; i < irows_.length; i++ ) {
+                found[ nf++ ] = irows_[ i ];
+            }
+        }
+        else {
+
+            /* Work out the overlapping cells at a depth not much finer
+             * than the radius, since a very fine coverage is expensive
+             * to compute and does not reduce the number of rows examined
+             * by much. */
+            double srRad = Math.toRadians( sr );
+            int depth =
+                Math.min( order_, Healpix.getBestStartingDepth( srRad ) + 2 );
+            HealpixNestedBMOC bmoc =
+                Healpix.getNested( depth )
+                       .newConeComputerApprox( srRad )
+                       .overlappingCells( Math.toRadians( ra ),
+                                          Math.toRadians( dec ) );
+            for ( HealpixNestedBMOC.CurrentValueAccessor vac : bmoc ) {
+                int shift = 2 * ( order_ - vac.getDepth() );
+                long lo = vac.getHash() << shift;
+                long hi = ( vac.getHash() + 1 ) << shift;
+                for ( int i = lowerBound( lo ); i < pixels_.length &&
+                                                pixels_[ i ] < hi; i++ ) {
+                    if ( CoordsDegrees
+                        .skyDistanceDegrees( ra, dec, ras_[ i ], decs_[ i ] )
+                         <= sr ) {
+                        if ( nf == found.length ) {
+                            found = Arrays.copyOf( found, nf * 2 );
+                        }
+                        found[ nf++ ] = irows_[ i ];
+                    }
+                }
+            }
+        }
+        long[] result = Arrays.copyOf( found, nf );
+        Arrays.sort( result );
+        return result;
+    }
+
+    /**
+     * Returns the index of the first entry whose pixel index is
+     * not less than a given value.
+     *
+     * @param  ipix  pixel index
+     * @return  array index in range 0..pixels_.length
+     */
+    private int lowerBound( long ipix ) {
+        int lo = 0;
+        int hi = pixels_.length;
+        while ( lo < hi ) {
+            int mid = ( lo + hi ) >>> 1;
+            if ( pixels_[ mid ] < ipix ) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Reads the positions from a table and constructs an index.
+     *
+     * @param  table  table to index
+     * @param  qsFact  supplies positions for each table row;
+     *                 the radius values are ignored
+     * @param  order  HEALPix order, or negative for a default based
+     *                on the table size
+     * @return   new index
+     */
+    public static HealpixConeIndex createIndex( StarTable table,
+                                                QuerySequenceFactory qsFact,
+                                                int order )
+            throws IOException {
+        long nrow0 = table.getRowCount();
+        int nalloc = nrow0 >= 0 ? Tables.checkedLongToInt( nrow0 ) : 1024;
+        double[] ras = new double[ nalloc ];
+        double[] decs = new double[ nalloc ];
+        int nrow = 0;
+        ConeQueryRowSequence qseq = qsFact.createQuerySequence( table );
+        try {
+            while ( qseq.next() ) {
+                if ( nrow == ras.length ) {
+                    ras = Arrays.copyOf( ras, nrow * 2 );
+                    decs = Arrays.copyOf( decs, nrow * 2 );
+                }
+                ras[ nrow ] = qseq.getRa();
+                decs[ nrow ] = qseq.getDec();
+                nrow++;
+            }
+        }
+        finally {
+            qseq.close();
+        }
+        ras = Arrays.copyOf( ras, nrow );
+        decs = Arrays.copyOf( decs, nrow );
+        int ord = order >= 0 ? order : getDefaultOrder( nrow );
+        logger_.info( "Indexing " + nrow + " rows at HEALPix order " + ord );
+        return new HealpixConeIndex( ras, decs, ord );
+    }
+
+    /**
+     * Returns a suitable index order for a table of a given size.
+     * This gives a few rows per cell for uniformly distributed positions.
+     *
+     * @param  nrow  number of rows
+     * @return  HEALPix order
+     */
+    public static int getDefaultOrder( long nrow ) {
+        int order = 0;
+        while ( order < 20 && ( 12L << ( 2 * order ) ) * 4 < nrow ) {
+            order++;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,110 @@
+package uk.ac.starlink.ttools.cone;
+
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Caps the number of concurrent connections made to any one host.
+ *
+ * <p>Requests made via an instance of this class are throttled
+ * so that the number in progress to the same host at any one time
+ * does not exceed a fixed limit.
+ * Each cone searcher uses its own instance, so the cap applies to
+ * the queries of a single match; independent matches are not
+ * limited by each other.
+ * Each call to {@link #acquire} must be matched by a call to
+ * {@link #release} for the same URL, normally in a <code>finally</code>
+ * block.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class HostLimiter {
+
+    private final int maxPerHost_;
+    private final Map<String,Semaphore> semaphores_;
+
+    /**
+     * Constructor.
+     *
+     * @param  maxPerHost  maximum number of concurrent requests per host
+     */
+    public HostLimiter( int maxPerHost ) {
+        if ( maxPerHost <= 0 ) {
+            throw new IllegalArgumentException( "Non-positive limit" );
+        }
+        maxPerHost_ = maxPerHost;
+        semaphores_ = new HashMap<String,Semaphore>();
+    }
+
+    /**
+     * Returns the maximum number of concurrent requests permitted per host.
+     *
+     * @return  per-host limit
+     */
+    public int getMaxPerHost() {
+        return maxPerHost_;
+    }
+
+    /**
+     * Waits until a request may be made to the host of a given URL,
+     * and registers that it is in progress.
+     *
+     * @param  url  URL to be contacted
+     * @throws  InterruptedIOException  if the thread is interrupted
+     *                                  while waiting
+     */
+    public void acquire( URL url ) throws InterruptedIOException {
+        try {
+            getSemaphore( url ).acquire();
+        }
+        catch ( InterruptedException e ) {
+            throw (InterruptedIOException)
+                  new InterruptedIOException( "Interrupted waiting for "
+                                            + getHostKey( url ) )
+                 .initCause( e );
+        }
+    }
+
+    /**
+     * Registers that a request to the host of a given URL is no longer
+     * in progress.
+     *
+     * @param  url  URL previously passed to {@link #acquire}
+     */
+    public void release( URL url ) {
+        getSemaphore( url ).release();
+    }
+
+    /**
+     * Returns the semaphore that controls access to the host of a given URL.
+     *
+     * @param  url  URL
+     * @return  semaphore for host
+     */
+    private synchronized Semaphore getSemaphore( URL url ) {
+        String key = getHostKey( url );
+        Semaphore sem = semaphores_.get( key );
+        if ( sem == null ) {
+            sem = new Semaphore( maxPerHost_, true );
+            semaphores_.put( key, sem );
+        }
+        return sem;
+    }
+
+    /**
+     * Returns the key identifying the host for a URL.
+     *
+     * @param  url  URL
+     * @return  host key
+     */
+    private static String getHostKey( URL url ) {
+        String host = url.getHost();
+        int port = url.getPort();
+        return host.toLowerCase() + ":"
+             + ( port >= 0 ? port : url.getDefaultPort() );
+    }
+}
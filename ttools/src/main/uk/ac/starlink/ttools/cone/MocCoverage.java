@@ -1,7 +1,5 @@
 package uk.ac.starlink.ttools.cone;
 
-import cds.healpix.Healpix;
-import cds.healpix.HealpixNestedBMOC;
 import cds.moc.HealpixImpl;
 import cds.moc.HealpixMoc;
 import java.io.IOException;
@@ -18,8 +16,9 @@ import java.util.logging.Logger;
 public abstract class MocCoverage implements Coverage {
 
     private final HealpixImpl hpi_;
-    private volatile HealpixMoc moc_;
+    private volatile RangeMoc rmoc_;
     private volatile Amount amount_;
+    private HealpixMoc moc_;
 
     private static final Logger logger_ =
         Logger.getLogger( "uk.ac.starlink.ttools.cone" );
@@ -36,21 +35,47 @@ public abstract class MocCoverage implements Coverage {
     /**
      * Constructs the MOC which will define this object's coverage.
      * This method, which may be time-consuming, will be called a
-     * maximum of once by the {@link #initCoverage} method of
-     * {@link MocCoverage}, and should not be called by anyone else.
+     * maximum of once by the default implementation of
+     * {@link #createRangeMoc}, and should not be called by anyone else.
      *
      * @return  new MOC defining footprint
      */
     protected abstract HealpixMoc createMoc() throws IOException;
 
+    /**
+     * Constructs the range-based MOC which will define this object's
+     * coverage.
+     * This method, which may be time-consuming, will be called a
+     * maximum of once by the {@link #initCoverage} method of
+     * {@link MocCoverage}, and should not be called by anyone else.
+     *
+     * <p>The default implementation converts the result of
+     * {@link #createMoc}; subclasses may override it to provide
+     * the range MOC directly, which is generally more efficient.
+     *
+     * @return  new MOC defining footprint, or null if not known
+     */
+    protected RangeMoc createRangeMoc() throws IOException {
+        HealpixMoc moc = createMoc();
+        if ( moc == null ) {
+            return null;
+        }
+        else {
+            synchronized ( this ) {
+                moc_ = moc;
+            }
+            return RangeMoc.fromHealpixMoc( moc );
+        }
+    }
+
     public synchronized void initCoverage() throws IOException {
         if ( amount_ == null ) {
-            assert moc_ == null;
+            assert rmoc_ == null;
             try {
-                moc_ = createMoc();
+                rmoc_ = createRangeMoc();
             }
             finally {
-                amount_ = determineAmount( moc_ );
+                amount_ = determineAmount( rmoc_ );
                 assert amount_ != null;
             }
         }
@@ -67,40 +92,44 @@ public abstract class MocCoverage implements Coverage {
         if ( knownResult != null ) {
             return knownResult.booleanValue();
         }
-        int mocOrder = moc_.getMaxOrder();
-        try {
-            long centerPixel = hpi_.ang2pix( mocOrder, alphaDeg, deltaDeg );
-            if ( moc_.isIntersecting( mocOrder, centerPixel ) ) {
-                return true;
-            }
-            if ( radiusDeg == 0 ) {
-                return false;
+        return rmoc_.discOverlaps( alphaDeg, deltaDeg, radiusDeg );
+    }
+
+    /**
+     * Returns the range-based MOC object associated with this footprint.
+     *
+     * @return  moc, may be null
+     */
+    public RangeMoc getRangeMoc() {
+        return rmoc_;
+    }
+
+    /**
+     * Returns the MOC object associated with this footprint.
+     * If it was not supplied directly, it is constructed from the
+     * range MOC on first request.
+     *
+     * @return  moc, may be null
+     */
+    public synchronized HealpixMoc getMoc() {
+        if ( moc_ == null && rmoc_ != null ) {
+            try {
+                moc_ = rmoc_.toHealpixMoc();
             }
-            HealpixNestedBMOC bmoc =
-                Healpix.getNested( mocOrder )
-                       .newConeComputerApprox( Math.toRadians( radiusDeg ) )
-                       .overlappingCells( Math.toRadians( alphaDeg ),
-                                          Math.toRadians( deltaDeg ) );
-            for ( HealpixNestedBMOC.CurrentValueAccessor vac : bmoc ) {
-                if ( moc_.isIntersecting( vac.getDepth(), vac.getHash() ) ) {
-                    return true;
-                }
+            catch ( IOException e ) {
+                logger_.log( Level.WARNING, "MOC conversion failed", e );
             }
-            return false;
-        }
-        catch ( Exception e ) {
-            logger_.log( Level.WARNING, "Unexpected MOC error - fail safe", e );
-            return true;
         }
+        return moc_;
     }
 
     /**
-     * Returns the MOC object associated with this footprint.
+     * Returns the HEALPix implementation associated with this object.
      *
-     * @return  moc
+     * @return  HEALPix implementation
      */
-    public HealpixMoc getMoc() {
-        return moc_;
+    public HealpixImpl getHealpixImpl() {
+        return hpi_;
     }
 
     /**
@@ -137,21 +166,18 @@ public abstract class MocCoverage implements Coverage {
      * @param   moc, may be null
      * @return   amount category
      */
-    private static Amount determineAmount( HealpixMoc moc ) {
+    private static Amount determineAmount( RangeMoc moc ) {
         if ( moc == null ) {
             return Amount.NO_DATA;
         }
+        else if ( moc.isEmpty() ) {
+            return Amount.NO_SKY;
+        }
+        else if ( moc.isAllSky() ) {
+            return Amount.ALL_SKY;
+        }
         else {
-            double frac = moc.getCoverage();
-            if ( frac == 0 ) {
-                return Amount.NO_SKY;
-            }
-            else if ( frac == 1 ) {
-                return Amount.ALL_SKY;
-            }
-            else {
-                return Amount.SOME_SKY;
-            }
+            return Amount.SOME_SKY;
         }
     }
 }
@@ -0,0 +1,762 @@
+package uk.ac.starlink.ttools.cone;
+
+import cds.healpix.HashComputer;
+import cds.healpix.Healpix;
+import cds.healpix.HealpixNestedBMOC;
+import cds.moc.HealpixMoc;
+import cds.moc.MocCell;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.starlink.ttools.mode.MocMode;
+
+/**
+ * Immutable MOC (HEALPix Multi-Order Coverage map) implementation
+ * based on a sorted list of pixel index ranges at the maximum HEALPix order.
+ *
+ * <p>The coverage is represented as a primitive array of
+ * non-overlapping, non-adjacent half-open intervals of NESTED pixel indices
+ * at order {@link #MAX_ORDER}, so that membership tests are
+ * binary searches, and set operations are linear merges.
+ * This is much more compact and faster to use than the
+ * object-based representation of {@link cds.moc.HealpixMoc},
+ * to and from which instances may be converted.
+ *
+ * <p>A compact binary serialization is also provided,
+ * in which the range boundaries are delta-encoded as variable-length
+ * integers; this is also used for java serialization.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class RangeMoc implements Serializable {
+
+    private final int order_;
+    private transient long[] bounds_;
+
+    /** Maximum HEALPix order, at which range boundaries are expressed. */
+    public static final int MAX_ORDER = 29;
+
+    /** Number of pixels at order {@link #MAX_ORDER}. */
+    public static final long NPIX_MAX = 12L << ( 2 * MAX_ORDER );
+
+    private static final int MAGIC = 0x524d4f43;  // "RMOC"
+    private static final int VERSION = 1;
+    private static final HashComputer hasher_ =
+        Healpix.getNestedFast( MAX_ORDER );
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.ttools.cone" );
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor.
+     *
+     * @param  order  HEALPix order giving the resolution of this MOC
+     * @param  bounds  normalised range boundary array;
+     *                 alternating inclusive lower and exclusive upper
+     *                 bounds at {@link #MAX_ORDER},
+     *                 strictly increasing
+     */
+    private RangeMoc( int order, long[] bounds ) {
+        order_ = order;
+        bounds_ = bounds;
+    }
+
+    /**
+     * Returns the HEALPix order giving the resolution of this MOC.
+     *
+     * @return  MOC order
+     */
+    public int getOrder() {
+        return order_;
+    }
+
+    /**
+     * Returns the number of disjoint pixel ranges in this MOC.
+     *
+     * @return  range count
+     */
+    public int getRangeCount() {
+        return bounds_.length / 2;
+    }
+
+    /**
+     * Returns the inclusive lower bound of a given range.
+     *
+     * @param  irange  range index
+     * @return  first pixel index at {@link #MAX_ORDER} in range
+     */
+    public long getRangeStart( int irange ) {
+        return bounds_[ 2 * irange ];
+    }
+
+    /**
+     * Returns the exclusive upper bound of a given range.
+     *
+     * @param  irange  range index
+     * @return  first pixel index at {@link #MAX_ORDER} beyond range
+     */
+    public long getRangeEnd( int irange ) {
+        return bounds_[ 2 * irange + 1 ];
+    }
+
+    /**
+     * Returns the fraction of the sky covered by this MOC.
+     *
+     * @return  coverage fraction in the range 0..1
+     */
+    public double getCoverage() {
+        long npix = 0;
+        for ( int i = 0; i < bounds_.length; i += 2 ) {
+            npix += bounds_[ i + 1 ] - bounds_[ i ];
+        }
+        return npix == NPIX_MAX ? 1.0 : npix / (double) NPIX_MAX;
+    }
+
+    /**
+     * Indicates whether this MOC covers no sky.
+     *
+     * @return  true iff empty
+     */
+    public boolean isEmpty() {
+        return bounds_.length == 0;
+    }
+
+    /**
+     * Indicates whether this MOC covers the whole sky.
+     *
+     * @return  true iff all-sky
+     */
+    public boolean isAllSky() {
+        return bounds_.length == 2 && bounds_[ 0 ] == 0
+            && bounds_[ 1 ] == NPIX_MAX;
+    }
+
+    /**
+     * Indicates whether a given HEALPix cell is entirely covered
+     * by this MOC.
+     *
+     * @param  order  cell order
+     * @param  ipix   cell NESTED index
+     * @return  true iff the whole cell is covered
+     */
+    public boolean containsCell( int order, long ipix ) {
+        int shift = 2 * ( MAX_ORDER - order );
+        long lo = ipix << shift;
+        long hi = ( ipix + 1 ) << shift;
+        int ib = upperBound( lo );
+        return ( ib & 1 ) == 1 && bounds_[ ib ] >= hi;
+    }
+
+    /**
+     * Indicates whether a given HEALPix cell is partly or wholly covered
+     * by this MOC.
+     *
+     * @param  order  cell order
+     * @param  ipix   cell NESTED index
+     * @return  true iff the cell overlaps this MOC
+     */
+    public boolean intersectsCell( int order, long ipix ) {
+        int shift = 2 * ( MAX_ORDER - order );
+        long lo = ipix << shift;
+        long hi = ( ipix + 1 ) << shift;
+        int ib = upperBound( lo );
+        return ( ib & 1 ) == 1
+            || ( ib < bounds_.length && bounds_[ ib ] < hi );
+    }
+
+    /**
+     * Indicates whether a given sky position falls within this MOC.
+     *
+     * @param  raDeg   right ascension in degrees
+     * @param  decDeg  declination in degrees
+     * @return  true iff the position is covered
+     */
+    public boolean containsPoint( double raDeg, double decDeg ) {
+        return ! Double.isNaN( raDeg ) && decDeg >= -90 && decDeg <= 90
+            && ( upperBound( hash( raDeg, decDeg ) ) & 1 ) == 1;
+    }
+
+    /**
+     * Tests a number of sky positions for inclusion in this MOC.
+     * This is more efficient than repeated calls to {@link #containsPoint},
+     * especially if nearby positions are adjacent in the input arrays.
+     *
+     * @param  raDegs   array of right ascensions in degrees
+     * @param  decDegs  array of declinations in degrees
+     * @param  n       number of positions to test
+     * @param  results  array filled on exit with inclusion flags
+     *                  for the first <code>n</code> positions
+     */
+    public void containsPoints( double[] raDegs, double[] decDegs, int n,
+                                boolean[] results ) {
+        int nb = bounds_.length;
+        int ib = 0;
+        for ( int i = 0; i < n; i++ ) {
+            double ra = raDegs[ i ];
+            double dec = decDegs[ i ];
+            if ( Double.isNaN( ra ) || ! ( dec >= -90 && dec <= 90 ) ) {
+                results[ i ] = false;
+            }
+            else {
+                long h = hash( ra, dec );
+
+                /* Reuse the previous search result if it still applies,
+                 * otherwise do a binary search. */
+                if ( ! ( ( ib == 0 || bounds_[ ib - 1 ] <= h ) &&
+                         ( ib == nb || h < bounds_[ ib ] ) ) ) {
+                    ib = upperBound( h );
+                }
+                results[ i ] = ( ib & 1 ) == 1;
+            }
+        }
+    }
+
+    /**
+     * Indicates whether a given disc on the sky overlaps this MOC.
+     * The test is approximate, in the sense that a disc which comes
+     * within about a pixel at this MOC's order of its edge may be
+     * reported as overlapping.
+     *
+     * @param  raDeg   central right ascension in degrees
+     * @param  decDeg  central declination in degrees
+     * @param  radiusDeg  radius in degrees
+     * @return  false if the disc definitely does not overlap this MOC,
+     *          or if the position is not valid
+     */
+    public boolean discOverlaps( double raDeg, double decDeg,
+                                 double radiusDeg ) {
+        if ( bounds_.length == 0 || Double.isNaN( raDeg ) ||
+             ! ( decDeg >= -90 && decDeg <= 90 ) ) {
+            return false;
+        }
+        if ( containsPoint( raDeg, decDeg ) ) {
+            return true;
+        }
+        if ( ! ( radiusDeg > 0 ) ) {
+            return false;
+        }
+        double raRad = Math.toRadians( raDeg );
+        double decRad = Math.toRadians( decDeg );
+        double rRad = Math.toRadians( radiusDeg );
+        if ( rRad >= Math.PI ) {
+            return true;
+        }
+
+        /* First check overlap with a few large cells, which will
+         * quickly rule out most discs far from the coverage region. */
+        int coarseOrder =
+            Math.min( order_, Math.max( 0,
+                                        Healpix.getBestStartingDepth( rRad ) ) );
+        try {
+            if ( ! bmocIntersects( coarseOrder, raRad, decRad, rRad ) ) {
+                return false;
+            }
+            return coarseOrder == order_
+                || bmocIntersects( order_, raRad, decRad, rRad );
+        }
+        catch ( RuntimeException e ) {
+            logger_.log( Level.WARNING, "Unexpected MOC error - fail safe",
+                         e );
+            return true;
+        }
+    }
+
+    /**
+     * Returns the union of this MOC and another.
+     *
+     * @param  other  other MOC
+     * @return   union
+     */
+    public RangeMoc union( RangeMoc other ) {
+        long[] b1 = bounds_;
+        long[] b2 = other.bounds_;
+        int n1 = b1.length / 2;
+        int n2 = b2.length / 2;
+        long[] starts = new long[ n1 + n2 ];
+        long[] ends = new long[ n1 + n2 ];
+        for ( int i = 0; i < n1; i++ ) {
+            starts[ i ] = b1[ 2 * i ];
+            ends[ i ] = b1[ 2 * i + 1 ];
+        }
+        for ( int i = 0; i < n2; i++ ) {
+            starts[ n1 + i ] = b2[ 2 * i ];
+            ends[ n1 + i ] = b2[ 2 * i + 1 ];
+        }
+        return new RangeMoc( Math.max( order_, other.order_ ),
+                             normalise( starts, ends, n1 + n2 ) );
+    }
+
+    /**
+     * Returns the intersection of this MOC and another.
+     *
+     * @param  other  other MOC
+     * @return   intersection
+     */
+    public RangeMoc intersection( RangeMoc other ) {
+        long[] b1 = bounds_;
+        long[] b2 = other.bounds_;
+        long[] out = new long[ b1.length + b2.length ];
+        int nout = 0;
+        int i1 = 0;
+        int i2 = 0;
+        while ( i1 < b1.length && i2 < b2.length ) {
+            long lo = Math.max( b1[ i1 ], b2[ i2 ] );
+            long hi = Math.min( b1[ i1 + 1 ], b2[ i2 + 1 ] );
+            if ( lo < hi ) {
+                out[ nout++ ] = lo;
+                out[ nout++ ] = hi;
+            }
+            if ( b1[ i1 + 1 ] < b2[ i2 + 1 ] ) {
+                i1 += 2;
+            }
+            else {
+                i2 += 2;
+            }
+        }
+        return new RangeMoc( Math.max( order_, other.order_ ),
+                             Arrays.copyOf( out, nout ) );
+    }
+
+    /**
+     * Returns an equivalent HealpixMoc object.
+     *
+     * @return   new HealpixMoc
+     */
+    public HealpixMoc toHealpixMoc() throws IOException {
+        HealpixMoc moc;
+        try {
+            moc = new HealpixMoc( order_ );
+        }
+        catch ( Exception e ) {
+            throw (IOException) new IOException( "Error creating MOC"
+                                               + " (bad order " + order_
+                                               + "?)" )
+                               .initCause( e );
+        }
+        MocMode.setChecked( moc, false );
+        try {
+            for ( int i = 0; i < bounds_.length; i += 2 ) {
+                long lo = bounds_[ i ];
+                long hi = bounds_[ i + 1 ];
+
+                /* Decompose each range into the largest aligned cells
+                 * that it contains. */
+                while ( lo < hi ) {
+                    int shift = Math.min( 2 * MAX_ORDER,
+                                          Long.numberOfTrailingZeros( lo )
+                                          & ~1 );
+                    while ( lo + ( 1L << shift ) > hi ) {
+                        shift -= 2;
+                    }
+                    moc.add( MAX_ORDER - shift / 2, lo >>> shift );
+                    lo += 1L << shift;
+                }
+            }
+        }
+        catch ( Exception e ) {
+            throw (IOException) new IOException( "MOC error" ).initCause( e );
+        }
+        MocMode.setChecked( moc, true );
+        return moc;
+    }
+
+    /**
+     * Writes this MOC to a stream in a compact binary form.
+     * It can be read back using {@link #readBinary}.
+     *
+     * @param  out  destination stream
+     */
+    public void writeBinary( OutputStream out ) throws IOException {
+        DataOutputStream dout = new DataOutputStream( out );
+        dout.writeInt( MAGIC );
+        dout.writeByte( VERSION );
+        dout.writeByte( order_ );
+        writeVarLong( dout, bounds_.length );
+
+        /* All boundaries are aligned to cells at this MOC's order,
+         * so the deltas can be written in units of those cells. */
+        int shift = 2 * ( MAX_ORDER - order_ );
+        long last = 0;
+        for ( long b : bounds_ ) {
+            writeVarLong( dout, ( b - last ) >>> shift );
+            last = b;
+        }
+        dout.flush();
+    }
+
+    /**
+     * Reads a MOC from a stream written by {@link #writeBinary}.
+     *
+     * @param  in  input stream
+     * @return   MOC
+     */
+    public static RangeMoc readBinary( InputStream in ) throws IOException {
+        DataInputStream din = new DataInputStream( in );
+        if ( din.readInt() != MAGIC ) {
+            throw new IOException( "Not a range MOC" );
+        }
+        int version = din.readByte();
+        if ( version != VERSION ) {
+            throw new IOException( "Unsupported range MOC version "
+                                 + version );
+        }
+        int order = din.readByte();
+        if ( order < 0 || order > MAX_ORDER ) {
+            throw new IOException( "Bad range MOC order " + order );
+        }
+        int shift = 2 * ( MAX_ORDER - order );
+        long nb = readVarLong( din );
+        if ( nb < 0 || nb > Integer.MAX_VALUE || ( nb & 1 ) != 0 ) {
+            throw new IOException( "Bad range count " + nb );
+        }
+        long[] bounds = new long[ (int) nb ];
+        long last = 0;
+        for ( int i = 0; i < bounds.length; i++ ) {
+            long delta = readVarLong( din ) << shift;
+            if ( delta <= 0 && i > 0 ) {
+                throw new IOException( "Bad range MOC data" );
+            }
+            last += delta;
+            if ( last > NPIX_MAX ) {
+                throw new IOException( "Bad range MOC data" );
+            }
+            bounds[ i ] = last;
+        }
+        return new RangeMoc( order, bounds );
+    }
+
+    /**
+     * Returns an equivalent instance of this class from a HealpixMoc.
+     *
+     * @param  moc  input MOC
+     * @return  new RangeMoc
+     */
+    public static RangeMoc fromHealpixMoc( HealpixMoc moc ) {
+        Builder builder = new Builder( moc.getMaxOrder() );
+        for ( MocCell cell : moc ) {
+            builder.addCell( cell.order, cell.npix );
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a short summary of this MOC's characteristics.
+     *
+     * @return  summary string
+     */
+    public String getSummary() {
+        return new StringBuffer()
+           .append( "Amount: " )
+           .append( (float) getCoverage() )
+           .append( ", " )
+           .append( "Order: " )
+           .append( order_ )
+           .append( ", " )
+           .append( "Ranges: " )
+           .append( getRangeCount() )
+           .toString();
+    }
+
+    public boolean equals( Object o ) {
+        if ( o instanceof RangeMoc ) {
+            RangeMoc other = (RangeMoc) o;
+            return this.order_ == other.order_
+                && Arrays.equals( this.bounds_, other.bounds_ );
+        }
+        else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        return 23 * order_ + Arrays.hashCode( bounds_ );
+    }
+
+    public String toString() {
+        return getSummary();
+    }
+
+    /**
+     * Indicates whether any of the cells of a given order overlapping
+     * a given disc intersect this MOC.
+     *
+     * @param  order  HEALPix order
+     * @param  raRad   central longitude in radians
+     * @param  decRad  central latitude in radians
+     * @param  rRad    radius in radians
+     * @return   true iff some overlapping cell intersects this MOC
+     */
+    private boolean bmocIntersects( int order, double raRad, double decRad,
+                                    double rRad ) {
+        HealpixNestedBMOC bmoc =
+            Healpix.getNested( order )
+                   .newConeComputerApprox( rRad )
+                   .overlappingCells( raRad, decRad );
+        for ( HealpixNestedBMOC.CurrentValueAccessor vac : bmoc ) {
+            if ( intersectsCell( vac.getDepth(), vac.getHash() ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of the first boundary strictly greater than
+     * a given pixel index.  The pixel is covered iff the result is odd.
+     *
+     * @param  ipix  pixel index at {@link #MAX_ORDER}
+     * @return   boundary array index in range 0..bounds_.length
+     */
+    private int upperBound( long ipix ) {
+        int lo = 0;
+        int hi = bounds_.length;
+        while ( lo < hi ) {
+            int mid = ( lo + hi ) >>> 1;
+            if ( bounds_[ mid ] <= ipix ) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Custom serialization using the compact binary form.
+     */
+    private void writeObject( ObjectOutputStream out ) throws IOException {
+        out.defaultWriteObject();
+        writeBinary( out );
+    }
+
+    /**
+     * Custom deserialization using the compact binary form.
+     */
+    private void readObject( ObjectInputStream in )
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        bounds_ = readBinary( in ).bounds_;
+    }
+
+    /**
+     * Returns the pixel index of a position at {@link #MAX_ORDER}.
+     *
+     * @param  raDeg  right ascension in degrees
+     * @param  decDeg  declination in degrees
+     * @return  NESTED pixel index
+     */
+    private static long hash( double raDeg, double decDeg ) {
+        return hasher_.hash( Math.toRadians( raDeg ),
+                             Math.toRadians( decDeg ) );
+    }
+
+    /**
+     * Turns an unordered set of possibly overlapping ranges into
+     * a normalised boundary array.
+     * The input arrays are sorted in place.
+     *
+     * @param  starts  inclusive range lower bounds
+     * @param  ends    exclusive range upper bounds
+     * @param  n      number of ranges
+     * @return   normalised boundary array
+     */
+    private static long[] normalise( long[] starts, long[] ends, int n ) {
+        Arrays.sort( starts, 0, n );
+        Arrays.sort( ends, 0, n );
+        long[] out = new long[ 2 * n ];
+        int nout = 0;
+        int depth = 0;
+        int is = 0;
+        int ie = 0;
+        while ( ie < n ) {
+
+            /* Process starts before ends at the same position,
+             * so that adjacent ranges are merged. */
+            if ( is < n && starts[ is ] <= ends[ ie ] ) {
+                if ( depth++ == 0 ) {
+                    if ( nout > 0 && out[ nout - 1 ] == starts[ is ] ) {
+                        nout--;
+                    }
+                    else {
+                        out[ nout++ ] = starts[ is ];
+                    }
+                }
+                is++;
+            }
+            else {
+                if ( --depth == 0 ) {
+                    out[ nout++ ] = ends[ ie ];
+                }
+                ie++;
+            }
+        }
+        return Arrays.copyOf( out, nout );
+    }
+
+    /**
+     * Writes a non-negative long integer in a variable-length encoding.
+     *
+     * @param  out  destination
+     * @param  value  value
+     */
+    private static void writeVarLong( DataOutputStream out, long value )
+            throws IOException {
+        while ( ( value & ~0x7fL ) != 0 ) {
+            out.writeByte( (int) ( ( value & 0x7f ) | 0x80 ) );
+            value >>>= 7;
+        }
+        out.writeByte( (int) value );
+    }
+
+    /**
+     * Reads a long integer written by {@link #writeVarLong}.
+     *
+     * @param  in  source
+     * @return  value
+     */
+    private static long readVarLong( DataInputStream in ) throws IOException {
+        long value = 0;
+        for ( int shift = 0; shift < 64; shift += 7 ) {
+            int b = in.readUnsignedByte();
+            value |= ( (long) ( b & 0x7f ) ) << shift;
+            if ( ( b & 0x80 ) == 0 ) {
+                return value;
+            }
+        }
+        throw new IOException( "Bad variable-length integer" );
+    }
+
+    /**
+     * Accumulates cells and ranges to construct a RangeMoc.
+     * Input may be supplied in any order and may overlap.
+     * Instances of this class are not thread-safe.
+     */
+    public static class Builder {
+
+        private final int order_;
+        private long[] starts_;
+        private long[] ends_;
+        private int n_;
+        private int nNorm_;
+
+        /**
+         * Constructor.
+         *
+         * @param  order  HEALPix order giving the resolution of the MOC;
+         *                cells added at higher orders will be degraded
+         *                to this order
+         */
+        public Builder( int order ) {
+            if ( order < 0 || order > MAX_ORDER ) {
+                throw new IllegalArgumentException( "Bad MOC order "
+                                                  + order );
+            }
+            order_ = order;
+            starts_ = new long[ 1024 ];
+            ends_ = new long[ 1024 ];
+        }
+
+        /**
+         * Adds a HEALPix cell to the coverage.
+         *
+         * @param  order  cell order
+         * @param  ipix   cell NESTED index
+         */
+        public void addCell( int order, long ipix ) {
+            if ( order > order_ ) {
+                ipix >>>= 2 * ( order - order_ );
+                order = order_;
+            }
+            int shift = 2 * ( MAX_ORDER - order );
+            addRange( ipix << shift, ( ipix + 1 ) << shift );
+        }
+
+        /**
+         * Adds a range of pixels at {@link #MAX_ORDER} to the coverage.
+         *
+         * @param  lo  inclusive lower bound
+         * @param  hi  exclusive upper bound
+         */
+        public void addRange( long lo, long hi ) {
+            if ( lo < hi ) {
+
+                /* Extend a previous range if possible.
+                 * The result may overlap earlier ranges,
+                 * so it must be normalised again. */
+                if ( n_ > 0 && ends_[ n_ - 1 ] == lo ) {
+                    ends_[ n_ - 1 ] = hi;
+                    nNorm_ = Math.min( nNorm_, n_ - 1 );
+                    return;
+                }
+                if ( n_ == starts_.length ) {
+                    compact();
+                    if ( n_ * 2 > starts_.length ) {
+                        starts_ = Arrays.copyOf( starts_, n_ * 2 );
+                        ends_ = Arrays.copyOf( ends_, n_ * 2 );
+                    }
+                }
+                starts_[ n_ ] = lo;
+                ends_[ n_ ] = hi;
+                n_++;
+            }
+        }
+
+        /**
+         * Adds all the cells overlapping a given disc to the coverage.
+         *
+         * @param  raDeg   central right ascension in degrees
+         * @param  decDeg  central declination in degrees
+         * @param  radiusDeg  radius in degrees
+         */
+        public void addDisc( double raDeg, double decDeg, double radiusDeg ) {
+            HealpixNestedBMOC bmoc =
+                Healpix.getNested( order_ )
+                       .newConeComputerApprox( Math.toRadians( radiusDeg ) )
+                       .overlappingCells( Math.toRadians( raDeg ),
+                                          Math.toRadians( decDeg ) );
+            for ( HealpixNestedBMOC.CurrentValueAccessor vac : bmoc ) {
+                addCell( vac.getDepth(), vac.getHash() );
+            }
+        }
+
+        /**
+         * Returns a MOC containing all the coverage added so far.
+         *
+         * @return  new MOC
+         */
+        public RangeMoc build() {
+            compact();
+            long[] bounds = new long[ 2 * n_ ];
+            for ( int i = 0; i < n_; i++ ) {
+                bounds[ 2 * i ] = starts_[ i ];
+                bounds[ 2 * i + 1 ] = ends_[ i ];
+            }
+            return new RangeMoc( order_, bounds );
+        }
+
+        /**
+         * Merges the ranges accumulated so far.
+         */
+        private void compact() {
+            if ( n_ > nNorm_ ) {
+                long[] bounds = normalise( starts_, ends_, n_ );
+                n_ = bounds.length / 2;
+                for ( int i = 0; i < n_; i++ ) {
+                    starts_[ i ] = bounds[ 2 * i ];
+                    ends_[ i ] = bounds[ 2 * i + 1 ];
+                }
+                nNorm_ = n_;
+            }
+        }
+    }
+}
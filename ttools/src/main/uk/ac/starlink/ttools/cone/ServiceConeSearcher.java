@@ -1,6 +1,7 @@
 package uk.ac.starlink.ttools.cone;
 
 import java.io.IOException;
+import java.net.URL;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.StarTableFactory;
 import uk.ac.starlink.vo.ConeSearch;
@@ -18,6 +19,7 @@ public class ServiceConeSearcher extends DalConeSearcher
     private final int verb_;
     private final ConeSearch csearch_;
     private final StarTableFactory tfact_;
+    private final HostLimiter limiter_;
 
     /**
      * Constructor.
@@ -34,6 +36,8 @@ public class ServiceConeSearcher extends DalConeSearcher
         verb_ = verb;
         csearch_ = csearch;
         tfact_ = tfact;
+        limiter_ =
+            new HostLimiter( ParallelResultRowSequence.getMaxParallelism() );
     }
 
     public StarTable performSearch( double ra, double dec, double sr )
@@ -42,8 +46,15 @@ public class ServiceConeSearcher extends DalConeSearcher
             return null;
         }
         else {
-            StarTable table =
-                csearch_.performSearch( ra, dec, sr, verb_, tfact_ );
+            URL url = csearch_.getServiceURL();
+            limiter_.acquire( url );
+            StarTable table;
+            try {
+                table = csearch_.performSearch( ra, dec, sr, verb_, tfact_ );
+            }
+            finally {
+                limiter_.release( url );
+            }
             return getConsistentTable( table );
         }
     }
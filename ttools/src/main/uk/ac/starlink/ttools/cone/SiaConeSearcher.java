@@ -1,6 +1,7 @@
 package uk.ac.starlink.ttools.cone;
 
 import java.io.IOException;
+import java.net.URL;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.StarTableFactory;
 import uk.ac.starlink.util.ContentCoding;
@@ -24,6 +25,7 @@ public class SiaConeSearcher extends DalConeSearcher implements ConeSearcher {
     private final SiaVersion siaVersion_;
     private final SiaFormatOption format_;
     private final StarTableFactory tfact_;
+    private final HostLimiter limiter_;
     private final ContentCoding coding_;
 
     /**
@@ -46,14 +48,23 @@ public class SiaConeSearcher extends DalConeSearcher implements ConeSearcher {
         siaVersion_ = siaVersion;
         format_ = format;
         tfact_ = tfact;
+        limiter_ =
+            new HostLimiter( ParallelResultRowSequence.getMaxParallelism() );
         coding_ = coding;
     }
 
     public StarTable performSearch( double ra, double dec, double sr )
             throws IOException {
-        StarTable table =
-            siaVersion_.executeQuery( serviceUrl_, ra, dec, sr * 2,
-                                      format_, tfact_, coding_ );
+        URL url = new URL( serviceUrl_ );
+        limiter_.acquire( url );
+        StarTable table;
+        try {
+            table = siaVersion_.executeQuery( serviceUrl_, ra, dec, sr * 2,
+                                              format_, tfact_, coding_ );
+        }
+        finally {
+            limiter_.release( url );
+        }
         return getConsistentTable( table );
     }
 
@@ -57,6 +57,7 @@ public abstract class SkyConeMatch2 extends SingleMapperTask {
     private final StringParameter conesuffixParam_;
     private final BooleanParameter usefootParam_;
     private final IntegerParameter nsideParam_;
+    private final IntegerParameter tileorderParam_;
     private static final Logger logger_ =
         Logger.getLogger( "uk.ac.starlink.ttools.cone" );
 
@@ -190,6 +191,54 @@ public abstract class SkyConeMatch2 extends SingleMapperTask {
         nsideParam_.setNullPermitted( true );
         paramList.add( nsideParam_ );
 
+        tileorderParam_ = new IntegerParameter( "tileorder" );
+        tileorderParam_.setUsage( "<int>" );
+        tileorderParam_.setPrompt( "HEALPix order for grouping queries" );
+        tileorderParam_.setDescription( new String[] {
+            "<p>If set, input rows are grouped by the HEALPix tile",
+            "of the given order in which they fall,",
+            "and instead of one query per row,",
+            "a single larger query is made for each tile,",
+            "covering the tile and a margin around it.",
+            "The rows within each individual search cone",
+            "are then selected locally.",
+            "Input rows are sorted by sky position before processing,",
+            "and where parallel queries are in use",
+            "different tiles are queried in parallel.",
+            "Note the output rows will therefore not appear",
+            "in input table order.",
+            "</p>",
+            "<p>For a dense input table this can reduce the number",
+            "of remote queries by a large factor.",
+            "However, if the service truncates its results",
+            "(for instance because of a row limit),",
+            "matches will be silently missed,",
+            "so the order should be chosen so that a tile query",
+            "will not return too many rows.",
+            "Tile order 10 corresponds to a tile size of about",
+            "3.4 arcminutes, and each decrement of the order",
+            "doubles the size.",
+            "If the search radius is a constant, it determines the",
+            "width of the margin;",
+            "otherwise the margin is about the width of a tile,",
+            "and any larger search cones are queried individually.",
+            "</p>",
+            "<p>This option is only available for plain cone searches",
+            "that return point-like objects, not for instance for",
+            "SIA or SSA services, since the returned products",
+            "may overlap a search cone without their reference position",
+            "falling inside it.",
+            "Any columns computed by the service relative to the",
+            "query position would also be wrong.",
+            "</p>",
+            "<p>If left blank, one query is made for each input row.",
+            "</p>",
+        } );
+        tileorderParam_.setMinimum( 0 );
+        tileorderParam_.setMaximum( 20 );
+        tileorderParam_.setNullPermitted( true );
+        paramList.add( tileorderParam_ );
+
         copycolsParam_ = new StringParameter( "copycols" );
         copycolsParam_.setUsage( "<colid-list>" );
         copycolsParam_.setNullPermitted( true );
@@ -338,8 +387,42 @@ public abstract class SkyConeMatch2 extends SingleMapperTask {
             throw new UsageException( "Unknown value of " +
                                       modeParam_.getName() + "??" );
         }
+        Integer tileOrder = tileorderParam_.objectValue( env );
+        if ( tileOrder != null && ! isTileable( env ) ) {
+            throw new ParameterValueException( tileorderParam_,
+                                               "Tiled queries are only "
+                                             + "possible for plain cone "
+                                             + "searches" );
+        }
         TableProducer inProd = createInputProducer( env );
-        ConeSearcher coneSearcher = coner_.createSearcher( env, bestOnly );
+        ConeSearcher coneSearcher;
+        if ( tileOrder == null ) {
+            coneSearcher = coner_.createSearcher( env, bestOnly );
+        }
+        else {
+
+            /* Tile queries are used for multiple input rows,
+             * so they must not be restricted to the best match. */
+            int order = tileOrder.intValue();
+            double maxRadius;
+            try {
+                maxRadius = Double.parseDouble( srString.trim() );
+            }
+            catch ( NumberFormatException e ) {
+                maxRadius = TilingConeSearcher.getDefaultMaxRadius( order );
+            }
+            coneSearcher =
+                new TilingConeSearcher( coner_.createSearcher( env, false ),
+                                        order, maxRadius,
+                                        2 * parallelism + 2 );
+            final TableProducer inProd0 = inProd;
+            inProd = new TableProducer() {
+                public StarTable getTable()
+                        throws IOException, TaskException {
+                    return Tables.randomTable( inProd0.getTable() );
+                }
+            };
+        }
         final Coverage footprint;
         if ( usefootParam_.booleanValue( env ) &&
              coner_ instanceof ConeSearchConer ) {
@@ -358,6 +441,9 @@ public abstract class SkyConeMatch2 extends SingleMapperTask {
             fixcolsParam_.getJoinFixAction( env, conesuffixParam_ );
         QuerySequenceFactory qsFact =
             new JELQuerySequenceFactory( raString, decString, srString );
+        if ( tileOrder != null ) {
+            qsFact = new HealpixSortedQuerySequenceFactory( qsFact );
+        }
 
         /* Return a table producer using these values. */
         final ConeMatcher coneMatcher =
@@ -386,4 +472,19 @@ public abstract class SkyConeMatch2 extends SingleMapperTask {
             }
         };
     }
+
+    /**
+     * Indicates whether tiled queries may be used with the cone searcher
+     * configured in a given environment.
+     * This is only the case if results are point-like objects
+     * for which local position filtering is correct.
+     *
+     * @param  env  execution environment
+     * @return  true iff the tileorder parameter may be used
+     */
+    private boolean isTileable( Environment env ) throws TaskException {
+        return coner_ instanceof JdbcConer
+            || ( coner_ instanceof ConeSearchConer &&
+                 ((ConeSearchConer) coner_).isConeService( env ) );
+    }
 }
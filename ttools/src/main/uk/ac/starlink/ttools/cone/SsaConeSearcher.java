@@ -1,6 +1,7 @@
 package uk.ac.starlink.ttools.cone;
 
 import java.io.IOException;
+import java.net.URL;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import uk.ac.starlink.table.ColumnInfo;
@@ -24,6 +25,7 @@ public class SsaConeSearcher extends DalConeSearcher implements ConeSearcher {
     private final String serviceUrl_; 
     private final String specFormat_;
     private final StarTableFactory tfact_;
+    private final HostLimiter limiter_;
     private final ContentCoding coding_;
     private static final Logger logger_ = 
         Logger.getLogger( "uk.ac.starlink.ttools.cone" );
@@ -43,6 +45,8 @@ public class SsaConeSearcher extends DalConeSearcher implements ConeSearcher {
         serviceUrl_ = serviceUrl;
         specFormat_ = specFormat;
         tfact_ = tfact;
+        limiter_ =
+            new HostLimiter( ParallelResultRowSequence.getMaxParallelism() );
         coding_ = coding;
     }
 
@@ -54,7 +58,15 @@ public class SsaConeSearcher extends DalConeSearcher implements ConeSearcher {
         if ( specFormat_ != null && specFormat_.trim().length() > 0 ) {
             query.addArgument( "FORMAT", specFormat_ );
         }
-        StarTable table = query.execute( tfact_ );
+        URL url = new URL( serviceUrl_ );
+        limiter_.acquire( url );
+        StarTable table;
+        try {
+            table = query.execute( tfact_ );
+        }
+        finally {
+            limiter_.release( url );
+        }
         table = getConsistentTable( table );
         return table;
     }
@@ -45,6 +45,7 @@ public class TapUploadMatcher implements UploadMatcher {
     private final int pollMillis_ = 10000;
     private final Map<String,String> extraParams_;
     private final ContentCoding coding_;
+    private final VOTableWriter voWriter_;
 
     private static final String TABLE_ID = "up";
     private static final String ID_NAME = "tapupload_id";
@@ -86,6 +87,15 @@ public class TapUploadMatcher implements UploadMatcher {
         serviceMode_ = serviceMode;
         extraParams_ = extraParams;
         coding_ = coding;
+
+        /* BINARY2 is the more robust serialization, but it's only
+         * required to be understood by services supporting VOTable 1.3,
+         * which TAP 1.1 services are. */
+        voWriter_ = tapService.getTapVersion().is11()
+                  ? new VOTableWriter( DataFormat.BINARY2, true,
+                                       VOTableVersion.V13 )
+                  : new VOTableWriter( DataFormat.BINARY, true,
+                                       VOTableVersion.V12 );
         if ( ! Arrays.asList( getSupportedServiceModes() )
                      .contains( serviceMode ) ) {
             throw new IllegalArgumentException( "Unsupported mode: "
@@ -102,11 +112,9 @@ public class TapUploadMatcher implements UploadMatcher {
         uploadMap.put( TABLE_ID,
                        new UploadConeTable( coneSeq, rowMapper,
                                             ID_NAME, RA_NAME, DEC_NAME ) );
-        VOTableWriter voWriter =
-            new VOTableWriter( DataFormat.BINARY, true, VOTableVersion.V12 );
         TapQuery tapQuery =
             new TapQuery( tapService_, adql, extraParams_, uploadMap, -1,
-                          voWriter );
+                          voWriter_ );
         final URLConnection conn;
         if ( isSync_ ) {
             conn = tapQuery.createSyncConnection( coding_ );
@@ -0,0 +1,364 @@
+package uk.ac.starlink.ttools.cone;
+
+import cds.healpix.Healpix;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.Tables;
+import uk.ac.starlink.table.join.CdsHealpixSkyPixellator;
+import uk.ac.starlink.ttools.func.CoordsDegrees;
+
+/**
+ * ConeSearcher wrapper which satisfies small cone searches
+ * from the results of larger queries covering HEALPix tiles.
+ *
+ * <p>When a search is requested, the HEALPix tile at a given order
+ * containing its centre is identified, and a single enlarged
+ * cone search is made to the base searcher covering that tile
+ * and a margin around it large enough to contain any cone with
+ * a centre in the tile and a radius up to a given maximum.
+ * The result is retained, and that and subsequent searches
+ * centred in the same tile are answered by selecting the relevant
+ * rows locally, using a finer HEALPix index of the tile contents
+ * provided by a {@link CdsHealpixSkyPixellator}.
+ * Searches with a larger radius are passed directly to the base searcher.
+ *
+ * <p>Only a limited number of tile results are retained,
+ * so this works best if searches are presented in HEALPix order,
+ * for instance using a {@link HealpixSortedQuerySequenceFactory}.
+ * This class is thread-safe; concurrent searches in the same tile
+ * share a single tile query, and searches in different tiles
+ * proceed in parallel.
+ *
+ * <p>Note that if the base searcher truncates its results
+ * (for instance because of a service-imposed row limit),
+ * the tile results will be incomplete and some matches will be missed,
+ * so the tile order must be chosen with the density of the
+ * remote catalogue in mind.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class TilingConeSearcher implements ConeSearcher {
+
+    private final ConeSearcher base_;
+    private final int order_;
+    private final double maxRadius_;
+    private final int maxTiles_;
+    private final CdsHealpixSkyPixellator pixer_;
+    private final int pixDepth_;
+    private final Map<Long,FutureTask<Tile>> tileMap_;
+    private final AtomicInteger nTileQuery_;
+    private static final CdsHealpix hpix_ = CdsHealpix.getInstance();
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.ttools.cone" );
+
+    /**
+     * Constructor.
+     *
+     * @param  base   searcher which performs the actual queries;
+     *                it should not restrict results to the best match only
+     * @param  order  HEALPix order of tiles
+     * @param  maxRadius  maximum search radius in degrees for which
+     *                    tile queries will be used
+     * @param  maxTiles  maximum number of tile results retained at once
+     */
+    public TilingConeSearcher( ConeSearcher base, int order, double maxRadius,
+                               int maxTiles ) {
+        base_ = base;
+        order_ = order;
+        maxRadius_ = maxRadius;
+        maxTiles_ = Math.max( 1, maxTiles );
+        pixer_ = new CdsHealpixSkyPixellator();
+        pixer_.setScale( Math.max( maxRadius, 1e-6 ) * Math.PI / 180. );
+        pixDepth_ = pixer_.getHealpixK();
+        tileMap_ = new LinkedHashMap<Long,FutureTask<Tile>>( 16, 0.75f, true ) {
+            protected boolean
+                    removeEldestEntry( Map.Entry<Long,FutureTask<Tile>> ent ) {
+                return size() > maxTiles_;
+            }
+        };
+        nTileQuery_ = new AtomicInteger();
+    }
+
+    public StarTable performSearch( double ra, double dec, double sr )
+            throws IOException {
+        if ( ! ( sr <= maxRadius_ ) || Double.isNaN( ra ) ||
+             Double.isNaN( dec ) ) {
+            return base_.performSearch( ra, dec, sr );
+        }
+        Tile tile = getTile( hpix_.ang2pix( order_, ra, dec ) );
+        if ( tile.table_ == null ) {
+            return null;
+        }
+        else if ( tile.raDegs_ == null ) {
+            return base_.performSearch( ra, dec, sr );
+        }
+        else {
+            return tile.select( ra, dec, sr );
+        }
+    }
+
+    public int getRaIndex( StarTable result ) {
+        return base_.getRaIndex( result );
+    }
+
+    public int getDecIndex( StarTable result ) {
+        return base_.getDecIndex( result );
+    }
+
+    public void close() {
+        synchronized ( tileMap_ ) {
+            tileMap_.clear();
+        }
+        base_.close();
+        logger_.info( nTileQuery_.get() + " tile queries at order "
+                    + order_ );
+    }
+
+    /**
+     * Returns the number of tile queries made so far by this searcher.
+     *
+     * @return  tile query count
+     */
+    public int getTileQueryCount() {
+        return nTileQuery_.get();
+    }
+
+    /**
+     * Returns a default maximum search radius for use with a given
+     * tile order.  This is approximately the width of a tile.
+     *
+     * @param  order  HEALPix order
+     * @return  radius in degrees
+     */
+    public static double getDefaultMaxRadius( int order ) {
+        double npix = 12.0 * Math.pow( 4.0, order );
+        return Math.sqrt( 4 * Math.PI / npix ) * 180. / Math.PI;
+    }
+
+    /**
+     * Returns the query result for a given tile, performing the query
+     * if necessary.
+     *
+     * @param  itile  tile index at this searcher's order
+     * @return  tile result, not null
+     */
+    private Tile getTile( final long itile ) throws IOException {
+        Long key = Long.valueOf( itile );
+        FutureTask<Tile> task;
+        boolean isNew;
+        synchronized ( tileMap_ ) {
+            task = tileMap_.get( key );
+            isNew = task == null;
+            if ( isNew ) {
+                task = new FutureTask<Tile>( new Callable<Tile>() {
+                    public Tile call() throws IOException {
+                        return readTile( itile );
+                    }
+                } );
+                tileMap_.put( key, task );
+            }
+        }
+        if ( isNew ) {
+            task.run();
+        }
+        try {
+            return task.get();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw (IOException)
+                  new IOException( "Thread interrupted" ).initCause( e );
+        }
+        catch ( ExecutionException e ) {
+
+            /* Discard the failed result so that any retry will
+             * attempt the query again. */
+            synchronized ( tileMap_ ) {
+                if ( tileMap_.get( key ) == task ) {
+                    tileMap_.remove( key );
+                }
+            }
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+                throw (IOException) cause;
+            }
+            else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            else if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            else {
+                throw (IOException) new IOException( cause.getMessage() )
+                                   .initCause( cause );
+            }
+        }
+    }
+
+    /**
+     * Performs the enlarged query for a given tile.
+     *
+     * @param  itile  tile index at this searcher's order
+     * @return  tile result
+     */
+    private Tile readTile( long itile ) throws IOException {
+        double[] center = hpix_.pix2ang( order_, itile );
+        double ra = center[ 0 ];
+        double dec = center[ 1 ];
+        double tileRadius =
+            Healpix.getLargestCenterToCellVertexDistance( ra * Math.PI / 180.,
+                                                          dec * Math.PI / 180.,
+                                                          order_ )
+            * 180. / Math.PI;
+        double sr = tileRadius * 1.0001 + maxRadius_;
+        nTileQuery_.incrementAndGet();
+        logger_.info( "Tile query: order=" + order_ + "; tile=" + itile
+                    + "; ra=" + ra + "; dec=" + dec + "; sr=" + sr );
+        StarTable result = base_.performSearch( ra, dec, sr );
+        return result == null ? new Tile( null )
+                              : new Tile( Tables.randomTable( result ) );
+    }
+
+    /**
+     * Represents the result of a tile query, indexed for selection
+     * of rows in small cones.
+     */
+    private class Tile {
+        final StarTable table_;
+        final double[] raDegs_;
+        final double[] decDegs_;
+        final Map<Object,int[]> binMap_;
+
+        /**
+         * Constructor.
+         *
+         * @param  table  random-access tile query result, or null
+         */
+        Tile( StarTable table ) throws IOException {
+            table_ = table;
+            int ira = table == null ? -1 : base_.getRaIndex( table );
+            int idec = table == null ? -1 : base_.getDecIndex( table );
+            double raUnit = ira < 0
+                          ? Double.NaN
+                          : ConeMatcher.getAngleUnit( table.getColumnInfo( ira )
+                                                      .getUnitString() );
+            double decUnit = idec < 0
+                           ? Double.NaN
+                           : ConeMatcher.getAngleUnit( table
+                                                      .getColumnInfo( idec )
+                                                      .getUnitString() );
+            if ( Double.isNaN( raUnit ) || Double.isNaN( decUnit ) ) {
+                if ( table != null ) {
+                    logger_.warning( "Can't locate RA/Dec in tile result"
+                                   + " - use individual queries" );
+                }
+                raDegs_ = null;
+                decDegs_ = null;
+                binMap_ = null;
+                return;
+            }
+
+            /* Read positions and assign each row to a fine pixel. */
+            int nrow = Tables.checkedLongToInt( table.getRowCount() );
+            raDegs_ = new double[ nrow ];
+            decDegs_ = new double[ nrow ];
+            Map<Object,List<Integer>> binLists =
+                new HashMap<Object,List<Integer>>();
+            RowSequence rseq = table.getRowSequence();
+            try {
+                for ( int irow = 0; rseq.next(); irow++ ) {
+                    double raDeg = toDouble( rseq.getCell( ira ) ) * raUnit;
+                    double decDeg = toDouble( rseq.getCell( idec ) ) * decUnit;
+                    raDegs_[ irow ] = raDeg;
+                    decDegs_[ irow ] = decDeg;
+                    if ( ! Double.isNaN( raDeg ) &&
+                         ! Double.isNaN( decDeg ) ) {
+                        Object bin = Long.valueOf( hpix_.ang2pix( pixDepth_,
+                                                                  raDeg,
+                                                                  decDeg ) );
+                        List<Integer> list = binLists.get( bin );
+                        if ( list == null ) {
+                            list = new ArrayList<Integer>();
+                            binLists.put( bin, list );
+                        }
+                        list.add( Integer.valueOf( irow ) );
+                    }
+                }
+            }
+            finally {
+                rseq.close();
+            }
+            binMap_ = new HashMap<Object,int[]>();
+            for ( Map.Entry<Object,List<Integer>> entry :
+                  binLists.entrySet() ) {
+                List<Integer> list = entry.getValue();
+                int[] irows = new int[ list.size() ];
+                for ( int i = 0; i < irows.length; i++ ) {
+                    irows[ i ] = list.get( i ).intValue();
+                }
+                binMap_.put( entry.getKey(), irows );
+            }
+        }
+
+        /**
+         * Returns a table containing those rows of this tile's result
+         * within a given cone.
+         *
+         * @param  ra  central RA in degrees
+         * @param  dec  central Dec in degrees
+         * @param  sr   radius in degrees
+         * @return  table containing rows in cone, in tile result order
+         */
+        StarTable select( double ra, double dec, double sr )
+                throws IOException {
+            double toRad = Math.PI / 180.;
+            Object[] bins = pixer_.getPixels( ra * toRad, dec * toRad,
+                                              sr * toRad );
+            int[] cands = new int[ 0 ];
+            for ( Object bin : bins ) {
+                int[] irows = binMap_.get( bin );
+                if ( irows != null ) {
+                    int n0 = cands.length;
+                    cands = Arrays.copyOf( cands, n0 + irows.length );
+                    System.arraycopy( irows, 0, cands, n0, irows.length );
+                }
+            }
+            Arrays.sort( cands );
+            RowListStarTable out = new RowListStarTable( table_ );
+            for ( int irow : cands ) {
+                double dist =
+                    CoordsDegrees.skyDistanceDegrees( ra, dec, raDegs_[ irow ],
+                                                      decDegs_[ irow ] );
+                if ( dist <= sr ) {
+                    out.addRow( table_.getRow( irow ) );
+                }
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Converts a table cell to a double value.
+     *
+     * @param  value  cell value
+     * @return  numeric value, or NaN
+     */
+    private static double toDouble( Object value ) {
+        return value instanceof Number ? ((Number) value).doubleValue()
+                                       : Double.NaN;
+    }
+}
@@ -14,6 +14,7 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import uk.ac.starlink.util.CgiQuery;
+import uk.ac.starlink.vo.MetadataCache;
 
 /**
  * MOC coverage implementation which reads a MOC from a given URL.
@@ -34,8 +35,8 @@ public class UrlMocCoverage extends MocCoverage {
     public static final String FOOT_SERVICE_URL =
         "http://alasky.u-strasbg.fr/footprints";
 
-    private static final Map<String,HealpixMoc> mocMap_ =
-        new HashMap<String,HealpixMoc>();
+    private static final Map<String,RangeMoc> mocMap_ =
+        new HashMap<String,RangeMoc>();
     private static final Logger logger_ =
         Logger.getLogger( "uk.ac.starlink.ttools.cone" );
     private static HealpixImpl defaultHpi_ = CdsHealpix.getInstance();
@@ -52,6 +53,12 @@ public class UrlMocCoverage extends MocCoverage {
 
     @Override
     protected HealpixMoc createMoc() throws IOException {
+        RangeMoc rmoc = getMoc( mocUrl_ );
+        return rmoc == null ? null : rmoc.toHealpixMoc();
+    }
+
+    @Override
+    protected RangeMoc createRangeMoc() throws IOException {
         return getMoc( mocUrl_ );
     }
 
@@ -121,20 +128,38 @@ public class UrlMocCoverage extends MocCoverage {
     }
 
     /**
-     * Returns a MOC for a given cone search service URL.
+     * Returns a MOC for a given URL.
      * If not cached, it is cached and then returned.
+     * MOCs from remote URLs are also kept in the persistent
+     * {@link uk.ac.starlink.vo.MetadataCache}, if one is in use,
+     * in a compact form.
      * If no MOC can be obtained, null is returned.
      *
      * @param   URL of MOC
      * @return   MOC object, or null
      */
-    private static synchronized HealpixMoc getMoc( URL mocUrl )
+    private static synchronized RangeMoc getMoc( final URL mocUrl )
             throws IOException {
         String urlKey = mocUrl.toString();
         if ( ! mocMap_.containsKey( urlKey ) ) {
-            HealpixMoc moc = null;
+            RangeMoc moc = null;
             try {
-                moc = readMoc( mocUrl );
+                MetadataCache cache = MetadataCache.getInstance();
+                String protocol = mocUrl.getProtocol();
+                if ( cache != null && ( "http".equals( protocol ) ||
+                                        "https".equals( protocol ) ) ) {
+                    moc = cache.getValue( "moc " + urlKey, RangeMoc.class,
+                                          mocUrl,
+                                          new MetadataCache
+                                             .Fetcher<RangeMoc>() {
+                        public RangeMoc fetch() throws IOException {
+                            return readMoc( mocUrl );
+                        }
+                    } );
+                }
+                else {
+                    moc = readMoc( mocUrl );
+                }
             }
             finally {
                 mocMap_.put( urlKey, moc );
@@ -150,7 +175,7 @@ public class UrlMocCoverage extends MocCoverage {
      * @return  MOC object, or null
      * @throws  IOException if some unexpected error occurred
      */
-    private static HealpixMoc readMoc( URL mocUrl ) throws IOException {
+    private static RangeMoc readMoc( URL mocUrl ) throws IOException {
         logger_.info( "Attempt to acquire MOC from " + mocUrl );
         URLConnection conn = mocUrl.openConnection();
         conn.connect();
@@ -165,7 +190,7 @@ public class UrlMocCoverage extends MocCoverage {
             if ( logger_.isLoggable( Level.INFO ) ) {
                 logger_.info( "Got MOC footprint: " + summariseMoc( moc ) );
             }
-            return moc;
+            return RangeMoc.fromHealpixMoc( moc );
         }
         catch ( IOException e ) {
             throw e;
@@ -162,7 +162,7 @@ public class AddColumnFilter extends BasicFilter {
         }
     }
 
-    private static class AddColumnStep implements ProcessingStep {
+    static class AddColumnStep implements ProcessingStep {
 
         final String expr_;
         final ColumnInfo cinfo_;
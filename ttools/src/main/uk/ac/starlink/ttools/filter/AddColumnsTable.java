@@ -76,6 +76,39 @@ public class AddColumnsTable extends WrapperStarTable {
         this( baseTable, colSup, baseTable.getColumnCount() );
     }
 
+    /**
+     * Returns the object supplying the added columns.
+     *
+     * @return  column supplement
+     */
+    public ColumnSupplement getColumnSupplement() {
+        return colSup_;
+    }
+
+    /**
+     * Returns the index of the base table column from which a given
+     * column of this table is taken.
+     *
+     * @param  icol  column index in this table
+     * @return  base table column index, or -1 if <code>icol</code>
+     *          is an added column
+     */
+    public int getBaseColumnIndex( int icol ) {
+        return jtabs_[ icol ] ? -1 : jcols_[ icol ];
+    }
+
+    /**
+     * Returns the index of the supplement column from which a given
+     * column of this table is taken.
+     *
+     * @param  icol  column index in this table
+     * @return  supplement column index, or -1 if <code>icol</code>
+     *          is a base table column
+     */
+    public int getSupplementColumnIndex( int icol ) {
+        return jtabs_[ icol ] ? jcols_[ icol ] : -1;
+    }
+
     public int getColumnCount() {
         return jcols_.length;
     }
@@ -19,7 +19,7 @@ import uk.ac.starlink.table.Tables;
 public class CacheFilter extends BasicFilter implements ProcessingStep {
 
     public CacheFilter() {
-        super( "cache", null );
+        super( "cache", "[-lazy] [-maxmem <nbytes>]" );
     }
 
     protected String[] getDescriptionLines() {
@@ -35,6 +35,22 @@ public class CacheFilter extends BasicFilter implements ProcessingStep {
             "</p>",
             "<p>The result of this filter is guaranteed to be random-access.",
             "</p>",
+            "<p>If the <code>-lazy</code> flag is given, the data is not",
+            "all copied up front.  Instead each column is read into memory",
+            "the first time that it is actually used downstream,",
+            "and is then shared by all later uses.",
+            "This can be much cheaper than a full cache if the table is",
+            "wide but only a few of its columns are used.",
+            "Cached columns are discarded, least recently used first,",
+            "if their total size would exceed",
+            "<code>&lt;nbytes&gt;</code>,",
+            "which may be given with a suffix",
+            "<code>k</code>, <code>M</code> or <code>G</code>;",
+            "the default is a quarter of the maximum heap size.",
+            "Since every column load involves a pass through the input table,",
+            "the lazy option is not suitable for streamed input;",
+            "use it only where the input can be re-read.",
+            "</p>",
             "<p>See also the <ref id='random'><code>random</code></ref>",
             "filter, which caches only when the input table is not",
             "random-access.",
@@ -42,8 +58,38 @@ public class CacheFilter extends BasicFilter implements ProcessingStep {
         };
     }
 
-    public ProcessingStep createStep( Iterator<String> argIt ) {
-        return this;
+    public ProcessingStep createStep( Iterator<String> argIt )
+            throws ArgException {
+        boolean isLazy = false;
+        long maxBytes = Runtime.getRuntime().maxMemory() / 4;
+        while ( argIt.hasNext() ) {
+            String arg = argIt.next();
+            if ( arg.equals( "-lazy" ) ) {
+                argIt.remove();
+                isLazy = true;
+            }
+            else if ( arg.equals( "-maxmem" ) && argIt.hasNext() ) {
+                argIt.remove();
+                String sval = argIt.next();
+                argIt.remove();
+                maxBytes = parseBytes( sval );
+                isLazy = true;
+            }
+            else {
+                break;
+            }
+        }
+        if ( isLazy ) {
+            final long maxb = maxBytes;
+            return new ProcessingStep() {
+                public StarTable wrap( StarTable baseTable ) {
+                    return new LazyCacheTable( baseTable, maxb );
+                }
+            };
+        }
+        else {
+            return this;
+        }
     }
 
     public StarTable wrap( StarTable baseTable ) throws IOException {
@@ -51,4 +97,44 @@ public class CacheFilter extends BasicFilter implements ProcessingStep {
         Tables.streamStarTable( baseTable, store );
         return store.getStarTable();
     }
+
+    /**
+     * Parses a memory size string, which may have a multiplier suffix.
+     *
+     * @param  sval  string like "20000", "100k", "2G"
+     * @return  number of bytes
+     */
+    static long parseBytes( String sval ) throws ArgException {
+        String txt = sval.trim();
+        long factor = 1;
+        if ( txt.length() > 0 ) {
+            switch ( Character.toLowerCase( txt.charAt( txt.length() - 1 ) ) ) {
+                case 'k':
+                    factor = 1L << 10;
+                    break;
+                case 'm':
+                    factor = 1L << 20;
+                    break;
+                case 'g':
+                    factor = 1L << 30;
+                    break;
+                default:
+                    factor = 1;
+            }
+            if ( factor > 1 ) {
+                txt = txt.substring( 0, txt.length() - 1 );
+            }
+        }
+        long nbyte;
+        try {
+            nbyte = Long.parseLong( txt ) * factor;
+        }
+        catch ( NumberFormatException e ) {
+            throw new ArgException( "Bad memory size: " + sval );
+        }
+        if ( nbyte < 0 ) {
+            throw new ArgException( "Negative memory size: " + sval );
+        }
+        return nbyte;
+    }
 }
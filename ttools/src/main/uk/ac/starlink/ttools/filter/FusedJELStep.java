@@ -0,0 +1,118 @@
+package uk.ac.starlink.ttools.filter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import uk.ac.starlink.table.StarTable;
+
+/**
+ * Processing step which combines a run of consecutive JEL-based
+ * <code>addcol</code> and <code>select</code> steps so that
+ * sequential access to the result is done in a single pass
+ * by a {@link FusedJELTable}.
+ * The output table has exactly the same metadata and content as
+ * would be produced by applying the steps one after another.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class FusedJELStep implements ProcessingStep {
+
+    private final ProcessingStep[] steps_;
+
+    /**
+     * Minimum number of consecutive steps for which fusion is done.
+     * A single step is worth fusing too, since it can then use
+     * block evaluation if its input table provides random access.
+     */
+    public static final int MIN_FUSED_STEPS = 1;
+
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.ttools.filter" );
+
+    /**
+     * Constructor.
+     *
+     * @param  steps  consecutive steps to combine;
+     *                each must satisfy {@link #isFusable}
+     */
+    public FusedJELStep( ProcessingStep[] steps ) {
+        steps_ = steps.clone();
+    }
+
+    public StarTable wrap( StarTable base ) throws IOException {
+        int nstep = steps_.length;
+        StarTable[] stages = new StarTable[ nstep + 1 ];
+        stages[ 0 ] = base;
+        boolean fusable = true;
+        for ( int is = 0; is < nstep; is++ ) {
+            stages[ is + 1 ] = steps_[ is ].wrap( stages[ is ] );
+            fusable = fusable
+                   && FusedJELTable.isFusable( stages[ is + 1 ], stages[ is ] );
+        }
+        if ( fusable ) {
+            return new FusedJELTable( stages );
+        }
+        else {
+            logger_.info( "Can't fuse JEL steps - no optimisation" );
+            return stages[ nstep ];
+        }
+    }
+
+    /**
+     * Indicates whether a given processing step is of a type that can
+     * be combined by this class.
+     *
+     * @param  step  processing step
+     * @return  true iff step is an addcol or select step
+     */
+    public static boolean isFusable( ProcessingStep step ) {
+        return step instanceof AddColumnFilter.AddColumnStep
+            || step instanceof SelectFilter.SelectStep;
+    }
+
+    /**
+     * Returns a processing pipeline equivalent to a given one,
+     * in which runs of consecutive fusable steps are replaced by
+     * single fused steps.
+     *
+     * @param  steps  input processing pipeline
+     * @return  optimised processing pipeline
+     */
+    public static ProcessingStep[] fuseSteps( ProcessingStep[] steps ) {
+        List<ProcessingStep> outList = new ArrayList<ProcessingStep>();
+        List<ProcessingStep> runList = new ArrayList<ProcessingStep>();
+        for ( ProcessingStep step : steps ) {
+            if ( isFusable( step ) ) {
+                runList.add( step );
+            }
+            else {
+                flushRun( runList, outList );
+                outList.add( step );
+            }
+        }
+        flushRun( runList, outList );
+        return outList.toArray( new ProcessingStep[ 0 ] );
+    }
+
+    /**
+     * Moves a run of fusable steps to an output list,
+     * fusing them if there are enough.
+     *
+     * @param  runList  list of consecutive fusable steps;
+     *                  emptied on exit
+     * @param  outList  list to which steps are appended
+     */
+    private static void flushRun( List<ProcessingStep> runList,
+                                  List<ProcessingStep> outList ) {
+        if ( runList.size() >= MIN_FUSED_STEPS ) {
+            ProcessingStep[] run = runList.toArray( new ProcessingStep[ 0 ] );
+            outList.add( new FusedJELStep( run ) );
+        }
+        else {
+            outList.addAll( runList );
+        }
+        runList.clear();
+    }
+}
@@ -0,0 +1,1130 @@
+package uk.ac.starlink.ttools.filter;
+
+import gnu.jel.CompilationException;
+import gnu.jel.CompiledExpression;
+import gnu.jel.Library;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.Tables;
+import uk.ac.starlink.table.WrapperStarTable;
+import uk.ac.starlink.ttools.jel.JELUtils;
+import uk.ac.starlink.ttools.jel.StarTableJELRowReader;
+
+/**
+ * Table which provides optimised sequential access to the result of
+ * a chain of JEL-based column addition and row selection tables.
+ *
+ * <p>The chain is supplied as a sequence of stage tables, each one
+ * wrapping the previous one, in which every stage after the first
+ * is either a {@link JELSelectorTable} or an {@link AddColumnsTable}
+ * with a {@link JELColumnSupplement}.
+ * Metadata and random access are taken directly from the final stage.
+ * Sequential access however bypasses the intermediate wrapper layers:
+ * a single row sequence is taken out on the first stage,
+ * each cell of which is read at most once per row,
+ * and every expression in the chain is evaluated directly against
+ * that row, with the values of added columns evaluated at most once
+ * per row and shared between all the expressions that refer to them.
+ * Selection expressions are evaluated in chain order, so that rows
+ * rejected early do no further work.
+ *
+ * <p>If the input table provides random access, sequential access
+ * instead works on blocks of {@link #BLOCK_SIZE} rows at a time.
+ * For each block, only the input columns referenced by some expression
+ * are read, into primitive arrays where the column type allows.
+ * Each expression is then evaluated in a single loop over the rows
+ * of the block that reach its stage, using the normal compiled
+ * JEL expression with a row reader that takes its values from those
+ * arrays, and primitive results are stored in primitive arrays
+ * for use by later expressions.
+ * Values are boxed only when they are requested from the output
+ * row sequence, and unreferenced input columns are read
+ * from the input table only if requested.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class FusedJELTable extends WrapperStarTable {
+
+    private final StarTable inTable_;
+    private final StarTable[] stages_;
+    private final int nIn_;
+    private final int[][] stageMaps_;
+    private final int[] outMap_;
+    private final List<Computed> computeds_;
+    private final int[] selectStages_;
+
+    /** Number of rows evaluated together by block-mode row sequences. */
+    public static final int BLOCK_SIZE = 4096;
+
+    /** Primitive/wrapper class pairs which have primitive block storage. */
+    private static final Class<?>[][] BLOCK_TYPES = new Class<?>[][] {
+        { double.class, Double.class },
+        { float.class, Float.class },
+        { long.class, Long.class },
+        { int.class, Integer.class },
+        { short.class, Short.class },
+        { byte.class, Byte.class },
+        { boolean.class, Boolean.class },
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param   stages  chain of tables, each wrapping its predecessor;
+     *                  element zero is the input table and the last
+     *                  element is the result
+     * @throws  IllegalArgumentException  if the chain contains stages
+     *          that cannot be fused
+     */
+    public FusedJELTable( StarTable[] stages ) {
+        super( stages[ stages.length - 1 ] );
+        stages_ = stages.clone();
+        inTable_ = stages[ 0 ];
+        nIn_ = inTable_.getColumnCount();
+        int nstage = stages.length;
+        computeds_ = new ArrayList<Computed>();
+        stageMaps_ = new int[ nstage ][];
+        List<Integer> selectList = new ArrayList<Integer>();
+
+        /* Work through the chain, keeping track of where each column
+         * of the current stage comes from.  Non-negative entries in the
+         * column map are input table column indices, and negative entries
+         * are (-1-index) into the list of computed columns. */
+        int[] map = new int[ nIn_ ];
+        for ( int ic = 0; ic < nIn_; ic++ ) {
+            map[ ic ] = ic;
+        }
+        stageMaps_[ 0 ] = map;
+        for ( int is = 1; is < nstage; is++ ) {
+            StarTable prev = stages[ is - 1 ];
+            StarTable stage = stages[ is ];
+            if ( stage instanceof JELSelectorTable &&
+                 ((JELSelectorTable) stage).getBaseTable() == prev ) {
+                selectList.add( new Integer( is - 1 ) );
+            }
+            else if ( isJELAddition( stage, prev ) ) {
+                AddColumnsTable addTable = (AddColumnsTable) stage;
+                String[] exprs =
+                    ((JELColumnSupplement) addTable.getColumnSupplement())
+                   .getExpressions();
+                int icomp0 = computeds_.size();
+                for ( String expr : exprs ) {
+                    computeds_.add( new Computed( is - 1, expr ) );
+                }
+                int ncol = addTable.getColumnCount();
+                int[] map1 = new int[ ncol ];
+                for ( int ic = 0; ic < ncol; ic++ ) {
+                    int isup = addTable.getSupplementColumnIndex( ic );
+                    map1[ ic ] = isup >= 0
+                               ? -1 - ( icomp0 + isup )
+                               : map[ addTable.getBaseColumnIndex( ic ) ];
+                }
+                map = map1;
+            }
+            else {
+                throw new IllegalArgumentException( "Can't fuse stage "
+                                                  + stage );
+            }
+            stageMaps_[ is ] = map;
+        }
+        outMap_ = map;
+        selectStages_ = new int[ selectList.size() ];
+        for ( int i = 0; i < selectStages_.length; i++ ) {
+            selectStages_[ i ] = selectList.get( i ).intValue();
+        }
+    }
+
+    /**
+     * Indicates whether a given table in a chain can be fused by
+     * this class.
+     *
+     * @param   stage  stage table
+     * @param   prev   stage table's predecessor in the chain
+     * @return   true iff stage can be fused
+     */
+    public static boolean isFusable( StarTable stage, StarTable prev ) {
+        return ( stage instanceof JELSelectorTable &&
+                 ((JELSelectorTable) stage).getBaseTable() == prev )
+            || isJELAddition( stage, prev );
+    }
+
+    public RowSequence getRowSequence() throws IOException {
+        return inTable_.isRandom() ? new BlockRowSequence()
+                                   : new FusedRowSequence();
+    }
+
+    /**
+     * Indicates whether a given stage table adds JEL columns
+     * to its predecessor.
+     *
+     * @param   stage  stage table
+     * @param   prev   stage table's predecessor in the chain
+     * @return   true iff stage is a JEL column addition table
+     */
+    private static boolean isJELAddition( StarTable stage, StarTable prev ) {
+        if ( stage instanceof AddColumnsTable ) {
+            AddColumnsTable addTable = (AddColumnsTable) stage;
+            ColumnSupplement colSup = addTable.getColumnSupplement();
+            return addTable.getBaseTable() == prev
+                && colSup instanceof JELColumnSupplement
+                && ((JELColumnSupplement) colSup).getInputTable() == prev;
+        }
+        else {
+            return false;
+        }
+    }
+
+    /**
+     * Compiles an expression in the context of a given stage.
+     *
+     * @param  libs  per-stage library cache
+     * @param  readers  per-stage row readers
+     * @param  istage  stage index
+     * @param  expr  JEL expression
+     * @param  clazz  required result type, or null
+     * @return  compiled expression
+     */
+    private CompiledExpression compile( Library[] libs,
+                                        StarTableJELRowReader[] readers,
+                                        int istage, String expr,
+                                        Class<?> clazz )
+            throws IOException {
+        if ( libs[ istage ] == null ) {
+            libs[ istage ] = JELUtils.getLibrary( readers[ istage ] );
+        }
+        try {
+            return clazz == null
+                 ? JELUtils.compile( libs[ istage ], stages_[ istage ], expr )
+                 : JELUtils.compile( libs[ istage ], stages_[ istage ], expr,
+                                     clazz );
+        }
+        catch ( CompilationException e ) {
+            throw JELUtils.toIOException( e, expr );
+        }
+    }
+
+    /**
+     * Describes a column computed from a JEL expression.
+     */
+    private static class Computed {
+        final int istage_;
+        final String expr_;
+
+        /**
+         * Constructor.
+         *
+         * @param  istage  index of stage table providing the JEL context
+         * @param  expr   JEL expression
+         */
+        Computed( int istage, String expr ) {
+            istage_ = istage;
+            expr_ = expr;
+        }
+    }
+
+    /**
+     * Row sequence which evaluates the whole chain in a single pass.
+     */
+    private class FusedRowSequence implements RowSequence {
+
+        private final RowSequence inSeq_;
+        private final Object[] inCells_;
+        private final boolean[] hasInCells_;
+        private final Object[] compCells_;
+        private final boolean[] hasCompCells_;
+        private final long[] stageRows_;
+        private final StageReader[] readers_;
+        private final CompiledExpression[] compCompexs_;
+        private final CompiledExpression[] selectCompexs_;
+        private boolean hasRow_;
+
+        /**
+         * Constructor.
+         */
+        FusedRowSequence() throws IOException {
+            int nstage = stages_.length;
+            readers_ = new StageReader[ nstage ];
+            Library[] libs = new Library[ nstage ];
+            for ( int is = 0; is < nstage; is++ ) {
+                readers_[ is ] =
+                    new StageReader( stages_[ is ], stageMaps_[ is ], is );
+            }
+
+            /* Compile each expression against its own stage table,
+             * so that names are resolved exactly as in the unfused chain. */
+            int ncomp = computeds_.size();
+            compCompexs_ = new CompiledExpression[ ncomp ];
+            for ( int icomp = 0; icomp < ncomp; icomp++ ) {
+                Computed comp = computeds_.get( icomp );
+                compCompexs_[ icomp ] =
+                    compile( libs, readers_, comp.istage_, comp.expr_, null );
+            }
+            selectCompexs_ = new CompiledExpression[ selectStages_.length ];
+            for ( int isel = 0; isel < selectStages_.length; isel++ ) {
+                int is = selectStages_[ isel ];
+                String expr =
+                    ((JELSelectorTable) stages_[ is + 1 ]).getExpression();
+                selectCompexs_[ isel ] =
+                    compile( libs, readers_, is, expr, boolean.class );
+            }
+            inCells_ = new Object[ nIn_ ];
+            hasInCells_ = new boolean[ nIn_ ];
+            compCells_ = new Object[ ncomp ];
+            hasCompCells_ = new boolean[ ncomp ];
+            stageRows_ = new long[ nstage ];
+            Arrays.fill( stageRows_, -1L );
+            inSeq_ = inTable_.getRowSequence();
+        }
+
+        public boolean next() throws IOException {
+            while ( inSeq_.next() ) {
+                Arrays.fill( hasInCells_, false );
+                Arrays.fill( hasCompCells_, false );
+                hasRow_ = true;
+                if ( isIncluded() ) {
+                    return true;
+                }
+            }
+            hasRow_ = false;
+            return false;
+        }
+
+        public Object getCell( int icol ) throws IOException {
+            if ( hasRow_ ) {
+                return getMappedCell( outMap_[ icol ] );
+            }
+            else {
+                throw new IllegalStateException();
+            }
+        }
+
+        public Object[] getRow() throws IOException {
+            int ncol = outMap_.length;
+            Object[] row = new Object[ ncol ];
+            for ( int icol = 0; icol < ncol; icol++ ) {
+                row[ icol ] = getCell( icol );
+            }
+            return row;
+        }
+
+        public void close() throws IOException {
+            inSeq_.close();
+        }
+
+        /**
+         * Advances the per-stage row indices for the current input row,
+         * evaluating selection expressions in order, and reports
+         * whether the row survives to the end of the chain.
+         *
+         * @return  true iff the current input row is included in the output
+         */
+        private boolean isIncluded() throws IOException {
+            int nstage = stages_.length;
+            int isel = 0;
+            for ( int is = 0; is < nstage; is++ ) {
+                stageRows_[ is ]++;
+                if ( isel < selectStages_.length &&
+                     selectStages_[ isel ] == is ) {
+                    Object val;
+                    try {
+                        val = readers_[ is ].evaluate( selectCompexs_[ isel ] );
+                    }
+                    catch ( Throwable e ) {
+                        throw (IOException)
+                              new IOException( "Evaluation error" )
+                             .initCause( e );
+                    }
+                    Boolean bval = (Boolean) val;
+                    if ( bval == null || ! bval.booleanValue() ) {
+                        return false;
+                    }
+                    isel++;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the value of a cell in the current row identified
+         * by a column map entry.
+         *
+         * @param  jcol  column map entry
+         * @return  cell value
+         */
+        private Object getMappedCell( int jcol ) throws IOException {
+            if ( jcol >= 0 ) {
+                if ( ! hasInCells_[ jcol ] ) {
+                    inCells_[ jcol ] = inSeq_.getCell( jcol );
+                    hasInCells_[ jcol ] = true;
+                }
+                return inCells_[ jcol ];
+            }
+            else {
+                int icomp = -1 - jcol;
+                if ( ! hasCompCells_[ icomp ] ) {
+                    compCells_[ icomp ] = evaluateComputed( icomp );
+                    hasCompCells_[ icomp ] = true;
+                }
+                return compCells_[ icomp ];
+            }
+        }
+
+        /**
+         * Evaluates a computed column at the current row.
+         * Error handling follows that of {@link JELColumnSupplement}.
+         *
+         * @param  icomp  index into computed column list
+         * @return  cell value
+         */
+        private Object evaluateComputed( int icomp ) throws IOException {
+            StageReader rdr = readers_[ computeds_.get( icomp ).istage_ ];
+            try {
+                return rdr.evaluate( compCompexs_[ icomp ] );
+            }
+            catch ( RuntimeException e ) {
+                return null;
+            }
+            catch ( IOException e ) {
+                throw e;
+            }
+            catch ( Error e ) {
+                throw e;
+            }
+            catch ( Throwable e ) {
+                throw (IOException) new IOException( e.getMessage() )
+                                   .initCause( e );
+            }
+        }
+
+        /**
+         * JEL row reader which reads the columns of one stage table
+         * from the current row of the fused sequence.
+         */
+        private class StageReader extends StarTableJELRowReader {
+            private final int[] map_;
+            private final int istage_;
+
+            /**
+             * Constructor.
+             *
+             * @param  stage  stage table
+             * @param  map   column map for stage
+             * @param  istage  index of stage in chain
+             */
+            StageReader( StarTable stage, int[] map, int istage ) {
+                super( stage );
+                map_ = map;
+                istage_ = istage;
+            }
+
+            public Object getCell( int icol ) throws IOException {
+                return getMappedCell( map_[ icol ] );
+            }
+
+            public long getCurrentRow() {
+                return stageRows_[ istage_ ];
+            }
+        }
+    }
+
+    /**
+     * Row sequence which evaluates the whole chain a block of rows
+     * at a time.  The input table must provide random access.
+     */
+    private class BlockRowSequence implements RowSequence {
+
+        private final int nstage_;
+        private final long nrowIn_;
+        private final BlockReader[] readers_;
+        private final CompiledExpression[] compCompexs_;
+        private final CompiledExpression[] selectCompexs_;
+        private final int[][] stageDeps_;
+        private final int[] inCols_;
+        private final BlockColumn[] inBlocks_;
+        private final BlockColumn[] compBlocks_;
+        private final int[] compLevels_;
+        private final int[][] alive_;
+        private final int[] nalive_;
+        private final int[][] stagePos_;
+        private final long[] stageBase_;
+        private long irowNext_;
+        private long irow0_;
+        private int iout_;
+
+        /**
+         * Constructor.
+         */
+        BlockRowSequence() throws IOException {
+            nstage_ = stages_.length;
+            nrowIn_ = inTable_.getRowCount();
+            readers_ = new BlockReader[ nstage_ ];
+            for ( int is = 0; is < nstage_; is++ ) {
+                readers_[ is ] = new BlockReader( stages_[ is ],
+                                                  stageMaps_[ is ] );
+            }
+
+            /* Compile each expression against its own stage table.
+             * Computed values are stored according to the primitive
+             * type of the compiled expression, if it has one. */
+            Library[] libs = new Library[ nstage_ ];
+            int ncomp = computeds_.size();
+            compCompexs_ = new CompiledExpression[ ncomp ];
+            compBlocks_ = new BlockColumn[ ncomp ];
+            for ( int icomp = 0; icomp < ncomp; icomp++ ) {
+                Computed comp = computeds_.get( icomp );
+                CompiledExpression compex =
+                    compile( libs, readers_, comp.istage_, comp.expr_, null );
+                compCompexs_[ icomp ] = compex;
+                Class<?> ptype = compex.getTypeC();
+                compBlocks_[ icomp ] =
+                    new BlockColumn( ptype.isPrimitive() ? ptype : null );
+            }
+            selectCompexs_ = new CompiledExpression[ selectStages_.length ];
+            for ( int isel = 0; isel < selectStages_.length; isel++ ) {
+                int is = selectStages_[ isel ];
+                String expr =
+                    ((JELSelectorTable) stages_[ is + 1 ]).getExpression();
+                selectCompexs_[ isel ] =
+                    compile( libs, readers_, is, expr, boolean.class );
+            }
+
+            /* Now that all the expressions have been compiled, find out
+             * which input columns and which computed columns each stage
+             * refers to.  Only the referenced input columns are read
+             * into blocks. */
+            boolean[] inUsed = new boolean[ nIn_ ];
+            stageDeps_ = new int[ nstage_ ][];
+            for ( int is = 0; is < nstage_; is++ ) {
+                int[] map = stageMaps_[ is ];
+                List<Integer> depList = new ArrayList<Integer>();
+                for ( int icol : readers_[ is ].getTranslatedColumns() ) {
+                    if ( icol < map.length ) {
+                        int jcol = map[ icol ];
+                        if ( jcol >= 0 ) {
+                            inUsed[ jcol ] = true;
+                        }
+                        else {
+                            depList.add( new Integer( -1 - jcol ) );
+                        }
+                    }
+                }
+                stageDeps_[ is ] = toIntArray( depList );
+            }
+            inBlocks_ = new BlockColumn[ nIn_ ];
+            List<Integer> inList = new ArrayList<Integer>();
+            for ( int jcol = 0; jcol < nIn_; jcol++ ) {
+                if ( inUsed[ jcol ] ) {
+                    Class<?> clazz =
+                        inTable_.getColumnInfo( jcol ).getContentClass();
+                    inBlocks_[ jcol ] =
+                        new BlockColumn( getPrimitiveType( clazz ) );
+                    inList.add( new Integer( jcol ) );
+                }
+            }
+            inCols_ = toIntArray( inList );
+            compLevels_ = new int[ ncomp ];
+            alive_ = new int[ nstage_ ][ BLOCK_SIZE ];
+            nalive_ = new int[ nstage_ ];
+            stagePos_ = new int[ nstage_ ][ BLOCK_SIZE ];
+            stageBase_ = new long[ nstage_ ];
+        }
+
+        public boolean next() throws IOException {
+            while ( ++iout_ >= nalive_[ nstage_ - 1 ] ) {
+                if ( ! readBlock() ) {
+                    iout_ = nalive_[ nstage_ - 1 ];
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public Object getCell( int icol ) throws IOException {
+            int[] outRows = alive_[ nstage_ - 1 ];
+            if ( iout_ >= 0 && iout_ < nalive_[ nstage_ - 1 ] ) {
+                int ir = outRows[ iout_ ];
+                int jcol = outMap_[ icol ];
+                if ( jcol >= 0 ) {
+                    BlockColumn col = inBlocks_[ jcol ];
+                    return col == null ? inTable_.getCell( irow0_ + ir, jcol )
+                                       : col.getValue( ir );
+                }
+                else {
+                    int icomp = -1 - jcol;
+                    ensureComputed( icomp, nstage_ - 1 );
+                    return compBlocks_[ icomp ].getValue( ir );
+                }
+            }
+            else {
+                throw new IllegalStateException();
+            }
+        }
+
+        public Object[] getRow() throws IOException {
+            int ncol = outMap_.length;
+            Object[] row = new Object[ ncol ];
+            for ( int icol = 0; icol < ncol; icol++ ) {
+                row[ icol ] = getCell( icol );
+            }
+            return row;
+        }
+
+        public void close() {
+        }
+
+        /**
+         * Reads the next block of input rows and performs the selections
+         * on it.  Computed columns are evaluated only as required.
+         *
+         * @return  true iff any input rows remained
+         */
+        private boolean readBlock() throws IOException {
+            for ( int is = 0; is < nstage_; is++ ) {
+                stageBase_[ is ] += nalive_[ is ];
+                nalive_[ is ] = 0;
+            }
+            if ( irowNext_ >= nrowIn_ ) {
+                return false;
+            }
+            int n = (int) Math.min( BLOCK_SIZE, nrowIn_ - irowNext_ );
+            irow0_ = irowNext_;
+            irowNext_ += n;
+            iout_ = -1;
+
+            /* Read only the referenced input columns. */
+            int[] alive0 = alive_[ 0 ];
+            for ( int ir = 0; ir < n; ir++ ) {
+                long irow = irow0_ + ir;
+                for ( int jcol : inCols_ ) {
+                    inBlocks_[ jcol ].setCell( ir,
+                                               inTable_.getCell( irow, jcol ) );
+                }
+                alive0[ ir ] = ir;
+            }
+            nalive_[ 0 ] = n;
+            Arrays.fill( compLevels_, nstage_ );
+
+            /* Work out which rows of the block reach each stage. */
+            int isel = 0;
+            for ( int is = 0; is < nstage_; is++ ) {
+                int[] alive = alive_[ is ];
+                int na = nalive_[ is ];
+                int[] pos = stagePos_[ is ];
+                for ( int k = 0; k < na; k++ ) {
+                    pos[ alive[ k ] ] = k;
+                }
+                if ( is + 1 < nstage_ ) {
+                    if ( isel < selectStages_.length &&
+                         selectStages_[ isel ] == is ) {
+                        nalive_[ is + 1 ] = select( isel, alive_[ is + 1 ] );
+                        isel++;
+                    }
+                    else {
+                        System.arraycopy( alive, 0, alive_[ is + 1 ], 0, na );
+                        nalive_[ is + 1 ] = na;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Evaluates a selection expression over the rows of the current
+         * block that reach its stage.
+         *
+         * @param  isel  index into selection list
+         * @param  outRows  array to receive the block row indices of
+         *                  the selected rows, in order
+         * @return  number of selected rows
+         */
+        private int select( int isel, int[] outRows ) throws IOException {
+            int is = selectStages_[ isel ];
+            ensureDependencies( is, is );
+            BlockReader rdr = readers_[ is ];
+            CompiledExpression compex = selectCompexs_[ isel ];
+            int[] alive = alive_[ is ];
+            int na = nalive_[ is ];
+            long base = stageBase_[ is ];
+            int nout = 0;
+            for ( int k = 0; k < na; k++ ) {
+                int ir = alive[ k ];
+                rdr.setRow( ir, base + k );
+                boolean isIncluded;
+                try {
+                    isIncluded = rdr.evaluateBoolean( compex );
+                }
+                catch ( Throwable e ) {
+                    throw (IOException) new IOException( "Evaluation error" )
+                                       .initCause( e );
+                }
+                if ( isIncluded ) {
+                    outRows[ nout++ ] = ir;
+                }
+            }
+            return nout;
+        }
+
+        /**
+         * Ensures that all the computed columns referenced by expressions
+         * at a given stage have been evaluated for the rows of the
+         * current block that reach a given stage.
+         *
+         * @param  istage  stage whose dependencies are required
+         * @param  ilevel  stage whose rows are required; not less than
+         *                 <code>istage</code>
+         */
+        private void ensureDependencies( int istage, int ilevel )
+                throws IOException {
+            for ( int icomp : stageDeps_[ istage ] ) {
+                ensureComputed( icomp, ilevel );
+            }
+        }
+
+        /**
+         * Ensures that a computed column has been evaluated for the rows
+         * of the current block that reach a given stage.
+         * Error handling follows that of {@link JELColumnSupplement}.
+         *
+         * @param  icomp  index into computed column list
+         * @param  ilevel  stage whose rows are required
+         */
+        private void ensureComputed( int icomp, int ilevel )
+                throws IOException {
+            if ( compLevels_[ icomp ] <= ilevel ) {
+                return;
+            }
+            int istage = computeds_.get( icomp ).istage_;
+            ensureDependencies( istage, ilevel );
+            BlockReader rdr = readers_[ istage ];
+            CompiledExpression compex = compCompexs_[ icomp ];
+            BlockColumn col = compBlocks_[ icomp ];
+            int[] alive = alive_[ ilevel ];
+            int na = nalive_[ ilevel ];
+            int[] pos = stagePos_[ istage ];
+            long base = stageBase_[ istage ];
+            for ( int k = 0; k < na; k++ ) {
+                int ir = alive[ k ];
+                rdr.setRow( ir, base + pos[ ir ] );
+                try {
+                    rdr.evaluateInto( compex, col, ir );
+                }
+                catch ( RuntimeException e ) {
+                    col.setNull( ir );
+                }
+                catch ( IOException e ) {
+                    throw e;
+                }
+                catch ( Error e ) {
+                    throw e;
+                }
+                catch ( Throwable e ) {
+                    throw (IOException) new IOException( e.getMessage() )
+                                       .initCause( e );
+                }
+            }
+            compLevels_[ icomp ] = ilevel;
+        }
+
+        /**
+         * JEL row reader which reads the columns of one stage table
+         * from the current block, at a row position set by the caller.
+         */
+        private class BlockReader extends StarTableJELRowReader {
+            private final int[] map_;
+            private final Object[] evalArgs_;
+            private int ir_;
+            private long irow_;
+
+            /**
+             * Constructor.
+             *
+             * @param  stage  stage table
+             * @param  map   column map for stage
+             */
+            BlockReader( StarTable stage, int[] map ) {
+                super( stage );
+                map_ = map;
+                evalArgs_ = new Object[] { this };
+            }
+
+            /**
+             * Sets the row at which evaluations take place.
+             *
+             * @param  ir  row index within the current block
+             * @param  irow  row index within this reader's stage table
+             */
+            void setRow( int ir, long irow ) {
+                ir_ = ir;
+                irow_ = irow;
+            }
+
+            public long getCurrentRow() {
+                return irow_;
+            }
+
+            /**
+             * Evaluates a boolean expression at the current row.
+             *
+             * @param  compex  compiled expression
+             * @return  true iff the result is true and not null
+             */
+            boolean evaluateBoolean( CompiledExpression compex )
+                    throws Throwable {
+                if ( compex.getTypeC() != boolean.class ) {
+                    return Boolean.TRUE.equals( evaluate( compex ) );
+                }
+                setNullExpression( false );
+                try {
+                    boolean result = compex.evaluate_boolean( evalArgs_ );
+                    return result && ! isNullExpression();
+                }
+                catch ( NullPointerException e ) {
+                    return false;
+                }
+            }
+
+            /**
+             * Evaluates an expression at the current row and stores
+             * the result in a block column.
+             * The column's storage type must match the expression's type.
+             *
+             * @param  compex  compiled expression
+             * @param  col   destination column
+             * @param  ir   row index in block
+             */
+            void evaluateInto( CompiledExpression compex, BlockColumn col,
+                               int ir )
+                    throws Throwable {
+                Class<?> ptype = col.ptype_;
+                setNullExpression( false );
+                try {
+                    if ( ptype == double.class ) {
+                        col.dvals_[ ir ] = compex.evaluate_double( evalArgs_ );
+                    }
+                    else if ( ptype == float.class ) {
+                        col.dvals_[ ir ] = compex.evaluate_float( evalArgs_ );
+                    }
+                    else if ( ptype == long.class ) {
+                        col.lvals_[ ir ] = compex.evaluate_long( evalArgs_ );
+                    }
+                    else if ( ptype == int.class ) {
+                        col.lvals_[ ir ] = compex.evaluate_int( evalArgs_ );
+                    }
+                    else if ( ptype == short.class ) {
+                        col.lvals_[ ir ] = compex.evaluate_short( evalArgs_ );
+                    }
+                    else if ( ptype == byte.class ) {
+                        col.lvals_[ ir ] = compex.evaluate_byte( evalArgs_ );
+                    }
+                    else if ( ptype == boolean.class ) {
+                        col.bvals_[ ir ] =
+                            compex.evaluate_boolean( evalArgs_ );
+                    }
+                    else {
+                        col.ovals_[ ir ] = compex.evaluate( evalArgs_ );
+                    }
+                    if ( isNullExpression() ) {
+                        col.setNull( ir );
+                    }
+                    else {
+                        col.nulls_[ ir ] = false;
+                    }
+                }
+                catch ( NullPointerException e ) {
+                    col.setNull( ir );
+                }
+            }
+
+            public Object getCell( int icol ) throws IOException {
+                BlockColumn col = getBlockColumn( icol );
+                return col == null
+                     ? inTable_.getCell( irow0_ + ir_, map_[ icol ] )
+                     : col.getValue( ir_ );
+            }
+
+            protected boolean isBlank( int icol ) {
+                BlockColumn col = getBlockColumn( icol );
+                return col == null ? super.isBlank( icol )
+                                   : col.isBlank( ir_ );
+            }
+
+            protected boolean getBooleanColumnValue( int icol ) {
+                BlockColumn col = getBlockColumn( icol );
+                if ( col != null && col.bvals_ != null ) {
+                    if ( col.nulls_[ ir_ ] ) {
+                        foundNull();
+                        return false;
+                    }
+                    return col.bvals_[ ir_ ];
+                }
+                return super.getBooleanColumnValue( icol );
+            }
+
+            protected byte getByteColumnValue( int icol ) {
+                BlockColumn col = getBlockColumn( icol );
+                return col != null && col.lvals_ != null
+                     ? (byte) getStoredLong( col )
+                     : super.getByteColumnValue( icol );
+            }
+
+            protected short getShortColumnValue( int icol ) {
+                BlockColumn col = getBlockColumn( icol );
+                return col != null && col.lvals_ != null
+                     ? (short) getStoredLong( col )
+                     : super.getShortColumnValue( icol );
+            }
+
+            protected int getIntColumnValue( int icol ) {
+                BlockColumn col = getBlockColumn( icol );
+                return col != null && col.lvals_ != null
+                     ? (int) getStoredLong( col )
+                     : super.getIntColumnValue( icol );
+            }
+
+            protected long getLongColumnValue( int icol ) {
+                BlockColumn col = getBlockColumn( icol );
+                return col != null && col.lvals_ != null
+                     ? getStoredLong( col )
+                     : super.getLongColumnValue( icol );
+            }
+
+            protected float getFloatColumnValue( int icol ) {
+                BlockColumn col = getBlockColumn( icol );
+                return col != null && col.dvals_ != null
+                     ? (float) col.dvals_[ ir_ ]
+                     : super.getFloatColumnValue( icol );
+            }
+
+            protected double getDoubleColumnValue( int icol ) {
+                BlockColumn col = getBlockColumn( icol );
+                return col != null && col.dvals_ != null
+                     ? col.dvals_[ ir_ ]
+                     : super.getDoubleColumnValue( icol );
+            }
+
+            /**
+             * Returns the value of an integer-valued block column
+             * at the current row, flagging a null if necessary.
+             *
+             * @param  col  block column with integer storage
+             * @return  value
+             */
+            private long getStoredLong( BlockColumn col ) {
+                if ( col.nulls_[ ir_ ] ) {
+                    foundNull();
+                    return 0L;
+                }
+                return col.lvals_[ ir_ ];
+            }
+
+            /**
+             * Returns the block storage for a column of this stage.
+             *
+             * @param  icol  column index in stage table
+             * @return  block column, or null if the column is not stored
+             */
+            private BlockColumn getBlockColumn( int icol ) {
+                int jcol = map_[ icol ];
+                return jcol >= 0 ? inBlocks_[ jcol ]
+                                 : compBlocks_[ -1 - jcol ];
+            }
+        }
+    }
+
+    /**
+     * Returns the primitive type corresponding to a wrapper class
+     * for which block storage is available.
+     *
+     * @param  clazz  wrapper class
+     * @return  primitive class, or null for object storage
+     */
+    private static Class<?> getPrimitiveType( Class<?> clazz ) {
+        for ( Class<?>[] pair : BLOCK_TYPES ) {
+            if ( pair[ 1 ] == clazz ) {
+                return pair[ 0 ];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the wrapper class corresponding to a primitive type
+     * for which block storage is available.
+     *
+     * @param  ptype  primitive class
+     * @return  wrapper class, or null for object storage
+     */
+    private static Class<?> getWrapperType( Class<?> ptype ) {
+        for ( Class<?>[] pair : BLOCK_TYPES ) {
+            if ( pair[ 0 ] == ptype ) {
+                return pair[ 1 ];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converts a list of integers to an array.
+     *
+     * @param  list  list
+     * @return  array with the same contents
+     */
+    private static int[] toIntArray( List<Integer> list ) {
+        int n = list.size();
+        int[] array = new int[ n ];
+        for ( int i = 0; i < n; i++ ) {
+            array[ i ] = list.get( i ).intValue();
+        }
+        return array;
+    }
+
+    /**
+     * Stores the values of one column for a block of rows,
+     * in a primitive array if the column type permits.
+     */
+    private static class BlockColumn {
+        final Class<?> ptype_;
+        final Class<?> wrapper_;
+        final double[] dvals_;
+        final long[] lvals_;
+        final boolean[] bvals_;
+        final Object[] ovals_;
+        final boolean[] nulls_;
+
+        /**
+         * Constructor.
+         *
+         * @param  ptype  primitive storage type; char or null means
+         *                values are stored as objects
+         */
+        BlockColumn( Class<?> ptype ) {
+            if ( ptype == char.class ) {
+                ptype = null;
+            }
+            ptype_ = ptype;
+            wrapper_ = getWrapperType( ptype );
+            boolean isFloating = ptype == double.class
+                              || ptype == float.class;
+            boolean isIntegral = ptype == long.class
+                              || ptype == int.class
+                              || ptype == short.class
+                              || ptype == byte.class;
+            dvals_ = isFloating ? new double[ BLOCK_SIZE ] : null;
+            lvals_ = isIntegral ? new long[ BLOCK_SIZE ] : null;
+            bvals_ = ptype == boolean.class ? new boolean[ BLOCK_SIZE ]
+                                            : null;
+            ovals_ = ptype == null ? new Object[ BLOCK_SIZE ] : null;
+            nulls_ = new boolean[ BLOCK_SIZE ];
+        }
+
+        /**
+         * Stores a table cell value.  A value that does not match the
+         * storage type is treated as null.
+         *
+         * @param  ir  row index in block
+         * @param  value  cell value
+         */
+        void setCell( int ir, Object value ) {
+            if ( ovals_ != null ) {
+                ovals_[ ir ] = value;
+            }
+            else if ( wrapper_.isInstance( value ) ) {
+                nulls_[ ir ] = false;
+                if ( dvals_ != null ) {
+                    dvals_[ ir ] = ((Number) value).doubleValue();
+                }
+                else if ( lvals_ != null ) {
+                    lvals_[ ir ] = ((Number) value).longValue();
+                }
+                else {
+                    bvals_[ ir ] = ((Boolean) value).booleanValue();
+                }
+            }
+            else {
+                setNull( ir );
+            }
+        }
+
+        /**
+         * Marks a value as null.
+         *
+         * @param  ir  row index in block
+         */
+        void setNull( int ir ) {
+            nulls_[ ir ] = true;
+            if ( dvals_ != null ) {
+                dvals_[ ir ] = Double.NaN;
+            }
+            else if ( ovals_ != null ) {
+                ovals_[ ir ] = null;
+            }
+        }
+
+        /**
+         * Indicates whether a stored value is blank in the sense of
+         * {@link uk.ac.starlink.table.Tables#isBlank}.
+         *
+         * @param  ir  row index in block
+         * @return  true iff blank
+         */
+        boolean isBlank( int ir ) {
+            if ( ovals_ != null ) {
+                return Tables.isBlank( ovals_[ ir ] );
+            }
+            else {
+                return nulls_[ ir ]
+                    || ( dvals_ != null && Double.isNaN( dvals_[ ir ] ) );
+            }
+        }
+
+        /**
+         * Returns a stored value as an object.
+         *
+         * @param  ir  row index in block
+         * @return  value, or null
+         */
+        Object getValue( int ir ) {
+            if ( ovals_ != null ) {
+                return ovals_[ ir ];
+            }
+            else {
+                return nulls_[ ir ] ? null : box( ir );
+            }
+        }
+
+        /**
+         * Returns a wrapper object for a non-null primitive value.
+         *
+         * @param  ir  row index in block
+         * @return  value
+         */
+        private Object box( int ir ) {
+            if ( ptype_ == double.class ) {
+                return new Double( dvals_[ ir ] );
+            }
+            else if ( ptype_ == float.class ) {
+                return new Float( (float) dvals_[ ir ] );
+            }
+            else if ( ptype_ == long.class ) {
+                return new Long( lvals_[ ir ] );
+            }
+            else if ( ptype_ == int.class ) {
+                return new Integer( (int) lvals_[ ir ] );
+            }
+            else if ( ptype_ == short.class ) {
+                return new Short( (short) lvals_[ ir ] );
+            }
+            else if ( ptype_ == byte.class ) {
+                return new Byte( (byte) lvals_[ ir ] );
+            }
+            else {
+                return Boolean.valueOf( bvals_[ ir ] );
+            }
+        }
+    }
+}
@@ -0,0 +1,1281 @@
+package uk.ac.starlink.ttools.filter;
+
+import gnu.jel.CompilationException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.ColumnPermutedStarTable;
+import uk.ac.starlink.table.RowCollector;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.RowSplittable;
+import uk.ac.starlink.table.RowStore;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.StoragePolicy;
+import uk.ac.starlink.table.TableFormatException;
+import uk.ac.starlink.table.Tables;
+import uk.ac.starlink.table.storage.ByteStoreRowStore;
+import uk.ac.starlink.table.storage.ListRowStore;
+import uk.ac.starlink.task.TaskException;
+import uk.ac.starlink.ttools.Tokenizer;
+import uk.ac.starlink.ttools.jel.JELTable;
+
+/**
+ * Processing filter which groups rows by the values of one or more
+ * key expressions and calculates aggregate quantities for each group.
+ *
+ * <p>Groups are accumulated in a hash table, in parallel where the
+ * input table permits random access.  If the number of distinct groups
+ * exceeds a limit based on the available heap memory, the input rows
+ * are instead partitioned by key hash into temporary byte stores,
+ * and each partition is aggregated separately.
+ * Quantiles are estimated using a {@link SketchQuantCalc} per group.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class GroupFilter extends BasicFilter {
+
+    /** Accuracy parameter for per-group quantile sketches. */
+    private static final int SKETCH_K = 128;
+
+    /** Base-2 logarithm of the number of partitions used per spill. */
+    private static final int PART_BITS = 5;
+
+    /** Maximum depth of recursive partitioning. */
+    private static final int MAX_DEPTH = 2;
+
+    /** Multipliers for partition hashing at each recursion depth. */
+    private static final int[] PART_MULTS = {
+        0x9e3779b1, 0x85ebca6b, 0xc2b2ae35,
+    };
+
+    private static final Pattern AGG_REGEX =
+        Pattern.compile( "([A-Za-z]+|[qQ]\\.[0-9]+)(?:\\((.*)\\))?" );
+
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.ttools.filter" );
+
+    /**
+     * Constructor.
+     */
+    public GroupFilter() {
+        super( "group", "<key-list> [<aggregate> ...]" );
+    }
+
+    protected String[] getDescriptionLines() {
+        StringBuffer fbuf = new StringBuffer()
+            .append( "<ul>\n" );
+        for ( Func func : Func.values() ) {
+            fbuf.append( "<li><code>" )
+                .append( func.usage_ )
+                .append( "</code>: " )
+                .append( func.description_ )
+                .append( "</li>\n" );
+        }
+        fbuf.append( "</ul>" );
+        return new String[] {
+            "<p>Groups rows which have the same values of one or more",
+            "key expressions, and calculates aggregate quantities",
+            "for each group.",
+            "This is like the SQL <code>GROUP BY</code> construction.",
+            "The key expressions appear,",
+            "as separate (space-separated) words,",
+            "in <code>&lt;key-list&gt;</code>.",
+            "The output table has one row for each distinct combination",
+            "of key values, containing those values followed by",
+            "a column for each <code>&lt;aggregate&gt;</code>.",
+            "Blank key values are treated as equal to each other.",
+            "Output rows appear in order of the first occurrence",
+            "of each key combination in the input table.",
+            "</p>",
+            "<p>Each <code>&lt;aggregate&gt;</code> word has the form",
+            "<code>&lt;func&gt;(&lt;expr&gt;)</code>,",
+            "where <code>&lt;expr&gt;</code> is an expression",
+            "evaluated for each row and <code>&lt;func&gt;</code>",
+            "is one of the following:",
+            fbuf.toString(),
+            "Blank values are ignored except by <code>count</code>.",
+            "If no aggregates are given, <code>count</code> is used.",
+            "Output column names are formed from the expression",
+            "and the function name, for instance <code>MAG_mean</code>.",
+            "</p>",
+            "<p>Quantiles are estimated from a fixed-size sketch",
+            "of the values in each group, so they are approximate",
+            "for large groups; the rank of a reported quantile is typically",
+            "in error by no more than a few percent.",
+            "</p>",
+            "<p>Groups are accumulated in memory where possible,",
+            "using multiple threads if the input table is random-access.",
+            "If there are too many groups to fit in memory,",
+            "the input is partitioned by key into temporary storage",
+            "and each partition is processed in turn.",
+            "</p>",
+            explainSyntax( new String[] { "key-list", "expr", } ),
+        };
+    }
+
+    public ProcessingStep createStep( Iterator<String> argIt )
+            throws ArgException {
+        return createStep( argIt, -1 );
+    }
+
+    /**
+     * Creates a processing step with a given limit on the number of
+     * groups held in memory.
+     *
+     * @param  argIt  iterator over filter arguments
+     * @param  groupLimit  maximum number of groups held in memory at
+     *                     once, or -1 for a default based on heap size
+     * @return  new step
+     */
+    ProcessingStep createStep( Iterator<String> argIt, long groupLimit )
+            throws ArgException {
+        if ( ! argIt.hasNext() ) {
+            throw new ArgException( "No group keys given" );
+        }
+        String keyList = argIt.next();
+        argIt.remove();
+        String[] keys;
+        try {
+            keys = Tokenizer.tokenizeWords( keyList );
+        }
+        catch ( TaskException e ) {
+            throw new ArgException( "Bad <key-list>: " + keyList, e );
+        }
+        if ( keys.length == 0 ) {
+            throw new ArgException( "No group keys given" );
+        }
+        List<Aggregate> aggList = new ArrayList<Aggregate>();
+        while ( argIt.hasNext() ) {
+            String word = argIt.next();
+            argIt.remove();
+            aggList.add( parseAggregate( word ) );
+        }
+        if ( aggList.isEmpty() ) {
+            aggList.add( new Aggregate( Func.COUNT, null, Double.NaN ) );
+        }
+        return new GroupStep( keys, aggList.toArray( new Aggregate[ 0 ] ),
+                              groupLimit );
+    }
+
+    /**
+     * Parses an aggregate specification word.
+     *
+     * @param  word  aggregate specification of the form func(expr)
+     * @return  aggregate
+     */
+    private static Aggregate parseAggregate( String word )
+            throws ArgException {
+        Matcher matcher = AGG_REGEX.matcher( word.trim() );
+        if ( ! matcher.matches() ) {
+            throw new ArgException( "Bad aggregate \"" + word + "\""
+                                  + " - should be <func>(<expr>)" );
+        }
+        String fname = matcher.group( 1 ).toLowerCase();
+        String expr = matcher.group( 2 );
+        if ( expr != null && expr.trim().length() == 0 ) {
+            expr = null;
+        }
+        final Func func;
+        double quant = Double.NaN;
+        if ( fname.matches( "q\\.[0-9]+" ) ) {
+            func = Func.QUANTILE;
+            quant = Double.parseDouble( fname.substring( 1 ) );
+        }
+        else {
+            Func f = null;
+            for ( Func fi : Func.values() ) {
+                if ( fi.name_.equals( fname ) ) {
+                    f = fi;
+                }
+            }
+            if ( f == null || f == Func.QUANTILE ) {
+                StringBuffer sbuf = new StringBuffer();
+                for ( Func fi : Func.values() ) {
+                    if ( sbuf.length() > 0 ) {
+                        sbuf.append( ", " );
+                    }
+                    sbuf.append( fi.usage_ );
+                }
+                throw new ArgException( "Unknown aggregate function \""
+                                      + matcher.group( 1 ) + "\" - "
+                                      + "must be one of " + sbuf );
+            }
+            func = f;
+            if ( func == Func.MEDIAN ) {
+                quant = 0.5;
+            }
+        }
+        if ( func == Func.COUNT ) {
+            expr = null;
+        }
+        else if ( expr == null ) {
+            throw new ArgException( "No expression given for aggregate \""
+                                  + word + "\"" );
+        }
+        return new Aggregate( func, expr, quant );
+    }
+
+    /**
+     * Enumerates the available aggregate functions.
+     */
+    private static enum Func {
+        COUNT( "count", "count", "number of rows in the group" ),
+        NGOOD( "ngood", "ngood(<expr>)",
+               "number of non-blank values" ),
+        SUM( "sum", "sum(<expr>)", "sum of values" ),
+        MEAN( "mean", "mean(<expr>)", "mean of values" ),
+        STDEV( "stdev", "stdev(<expr>)",
+               "sample standard deviation of values" ),
+        MIN( "min", "min(<expr>)", "minimum value" ),
+        MAX( "max", "max(<expr>)", "maximum value" ),
+        MEDIAN( "median", "median(<expr>)", "approximate median" ),
+        QUANTILE( "q.nn", "q.nn(<expr>)",
+                  "approximate quantile for the proportion 0.nn, "
+                + "for instance <code>q.25(&lt;expr&gt;)</code> "
+                + "is the first quartile" );
+
+        final String name_;
+        final String usage_;
+        final String description_;
+
+        /**
+         * Constructor.
+         *
+         * @param  name  function name as used in arguments
+         * @param  usage  usage string
+         * @param  description  short description
+         */
+        Func( String name, String usage, String description ) {
+            name_ = name;
+            usage_ = usage;
+            description_ = description;
+        }
+    }
+
+    /**
+     * Represents one aggregate quantity to be calculated for each group.
+     */
+    private static class Aggregate {
+        final Func func_;
+        final String expr_;
+        final double quant_;
+
+        /**
+         * Constructor.
+         *
+         * @param  func  aggregate function
+         * @param  expr  JEL expression, or null for count
+         * @param  quant  quantile value, or NaN if not applicable
+         */
+        Aggregate( Func func, String expr, double quant ) {
+            func_ = func;
+            expr_ = expr;
+            quant_ = quant;
+        }
+
+        /**
+         * Returns the output column metadata for this aggregate.
+         *
+         * @param  inInfo  metadata for the aggregated expression,
+         *                 or null for count
+         * @return  output column metadata
+         */
+        ColumnInfo createOutputInfo( ColumnInfo inInfo )
+                throws IOException {
+            if ( func_ == Func.COUNT ) {
+                return new ColumnInfo( "count", Long.class,
+                                       "Number of rows in group" );
+            }
+            Class<?> clazz = inInfo.getContentClass();
+            String inName = inInfo.getName();
+            String fname = func_ == Func.QUANTILE
+                         ? "q" + formatQuant( quant_ )
+                         : func_.name_;
+            String name = inName.replaceAll( "[^A-Za-z0-9_]+", "_" )
+                                .replaceAll( "^_+|_+$", "" )
+                        + "_" + fname;
+            boolean isNumeric = Number.class.isAssignableFrom( clazz );
+            final ColumnInfo info;
+            switch ( func_ ) {
+                case NGOOD:
+                    return new ColumnInfo( name, Long.class,
+                                           "Number of non-blank values of "
+                                         + inName );
+                case SUM:
+                case MEAN:
+                case STDEV:
+                    requireNumeric( isNumeric );
+                    info = new ColumnInfo( name, Double.class,
+                                           capitalise( func_.description_ )
+                                         + " of " + inName );
+                    break;
+                case MIN:
+                case MAX:
+                    if ( ! Comparable.class.isAssignableFrom( clazz ) ) {
+                        throw new IOException( "Values of " + inName
+                                             + " are not comparable" );
+                    }
+                    info = new ColumnInfo( name, clazz,
+                                           capitalise( func_.description_ )
+                                         + " of " + inName );
+                    break;
+                case MEDIAN:
+                case QUANTILE:
+                    requireNumeric( isNumeric );
+                    info = new ColumnInfo( name, clazz,
+                                           "Approximate "
+                                         + ( func_ == Func.MEDIAN
+                                                 ? "median"
+                                                 : "quantile "
+                                                 + formatQuant( quant_ ) )
+                                         + " of " + inName );
+                    break;
+                default:
+                    throw new AssertionError();
+            }
+            info.setUnitString( inInfo.getUnitString() );
+            info.setUCD( inInfo.getUCD() );
+            return info;
+        }
+
+        /**
+         * Returns a new accumulator for this aggregate.
+         *
+         * @param  clazz  content class of the aggregated values
+         * @return  new state
+         */
+        AggState createState( Class<?> clazz ) {
+            switch ( func_ ) {
+                case COUNT:
+                    return new CountState( true );
+                case NGOOD:
+                    return new CountState( false );
+                case SUM:
+                    return new SumState();
+                case MEAN:
+                    return new MomentState( false );
+                case STDEV:
+                    return new MomentState( true );
+                case MIN:
+                    return new ExtremumState( false );
+                case MAX:
+                    return new ExtremumState( true );
+                case MEDIAN:
+                case QUANTILE:
+                    return new QuantileState( clazz, quant_ );
+                default:
+                    throw new AssertionError();
+            }
+        }
+
+        /**
+         * Throws an exception if the aggregated values are not numeric.
+         *
+         * @param  isNumeric  true iff values are numeric
+         */
+        private void requireNumeric( boolean isNumeric ) throws IOException {
+            if ( ! isNumeric ) {
+                throw new IOException( "Expression " + expr_
+                                     + " is not numeric for "
+                                     + func_.name_ );
+            }
+        }
+    }
+
+    /**
+     * Step implementation which performs the grouping.
+     */
+    private static class GroupStep implements ProcessingStep {
+        private final String[] keys_;
+        private final Aggregate[] aggs_;
+        private final long groupLimit_;
+
+        /**
+         * Constructor.
+         *
+         * @param  keys  key expressions
+         * @param  aggs  aggregates
+         * @param  groupLimit  maximum number of groups held in memory at
+         *                     once, or -1 for a default based on heap size
+         */
+        GroupStep( String[] keys, Aggregate[] aggs, long groupLimit ) {
+            keys_ = keys;
+            aggs_ = aggs;
+            groupLimit_ = groupLimit;
+        }
+
+        public StarTable wrap( StarTable base ) throws IOException {
+
+            /* Prepare a table containing the key values followed by
+             * the distinct aggregate expression values. */
+            int nkey = keys_.length;
+            int nagg = aggs_.length;
+            Map<String,Integer> exprMap = new LinkedHashMap<String,Integer>();
+            for ( int ik = 0; ik < nkey; ik++ ) {
+                exprMap.put( keys_[ ik ], Integer.valueOf( ik ) );
+            }
+            List<String> exprList = new ArrayList<String>();
+            exprList.addAll( Arrays.asList( keys_ ) );
+            int[] aggCols = new int[ nagg ];
+            for ( int ia = 0; ia < nagg; ia++ ) {
+                String expr = aggs_[ ia ].expr_;
+                if ( expr == null ) {
+                    aggCols[ ia ] = -1;
+                }
+                else {
+                    Integer icol = exprMap.get( expr );
+                    if ( icol == null ) {
+                        icol = Integer.valueOf( exprList.size() );
+                        exprMap.put( expr, icol );
+                        exprList.add( expr );
+                    }
+                    aggCols[ ia ] = icol.intValue();
+                }
+            }
+            StarTable projTable;
+            try {
+                projTable =
+                    JELTable.createJELTable( base,
+                                             exprList
+                                            .toArray( new String[ 0 ] ) );
+            }
+            catch ( CompilationException e ) {
+                throw (IOException)
+                      new IOException( "Bad group expression: "
+                                     + e.getMessage() )
+                     .initCause( e );
+            }
+
+            /* Prepare output metadata. */
+            ColumnInfo[] outInfos = new ColumnInfo[ nkey + nagg ];
+            Class<?>[] aggClazzes = new Class<?>[ nagg ];
+            for ( int ik = 0; ik < nkey; ik++ ) {
+                outInfos[ ik ] = new ColumnInfo( projTable
+                                                .getColumnInfo( ik ) );
+            }
+            for ( int ia = 0; ia < nagg; ia++ ) {
+                int icol = aggCols[ ia ];
+                ColumnInfo inInfo = icol >= 0
+                                  ? projTable.getColumnInfo( icol )
+                                  : null;
+                outInfos[ nkey + ia ] = aggs_[ ia ].createOutputInfo( inInfo );
+                aggClazzes[ ia ] = inInfo == null ? null
+                                                  : inInfo.getContentClass();
+            }
+            long limit = groupLimit_ >= 0 ? groupLimit_
+                                          : getDefaultGroupLimit( nkey );
+            Grouper grouper =
+                new Grouper( nkey, aggs_, aggCols, aggClazzes, outInfos,
+                             limit );
+
+            /* Try to do it in memory. */
+            List<Group> groups = grouper.aggregateInMemory( projTable, -1,
+                                                            false );
+            StarTable result;
+            if ( groups != null ) {
+                RowListStarTable rtable = new RowListStarTable( outInfos );
+                for ( Group group : groups ) {
+                    rtable.addRow( grouper.getOutputRow( group ) );
+                }
+                result = rtable;
+            }
+
+            /* If that fails, partition the data using temporary storage. */
+            else {
+                logger_.info( "More than " + limit + " groups"
+                            + " - partitioning input" );
+                StarTable sorted = grouper.aggregatePartitioned( projTable,
+                                                                 -1, 0 );
+                int[] colMap = new int[ outInfos.length ];
+                for ( int i = 0; i < colMap.length; i++ ) {
+                    colMap[ i ] = i;
+                }
+                result = new ColumnPermutedStarTable( sorted, colMap );
+            }
+            result.getParameters().addAll( base.getParameters() );
+            result.setName( base.getName() );
+            return result;
+        }
+
+        /**
+         * Returns a default limit for the number of groups to be held
+         * in memory at once.
+         *
+         * @param  nkey  number of key columns
+         * @return  group count limit
+         */
+        private long getDefaultGroupLimit( int nkey ) {
+            long nbyte = 200 + 64 * ( nkey + aggs_.length );
+            for ( Aggregate agg : aggs_ ) {
+                if ( agg.func_ == Func.QUANTILE ||
+                     agg.func_ == Func.MEDIAN ) {
+                    nbyte += 16 * SKETCH_K;
+                }
+            }
+            return Math.max( 10000,
+                             Runtime.getRuntime().maxMemory() / 4 / nbyte );
+        }
+    }
+
+    /**
+     * Does the work of accumulating groups.
+     */
+    private static class Grouper {
+        private final int nkey_;
+        private final Aggregate[] aggs_;
+        private final int[] aggCols_;
+        private final Class<?>[] aggClazzes_;
+        private final ColumnInfo[] outInfos_;
+        private final long limit_;
+
+        /**
+         * Constructor.
+         *
+         * @param  nkey  number of key columns, which come first in the
+         *               projected table
+         * @param  aggs  aggregates
+         * @param  aggCols  column index in the projected table for each
+         *                  aggregate, or -1 for none
+         * @param  aggClazzes  content class for each aggregate input
+         * @param  outInfos  output column metadata
+         * @param  limit  maximum number of groups held in memory
+         */
+        Grouper( int nkey, Aggregate[] aggs, int[] aggCols,
+                 Class<?>[] aggClazzes, ColumnInfo[] outInfos, long limit ) {
+            nkey_ = nkey;
+            aggs_ = aggs;
+            aggCols_ = aggCols;
+            aggClazzes_ = aggClazzes;
+            outInfos_ = outInfos;
+            limit_ = limit;
+        }
+
+        /**
+         * Attempts to aggregate all the rows of a table in memory.
+         *
+         * @param  projTable  table containing key and aggregate input
+         *                    columns
+         * @param  irowCol  index of a column containing the original
+         *                  row index, or -1 to use the row sequence index
+         * @param  force  if true, ignore the group count limit
+         * @return  groups ordered by first occurrence,
+         *          or null if the limit was exceeded
+         */
+        List<Group> aggregateInMemory( StarTable projTable, int irowCol,
+                                       boolean force )
+                throws IOException {
+            GroupCollector collector =
+                new GroupCollector( irowCol, force ? Long.MAX_VALUE : limit_ );
+            GroupAccumulator acc = collector.collect( projTable, true );
+            if ( acc.overflow_ ) {
+                return null;
+            }
+            List<Group> groups = new ArrayList<Group>( acc.map_.values() );
+            acc.map_.clear();
+            Collections.sort( groups, new Comparator<Group>() {
+                public int compare( Group g1, Group g2 ) {
+                    return Long.compare( g1.firstRow_, g2.firstRow_ );
+                }
+            } );
+            return groups;
+        }
+
+        /**
+         * Aggregates the rows of a table by partitioning it into
+         * temporary storage.
+         * The result table contains the output columns followed by
+         * a column giving the index of the first row of each group,
+         * and is sorted on that column.
+         *
+         * @param  projTable  table containing key and aggregate input
+         *                    columns
+         * @param  irowCol  index of a column containing the original
+         *                  row index, or -1 to use the row sequence index
+         * @param  depth  recursion depth
+         * @return  sorted output table with trailing row index column
+         */
+        StarTable aggregatePartitioned( StarTable projTable, int irowCol,
+                                        int depth )
+                throws IOException {
+
+            /* Write rows to partitions according to key hash. */
+            int ncol = irowCol >= 0 ? projTable.getColumnCount()
+                                    : projTable.getColumnCount() + 1;
+            ColumnInfo[] partInfos = new ColumnInfo[ ncol ];
+            for ( int icol = 0; icol < projTable.getColumnCount(); icol++ ) {
+                partInfos[ icol ] = projTable.getColumnInfo( icol );
+            }
+            int jrowCol = ncol - 1;
+            partInfos[ jrowCol ] = new ColumnInfo( "irow", Long.class, null );
+            StarTable partMeta = new RowListStarTable( partInfos );
+            int npart = 1 << PART_BITS;
+            RowStore[] partStores = new RowStore[ npart ];
+            for ( int ip = 0; ip < npart; ip++ ) {
+                partStores[ ip ] = createStore( partMeta );
+            }
+            int mult = PART_MULTS[ depth ];
+            RowSequence rseq = projTable.getRowSequence();
+            try {
+                for ( long irow = 0; rseq.next(); irow++ ) {
+                    Object[] row = rseq.getRow();
+                    Object[] prow;
+                    if ( irowCol >= 0 ) {
+                        prow = row;
+                    }
+                    else {
+                        prow = new Object[ ncol ];
+                        System.arraycopy( row, 0, prow, 0, ncol - 1 );
+                        prow[ jrowCol ] = Long.valueOf( irow );
+                    }
+                    int hash = createKey( prow ).hashCode();
+                    int ip = ( hash * mult ) >>> ( 32 - PART_BITS );
+                    partStores[ ip ].acceptRow( prow );
+                }
+            }
+            finally {
+                rseq.close();
+            }
+
+            /* Aggregate each partition separately. */
+            List<StarTable> sortedTables = new ArrayList<StarTable>();
+            for ( int ip = 0; ip < npart; ip++ ) {
+                partStores[ ip ].endRows();
+                StarTable partTable = partStores[ ip ].getStarTable();
+                partStores[ ip ] = null;
+                boolean force = depth + 1 >= MAX_DEPTH;
+                List<Group> groups =
+                    aggregateInMemory( partTable, jrowCol, force );
+                if ( groups != null ) {
+                    sortedTables.add( createSortedTable( groups ) );
+                }
+                else {
+                    sortedTables.add( aggregatePartitioned( partTable,
+                                                            jrowCol,
+                                                            depth + 1 ) );
+                }
+            }
+
+            /* Merge the sorted partition results. */
+            return mergeSorted( sortedTables );
+        }
+
+        /**
+         * Writes a list of groups to a table with a trailing row index
+         * column.
+         *
+         * @param  groups  groups in order of first occurrence
+         * @return  table
+         */
+        private StarTable createSortedTable( List<Group> groups )
+                throws IOException {
+            RowStore store = StoragePolicy.getDefaultPolicy()
+                            .makeConfiguredRowStore( createSortedMeta() );
+            for ( Group group : groups ) {
+                store.acceptRow( getSortedRow( group ) );
+            }
+            groups.clear();
+            store.endRows();
+            return store.getStarTable();
+        }
+
+        /**
+         * Merges tables with a trailing row index column,
+         * each of which is sorted on that column,
+         * into a single sorted table.
+         *
+         * @param  tables  input tables
+         * @return  merged table
+         */
+        private StarTable mergeSorted( List<StarTable> tables )
+                throws IOException {
+            final int jcol = outInfos_.length;
+            PriorityQueue<RowSequence> queue =
+                new PriorityQueue<RowSequence>( Math.max( 1, tables.size() ),
+                                                new Comparator<RowSequence>() {
+                    public int compare( RowSequence s1, RowSequence s2 ) {
+                        try {
+                            return Long.compare( getIndex( s1 ),
+                                                 getIndex( s2 ) );
+                        }
+                        catch ( IOException e ) {
+                            throw new UncheckedIOException( e );
+                        }
+                    }
+                    private long getIndex( RowSequence rseq )
+                            throws IOException {
+                        return ((Number) rseq.getCell( jcol )).longValue();
+                    }
+                } );
+            RowStore store = StoragePolicy.getDefaultPolicy()
+                            .makeConfiguredRowStore( createSortedMeta() );
+            try {
+                for ( StarTable table : tables ) {
+                    RowSequence rseq = table.getRowSequence();
+                    if ( rseq.next() ) {
+                        queue.add( rseq );
+                    }
+                    else {
+                        rseq.close();
+                    }
+                }
+                while ( ! queue.isEmpty() ) {
+                    RowSequence rseq = queue.poll();
+                    store.acceptRow( rseq.getRow() );
+                    if ( rseq.next() ) {
+                        queue.add( rseq );
+                    }
+                    else {
+                        rseq.close();
+                    }
+                }
+            }
+            catch ( UncheckedIOException e ) {
+                throw e.getCause();
+            }
+            finally {
+                for ( RowSequence rseq : queue ) {
+                    rseq.close();
+                }
+            }
+            store.endRows();
+            return store.getStarTable();
+        }
+
+        /**
+         * Returns a metadata template for tables containing the output
+         * columns and a trailing row index column.
+         *
+         * @return  metadata table
+         */
+        private StarTable createSortedMeta() {
+            int nout = outInfos_.length;
+            ColumnInfo[] infos = new ColumnInfo[ nout + 1 ];
+            System.arraycopy( outInfos_, 0, infos, 0, nout );
+            infos[ nout ] = new ColumnInfo( "irow", Long.class, null );
+            return new RowListStarTable( infos );
+        }
+
+        /**
+         * Returns the output row for a group.
+         *
+         * @param  group  group
+         * @return  key values followed by aggregate values
+         */
+        Object[] getOutputRow( Group group ) {
+            int nagg = aggs_.length;
+            Object[] row = new Object[ nkey_ + nagg ];
+            System.arraycopy( group.key_.values_, 0, row, 0, nkey_ );
+            for ( int ia = 0; ia < nagg; ia++ ) {
+                row[ nkey_ + ia ] = group.states_[ ia ].getResult();
+            }
+            return row;
+        }
+
+        /**
+         * Returns the output row for a group with a trailing
+         * first row index.
+         *
+         * @param  group  group
+         * @return  output row with row index appended
+         */
+        private Object[] getSortedRow( Group group ) {
+            Object[] orow = getOutputRow( group );
+            Object[] row = new Object[ orow.length + 1 ];
+            System.arraycopy( orow, 0, row, 0, orow.length );
+            row[ orow.length ] = Long.valueOf( group.firstRow_ );
+            return row;
+        }
+
+        /**
+         * Creates a key object from the key columns of a projected row.
+         *
+         * @param  row  projected row
+         * @return  key
+         */
+        GroupKey createKey( Object[] row ) {
+            Object[] values = new Object[ nkey_ ];
+            for ( int ik = 0; ik < nkey_; ik++ ) {
+                Object value = row[ ik ];
+                if ( Tables.isBlank( value ) ) {
+                    value = null;
+                }
+                else if ( value instanceof Double &&
+                          ((Double) value).doubleValue() == 0 ) {
+                    value = Double.valueOf( 0.0 );
+                }
+                else if ( value instanceof Float &&
+                          ((Float) value).floatValue() == 0 ) {
+                    value = Float.valueOf( 0f );
+                }
+                values[ ik ] = value;
+            }
+            return new GroupKey( values );
+        }
+
+        /**
+         * Creates a new group.
+         *
+         * @param  key  group key
+         * @param  irow  index of first row in group
+         * @return  new group
+         */
+        Group createGroup( GroupKey key, long irow ) {
+            int nagg = aggs_.length;
+            AggState[] states = new AggState[ nagg ];
+            for ( int ia = 0; ia < nagg; ia++ ) {
+                states[ ia ] = aggs_[ ia ].createState( aggClazzes_[ ia ] );
+            }
+            return new Group( key, irow, states );
+        }
+
+        /**
+         * Creates a new row store, using byte storage if possible.
+         *
+         * @param  meta  table metadata
+         * @return  row store ready to accept rows
+         */
+        private static RowStore createStore( StarTable meta ) {
+            ByteStoreRowStore store =
+                new ByteStoreRowStore( StoragePolicy.getDefaultPolicy()
+                                      .makeByteStore() );
+            try {
+                store.acceptMetadata( meta );
+                return store;
+            }
+            catch ( TableFormatException e ) {
+                logger_.warning( "Can't serialize group data: " + e
+                               + " - using memory instead" );
+                ListRowStore lstore = new ListRowStore();
+                lstore.acceptMetadata( meta );
+                return lstore;
+            }
+        }
+
+        /**
+         * RowCollector implementation which accumulates groups.
+         */
+        private class GroupCollector extends RowCollector<GroupAccumulator> {
+            private final int irowCol_;
+            private final long limit_;
+
+            /**
+             * Constructor.
+             *
+             * @param  irowCol  index of a column containing the original
+             *                  row index, or -1 to use the row sequence index
+             * @param  limit  maximum number of groups
+             */
+            GroupCollector( int irowCol, long limit ) {
+                irowCol_ = irowCol;
+                limit_ = limit;
+            }
+
+            public GroupAccumulator createAccumulator() {
+                return new GroupAccumulator();
+            }
+
+            public void accumulateRows( RowSplittable rseq,
+                                        GroupAccumulator acc )
+                    throws IOException {
+                Map<GroupKey,Group> map = acc.map_;
+                int nagg = aggs_.length;
+                while ( ! acc.overflow_ && rseq.next() ) {
+                    Object[] row = rseq.getRow();
+                    long irow = irowCol_ >= 0
+                              ? ((Number) row[ irowCol_ ]).longValue()
+                              : rseq.getRowIndex();
+                    GroupKey key = createKey( row );
+                    Group group = map.get( key );
+                    if ( group == null ) {
+                        group = createGroup( key, irow );
+                        map.put( key, group );
+                        if ( map.size() > limit_ ) {
+                            acc.overflow();
+                        }
+                    }
+                    else if ( irow < group.firstRow_ ) {
+                        group.firstRow_ = irow;
+                    }
+                    AggState[] states = group.states_;
+                    for ( int ia = 0; ia < nagg; ia++ ) {
+                        int icol = aggCols_[ ia ];
+                        states[ ia ].submit( icol >= 0 ? row[ icol ] : null );
+                    }
+                }
+            }
+
+            public GroupAccumulator combine( GroupAccumulator acc1,
+                                             GroupAccumulator acc2 ) {
+                if ( acc1.overflow_ || acc2.overflow_ ) {
+                    acc1.overflow();
+                    return acc1;
+                }
+                if ( acc2.map_.size() > acc1.map_.size() ) {
+                    GroupAccumulator acc = acc1;
+                    acc1 = acc2;
+                    acc2 = acc;
+                }
+                Map<GroupKey,Group> map1 = acc1.map_;
+                for ( Group group2 : acc2.map_.values() ) {
+                    Group group1 = map1.get( group2.key_ );
+                    if ( group1 == null ) {
+                        map1.put( group2.key_, group2 );
+                    }
+                    else {
+                        group1.add( group2 );
+                    }
+                }
+                acc2.map_.clear();
+                if ( map1.size() > limit_ ) {
+                    acc1.overflow();
+                }
+                return acc1;
+            }
+        }
+    }
+
+    /**
+     * Accumulator for group collection.
+     */
+    private static class GroupAccumulator {
+        final Map<GroupKey,Group> map_;
+        boolean overflow_;
+
+        GroupAccumulator() {
+            map_ = new HashMap<GroupKey,Group>();
+        }
+
+        /**
+         * Marks this accumulator as having exceeded its group limit,
+         * and discards its contents.
+         */
+        void overflow() {
+            overflow_ = true;
+            map_.clear();
+        }
+    }
+
+    /**
+     * Hash key representing the key values of a group.
+     */
+    private static class GroupKey {
+        final Object[] values_;
+        final int hash_;
+
+        /**
+         * Constructor.
+         *
+         * @param  values  normalised key values
+         */
+        GroupKey( Object[] values ) {
+            values_ = values;
+            hash_ = Arrays.deepHashCode( values );
+        }
+
+        public int hashCode() {
+            return hash_;
+        }
+
+        public boolean equals( Object o ) {
+            return o instanceof GroupKey
+                && ((GroupKey) o).hash_ == hash_
+                && Arrays.deepEquals( ((GroupKey) o).values_, values_ );
+        }
+    }
+
+    /**
+     * Accumulated state for a single group.
+     */
+    private static class Group {
+        final GroupKey key_;
+        final AggState[] states_;
+        long firstRow_;
+
+        /**
+         * Constructor.
+         *
+         * @param  key  group key
+         * @param  firstRow  index of first row in group
+         * @param  states  aggregate accumulators
+         */
+        Group( GroupKey key, long firstRow, AggState[] states ) {
+            key_ = key;
+            firstRow_ = firstRow;
+            states_ = states;
+        }
+
+        /**
+         * Merges another group with the same key into this one.
+         *
+         * @param  other  other group
+         */
+        void add( Group other ) {
+            firstRow_ = Math.min( firstRow_, other.firstRow_ );
+            for ( int ia = 0; ia < states_.length; ia++ ) {
+                states_[ ia ].add( other.states_[ ia ] );
+            }
+        }
+    }
+
+    /**
+     * Accumulates values for a single aggregate in a single group.
+     */
+    private interface AggState {
+
+        /**
+         * Submits a value.
+         *
+         * @param  value  value, may be blank
+         */
+        void submit( Object value );
+
+        /**
+         * Merges the state of another compatible instance into this one.
+         *
+         * @param  other  other state
+         */
+        void add( AggState other );
+
+        /**
+         * Returns the aggregate value.
+         *
+         * @return  result
+         */
+        Object getResult();
+    }
+
+    /**
+     * AggState implementation for counting.
+     */
+    private static class CountState implements AggState {
+        private final boolean countBlanks_;
+        private long count_;
+
+        /**
+         * Constructor.
+         *
+         * @param  countBlanks  true to count blank values
+         */
+        CountState( boolean countBlanks ) {
+            countBlanks_ = countBlanks;
+        }
+
+        public void submit( Object value ) {
+            if ( countBlanks_ || ! Tables.isBlank( value ) ) {
+                count_++;
+            }
+        }
+
+        public void add( AggState other ) {
+            count_ += ((CountState) other).count_;
+        }
+
+        public Object getResult() {
+            return Long.valueOf( count_ );
+        }
+    }
+
+    /**
+     * AggState implementation for summation.
+     */
+    private static class SumState implements AggState {
+        private long count_;
+        private double sum_;
+
+        public void submit( Object value ) {
+            if ( value instanceof Number ) {
+                double dval = ((Number) value).doubleValue();
+                if ( ! Double.isNaN( dval ) ) {
+                    count_++;
+                    sum_ += dval;
+                }
+            }
+        }
+
+        public void add( AggState other ) {
+            SumState o = (SumState) other;
+            count_ += o.count_;
+            sum_ += o.sum_;
+        }
+
+        public Object getResult() {
+            return count_ > 0 ? Double.valueOf( sum_ ) : null;
+        }
+    }
+
+    /**
+     * AggState implementation for mean or standard deviation,
+     * using Welford's algorithm.
+     */
+    private static class MomentState implements AggState {
+        private final boolean isStdev_;
+        private long count_;
+        private double mean_;
+        private double m2_;
+
+        /**
+         * Constructor.
+         *
+         * @param  isStdev  true for sample standard deviation,
+         *                  false for mean
+         */
+        MomentState( boolean isStdev ) {
+            isStdev_ = isStdev;
+        }
+
+        public void submit( Object value ) {
+            if ( value instanceof Number ) {
+                double dval = ((Number) value).doubleValue();
+                if ( ! Double.isNaN( dval ) ) {
+                    count_++;
+                    double delta = dval - mean_;
+                    mean_ += delta / count_;
+                    m2_ += delta * ( dval - mean_ );
+                }
+            }
+        }
+
+        public void add( AggState other ) {
+            MomentState o = (MomentState) other;
+            if ( o.count_ == 0 ) {
+                return;
+            }
+            long n = count_ + o.count_;
+            double delta = o.mean_ - mean_;
+            mean_ += delta * o.count_ / n;
+            m2_ += o.m2_ + delta * delta * count_ * (double) o.count_ / n;
+            count_ = n;
+        }
+
+        public Object getResult() {
+            if ( isStdev_ ) {
+                return count_ > 1 ? Double.valueOf( Math.sqrt( m2_ /
+                                                         ( count_ - 1 ) ) )
+                                  : null;
+            }
+            else {
+                return count_ > 0 ? Double.valueOf( mean_ ) : null;
+            }
+        }
+    }
+
+    /**
+     * AggState implementation for minimum or maximum.
+     */
+    private static class ExtremumState implements AggState {
+        private final boolean isMax_;
+        private Object value_;
+
+        /**
+         * Constructor.
+         *
+         * @param  isMax  true for maximum, false for minimum
+         */
+        ExtremumState( boolean isMax ) {
+            isMax_ = isMax;
+        }
+
+        public void submit( Object value ) {
+            if ( ! Tables.isBlank( value ) &&
+                 ( value_ == null || isBetter( value, value_ ) ) ) {
+                value_ = value;
+            }
+        }
+
+        public void add( AggState other ) {
+            Object value = ((ExtremumState) other).value_;
+            if ( value != null ) {
+                submit( value );
+            }
+        }
+
+        public Object getResult() {
+            return value_;
+        }
+
+        /**
+         * Indicates whether a value should replace the current extremum.
+         *
+         * @param  v1  candidate value
+         * @param  v0  current extremum
+         * @return  true iff v1 is more extreme than v0
+         */
+        @SuppressWarnings("unchecked")
+        private boolean isBetter( Object v1, Object v0 ) {
+            int cmp = v1 instanceof Number && v0 instanceof Number
+                    ? Double.compare( ((Number) v1).doubleValue(),
+                                      ((Number) v0).doubleValue() )
+                    : ((Comparable<Object>) v1).compareTo( v0 );
+            return isMax_ ? cmp > 0 : cmp < 0;
+        }
+    }
+
+    /**
+     * AggState implementation for quantiles.
+     */
+    private static class QuantileState implements AggState {
+        private final SketchQuantCalc calc_;
+        private final double quant_;
+
+        /**
+         * Constructor.
+         *
+         * @param  clazz  numeric value class
+         * @param  quant  quantile in the range 0..1
+         */
+        QuantileState( Class<?> clazz, double quant ) {
+            calc_ = new SketchQuantCalc( clazz, SKETCH_K );
+            quant_ = quant;
+        }
+
+        public void submit( Object value ) {
+            calc_.acceptDatum( value );
+        }
+
+        public void add( AggState other ) {
+            calc_.merge( ((QuantileState) other).calc_ );
+        }
+
+        public Object getResult() {
+            calc_.ready();
+            return calc_.getQuantile( quant_ );
+        }
+    }
+
+    /**
+     * Formats a quantile value for use in a column name.
+     *
+     * @param  quant  quantile in range 0..1
+     * @return  digits following the decimal point
+     */
+    private static String formatQuant( double quant ) {
+        String txt = Double.toString( quant );
+        int ipoint = txt.indexOf( '.' );
+        return ipoint >= 0 ? txt.substring( ipoint + 1 ) : txt;
+    }
+
+    /**
+     * Returns a string with its first character in upper case.
+     *
+     * @param  txt  input string
+     * @return  capitalised string
+     */
+    private static String capitalise( String txt ) {
+        return txt.substring( 0, 1 ).toUpperCase() + txt.substring( 1 );
+    }
+}
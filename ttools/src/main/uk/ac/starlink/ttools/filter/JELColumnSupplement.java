@@ -94,6 +94,24 @@ public class JELColumnSupplement implements ColumnSupplement {
               colInfo == null ? null : new ColumnInfo[] { colInfo } );
     }
 
+    /**
+     * Returns the table providing the JEL context for this supplement.
+     *
+     * @return  input table
+     */
+    public StarTable getInputTable() {
+        return inTable_;
+    }
+
+    /**
+     * Returns the JEL expressions defining this supplement's columns.
+     *
+     * @return   array of expressions, one per column
+     */
+    public String[] getExpressions() {
+        return exprs_.clone();
+    }
+
     public int getColumnCount() {
         return ncol_;
     }
@@ -42,6 +42,15 @@ public class JELSelectorTable extends WrapperStarTable {
         JELUtils.checkExpressionType( lib, baseTable, expr, boolean.class );
     }
 
+    /**
+     * Returns the selection expression.
+     *
+     * @return  boolean JEL expression
+     */
+    public String getExpression() {
+        return expr_;
+    }
+
     public boolean isRandom() {
         return false;
     }
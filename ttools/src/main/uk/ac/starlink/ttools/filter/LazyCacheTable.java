@@ -0,0 +1,714 @@
+package uk.ac.starlink.ttools.filter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.Tables;
+import uk.ac.starlink.table.WrapperStarTable;
+
+/**
+ * Random-access table which caches the columns of a base table
+ * in memory on demand, one column at a time.
+ *
+ * <p>A column is only read from the base table when it is first used,
+ * so consumers that look at only a few columns of a wide table
+ * pay only for those.  The same instance can be shared by several
+ * consumers, which will then share the cached columns.
+ * Scalar numeric and boolean columns are held in primitive arrays.
+ * If the estimated total size of cached columns exceeds a given
+ * budget, the least recently used columns are discarded,
+ * and will be re-read from the base table if they are needed again.
+ * Columns in use since the most recent load are not discarded,
+ * so the budget may be exceeded if the working set is larger than it.
+ *
+ * <p>Every column load requires a pass through the base table,
+ * which must therefore be re-readable.
+ * A request for a whole row loads all uncached columns in a single pass,
+ * and a request for an uncached cell also loads, in the same pass,
+ * any other requested columns that are not cached, that is those
+ * awaited by other threads and those evicted since their last use,
+ * as long as they fit within the budget.
+ * This class is thread-safe.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class LazyCacheTable extends WrapperStarTable {
+
+    private final StarTable base_;
+    private final int ncol_;
+    private final long maxBytes_;
+    private final CachedColumn[] columns_;
+    private final BitSet requested_;
+    private final long[] colBytes_;
+    private final AtomicLong tick_;
+    private volatile long nrow_;
+    private long nbyte_;
+    private long loadTick_;
+
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.ttools.filter" );
+
+    /**
+     * Constructor.
+     *
+     * @param  base  base table
+     * @param  maxBytes  approximate maximum number of bytes of cached
+     *                   column data to retain
+     */
+    public LazyCacheTable( StarTable base, long maxBytes ) {
+        super( base );
+        base_ = base;
+        ncol_ = base.getColumnCount();
+        maxBytes_ = maxBytes;
+        columns_ = new CachedColumn[ ncol_ ];
+        requested_ = new BitSet( ncol_ );
+        colBytes_ = new long[ ncol_ ];
+        tick_ = new AtomicLong();
+        nrow_ = base.isRandom() ? base.getRowCount() : -1;
+    }
+
+    public boolean isRandom() {
+        return true;
+    }
+
+    public long getRowCount() {
+        if ( nrow_ < 0 ) {
+            synchronized ( this ) {
+                if ( nrow_ < 0 ) {
+
+                    /* Counting the rows needs a pass, so take the
+                     * opportunity to load any columns that are wanted;
+                     * if there are none, just count. */
+                    try {
+                        loadColumns( getReloadColumns( -1 ) );
+                    }
+                    catch ( IOException e ) {
+                        logger_.warning( "Can't count rows: " + e );
+                    }
+                }
+            }
+        }
+        return nrow_;
+    }
+
+    public Object getCell( long irow, int icol ) throws IOException {
+
+        /* Get the column first, since loading it also counts the rows. */
+        CachedColumn col = getColumn( icol );
+        checkRow( irow );
+        return col.getValue( (int) irow );
+    }
+
+    public Object[] getRow( long irow ) throws IOException {
+        CachedColumn[] cols = getColumns();
+        checkRow( irow );
+        int ix = (int) irow;
+        Object[] row = new Object[ ncol_ ];
+        for ( int ic = 0; ic < ncol_; ic++ ) {
+            row[ ic ] = cols[ ic ].getValue( ix );
+        }
+        return row;
+    }
+
+    public RowSequence getRowSequence() throws IOException {
+        final long nrow = getRowCount();
+        return new RowSequence() {
+            final CachedColumn[] cols = new CachedColumn[ ncol_ ];
+            long irow = -1;
+            public boolean next() {
+                return ++irow < nrow;
+            }
+            public Object getCell( int icol ) throws IOException {
+                checkSeq();
+                CachedColumn col = cols[ icol ];
+                if ( col == null ) {
+                    col = getColumn( icol );
+                    cols[ icol ] = col;
+                }
+                return col.getValue( (int) irow );
+            }
+            public Object[] getRow() throws IOException {
+                checkSeq();
+                if ( Arrays.asList( cols ).contains( null ) ) {
+                    System.arraycopy( getColumns(), 0, cols, 0, ncol_ );
+                }
+                Object[] row = new Object[ ncol_ ];
+                int ix = (int) irow;
+                for ( int ic = 0; ic < ncol_; ic++ ) {
+                    row[ ic ] = cols[ ic ].getValue( ix );
+                }
+                return row;
+            }
+            public void close() {
+            }
+            private void checkSeq() {
+                if ( irow < 0 || irow >= nrow ) {
+                    throw new IllegalStateException( "No current row" );
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the number of bytes currently estimated to be used by
+     * cached column data.
+     *
+     * @return  cached data size in bytes
+     */
+    public synchronized long getCachedBytes() {
+        return nbyte_;
+    }
+
+    /**
+     * Indicates whether a given column is currently cached.
+     *
+     * @param  icol  column index
+     * @return  true iff column data is in memory
+     */
+    public boolean isCached( int icol ) {
+        return columns_[ icol ] != null;
+    }
+
+    /**
+     * Returns the cached data for a given column, loading it if necessary.
+     * The returned object remains usable even if the column is later
+     * evicted from the cache.
+     *
+     * @param  icol  column index
+     * @return  cached column
+     */
+    private CachedColumn getColumn( int icol ) throws IOException {
+        CachedColumn col = columns_[ icol ];
+        if ( col == null ) {
+
+            /* Record the request before waiting for the lock,
+             * so that a load already in progress on behalf of another
+             * thread is followed by a single pass for all the columns
+             * that were requested in the meantime. */
+            synchronized ( requested_ ) {
+                requested_.set( icol );
+            }
+            synchronized ( this ) {
+                col = columns_[ icol ];
+                if ( col == null ) {
+                    int[] icols = getReloadColumns( icol );
+                    CachedColumn[] loaded = loadColumns( icols );
+
+                    /* Columns reloaded only speculatively are not
+                     * counted as part of the current working set,
+                     * so they are the first candidates for eviction. */
+                    for ( int i = 0; i < icols.length; i++ ) {
+                        if ( icols[ i ] == icol ) {
+                            col = loaded[ i ];
+                        }
+                        else {
+                            loaded[ i ].lastUse_ = loadTick_ - 1;
+                        }
+                    }
+                }
+            }
+        }
+        col.lastUse_ = tick_.incrementAndGet();
+        return col;
+    }
+
+    /**
+     * Returns the indices of columns to load in a pass triggered by
+     * a request for a given column.
+     * As well as the requested one, this includes any other column
+     * that has been requested, either by another thread waiting for
+     * this load or earlier and since evicted, but is not currently cached,
+     * as long as the estimated size of the load fits in the budget.
+     * Must be called while holding this object's lock.
+     *
+     * @param  icol  index of column that must be loaded,
+     *               or -1 if none is required
+     * @return  indices of uncached columns to load
+     */
+    private int[] getReloadColumns( int icol ) {
+        List<Integer> list = new ArrayList<Integer>();
+        long nbyte = 0;
+        if ( icol >= 0 ) {
+            list.add( Integer.valueOf( icol ) );
+            nbyte += colBytes_[ icol ];
+        }
+        BitSet requested;
+        synchronized ( requested_ ) {
+            requested = (BitSet) requested_.clone();
+        }
+        for ( int ic = requested.nextSetBit( 0 ); ic >= 0;
+              ic = requested.nextSetBit( ic + 1 ) ) {
+            if ( ic != icol && columns_[ ic ] == null &&
+                 nbyte + colBytes_[ ic ] <= maxBytes_ ) {
+                list.add( Integer.valueOf( ic ) );
+                nbyte += colBytes_[ ic ];
+            }
+        }
+        int[] icols = new int[ list.size() ];
+        for ( int i = 0; i < icols.length; i++ ) {
+            icols[ i ] = list.get( i ).intValue();
+        }
+        return icols;
+    }
+
+    /**
+     * Returns the cached data for all columns, loading any that are
+     * missing in a single pass.
+     *
+     * @return  ncol-element array of cached columns
+     */
+    private CachedColumn[] getColumns() throws IOException {
+        CachedColumn[] cols = columns_.clone();
+        if ( Arrays.asList( cols ).contains( null ) ) {
+            synchronized ( requested_ ) {
+                requested_.set( 0, ncol_ );
+            }
+            synchronized ( this ) {
+                List<Integer> missing = new ArrayList<Integer>();
+                for ( int ic = 0; ic < ncol_; ic++ ) {
+                    cols[ ic ] = columns_[ ic ];
+                    if ( cols[ ic ] == null ) {
+                        missing.add( Integer.valueOf( ic ) );
+                    }
+                }
+                int nm = missing.size();
+                int[] icols = new int[ nm ];
+                for ( int im = 0; im < nm; im++ ) {
+                    icols[ im ] = missing.get( im ).intValue();
+                }
+                CachedColumn[] loaded = loadColumns( icols );
+                for ( int im = 0; im < nm; im++ ) {
+                    cols[ icols[ im ] ] = loaded[ im ];
+                }
+            }
+        }
+        long tick = tick_.incrementAndGet();
+        for ( CachedColumn col : cols ) {
+            col.lastUse_ = tick;
+        }
+        return cols;
+    }
+
+    /**
+     * Reads the given columns from the base table in a single pass
+     * and enters them into the cache.
+     * The row count is also established.
+     * Must be called while holding this object's lock.
+     *
+     * @param  icols  indices of columns to load
+     * @return  loaded columns, one for each element of <code>icols</code>
+     */
+    private CachedColumn[] loadColumns( int[] icols ) throws IOException {
+        int nc = icols.length;
+        long nrow = nrow_;
+        int size0 = nrow >= 0 ? Tables.checkedLongToInt( nrow ) : 1024;
+        ColumnBuilder[] builders = new ColumnBuilder[ nc ];
+        for ( int i = 0; i < nc; i++ ) {
+            builders[ i ] =
+                createBuilder( base_.getColumnInfo( icols[ i ] )
+                                    .getContentClass(), size0 );
+        }
+        long irow = 0;
+        RowSequence rseq = base_.getRowSequence();
+        try {
+            while ( rseq.next() ) {
+                int ix = Tables.checkedLongToInt( irow++ );
+                for ( int i = 0; i < nc; i++ ) {
+                    builders[ i ].add( ix, rseq.getCell( icols[ i ] ) );
+                }
+            }
+        }
+        finally {
+            rseq.close();
+        }
+        if ( nrow >= 0 && irow != nrow ) {
+            throw new IOException( "Row count changed on re-read ("
+                                 + nrow + " -> " + irow + ")" );
+        }
+        nrow_ = irow;
+        int n = (int) irow;
+        CachedColumn[] cols = new CachedColumn[ nc ];
+        long nbyte = 0;
+        for ( int i = 0; i < nc; i++ ) {
+            cols[ i ] = builders[ i ].build( n );
+            nbyte += cols[ i ].nbyte_;
+        }
+
+        /* Evict least recently used columns to make room.
+         * Columns that have been used since the last load are treated
+         * as the current working set and are kept even if that means
+         * exceeding the budget; otherwise interleaved access to
+         * several columns could cause every access to trigger a reload. */
+        while ( nbyte_ + nbyte > maxBytes_ ) {
+            int iold = -1;
+            for ( int ic = 0; ic < ncol_; ic++ ) {
+                CachedColumn col = columns_[ ic ];
+                if ( col != null && col.lastUse_ < loadTick_ &&
+                     ( iold < 0 || col.lastUse_ < columns_[ iold ].lastUse_ ) ){
+                    iold = ic;
+                }
+            }
+            if ( iold < 0 ) {
+                break;
+            }
+            logger_.config( "Evicting cached column "
+                          + base_.getColumnInfo( iold ).getName() );
+            nbyte_ -= columns_[ iold ].nbyte_;
+            columns_[ iold ] = null;
+        }
+        long tick = tick_.incrementAndGet();
+        loadTick_ = tick;
+        for ( int i = 0; i < nc; i++ ) {
+            cols[ i ].lastUse_ = tick;
+            columns_[ icols[ i ] ] = cols[ i ];
+            colBytes_[ icols[ i ] ] = cols[ i ].nbyte_;
+        }
+        nbyte_ += nbyte;
+        return cols;
+    }
+
+    /**
+     * Checks that a row index is legal for random access.
+     *
+     * @param  irow  row index
+     */
+    private void checkRow( long irow ) {
+        long nrow = getRowCount();
+        if ( irow < 0 || irow >= nrow ) {
+            throw new IllegalArgumentException( "Row " + irow
+                                              + " out of range 0-" + nrow );
+        }
+    }
+
+    /**
+     * Returns a builder suitable for values of a given class.
+     *
+     * @param  clazz  column content class
+     * @param  size0  initial capacity
+     * @return  new builder
+     */
+    private static ColumnBuilder createBuilder( Class<?> clazz, int size0 ) {
+        if ( clazz == Double.class ) {
+            return new DoubleBuilder( size0 );
+        }
+        else if ( clazz == Float.class ) {
+            return new FloatBuilder( size0 );
+        }
+        else if ( clazz == Long.class ) {
+            return new LongBuilder( size0 );
+        }
+        else if ( clazz == Integer.class ) {
+            return new IntBuilder( size0 );
+        }
+        else if ( clazz == Short.class ) {
+            return new ShortBuilder( size0 );
+        }
+        else if ( clazz == Byte.class ) {
+            return new ByteBuilder( size0 );
+        }
+        else if ( clazz == Boolean.class ) {
+            return new BooleanBuilder( size0 );
+        }
+        else {
+            return new ObjectBuilder( size0 );
+        }
+    }
+
+    /**
+     * Holds the data for one column.
+     */
+    private static abstract class CachedColumn {
+        final long nbyte_;
+        volatile long lastUse_;
+
+        /**
+         * Constructor.
+         *
+         * @param  nbyte  estimated memory usage in bytes
+         */
+        CachedColumn( long nbyte ) {
+            nbyte_ = nbyte;
+        }
+
+        /**
+         * Returns the value at a given row.
+         *
+         * @param  irow  row index
+         * @return  cell value
+         */
+        abstract Object getValue( int irow );
+    }
+
+    /**
+     * Accumulates the data for one column.
+     */
+    private static abstract class ColumnBuilder {
+        final BitSet nulls_ = new BitSet();
+        int capacity_;
+
+        /**
+         * Constructor.
+         *
+         * @param  size0  initial capacity
+         */
+        ColumnBuilder( int size0 ) {
+            capacity_ = Math.max( size0, 16 );
+        }
+
+        /**
+         * Adds a value.  Values are added in row order.
+         *
+         * @param  irow  row index
+         * @param  value  cell value
+         */
+        void add( int irow, Object value ) {
+            if ( irow >= capacity_ ) {
+                capacity_ = (int) Math.min( Integer.MAX_VALUE - 8,
+                                            capacity_ * 2L );
+                grow( capacity_ );
+            }
+            if ( value == null ) {
+                nulls_.set( irow );
+            }
+            else {
+                store( irow, value );
+            }
+        }
+
+        /**
+         * Resizes the storage.
+         *
+         * @param  capacity  new capacity
+         */
+        abstract void grow( int capacity );
+
+        /**
+         * Stores a non-null value.
+         *
+         * @param  irow  row index
+         * @param  value  value
+         */
+        abstract void store( int irow, Object value );
+
+        /**
+         * Returns a cached column containing the accumulated data.
+         *
+         * @param  nrow  number of rows added
+         * @return  column
+         */
+        abstract CachedColumn build( int nrow );
+    }
+
+    /**
+     * Returns the estimated memory usage of a null mask.
+     *
+     * @param  nulls  null mask
+     * @return  size in bytes
+     */
+    private static long maskBytes( BitSet nulls ) {
+        return nulls.size() / 8;
+    }
+
+    private static class DoubleBuilder extends ColumnBuilder {
+        double[] data_;
+        DoubleBuilder( int size0 ) {
+            super( size0 );
+            data_ = new double[ capacity_ ];
+        }
+        void grow( int capacity ) {
+            data_ = Arrays.copyOf( data_, capacity );
+        }
+        void store( int irow, Object value ) {
+            data_[ irow ] = ((Double) value).doubleValue();
+        }
+        CachedColumn build( int nrow ) {
+            final double[] data = Arrays.copyOf( data_, nrow );
+            final BitSet nulls = nulls_;
+            return new CachedColumn( 8L * nrow + maskBytes( nulls ) ) {
+                Object getValue( int irow ) {
+                    return nulls.get( irow ) ? null
+                                             : new Double( data[ irow ] );
+                }
+            };
+        }
+    }
+
+    private static class FloatBuilder extends ColumnBuilder {
+        float[] data_;
+        FloatBuilder( int size0 ) {
+            super( size0 );
+            data_ = new float[ capacity_ ];
+        }
+        void grow( int capacity ) {
+            data_ = Arrays.copyOf( data_, capacity );
+        }
+        void store( int irow, Object value ) {
+            data_[ irow ] = ((Float) value).floatValue();
+        }
+        CachedColumn build( int nrow ) {
+            final float[] data = Arrays.copyOf( data_, nrow );
+            final BitSet nulls = nulls_;
+            return new CachedColumn( 4L * nrow + maskBytes( nulls ) ) {
+                Object getValue( int irow ) {
+                    return nulls.get( irow ) ? null
+                                             : new Float( data[ irow ] );
+                }
+            };
+        }
+    }
+
+    private static class LongBuilder extends ColumnBuilder {
+        long[] data_;
+        LongBuilder( int size0 ) {
+            super( size0 );
+            data_ = new long[ capacity_ ];
+        }
+        void grow( int capacity ) {
+            data_ = Arrays.copyOf( data_, capacity );
+        }
+        void store( int irow, Object value ) {
+            data_[ irow ] = ((Long) value).longValue();
+        }
+        CachedColumn build( int nrow ) {
+            final long[] data = Arrays.copyOf( data_, nrow );
+            final BitSet nulls = nulls_;
+            return new CachedColumn( 8L * nrow + maskBytes( nulls ) ) {
+                Object getValue( int irow ) {
+                    return nulls.get( irow ) ? null
+                                             : new Long( data[ irow ] );
+                }
+            };
+        }
+    }
+
+    private static class IntBuilder extends ColumnBuilder {
+        int[] data_;
+        IntBuilder( int size0 ) {
+            super( size0 );
+            data_ = new int[ capacity_ ];
+        }
+        void grow( int capacity ) {
+            data_ = Arrays.copyOf( data_, capacity );
+        }
+        void store( int irow, Object value ) {
+            data_[ irow ] = ((Integer) value).intValue();
+        }
+        CachedColumn build( int nrow ) {
+            final int[] data = Arrays.copyOf( data_, nrow );
+            final BitSet nulls = nulls_;
+            return new CachedColumn( 4L * nrow + maskBytes( nulls ) ) {
+                Object getValue( int irow ) {
+                    return nulls.get( irow ) ? null
+                                             : new Integer( data[ irow ] );
+                }
+            };
+        }
+    }
+
+    private static class ShortBuilder extends ColumnBuilder {
+        short[] data_;
+        ShortBuilder( int size0 ) {
+            super( size0 );
+            data_ = new short[ capacity_ ];
+        }
+        void grow( int capacity ) {
+            data_ = Arrays.copyOf( data_, capacity );
+        }
+        void store( int irow, Object value ) {
+            data_[ irow ] = ((Short) value).shortValue();
+        }
+        CachedColumn build( int nrow ) {
+            final short[] data = Arrays.copyOf( data_, nrow );
+            final BitSet nulls = nulls_;
+            return new CachedColumn( 2L * nrow + maskBytes( nulls ) ) {
+                Object getValue( int irow ) {
+                    return nulls.get( irow ) ? null
+                                             : new Short( data[ irow ] );
+                }
+            };
+        }
+    }
+
+    private static class ByteBuilder extends ColumnBuilder {
+        byte[] data_;
+        ByteBuilder( int size0 ) {
+            super( size0 );
+            data_ = new byte[ capacity_ ];
+        }
+        void grow( int capacity ) {
+            data_ = Arrays.copyOf( data_, capacity );
+        }
+        void store( int irow, Object value ) {
+            data_[ irow ] = ((Byte) value).byteValue();
+        }
+        CachedColumn build( int nrow ) {
+            final byte[] data = Arrays.copyOf( data_, nrow );
+            final BitSet nulls = nulls_;
+            return new CachedColumn( 1L * nrow + maskBytes( nulls ) ) {
+                Object getValue( int irow ) {
+                    return nulls.get( irow ) ? null
+                                             : new Byte( data[ irow ] );
+                }
+            };
+        }
+    }
+
+    private static class BooleanBuilder extends ColumnBuilder {
+        final BitSet trues_ = new BitSet();
+        BooleanBuilder( int size0 ) {
+            super( size0 );
+        }
+        void grow( int capacity ) {
+        }
+        void store( int irow, Object value ) {
+            if ( ((Boolean) value).booleanValue() ) {
+                trues_.set( irow );
+            }
+        }
+        CachedColumn build( int nrow ) {
+            final BitSet trues = trues_;
+            final BitSet nulls = nulls_;
+            return new CachedColumn( maskBytes( trues )
+                                   + maskBytes( nulls ) ) {
+                Object getValue( int irow ) {
+                    return nulls.get( irow )
+                         ? null
+                         : Boolean.valueOf( trues.get( irow ) );
+                }
+            };
+        }
+    }
+
+    /**
+     * Builder for non-primitive values.  Memory usage is a rough guess,
+     * since the objects themselves may be of any size.
+     */
+    private static class ObjectBuilder extends ColumnBuilder {
+        Object[] data_;
+        ObjectBuilder( int size0 ) {
+            super( size0 );
+            data_ = new Object[ capacity_ ];
+        }
+        void grow( int capacity ) {
+            data_ = Arrays.copyOf( data_, capacity );
+        }
+        void store( int irow, Object value ) {
+            data_[ irow ] = value;
+        }
+        CachedColumn build( int nrow ) {
+            final Object[] data = Arrays.copyOf( data_, nrow );
+            return new CachedColumn( 48L * nrow ) {
+                Object getValue( int irow ) {
+                    return data[ irow ];
+                }
+            };
+        }
+    }
+}
@@ -43,13 +43,13 @@ public abstract class QuantCalc {
      * @param    obj  data object - must be instance of numeric class 
      *           suitable for this accumulator
      */
-    public abstract void acceptDatum( Object obj );
+    public abstract void acceptDatum( Object obj ) throws IOException;
 
     /**
      * Call this method after all {@link #acceptDatum} calls have been made
      * and before any call to {@link #getQuantile}.
      */
-    public abstract void ready();
+    public abstract void ready() throws IOException;
 
     /**
      * Returns a quantile corresponding to a given point.
@@ -57,7 +57,7 @@ public abstract class QuantCalc {
      * @param  quant  quant value between 0 and 1, 
      *         for instance 0.5 indicates median
      */
-    public abstract Number getQuantile( double quant );
+    public abstract Number getQuantile( double quant ) throws IOException;
 
     /**
      * Returns the number of non-blank values accumulated by this calculator.
@@ -77,9 +77,37 @@ public abstract class QuantCalc {
      */
     public abstract Iterator<Number> getValueIterator();
 
+    /**
+     * Releases any resources held by this calculator.
+     * Following this call, the results of other methods are undefined.
+     * The default implementation does nothing.
+     */
+    public void close() {
+    }
+
+    /**
+     * Submits the absolute deviation from a given value of each
+     * value accumulated by this calculator to another calculator.
+     * The default implementation uses {@link #getValueIterator};
+     * subclasses may override it to read the values more efficiently.
+     *
+     * @param  median  value from which deviations are calculated
+     * @param  madCalc  calculator to receive deviations
+     */
+    protected void acceptDeviations( double median, QuantCalc madCalc )
+            throws IOException {
+        for ( Iterator<Number> it = getValueIterator(); it.hasNext(); ) {
+            double val = it.next().doubleValue();
+            madCalc.acceptDatum( Math.abs( val - median ) );
+        }
+    }
+
     /**
      * Factory method to create a quantile accumulator for a given 
      * row count and value class.
+     * Floating point values are accumulated exactly; if there are
+     * too many to hold comfortably in memory they are spilled to
+     * temporary disk files.
      *
      * @param  nrow  row count; may be -1 to indicate that the row count
      *         is unknown
@@ -101,24 +129,34 @@ public abstract class QuantCalc {
         else if ( clazz == Long.class ) {
             return new CountMapQuantCalc( Long.class );
         }
-        else if ( nrow >= 0 && nrow < Integer.MAX_VALUE ) {
+        else if ( nrow >= 0 && nrow <= SpillQuantCalc.DEFAULT_BUFFER_LIMIT ) {
             return new FloatArrayQuantCalc( clazz, (int) nrow );
         }
-        else if ( nrow >= Integer.MAX_VALUE ) {
-            throw new IOException( "Sorry, too many rows for quantile " +
-                                   "calculation (" + nrow + " > " +
-                                   Integer.MAX_VALUE );
-        }
         else {
-            assert nrow < 0
-               && ( clazz == Float.class || clazz == Double.class );
-            return new DoubleListQuantCalc( clazz );
+            assert clazz == Float.class || clazz == Double.class;
+            return new SpillQuantCalc( clazz );
         }
     }
 
+    /**
+     * Factory method to create a quantile accumulator which
+     * calculates approximate quantiles in bounded memory.
+     * The result supports merging of partial results,
+     * and its accuracy does not depend on the number of values.
+     *
+     * @param  clazz  class of data objects which will be submitted;
+     *         must be assignable from Number.class.
+     * @return  new approximate accumulator
+     */
+    public static SketchQuantCalc
+            createApproximateInstance( Class<? extends Number> clazz ) {
+        return new SketchQuantCalc( clazz );
+    }
+
     /**
      * Calculates the median absolute deviation of the statistics
      * accumulated by a QuantCalc.
+     * If the supplied calculator is approximate, so is the result.
      *
      * @param   qcalc  calculator in ready state
      * @return   sum(abs(x_i - median))
@@ -126,14 +164,53 @@ public abstract class QuantCalc {
     public static double calculateMedianAbsoluteDeviation( QuantCalc qcalc )
             throws IOException {
         double median = qcalc.getQuantile( 0.5 ).doubleValue();
+        boolean isSketch = qcalc instanceof SketchQuantCalc;
         QuantCalc madCalc =
-            QuantCalc.createInstance( Double.class, qcalc.getValueCount() );
-        for ( Iterator<Number> it = qcalc.getValueIterator(); it.hasNext(); ) {
-            double val = it.next().doubleValue();
-            madCalc.acceptDatum( Math.abs( val - median ) );
+              isSketch
+            ? ((SketchQuantCalc) qcalc).createDeviationCalc( median )
+            : QuantCalc.createInstance( Double.class, qcalc.getValueCount() );
+        try {
+            if ( ! isSketch ) {
+                qcalc.acceptDeviations( median, madCalc );
+            }
+            madCalc.ready();
+            return madCalc.getQuantile( 0.5 ).doubleValue();
+        }
+        finally {
+            madCalc.close();
+        }
+    }
+
+    /**
+     * Converts a double value to a numeric object of a given class,
+     * as returned by the {@link #getQuantile} method.
+     *
+     * @param  clazz  numeric class
+     * @param  value  value
+     * @return  number of type clazz, or null for unknown class
+     */
+    static Number convertValue( Class<?> clazz, double value ) {
+        if ( clazz == Double.class ) {
+            return new Double( value );
+        }
+        else if ( clazz == Float.class ) {
+            return new Float( (float) value );
+        }
+        else if ( clazz == Byte.class ) {
+            return new Byte( (byte) value );
+        }
+        else if ( clazz == Short.class ) {
+            return new Short( (short) value );
+        }
+        else if ( clazz == Integer.class ) {
+            return new Integer( (int) value );
+        }
+        else if ( clazz == Long.class ) {
+            return new Long( (long) value );
+        }
+        else {
+            return null;
         }
-        madCalc.ready();
-        return madCalc.getQuantile( 0.5 ).doubleValue();
     }
 
     /**
@@ -0,0 +1,376 @@
+package uk.ac.starlink.ttools.filter;
+
+import gnu.jel.CompilationException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import uk.ac.starlink.table.JoinStarTable;
+import uk.ac.starlink.table.RowCollector;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.RowSplittable;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.Tables;
+import uk.ac.starlink.ttools.jel.JELTable;
+
+/**
+ * Processing filter which selects a uniform random sample of a fixed
+ * number of rows, optionally separately for each of a number of strata.
+ *
+ * <p>Reservoir sampling is used, so that only one pass through the data
+ * is required and memory use is bounded by the sample size.
+ * Each row is assigned a pseudo-random priority derived from its
+ * row index and a seed, and the rows with the lowest priorities are
+ * retained.  Since a row's priority does not depend on how the table
+ * is read, the sample is reproducible, and partial reservoirs
+ * accumulated in parallel can simply be merged.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class SampleFilter extends BasicFilter {
+
+    /**
+     * Constructor.
+     */
+    public SampleFilter() {
+        super( "sample", "[-seed <int>] [-strata <expr>] <nrows>" );
+    }
+
+    protected String[] getDescriptionLines() {
+        return new String[] {
+            "<p>Selects a random sample of <code>&lt;nrows&gt;</code> rows",
+            "from the table, each row having an equal chance of selection.",
+            "If the table has fewer rows than that, all are retained.",
+            "Selected rows appear in their original order.",
+            "</p>",
+            "<p>If <code>-strata</code> is given, then",
+            "<code>&lt;expr&gt;</code> is evaluated for each row,",
+            "and up to <code>&lt;nrows&gt;</code> rows are selected",
+            "separately for each distinct value it takes.",
+            "This can be used to get a sample that is balanced between",
+            "categories; for instance",
+            "<code>-strata healpixNestIndex(5,RA,DEC)</code>",
+            "gives a sample with a roughly uniform sky density",
+            "(up to <code>&lt;nrows&gt;</code> per HEALPix level 5 tile)",
+            "even for a very clumpy input catalogue.",
+            "Blank values of <code>&lt;expr&gt;</code> form a stratum",
+            "of their own.",
+            "</p>",
+            "<p>The selection is pseudo-random, and is determined by",
+            "the seed value given by <code>-seed</code> (default 0);",
+            "the same seed applied to the same table always gives the",
+            "same sample.",
+            "</p>",
+            "<p>Only a single pass through the data is required, and",
+            "memory use depends on the sample size but not",
+            "on the size of the input table,",
+            "so this is suitable for sampling very large or streamed",
+            "tables whose length may not be known in advance.",
+            "For random-access tables the work may be done in parallel.",
+            "</p>",
+            explainSyntax( new String[] { "expr" } ),
+        };
+    }
+
+    public ProcessingStep createStep( Iterator<String> argIt )
+            throws ArgException {
+        long seed = 0;
+        String strataExpr = null;
+        int nrow = -1;
+        while ( argIt.hasNext() && nrow < 0 ) {
+            String arg = argIt.next();
+            if ( arg.equals( "-seed" ) && argIt.hasNext() ) {
+                argIt.remove();
+                String sval = argIt.next();
+                argIt.remove();
+                try {
+                    seed = Long.parseLong( sval );
+                }
+                catch ( NumberFormatException e ) {
+                    throw new ArgException( "-seed not numeric: " + sval );
+                }
+            }
+            else if ( arg.equals( "-strata" ) && argIt.hasNext() ) {
+                argIt.remove();
+                strataExpr = argIt.next();
+                argIt.remove();
+            }
+            else {
+                argIt.remove();
+                try {
+                    nrow = Integer.parseInt( arg );
+                }
+                catch ( NumberFormatException e ) {
+                    throw new ArgException( "<nrows> not numeric: " + arg );
+                }
+                if ( nrow <= 0 ) {
+                    throw new ArgException( "Non-positive <nrows>: " + nrow );
+                }
+            }
+        }
+        if ( nrow < 0 ) {
+            throw new ArgException( "No <nrows> given" );
+        }
+        return new SampleStep( nrow, strataExpr, seed );
+    }
+
+    /**
+     * Returns the selection priority for a given row.
+     * This is a pseudo-random function of its arguments.
+     *
+     * @param  seed  seed
+     * @param  irow  row index
+     * @return   priority; lower values are preferred
+     */
+    static long getPriority( long seed, long irow ) {
+
+        /* SplitMix64 finaliser. */
+        long z = seed + ( irow + 1 ) * 0x9e3779b97f4a7c15L;
+        z = ( z ^ ( z >>> 30 ) ) * 0xbf58476d1ce4e5b9L;
+        z = ( z ^ ( z >>> 27 ) ) * 0x94d049bb133111ebL;
+        return ( z ^ ( z >>> 31 ) ) >>> 1;
+    }
+
+    /**
+     * Processing step implementation.
+     */
+    private static class SampleStep implements ProcessingStep {
+        private final int nrow_;
+        private final String strataExpr_;
+        private final long seed_;
+
+        /**
+         * Constructor.
+         *
+         * @param  nrow  maximum number of rows per stratum
+         * @param  strataExpr  stratum expression, or null
+         * @param  seed   random seed
+         */
+        SampleStep( int nrow, String strataExpr, long seed ) {
+            nrow_ = nrow;
+            strataExpr_ = strataExpr;
+            seed_ = seed;
+        }
+
+        public StarTable wrap( StarTable base ) throws IOException {
+
+            /* If there is a stratum expression, append it as an extra
+             * column to the table we will read. */
+            int ncol = base.getColumnCount();
+            final StarTable inTable;
+            if ( strataExpr_ == null ) {
+                inTable = base;
+            }
+            else {
+                StarTable strataTable;
+                try {
+                    strataTable =
+                        JELTable.createJELTable( base,
+                                                 new String[] { strataExpr_ } );
+                }
+                catch ( CompilationException e ) {
+                    throw (IOException)
+                          new IOException( "Bad strata expression: "
+                                         + e.getMessage() )
+                         .initCause( e );
+                }
+                inTable =
+                    new JoinStarTable( new StarTable[] { base, strataTable } );
+            }
+
+            /* Collect the sample. */
+            Map<Object,Reservoir> strata =
+                new SampleCollector( ncol, strataExpr_ != null )
+               .collect( inTable, true );
+
+            /* Assemble the output in the original row order. */
+            List<Entry> entries = new ArrayList<Entry>();
+            for ( Reservoir res : strata.values() ) {
+                entries.addAll( res.queue_ );
+            }
+            strata.clear();
+            Collections.sort( entries, new Comparator<Entry>() {
+                public int compare( Entry e1, Entry e2 ) {
+                    return Long.compare( e1.irow_, e2.irow_ );
+                }
+            } );
+            RowListStarTable outTable = new RowListStarTable( base );
+            for ( Entry entry : entries ) {
+                outTable.addRow( entry.row_ );
+            }
+            return outTable;
+        }
+
+        /**
+         * RowCollector implementation which accumulates reservoirs.
+         * The accumulator is a map from stratum value to reservoir.
+         */
+        private class SampleCollector
+                extends RowCollector<Map<Object,Reservoir>> {
+            private final int ncol_;
+            private final boolean hasStrata_;
+
+            /**
+             * Constructor.
+             *
+             * @param  ncol  number of columns in the output table;
+             *               any further column contains the stratum value
+             * @param  hasStrata  whether a stratum column is present
+             */
+            SampleCollector( int ncol, boolean hasStrata ) {
+                ncol_ = ncol;
+                hasStrata_ = hasStrata;
+            }
+
+            public Map<Object,Reservoir> createAccumulator() {
+                return new HashMap<Object,Reservoir>();
+            }
+
+            public void accumulateRows( RowSplittable rseq,
+                                        Map<Object,Reservoir> acc )
+                    throws IOException {
+                Reservoir res0 = null;
+                while ( rseq.next() ) {
+                    long irow = rseq.getRowIndex();
+                    long priority = getPriority( seed_, irow );
+                    final Reservoir res;
+                    final Object[] row;
+                    if ( hasStrata_ ) {
+                        row = rseq.getRow();
+                        Object key = row[ ncol_ ];
+                        if ( Tables.isBlank( key ) ) {
+                            key = null;
+                        }
+                        Reservoir r = acc.get( key );
+                        if ( r == null ) {
+                            r = new Reservoir( nrow_ );
+                            acc.put( key, r );
+                        }
+                        res = r;
+                    }
+                    else {
+                        if ( res0 == null ) {
+                            res0 = new Reservoir( nrow_ );
+                            acc.put( null, res0 );
+                        }
+                        res = res0;
+                        row = null;
+                    }
+                    if ( res.accepts( priority ) ) {
+                        Object[] r = row == null ? rseq.getRow() : row;
+                        res.add( new Entry( priority, irow,
+                                            Arrays.copyOf( r, ncol_ ) ) );
+                    }
+                }
+            }
+
+            public Map<Object,Reservoir> combine( Map<Object,Reservoir> acc1,
+                                                  Map<Object,Reservoir> acc2 ) {
+                if ( acc2.size() > acc1.size() ) {
+                    Map<Object,Reservoir> acc = acc1;
+                    acc1 = acc2;
+                    acc2 = acc;
+                }
+                for ( Map.Entry<Object,Reservoir> ent2 : acc2.entrySet() ) {
+                    Object key = ent2.getKey();
+                    Reservoir res1 = acc1.get( key );
+                    if ( res1 == null ) {
+                        acc1.put( key, ent2.getValue() );
+                    }
+                    else {
+                        for ( Entry entry : ent2.getValue().queue_ ) {
+                            if ( res1.accepts( entry.priority_ ) ) {
+                                res1.add( entry );
+                            }
+                        }
+                    }
+                }
+                acc2.clear();
+                return acc1;
+            }
+        }
+    }
+
+    /**
+     * Holds the retained rows for one stratum.
+     * The entries with the lowest priorities are kept.
+     */
+    private static class Reservoir {
+        final int size_;
+        final PriorityQueue<Entry> queue_;
+
+        /**
+         * Constructor.
+         *
+         * @param  size  maximum number of retained entries
+         */
+        Reservoir( int size ) {
+            size_ = size;
+            queue_ = new PriorityQueue<Entry>( Math.min( size, 1024 ),
+                                               new Comparator<Entry>() {
+                public int compare( Entry e1, Entry e2 ) {
+                    return e2.compareTo( e1 );
+                }
+            } );
+        }
+
+        /**
+         * Indicates whether an entry with a given priority would be
+         * retained if added.
+         *
+         * @param  priority  priority
+         * @return  true iff there is room or the priority beats the worst
+         */
+        boolean accepts( long priority ) {
+            return queue_.size() < size_
+                || priority < queue_.peek().priority_;
+        }
+
+        /**
+         * Adds an entry, evicting the worst one if necessary.
+         * Should only be called if {@link #accepts} is true.
+         *
+         * @param  entry  new entry
+         */
+        void add( Entry entry ) {
+            if ( queue_.size() >= size_ ) {
+                queue_.poll();
+            }
+            queue_.add( entry );
+        }
+    }
+
+    /**
+     * Sampled row with its selection priority.
+     */
+    private static class Entry implements Comparable<Entry> {
+        final long priority_;
+        final long irow_;
+        final Object[] row_;
+
+        /**
+         * Constructor.
+         *
+         * @param  priority  selection priority
+         * @param  irow   row index
+         * @param  row   row data
+         */
+        Entry( long priority, long irow, Object[] row ) {
+            priority_ = priority;
+            irow_ = irow;
+            row_ = row;
+        }
+
+        public int compareTo( Entry other ) {
+            int c = Long.compare( this.priority_, other.priority_ );
+            return c != 0 ? c : Long.compare( this.irow_, other.irow_ );
+        }
+    }
+}
@@ -41,7 +41,7 @@ public class SelectFilter extends BasicFilter {
         }
     }
 
-    private static class SelectStep implements ProcessingStep {
+    static class SelectStep implements ProcessingStep {
         final String expr_;
         public SelectStep( String expr ) {
             expr_ = expr;
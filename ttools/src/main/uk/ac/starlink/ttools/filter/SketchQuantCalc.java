@@ -0,0 +1,350 @@
+package uk.ac.starlink.ttools.filter;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * QuantCalc implementation which calculates approximate quantiles
+ * in bounded memory using a KLL sketch
+ * (Karnin, Lang and Liberty 2016).
+ *
+ * <p>Values are held in a hierarchy of compactors; when a compactor
+ * fills up, it is sorted and every other value (starting at a random
+ * offset) is promoted to the next level with twice the weight.
+ * Storage is of order <code>k</code> values independent of the number
+ * of values submitted, and the rank error of a returned quantile
+ * is typically of order <code>1/k</code>.
+ * The minimum and maximum values are tracked exactly.
+ *
+ * <p>Sketches accumulated separately from different parts of a
+ * data stream can be combined using {@link #merge}.
+ * The random number generator is seeded deterministically,
+ * so results are reproducible for the same input sequence.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class SketchQuantCalc extends QuantCalc {
+
+    private final Class<?> clazz_;
+    private final int k_;
+    private final Random random_;
+    private double[][] levels_;
+    private int[] sizes_;
+    private long count_;
+    private double min_;
+    private double max_;
+    private double[] sortedValues_;
+    private long[] sortedCumWeights_;
+
+    /** Default accuracy parameter. */
+    public static final int DEFAULT_K = 512;
+
+    /** Smallest permitted compactor capacity. */
+    private static final int MIN_CAPACITY = 8;
+
+    /** Ratio between capacities of adjacent compactor levels. */
+    private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+    /**
+     * Constructs a sketch with the default accuracy.
+     *
+     * @param  clazz  class of data objects which will be submitted;
+     *                must be assignable from Number class
+     */
+    public SketchQuantCalc( Class<?> clazz ) {
+        this( clazz, DEFAULT_K );
+    }
+
+    /**
+     * Constructs a sketch with a given accuracy parameter.
+     *
+     * @param  clazz  class of data objects which will be submitted;
+     *                must be assignable from Number class
+     * @param  k  accuracy parameter; approximately the number of values
+     *            held in the top level compactor
+     */
+    public SketchQuantCalc( Class<?> clazz, int k ) {
+        super( clazz );
+        if ( k < MIN_CAPACITY ) {
+            throw new IllegalArgumentException( "k " + k + " too small" );
+        }
+        clazz_ = clazz;
+        k_ = k;
+        random_ = new Random( 299792458L );
+        levels_ = new double[ 1 ][];
+        levels_[ 0 ] = new double[ MIN_CAPACITY ];
+        sizes_ = new int[ 1 ];
+        min_ = Double.NaN;
+        max_ = Double.NaN;
+    }
+
+    public void acceptDatum( Object obj ) {
+        if ( obj instanceof Number ) {
+            double dval = ((Number) obj).doubleValue();
+            if ( ! Double.isNaN( dval ) ) {
+                acceptValue( dval );
+            }
+        }
+    }
+
+    /**
+     * Submits a non-blank numeric value.
+     *
+     * @param  dval  value, not NaN
+     */
+    private void acceptValue( double dval ) {
+        if ( count_ == 0 ) {
+            min_ = dval;
+            max_ = dval;
+        }
+        else {
+            min_ = Math.min( min_, dval );
+            max_ = Math.max( max_, dval );
+        }
+        count_++;
+        append( 0, dval );
+        if ( sizes_[ 0 ] >= getCapacity( 0 ) ) {
+            compress();
+        }
+    }
+
+    /**
+     * Incorporates the state of another sketch into this one.
+     * Following this call, this object represents the values
+     * submitted to both.  The other sketch is not affected.
+     *
+     * @param  other  other sketch
+     */
+    public void merge( SketchQuantCalc other ) {
+        if ( other.count_ == 0 ) {
+            return;
+        }
+        if ( count_ == 0 ) {
+            min_ = other.min_;
+            max_ = other.max_;
+        }
+        else {
+            min_ = Math.min( min_, other.min_ );
+            max_ = Math.max( max_, other.max_ );
+        }
+        count_ += other.count_;
+        for ( int ih = 0; ih < other.levels_.length; ih++ ) {
+            double[] items = other.levels_[ ih ];
+            int n = other.sizes_[ ih ];
+            for ( int i = 0; i < n; i++ ) {
+                append( ih, items[ i ] );
+            }
+        }
+        compress();
+        sortedValues_ = null;
+        sortedCumWeights_ = null;
+    }
+
+    public void ready() {
+        int nitem = 0;
+        for ( int size : sizes_ ) {
+            nitem += size;
+        }
+        double[] values = new double[ nitem ];
+        int[] heights = new int[ nitem ];
+        int ix = 0;
+        for ( int ih = 0; ih < levels_.length; ih++ ) {
+            for ( int i = 0; i < sizes_[ ih ]; i++ ) {
+                values[ ix ] = levels_[ ih ][ i ];
+                heights[ ix ] = ih;
+                ix++;
+            }
+        }
+
+        /* Sort items by value, carrying their weights along. */
+        Integer[] order = new Integer[ nitem ];
+        for ( int i = 0; i < nitem; i++ ) {
+            order[ i ] = Integer.valueOf( i );
+        }
+        Arrays.sort( order, ( i1, i2 ) -> Double.compare( values[ i1 ],
+                                                          values[ i2 ] ) );
+        double[] sortedValues = new double[ nitem ];
+        long[] cumWeights = new long[ nitem ];
+        long cum = 0;
+        for ( int i = 0; i < nitem; i++ ) {
+            int io = order[ i ].intValue();
+            sortedValues[ i ] = values[ io ];
+            cum += 1L << heights[ io ];
+            cumWeights[ i ] = cum;
+        }
+        assert cum == count_;
+        sortedValues_ = sortedValues;
+        sortedCumWeights_ = cumWeights;
+    }
+
+    public long getValueCount() {
+        return count_;
+    }
+
+    public Number getQuantile( double quant ) {
+        if ( count_ == 0 || sortedValues_ == null ) {
+            return null;
+        }
+        long point = Math.min( (long) ( quant * count_ ), count_ - 1 );
+        final double value;
+        if ( point <= 0 ) {
+            value = min_;
+        }
+        else if ( point >= count_ - 1 ) {
+            value = max_;
+        }
+        else {
+            int ix = Arrays.binarySearch( sortedCumWeights_, point + 1 );
+            if ( ix < 0 ) {
+                ix = -1 - ix;
+            }
+            value = sortedValues_[ Math.min( ix, sortedValues_.length - 1 ) ];
+        }
+        return convertValue( clazz_, value );
+    }
+
+    /**
+     * Returns an iterator over values representing the submitted data.
+     * Each retained item is repeated according to its weight,
+     * so that the number of values returned is equal to
+     * {@link #getValueCount}, but the values are only a
+     * representative sample of those submitted.
+     */
+    public Iterator<Number> getValueIterator() {
+        if ( sortedValues_ == null ) {
+            ready();
+        }
+        final double[] values = sortedValues_;
+        final long[] cumWeights = sortedCumWeights_;
+        return new Iterator<Number>() {
+            int ix;
+            long iv;
+            public boolean hasNext() {
+                return iv < count_;
+            }
+            public Number next() {
+                if ( hasNext() ) {
+                    while ( iv >= cumWeights[ ix ] ) {
+                        ix++;
+                    }
+                    iv++;
+                    return new Double( values[ ix ] );
+                }
+                else {
+                    throw new NoSuchElementException();
+                }
+            }
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Returns a new sketch representing the absolute deviations of
+     * the values represented by this one from a given central value.
+     * The result has the same structure as this sketch,
+     * so it can be used to estimate the median absolute deviation
+     * without revisiting the data.
+     *
+     * @param  centre  central value, typically the median
+     * @return  new sketch of <code>abs(x-centre)</code> values
+     */
+    public SketchQuantCalc createDeviationCalc( double centre ) {
+        SketchQuantCalc devCalc = new SketchQuantCalc( Double.class, k_ );
+        if ( count_ == 0 ) {
+            return devCalc;
+        }
+        double dmin = Double.POSITIVE_INFINITY;
+        double dmax = 0;
+        for ( int ih = 0; ih < levels_.length; ih++ ) {
+            for ( int i = 0; i < sizes_[ ih ]; i++ ) {
+                double dev = Math.abs( levels_[ ih ][ i ] - centre );
+                dmin = Math.min( dmin, dev );
+                dmax = Math.max( dmax, dev );
+                devCalc.append( ih, dev );
+            }
+        }
+        devCalc.count_ = count_;
+        devCalc.min_ = dmin;
+        devCalc.max_ = Math.max( dmax, Math.max( Math.abs( min_ - centre ),
+                                                 Math.abs( max_ - centre ) ) );
+        return devCalc;
+    }
+
+    /**
+     * Returns the current number of values actually stored by this sketch.
+     *
+     * @return  retained item count
+     */
+    public int getRetainedCount() {
+        int n = 0;
+        for ( int size : sizes_ ) {
+            n += size;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the capacity of the compactor at a given level.
+     * The top level has capacity k, and lower levels have geometrically
+     * decreasing capacities.
+     *
+     * @param  ih  level index
+     * @return  capacity
+     */
+    private int getCapacity( int ih ) {
+        int depth = levels_.length - 1 - ih;
+        return Math.max( MIN_CAPACITY,
+                         (int) Math.ceil( k_ * Math.pow( CAPACITY_RATIO,
+                                                         depth ) ) );
+    }
+
+    /**
+     * Appends a value to a given compactor level,
+     * adding the level and growing its storage as required.
+     *
+     * @param  ih  level index
+     * @param  dval  value
+     */
+    private void append( int ih, double dval ) {
+        if ( ih >= levels_.length ) {
+            levels_ = Arrays.copyOf( levels_, ih + 1 );
+            sizes_ = Arrays.copyOf( sizes_, ih + 1 );
+            levels_[ ih ] = new double[ MIN_CAPACITY ];
+        }
+        double[] items = levels_[ ih ];
+        int n = sizes_[ ih ];
+        if ( n >= items.length ) {
+            items = Arrays.copyOf( items, items.length * 2 );
+            levels_[ ih ] = items;
+        }
+        items[ n ] = dval;
+        sizes_[ ih ] = n + 1;
+    }
+
+    /**
+     * Compacts any levels which are at or over capacity.
+     */
+    private void compress() {
+        for ( int ih = 0; ih < levels_.length; ih++ ) {
+            int n = sizes_[ ih ];
+            if ( n >= getCapacity( ih ) ) {
+                double[] items = levels_[ ih ];
+                Arrays.sort( items, 0, n );
+
+                /* If there is an odd number, retain one at this level. */
+                int npair = n / 2;
+                int nkeep = n - 2 * npair;
+                int offset = random_.nextBoolean() ? 1 : 0;
+                for ( int ip = 0; ip < npair; ip++ ) {
+                    append( ih + 1, items[ nkeep + 2 * ip + offset ] );
+                }
+                sizes_[ ih ] = nkeep;
+            }
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package uk.ac.starlink.ttools.filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+
+/**
+ * QuantCalc implementation which calculates exact quantiles for
+ * an unlimited number of floating point values.
+ *
+ * <p>Values are accumulated in memory up to a given limit.
+ * If more than that are submitted, each full buffer is sorted and
+ * written to a temporary file, and when {@link #ready} is called the
+ * sorted runs are merged into a single sorted file from which
+ * quantiles are read by random access.
+ * So memory usage is bounded, at the cost of some disk I/O for
+ * large datasets.
+ *
+ * <p>The {@link #close} method should be called when the calculator
+ * is no longer required, to delete any temporary files.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class SpillQuantCalc extends QuantCalc {
+
+    private final Class<?> clazz_;
+    private final int bufferLimit_;
+    private final List<File> runFiles_;
+    private double[] buf_;
+    private int nbuf_;
+    private long count_;
+    private File mergedFile_;
+    private RandomAccessFile mergedRaf_;
+    private boolean isReady_;
+
+    /** Default maximum number of values held in memory. */
+    public static final int DEFAULT_BUFFER_LIMIT =
+        (int) Math.min( Integer.MAX_VALUE - 8,
+                        Math.max( 1 << 20,
+                                  Runtime.getRuntime().maxMemory() / 8 / 32 ) );
+
+    private static final int IO_BUFSIZ = 64 * 1024;
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.ttools.filter" );
+
+    /**
+     * Constructs a calculator with a default memory limit.
+     *
+     * @param  clazz  class of data objects which will be submitted;
+     *                must be assignable from Number class
+     */
+    public SpillQuantCalc( Class<?> clazz ) {
+        this( clazz, DEFAULT_BUFFER_LIMIT );
+    }
+
+    /**
+     * Constructs a calculator with a given memory limit.
+     *
+     * @param  clazz  class of data objects which will be submitted;
+     *                must be assignable from Number class
+     * @param  bufferLimit  maximum number of values held in memory
+     */
+    public SpillQuantCalc( Class<?> clazz, int bufferLimit ) {
+        super( clazz );
+        clazz_ = clazz;
+        bufferLimit_ = Math.max( 2, bufferLimit );
+        runFiles_ = new ArrayList<File>();
+        buf_ = new double[ Math.min( 1024, bufferLimit_ ) ];
+    }
+
+    public void acceptDatum( Object obj ) throws IOException {
+        if ( obj instanceof Number ) {
+            double dval = ((Number) obj).doubleValue();
+            if ( ! Double.isNaN( dval ) ) {
+                if ( nbuf_ >= buf_.length ) {
+                    if ( buf_.length < bufferLimit_ ) {
+                        int nb = (int) Math.min( bufferLimit_,
+                                                 2L * buf_.length );
+                        buf_ = Arrays.copyOf( buf_, nb );
+                    }
+                    else {
+                        spill();
+                    }
+                }
+                buf_[ nbuf_++ ] = dval;
+                count_++;
+            }
+        }
+    }
+
+    public void ready() throws IOException {
+        if ( isReady_ ) {
+            return;
+        }
+        isReady_ = true;
+        if ( runFiles_.isEmpty() ) {
+            Arrays.sort( buf_, 0, nbuf_ );
+        }
+        else {
+            if ( nbuf_ > 0 ) {
+                spill();
+            }
+            buf_ = null;
+            mergedFile_ = mergeRuns();
+            mergedRaf_ = new RandomAccessFile( mergedFile_, "r" );
+        }
+    }
+
+    public long getValueCount() {
+        return count_;
+    }
+
+    public Number getQuantile( double quant ) throws IOException {
+        if ( count_ == 0 || ! isReady_ ) {
+            return null;
+        }
+        long point = Math.min( (long) ( quant * count_ ), count_ - 1 );
+        final double value;
+        if ( mergedRaf_ == null ) {
+            value = buf_[ (int) point ];
+        }
+        else {
+            mergedRaf_.seek( point * 8 );
+            value = mergedRaf_.readDouble();
+        }
+        return convertValue( clazz_, value );
+    }
+
+    public Iterator<Number> getValueIterator() {
+        if ( mergedFile_ == null ) {
+            final double[] buf = buf_;
+            final int nbuf = nbuf_;
+            return new Iterator<Number>() {
+                int ix;
+                public boolean hasNext() {
+                    return ix < nbuf;
+                }
+                public Number next() {
+                    if ( hasNext() ) {
+                        return new Double( buf[ ix++ ] );
+                    }
+                    else {
+                        throw new NoSuchElementException();
+                    }
+                }
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        /* Values on disk are read in blocks from the random access file,
+         * which is owned by this object and released by close(),
+         * so an iterator that is abandoned early does not leak anything.
+         * The Iterator interface does not permit checked exceptions. */
+        else {
+            final RandomAccessFile raf = mergedRaf_;
+            final ByteBuffer bbuf = ByteBuffer.allocate( IO_BUFSIZ );
+            bbuf.limit( 0 );
+            return new Iterator<Number>() {
+                long iv;
+                public boolean hasNext() {
+                    return iv < count_;
+                }
+                public Number next() {
+                    if ( ! hasNext() ) {
+                        throw new NoSuchElementException();
+                    }
+                    if ( ! bbuf.hasRemaining() ) {
+                        int nb = (int) Math.min( bbuf.capacity(),
+                                                 ( count_ - iv ) * 8 );
+                        try {
+                            raf.seek( iv * 8 );
+                            raf.readFully( bbuf.array(), 0, nb );
+                        }
+                        catch ( IOException e ) {
+                            throw new UncheckedIOException( e );
+                        }
+                        bbuf.position( 0 );
+                        bbuf.limit( nb );
+                    }
+                    iv++;
+                    return new Double( bbuf.getDouble() );
+                }
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    protected void acceptDeviations( double median, QuantCalc madCalc )
+            throws IOException {
+        if ( mergedFile_ == null ) {
+            super.acceptDeviations( median, madCalc );
+        }
+        else {
+            DataInputStream in = openInput( mergedFile_ );
+            try {
+                for ( long iv = 0; iv < count_; iv++ ) {
+                    madCalc.acceptDatum( new Double( Math.abs( in.readDouble()
+                                                             - median ) ) );
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Indicates whether this calculator has written any data to disk.
+     *
+     * @return  true iff the memory limit has been exceeded
+     */
+    public boolean isSpilled() {
+        return ! runFiles_.isEmpty();
+    }
+
+    /**
+     * Releases resources, including deleting any temporary files.
+     * Following this call, the results of other methods are undefined.
+     */
+    public void close() {
+        if ( mergedRaf_ != null ) {
+            try {
+                mergedRaf_.close();
+            }
+            catch ( IOException e ) {
+            }
+            mergedRaf_ = null;
+        }
+        if ( mergedFile_ != null ) {
+            mergedFile_.delete();
+        }
+        for ( File f : runFiles_ ) {
+            f.delete();
+        }
+        runFiles_.clear();
+    }
+
+    /**
+     * Sorts the in-memory buffer and writes it to a new temporary file
+     * as a sorted run.  The buffer is emptied.
+     */
+    private void spill() throws IOException {
+        Arrays.sort( buf_, 0, nbuf_ );
+        File file = createTempFile();
+        try ( DataOutputStream out = openOutput( file ) ) {
+            for ( int i = 0; i < nbuf_; i++ ) {
+                out.writeDouble( buf_[ i ] );
+            }
+        }
+        runFiles_.add( file );
+        nbuf_ = 0;
+    }
+
+    /**
+     * Merges all the sorted run files into a single sorted file.
+     * The run files are deleted.
+     *
+     * @return  new temporary file containing all values in order
+     */
+    private File mergeRuns() throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+        File outFile = createTempFile();
+        try ( DataOutputStream out = openOutput( outFile ) ) {
+            for ( File f : runFiles_ ) {
+                RunReader rdr = new RunReader( openInput( f ) );
+                if ( rdr.advance() ) {
+                    queue.add( rdr );
+                }
+            }
+            while ( ! queue.isEmpty() ) {
+                RunReader rdr = queue.poll();
+                out.writeDouble( rdr.value_ );
+                if ( rdr.advance() ) {
+                    queue.add( rdr );
+                }
+            }
+        }
+        finally {
+            for ( RunReader rdr : queue ) {
+                rdr.in_.close();
+            }
+        }
+        for ( File f : runFiles_ ) {
+            f.delete();
+        }
+        runFiles_.clear();
+        return outFile;
+    }
+
+    /**
+     * Creates a new temporary file.
+     *
+     * @return  new file marked for deletion on exit
+     */
+    private static File createTempFile() throws IOException {
+        File file = File.createTempFile( "SpillQuantCalc", ".bin" );
+        file.deleteOnExit();
+        logger_.info( "Creating new temporary file: " + file );
+        return file;
+    }
+
+    /**
+     * Opens a buffered stream for writing doubles to a file.
+     *
+     * @param  file  file
+     * @return  output stream
+     */
+    private static DataOutputStream openOutput( File file )
+            throws IOException {
+        return new DataOutputStream(
+                   new BufferedOutputStream( new FileOutputStream( file ),
+                                             IO_BUFSIZ ) );
+    }
+
+    /**
+     * Opens a buffered stream for reading doubles from a file.
+     *
+     * @param  file  file
+     * @return  input stream
+     */
+    private static DataInputStream openInput( File file ) throws IOException {
+        return new DataInputStream(
+                   new BufferedInputStream( new FileInputStream( file ),
+                                            IO_BUFSIZ ) );
+    }
+
+    /**
+     * Reads values in sequence from a sorted run file.
+     */
+    private static class RunReader implements Comparable<RunReader> {
+        final DataInputStream in_;
+        double value_;
+
+        /**
+         * Constructor.
+         *
+         * @param  in  input stream
+         */
+        RunReader( DataInputStream in ) {
+            in_ = in;
+        }
+
+        /**
+         * Reads the next value from the run.
+         * The stream is closed at the end of the run.
+         *
+         * @return  true iff a value was read
+         */
+        boolean advance() throws IOException {
+            try {
+                value_ = in_.readDouble();
+                return true;
+            }
+            catch ( EOFException e ) {
+                in_.close();
+                return false;
+            }
+        }
+
+        public int compareTo( RunReader other ) {
+            return Double.compare( value_, other.value_ );
+        }
+    }
+}
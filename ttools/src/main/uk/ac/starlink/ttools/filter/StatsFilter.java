@@ -1,6 +1,7 @@
 package uk.ac.starlink.ttools.filter;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -17,7 +18,8 @@ import uk.ac.starlink.table.AbstractStarTable;
 import uk.ac.starlink.table.ColumnInfo;
 import uk.ac.starlink.table.DefaultValueInfo;
 import uk.ac.starlink.table.RandomStarTable;
-import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.RowCollector;
+import uk.ac.starlink.table.RowSplittable;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.Tables;
 import uk.ac.starlink.table.ValueInfo;
@@ -135,7 +137,7 @@ public class StatsFilter extends BasicFilter {
      * Constructor.
      */
     public StatsFilter() {
-        super( "stats", "[<item> ...]" );
+        super( "stats", "[-approx] [<item> ...]" );
     }
 
     protected String[] getDescriptionLines() {
@@ -166,31 +168,48 @@ public class StatsFilter extends BasicFilter {
             "<p>Any parameters of the input table are propagated",
             "to the output one.",
             "</p>",
-            "<p>Note that quantile calculations (including median and",
+            "<p>Note that exact quantile calculations (including median and",
             "quartiles) can be expensive on memory.  If you want to calculate",
             "quantiles for large tables, it may be wise to reduce the",
             "number of columns to only those you need the quantiles for",
             "earlier in the pipeline.",
+            "If there are too many values to hold in memory,",
+            "they will be sorted using temporary disk files.",
             "No interpolation is performed when calculating quantiles.",
             "</p>",
+            "<p>If the <code>-approx</code> flag is given,",
+            "quantiles and median absolute deviations are instead",
+            "estimated from a fixed-size sketch of the data,",
+            "which is fast and uses little memory for any size of table,",
+            "but is not exact;",
+            "the rank of a reported quantile is typically in error by",
+            "no more than around 1%.",
+            "In this case the cardinality is also estimated",
+            "(to an accuracy of around 1%)",
+            "rather than counted,",
+            "and is reported even when it exceeds " + MAX_CARDINALITY + ".",
+            "</p>",
         };
     }
 
     public ProcessingStep createStep( Iterator<String> argIt )
             throws ArgException {
-        final ValueInfo[] colInfos;
+        boolean approx = false;
+        List<ValueInfo> infoList = new ArrayList<ValueInfo>();
         if ( argIt.hasNext() ) {
             Map<String,ValueInfo> infoMap = new HashMap<String,ValueInfo>();
             for ( int i = 0; i < ALL_KNOWN_INFOS.length; i++ ) {
                 ValueInfo info = ALL_KNOWN_INFOS[ i ];
                 infoMap.put( info.getName().toLowerCase(), info );
             }
-            List<ValueInfo> infoList = new ArrayList<ValueInfo>();
             while ( argIt.hasNext() ) {
                 String name = argIt.next();
                 argIt.remove();
                 String lname = name.toLowerCase();
-                if ( infoMap.containsKey( lname ) ) {
+                if ( name.equals( "-approx" ) && infoList.isEmpty() ) {
+                    approx = true;
+                }
+                else if ( infoMap.containsKey( lname ) ) {
                     infoList.add( infoMap.get( lname ) );
                 }
                 else if ( name.matches( "^[qQ]\\.[0-9]+$" ) ) {
@@ -222,15 +241,15 @@ public class StatsFilter extends BasicFilter {
                     throw new ArgException( msg.toString() );
                 }
             }
-            colInfos = infoList.toArray( new ValueInfo[ 0 ] );
-        }
-        else {
-            colInfos = DEFAULT_INFOS;
         }
+        final boolean isApprox = approx;
+        final ValueInfo[] colInfos = infoList.isEmpty()
+                                   ? DEFAULT_INFOS
+                                   : infoList.toArray( new ValueInfo[ 0 ] );
         return new ProcessingStep() {
             public StarTable wrap( StarTable base ) throws IOException {
                 MapGroup<ValueInfo,Object> group =
-                    statsMapGroup( base, colInfos );
+                    statsMapGroup( base, colInfos, isApprox );
                 group.setKnownKeys( Arrays.asList( colInfos ) );
                 AbstractStarTable table = new ValueInfoMapGroupTable( group );
                 table.setParameters( base.getParameters() );
@@ -244,10 +263,14 @@ public class StatsFilter extends BasicFilter {
      * a given table.
      *
      * @param   table   input table
+     * @param   infos   quantities to calculate
+     * @param   approx  if true, quantiles and cardinalities are estimated
+     *                  in bounded memory rather than calculated exactly
      * @return  mapgroup containing column statistics
      */
     private static MapGroup<ValueInfo,Object> statsMapGroup( StarTable table,
-                                                             ValueInfo[] infos )
+                                                             ValueInfo[] infos,
+                                                             boolean approx )
             throws IOException {
 
         /* Work out if we need to calculate cardinalities. */
@@ -269,47 +292,20 @@ public class StatsFilter extends BasicFilter {
             ? quantInfoList.toArray( new QuantileInfo[ 0 ] )
             : null;
 
-        long nrow = table.getRowCount();
-
-        /* Prepare statistical accumulators for each column of the table. */
-        int ncol = table.getColumnCount();
-        UnivariateStats[] colStats = new UnivariateStats[ ncol ];
-        CardinalityChecker[] cardCheckers =
-            doCard ? new CardinalityChecker[ ncol ] : null;
-        QuantCalc[] quantCalcs = new QuantCalc[ ncol ];
-        for ( int icol = 0; icol < ncol; icol++ ) {
-            Class<?> clazz = table.getColumnInfo( icol ).getContentClass();
-            colStats[ icol ] = UnivariateStats.createStats( clazz );
-            if ( doCard ) {
-                cardCheckers[ icol ] =
-                    new CardinalityChecker( MAX_CARDINALITY );
-            }
-            if ( doQuant && Number.class.isAssignableFrom( clazz ) ) {
-                @SuppressWarnings("unchecked")
-                Class<? extends Number> nclazz =
-                    (Class<? extends Number>) clazz;
-                quantCalcs[ icol ] = QuantCalc.createInstance( nclazz, nrow );
-            }
-        }
-
-        /* Populate them with the the data read from the table. */
-        RowSequence rseq = table.getRowSequence();
-        long irow = 0L;
+        /* Accumulate statistics for each column of the table.
+         * The work is split between threads if all the requested
+         * quantities permit it. */
+        StatsCollector collector =
+            new StatsCollector( table, doCard, doQuant, approx );
+        StatsAccumulator acc =
+            collector.collect( table, collector.isCombinable() );
+        UnivariateStats[] colStats = acc.colStats_;
+        CardinalityChecker[] cardCheckers = acc.cardCheckers_;
+        HyperLogLog[] cardEstimators = acc.cardEstimators_;
+        QuantCalc[] quantCalcs = acc.quantCalcs_;
+        long irow = acc.nrow_;
+        int ncol = colStats.length;
         try {
-            while ( rseq.next() ) {
-                Object[] row = rseq.getRow();
-                for ( int icol = 0; icol < ncol; icol++ ) {
-                    Object datum = row[ icol ];
-                    colStats[ icol ].acceptDatum( datum );
-                    if ( doCard ) {
-                        cardCheckers[ icol ].acceptDatum( datum );
-                    }
-                    if ( quantCalcs[ icol ] != null ) {
-                        quantCalcs[ icol ].acceptDatum( datum );
-                    }
-                }
-                irow++;
-            }
 
             /* Get a MapGroup representing column metadata (the option is 
              * provided to output this alongside the statistical results). */
@@ -324,27 +320,15 @@ public class StatsFilter extends BasicFilter {
                 UnivariateStats stats = colStats[ icol ];
                 long count = stats.getCount();
                 double dcount = (double) count;
-                double sum0 = dcount;
                 double sum1 = stats.getSum();
-                double sum2 = stats.getSum2();
-                double sum3 = stats.getSum3();
-                double sum4 = stats.getSum4();
-                double mean = sum1 / dcount;
-                double nvar = ( sum2 - sum1 * sum1 / dcount );
+                double mean = stats.getMean();
+                double nvar = stats.getCentralSum2();
                 double popvar = nvar / dcount;
                 double sampvar = nvar / ( dcount - 1 );
-              
                 double skew = Math.sqrt( dcount ) / Math.pow( nvar, 1.5 )
-                            * ( + 1 * sum3
-                                - 3 * mean * sum2
-                                + 3 * mean * mean * sum1
-                                - 1 * mean * mean * mean * sum0 );
+                            * stats.getCentralSum3();
                 double kurtosis = ( dcount / ( nvar * nvar ) )
-                                * ( + 1 * sum4 
-                                    - 4 * mean * sum3 
-                                    + 6 * mean * mean * sum2
-                                    - 4 * mean * mean * mean * sum1
-                                    + 1 * mean * mean * mean * mean * sum0 )
+                                * stats.getCentralSum4()
                                 - 3.0;
                 Number min = stats.getMinimum();
                 Number max = stats.getMaximum();
@@ -382,7 +366,14 @@ public class StatsFilter extends BasicFilter {
                     map.put( MAX_INFO, max );
                     map.put( MAXPOS_INFO, new Long( stats.getMaxPos() + 1 ) );
                 }
-                if ( doCard ) {
+                if ( cardEstimators != null ) {
+                    long ncard = cardEstimators[ icol ].getCardinality();
+                    if ( ncard > 0 ) {
+                        int icard = (int) Math.min( ncard, Integer.MAX_VALUE );
+                        map.put( CARDINALITY_INFO, new Integer( icard ) );
+                    }
+                }
+                if ( cardCheckers != null ) {
                     int ncard = cardCheckers[ icol ].getCardinality();
                     if ( ncard > 0 ) {
                         map.put( CARDINALITY_INFO, new Integer( ncard ) );
@@ -409,7 +400,11 @@ public class StatsFilter extends BasicFilter {
             return group;
         }
         finally {
-            rseq.close();
+            for ( QuantCalc qcalc : quantCalcs ) {
+                if ( qcalc != null ) {
+                    qcalc.close();
+                }
+            }
         }
     }
 
@@ -525,6 +520,26 @@ public class StatsFilter extends BasicFilter {
             }
         }
 
+        /**
+         * Incorporates the values counted by another checker into
+         * this one.
+         *
+         * @param  other  other checker
+         */
+        void combine( CardinalityChecker other ) {
+            if ( items_ != null ) {
+                if ( other.items_ == null ) {
+                    items_ = null;
+                }
+                else {
+                    items_.addAll( other.items_ );
+                    if ( items_.size() > maxCard_ ) {
+                        items_ = null;
+                    }
+                }
+            }
+        }
+
         /**
          * Returns the cardinality of the data items submitted.
          * If the cardinality is greater than <code>maxCard</code>,
@@ -537,4 +552,159 @@ public class StatsFilter extends BasicFilter {
                                   : items_.size();
         }
     }
+
+    /**
+     * Holds the per-column accumulators used for statistics calculation.
+     */
+    private static class StatsAccumulator {
+        final UnivariateStats[] colStats_;
+        final CardinalityChecker[] cardCheckers_;
+        final HyperLogLog[] cardEstimators_;
+        final QuantCalc[] quantCalcs_;
+        long nrow_;
+
+        /**
+         * Constructor.
+         *
+         * @param  ncol  number of columns
+         * @param  doCard  true iff cardinalities are required
+         * @param  approx  true iff approximate calculations are permitted
+         */
+        StatsAccumulator( int ncol, boolean doCard, boolean approx ) {
+            colStats_ = new UnivariateStats[ ncol ];
+            cardCheckers_ =
+                doCard && ! approx ? new CardinalityChecker[ ncol ] : null;
+            cardEstimators_ =
+                doCard && approx ? new HyperLogLog[ ncol ] : null;
+            quantCalcs_ = new QuantCalc[ ncol ];
+        }
+    }
+
+    /**
+     * RowCollector implementation which accumulates column statistics.
+     */
+    private static class StatsCollector
+            extends RowCollector<StatsAccumulator> {
+
+        private final Class<?>[] clazzes_;
+        private final long nrow_;
+        private final boolean doCard_;
+        private final boolean doQuant_;
+        private final boolean approx_;
+
+        /**
+         * Constructor.
+         *
+         * @param  table  table whose rows will be accumulated
+         * @param  doCard  true iff cardinalities are required
+         * @param  doQuant  true iff quantiles are required
+         * @param  approx  true iff approximate calculations are permitted
+         */
+        StatsCollector( StarTable table, boolean doCard, boolean doQuant,
+                        boolean approx ) {
+            int ncol = table.getColumnCount();
+            clazzes_ = new Class<?>[ ncol ];
+            for ( int icol = 0; icol < ncol; icol++ ) {
+                clazzes_[ icol ] =
+                    table.getColumnInfo( icol ).getContentClass();
+            }
+            nrow_ = table.getRowCount();
+            doCard_ = doCard;
+            doQuant_ = doQuant;
+            approx_ = approx;
+        }
+
+        /**
+         * Indicates whether accumulators created by this collector
+         * can be combined.  That is not the case for exact quantile
+         * calculations.
+         *
+         * @return  true iff parallel accumulation is possible
+         */
+        boolean isCombinable() {
+            return approx_ || ! doQuant_;
+        }
+
+        public StatsAccumulator createAccumulator() {
+            int ncol = clazzes_.length;
+            StatsAccumulator acc =
+                new StatsAccumulator( ncol, doCard_, approx_ );
+            for ( int icol = 0; icol < ncol; icol++ ) {
+                Class<?> clazz = clazzes_[ icol ];
+                acc.colStats_[ icol ] = UnivariateStats.createStats( clazz );
+                if ( acc.cardCheckers_ != null ) {
+                    acc.cardCheckers_[ icol ] =
+                        new CardinalityChecker( MAX_CARDINALITY );
+                }
+                if ( acc.cardEstimators_ != null ) {
+                    acc.cardEstimators_[ icol ] = new HyperLogLog();
+                }
+                if ( doQuant_ && Number.class.isAssignableFrom( clazz ) ) {
+                    @SuppressWarnings("unchecked")
+                    Class<? extends Number> nclazz =
+                        (Class<? extends Number>) clazz;
+                    try {
+                        acc.quantCalcs_[ icol ] =
+                              approx_
+                            ? QuantCalc.createApproximateInstance( nclazz )
+                            : QuantCalc.createInstance( nclazz, nrow_ );
+                    }
+                    catch ( IOException e ) {
+                        throw new UncheckedIOException( e );
+                    }
+                }
+            }
+            return acc;
+        }
+
+        public void accumulateRows( RowSplittable rseq, StatsAccumulator acc )
+                throws IOException {
+            UnivariateStats[] colStats = acc.colStats_;
+            CardinalityChecker[] cardCheckers = acc.cardCheckers_;
+            HyperLogLog[] cardEstimators = acc.cardEstimators_;
+            QuantCalc[] quantCalcs = acc.quantCalcs_;
+            int ncol = colStats.length;
+            while ( rseq.next() ) {
+                long irow = rseq.getRowIndex();
+                Object[] row = rseq.getRow();
+                for ( int icol = 0; icol < ncol; icol++ ) {
+                    Object datum = row[ icol ];
+                    colStats[ icol ].acceptDatum( datum, irow );
+                    if ( cardCheckers != null ) {
+                        cardCheckers[ icol ].acceptDatum( datum );
+                    }
+                    if ( cardEstimators != null ) {
+                        cardEstimators[ icol ].acceptDatum( datum );
+                    }
+                    if ( quantCalcs[ icol ] != null ) {
+                        quantCalcs[ icol ].acceptDatum( datum );
+                    }
+                }
+                acc.nrow_++;
+            }
+        }
+
+        public StatsAccumulator combine( StatsAccumulator acc1,
+                                         StatsAccumulator acc2 ) {
+            int ncol = clazzes_.length;
+            for ( int icol = 0; icol < ncol; icol++ ) {
+                acc1.colStats_[ icol ].combine( acc2.colStats_[ icol ] );
+                if ( acc1.cardCheckers_ != null ) {
+                    acc1.cardCheckers_[ icol ]
+                        .combine( acc2.cardCheckers_[ icol ] );
+                }
+                if ( acc1.cardEstimators_ != null ) {
+                    acc1.cardEstimators_[ icol ]
+                        .merge( acc2.cardEstimators_[ icol ] );
+                }
+                QuantCalc qc1 = acc1.quantCalcs_[ icol ];
+                if ( qc1 != null ) {
+                    ((SketchQuantCalc) qc1)
+                   .merge( (SketchQuantCalc) acc2.quantCalcs_[ icol ] );
+                }
+            }
+            acc1.nrow_ += acc2.nrow_;
+            return acc1;
+        }
+    }
 }
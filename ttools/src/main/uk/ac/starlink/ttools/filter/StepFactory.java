@@ -47,6 +47,7 @@ public class StepFactory {
         filterFactory_.register( "explodecols", pkg + "ExplodeColsFilter" );
         filterFactory_.register( "explodeall", pkg + "ExplodeAllFilter" );
         filterFactory_.register( "fixcolnames", pkg + "FixNamesFilter" );
+        filterFactory_.register( "group", pkg + "GroupFilter" );
         filterFactory_.register( "head", pkg + "HeadFilter" );
         filterFactory_.register( "healpixmeta", pkg + "HealpixMetadataFilter" );
         filterFactory_.register( "keepcols", pkg + "KeepColumnFilter" );
@@ -58,6 +59,7 @@ public class StepFactory {
         filterFactory_.register( "replacecol", pkg + "ReplaceColumnFilter" );
         filterFactory_.register( "replaceval", pkg + "ReplaceValueFilter" );
         filterFactory_.register( "rowrange", pkg + "RangeFilter" );
+        filterFactory_.register( "sample", pkg + "SampleFilter" );
         filterFactory_.register( "select", pkg + "SelectFilter" );
         filterFactory_.register( "seqview", pkg + "SequentialViewFilter" );
         filterFactory_.register( "setparam", pkg + "SetParameterFilter" );
@@ -83,6 +85,8 @@ public class StepFactory {
      * Creates an array of processing filters from an input string.
      * The string may contain zero or more lines, separated by 
      * semicolons or newlines.
+     * Runs of consecutive JEL-based steps are combined for efficiency
+     * as described by {@link FusedJELStep#fuseSteps}.
      *
      * @param  text  input string
      * @return   array of steps
@@ -96,7 +100,8 @@ public class StepFactory {
                 stepList.add( step );
             }
         }
-        return stepList.toArray( new ProcessingStep[ 0 ] );
+        return FusedJELStep
+              .fuseSteps( stepList.toArray( new ProcessingStep[ 0 ] ) );
     }
 
     /**
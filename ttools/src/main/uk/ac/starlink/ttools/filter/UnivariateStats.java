@@ -9,19 +9,85 @@ import uk.ac.starlink.table.Tables;
  * {@link #acceptDatum} and then call the various accessor methods to 
  * get accumulated values.
  *
+ * <p>Moments are accumulated using numerically stable online updates
+ * (Welford's method extended to higher orders),
+ * and instances which have accumulated statistics for disjoint
+ * subsets of the data can be combined using {@link #combine},
+ * so that the calculation may be split between multiple threads.
+ *
  * @author   Mark Taylor
  * @since    27 Apr 2006
  */
 public abstract class UnivariateStats {
 
+    private long iDatum_;
+
     /**
      * Submits a single value to the statistics accumulator.
      * The submitted value should be of a type compatible with the 
      * class type of this Stats object.
+     * Its sequence number is taken to be one more than that of the
+     * previous value submitted to this method.
+     *
+     * @param   value   value object
+     */
+    public void acceptDatum( Object value ) {
+        acceptDatum( value, iDatum_++ );
+    }
+
+    /**
+     * Submits a single value with a given sequence number to the
+     * statistics accumulator.
+     * The submitted value should be of a type compatible with the 
+     * class type of this Stats object.
      *
      * @param   value   value object
+     * @param   irow   sequence number of value, typically its row index
+     */
+    public abstract void acceptDatum( Object value, long irow );
+
+    /**
+     * Incorporates the accumulated state of another instance into
+     * this one.  The other instance must have been created by the
+     * same factory method call with the same class, and should have
+     * been fed data from a disjoint set of rows.
+     * Following this call, this object represents the statistics of
+     * all the values submitted to either.
+     *
+     * @param  other  compatible accumulator
+     */
+    public abstract void combine( UnivariateStats other );
+
+    /**
+     * Returns the mean of the values accumulated.
+     *
+     * @return  mean, or NaN if not applicable
      */
-    public abstract void acceptDatum( Object value );
+    public abstract double getMean();
+
+    /**
+     * Returns the sum of the squared deviations from the mean of the
+     * values accumulated.
+     *
+     * @return  sum of (x-mean)<sup>2</sup>, or NaN if not applicable
+     */
+    public abstract double getCentralSum2();
+
+    /**
+     * Returns the sum of the cubed deviations from the mean of the
+     * values accumulated.
+     *
+     * @return  sum of (x-mean)<sup>3</sup>, or NaN if not applicable
+     */
+    public abstract double getCentralSum3();
+
+    /**
+     * Returns the sum of the fourth powers of deviations from the mean
+     * of the values accumulated.
+     *
+     * @return  sum of (x-mean)<sup>4</sup>, or NaN if not applicable
+     */
+    public abstract double getCentralSum4();
 
     /**
      * Returns the number of good (non-null) values accumulated.
@@ -113,16 +179,36 @@ public abstract class UnivariateStats {
     private static class ObjectStats extends UnivariateStats {
         private long nGood_;
 
-        public void acceptDatum( Object obj ) {
+        public void acceptDatum( Object obj, long irow ) {
             if ( ! Tables.isBlank( obj ) ) {
                 nGood_++;
             }
         }
 
+        public void combine( UnivariateStats o ) {
+            nGood_ += ((ObjectStats) o).nGood_;
+        }
+
         public long getCount() {
             return nGood_;
         }
 
+        public double getMean() {
+            return Double.NaN;
+        }
+
+        public double getCentralSum2() {
+            return Double.NaN;
+        }
+
+        public double getCentralSum3() {
+            return Double.NaN;
+        }
+
+        public double getCentralSum4() {
+            return Double.NaN;
+        }
+
         public double getSum() {
             return Double.NaN;
         }
@@ -163,7 +249,7 @@ public abstract class UnivariateStats {
         private long nGood_;
         private long nTrue_;
 
-        public void acceptDatum( Object obj ) {
+        public void acceptDatum( Object obj, long irow ) {
             if ( obj instanceof Boolean ) {
                 nGood_++;
                 if ( ((Boolean) obj).booleanValue() ) {
@@ -172,10 +258,32 @@ public abstract class UnivariateStats {
             }
         }
 
+        public void combine( UnivariateStats o ) {
+            BooleanStats other = (BooleanStats) o;
+            nGood_ += other.nGood_;
+            nTrue_ += other.nTrue_;
+        }
+
         public long getCount() {
             return nGood_;
         }
 
+        public double getMean() {
+            return (double) nTrue_ / (double) nGood_;
+        }
+
+        public double getCentralSum2() {
+            return Double.NaN;
+        }
+
+        public double getCentralSum3() {
+            return Double.NaN;
+        }
+
+        public double getCentralSum4() {
+            return Double.NaN;
+        }
+
         public double getSum() {
             return (double) nTrue_;
         }
@@ -211,14 +319,17 @@ public abstract class UnivariateStats {
 
     /**
      * Stats implementation for Number objects.
+     * The moment updates follow Pebay (2008), "Formulas for robust,
+     * one-pass parallel computation of covariances and arbitrary-order
+     * statistical moments", SAND2008-6212.
      */
     private static class NumberStats extends UnivariateStats {
-        private long iDatum_;
         private long nGood_;
         private double sum1_;
-        private double sum2_;
-        private double sum3_;
-        private double sum4_;
+        private double mean_;
+        private double m2_;
+        private double m3_;
+        private double m4_;
         private double dmin_ = Double.NaN;
         private double dmax_ = Double.NaN;
         private Number min_;
@@ -226,53 +337,137 @@ public abstract class UnivariateStats {
         private long minPos_ = -1L;
         private long maxPos_ = -1L;
         
-        public void acceptDatum( Object obj ) {
+        public void acceptDatum( Object obj, long irow ) {
             if ( obj instanceof Number ) {
                 Number val = (Number) obj;
                 double dval = val.doubleValue();
                 if ( ! Double.isNaN( dval ) ) {
-                    nGood_++;
-                    double s1 = dval;
-                    double s2 = dval * s1;
-                    double s3 = dval * s2;
-                    double s4 = dval * s3;
-                    sum1_ += s1;
-                    sum2_ += s2;
-                    sum3_ += s3;
-                    sum4_ += s4;
+                    long n1 = nGood_;
+                    long n = ++nGood_;
+                    double delta = dval - mean_;
+                    double deltaN = delta / n;
+                    double deltaN2 = deltaN * deltaN;
+                    double term1 = delta * deltaN * n1;
+                    mean_ += deltaN;
+                    m4_ += term1 * deltaN2 * ( (double) n * n - 3 * n + 3 )
+                         + 6 * deltaN2 * m2_
+                         - 4 * deltaN * m3_;
+                    m3_ += term1 * deltaN * ( n - 2 )
+                         - 3 * deltaN * m2_;
+                    m2_ += term1;
+                    sum1_ += dval;
                     if ( ! ( dval >= dmin_ ) ) {  // note NaN handling
                         dmin_ = dval;
                         min_ = val;
-                        minPos_ = iDatum_;
+                        minPos_ = irow;
                     }
                     if ( ! ( dval <= dmax_ ) ) {  // note NaN handling
                         dmax_ = dval;
                         max_ = val;
-                        maxPos_ = iDatum_;
+                        maxPos_ = irow;
                     }
                 }
             }
-            iDatum_++;
+        }
+
+        public void combine( UnivariateStats o ) {
+            NumberStats other = (NumberStats) o;
+            long na = nGood_;
+            long nb = other.nGood_;
+            if ( nb == 0 ) {
+                return;
+            }
+            if ( na == 0 ) {
+                nGood_ = nb;
+                sum1_ = other.sum1_;
+                mean_ = other.mean_;
+                m2_ = other.m2_;
+                m3_ = other.m3_;
+                m4_ = other.m4_;
+            }
+            else {
+                double dna = na;
+                double dnb = nb;
+                double dn = dna + dnb;
+                double delta = other.mean_ - mean_;
+                double delta2 = delta * delta;
+                double delta3 = delta2 * delta;
+                double delta4 = delta2 * delta2;
+                double m2a = m2_;
+                double m3a = m3_;
+                double m2b = other.m2_;
+                double m3b = other.m3_;
+                m4_ = m4_ + other.m4_
+                    + delta4 * dna * dnb * ( dna * dna - dna * dnb + dnb * dnb )
+                             / ( dn * dn * dn )
+                    + 6 * delta2 * ( dna * dna * m2b + dnb * dnb * m2a )
+                                 / ( dn * dn )
+                    + 4 * delta * ( dna * m3b - dnb * m3a ) / dn;
+                m3_ = m3a + m3b
+                    + delta3 * dna * dnb * ( dna - dnb ) / ( dn * dn )
+                    + 3 * delta * ( dna * m2b - dnb * m2a ) / dn;
+                m2_ = m2a + m2b + delta2 * dna * dnb / dn;
+                mean_ = mean_ + delta * dnb / dn;
+                nGood_ = na + nb;
+                sum1_ += other.sum1_;
+            }
+            if ( other.min_ != null &&
+                 ( min_ == null || other.dmin_ < dmin_ ||
+                   ( other.dmin_ == dmin_ && other.minPos_ < minPos_ ) ) ) {
+                dmin_ = other.dmin_;
+                min_ = other.min_;
+                minPos_ = other.minPos_;
+            }
+            if ( other.max_ != null &&
+                 ( max_ == null || other.dmax_ > dmax_ ||
+                   ( other.dmax_ == dmax_ && other.maxPos_ < maxPos_ ) ) ) {
+                dmax_ = other.dmax_;
+                max_ = other.max_;
+                maxPos_ = other.maxPos_;
+            }
         }
 
         public long getCount() {
             return nGood_;
         }
 
+        public double getMean() {
+            return nGood_ > 0 ? mean_ : Double.NaN;
+        }
+
+        public double getCentralSum2() {
+            return nGood_ > 0 ? m2_ : Double.NaN;
+        }
+
+        public double getCentralSum3() {
+            return nGood_ > 0 ? m3_ : Double.NaN;
+        }
+
+        public double getCentralSum4() {
+            return nGood_ > 0 ? m4_ : Double.NaN;
+        }
+
         public double getSum() {
             return sum1_;
         }
 
         public double getSum2() {
-            return sum2_;
+            double n = nGood_;
+            double mu = mean_;
+            return m2_ + n * mu * mu;
         }
 
         public double getSum3() {
-            return sum3_;
+            double n = nGood_;
+            double mu = mean_;
+            return m3_ + 3 * mu * m2_ + n * mu * mu * mu;
         }
 
         public double getSum4() {
-            return sum4_;
+            double n = nGood_;
+            double mu = mean_;
+            double mu2 = mu * mu;
+            return m4_ + 4 * mu * m3_ + 6 * mu2 * m2_ + n * mu2 * mu2;
         }
 
         public Number getMinimum() {
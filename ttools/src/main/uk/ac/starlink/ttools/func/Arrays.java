@@ -243,9 +243,10 @@ public class Arrays {
      * @return   quantile corresponding to <code>quant</code>
      */
     public static double quantile( Object array, double quant ) {
+        QuantCalc qc = null;
         try {
             int n = Array.getLength( array );
-            QuantCalc qc = QuantCalc.createInstance( Double.class, n );
+            qc = QuantCalc.createInstance( Double.class, n );
             for ( int i = 0; i < n; i++ ) {
                 qc.acceptDatum( new Double( Array.getDouble( array, i ) ) );
             }
@@ -259,6 +260,11 @@ public class Arrays {
         catch ( IOException e ) {
             return Double.NaN;
         }
+        finally {
+            if ( qc != null ) {
+                qc.close();
+            }
+        }
     }
 
     /**
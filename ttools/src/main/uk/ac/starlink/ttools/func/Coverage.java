@@ -114,7 +114,7 @@ public class Coverage {
      * @param  loc  MOC FITS file location - filename or URL
      * @return  initialised coverage object, may be null if not known
      */
-    private static MocCoverage getMocCoverage( String loc ) {
+    private static synchronized MocCoverage getMocCoverage( String loc ) {
         if ( ! mocMap_.containsKey( loc ) ) {
             mocMap_.put( loc, createMocCoverage( loc ) );
         }
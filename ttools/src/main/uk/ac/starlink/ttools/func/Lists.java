@@ -178,21 +178,25 @@ public class Lists {
         if ( values == null ) {
             return Double.NaN;
         }
-        QuantCalc qc;
+        QuantCalc qc = null;
         try {
             qc = QuantCalc.createInstance( Double.class, values.length );
+            for ( double v : values ) {
+                qc.acceptDatum( new Double( v ) );
+            }
+            qc.ready();
+            Number median = qc.getQuantile( 0.5 );
+            return median instanceof Number ? median.doubleValue()
+                                            : Double.NaN;
         }
         catch ( IOException e ) {
-            assert false;
             return Double.NaN;
         }
-        for ( double v : values ) {
-            qc.acceptDatum( new Double( v ) );
+        finally {
+            if ( qc != null ) {
+                qc.close();
+            }
         }
-        qc.ready();
-        Number median = qc.getQuantile( 0.5 );
-        return median instanceof Number ? median.doubleValue()
-                                        : Double.NaN;
     }
 
     /**
@@ -12,6 +12,8 @@ import java.util.Set;
 /**
  * An object which is able to read cell values by column name or number.
  * The values are got using the {@link #evaluate} method.
+ * Unless a subclass documents otherwise, evaluation is not thread-safe,
+ * so an instance should only be used from one thread at a time.
  * <p>
  * This class currently deals with columns of all the primitive types, 
  * objects of type {@link java.lang.String} or {@link java.util.Date},
@@ -273,12 +275,37 @@ public abstract class JELRowReader extends DVMap {
      * primitive instead.
      */
     protected void foundNull() {
-        isNullExpression_ = true;
+        setNullExpression( true );
         if ( failOnNull_ ) {
             throw new NullPointerException();
         }
     }
 
+    /**
+     * Sets the flag which records whether a null primitive value has
+     * been encountered during the current evaluation.
+     * The default implementation stores this in a field of this reader,
+     * so that evaluations must be confined to a single thread at a time.
+     * Subclasses may override this method along with
+     * {@link #isNullExpression} to store it per thread.
+     *
+     * @param  isNull  new value of null flag
+     */
+    protected void setNullExpression( boolean isNull ) {
+        isNullExpression_ = isNull;
+    }
+
+    /**
+     * Returns the flag which records whether a null primitive value has
+     * been encountered during the current evaluation.
+     *
+     * @return  null flag
+     * @see  #setNullExpression
+     */
+    protected boolean isNullExpression() {
+        return isNullExpression_;
+    }
+
     /**
      * Returns the a special quantity which corresponds to
      * a given name, or null if it isn't a special.
@@ -322,12 +349,12 @@ public abstract class JELRowReader extends DVMap {
      * @param  compEx  compiled expression
      * @return   expression value at current row
      */
-    public synchronized Object evaluate( CompiledExpression compEx )
+    public Object evaluate( CompiledExpression compEx )
              throws Throwable {
          try {
-             isNullExpression_ = false;
+             setNullExpression( false );
              Object result = compEx.evaluate( args_ );
-             return isNullExpression_ ? null : result;
+             return isNullExpression() ? null : result;
          }
          catch ( NullPointerException e ) {
              return null;
@@ -343,12 +370,12 @@ public abstract class JELRowReader extends DVMap {
      * @param  compEx  numeric-valued compiled expression
      * @return   expression value at current row
      */
-    public synchronized double evaluateDouble( CompiledExpression compEx )
+    public double evaluateDouble( CompiledExpression compEx )
              throws Throwable {
         try {
-            isNullExpression_ = false;
+            setNullExpression( false );
             double result = compEx.evaluate_double( args_ );
-            return isNullExpression_ ? Double.NaN : result;
+            return isNullExpression() ? Double.NaN : result;
         }
         catch ( NullPointerException e ) {
             return Double.NaN;
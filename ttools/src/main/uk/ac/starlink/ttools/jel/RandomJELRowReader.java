@@ -7,13 +7,22 @@ import uk.ac.starlink.table.StarTable;
 /**
  * Implements JELRowReader for a random access table.
  *
+ * <p>Evaluation is thread-safe and does not lock.
+ * The mutable evaluation state (current row and null flag) is
+ * held separately for each thread, so the same reader and
+ * compiled expressions may be used to evaluate expressions at
+ * different rows concurrently.  Compiled expressions themselves
+ * are stateless, so do not need to be duplicated per thread.
+ * This relies on the thread-safety of the table's random access
+ * methods, as required by the {@link StarTable} contract.
+ *
  * @author   Mark Taylor (Starlink)
  * @since    8 Feb 2005
  */
 public class RandomJELRowReader extends StarTableJELRowReader {
 
-    private long lrow_ = -1L;
     private final StarTable table_;
+    private final ThreadLocal<EvalState> stateLocal_;
 
     /**
      * Constructs a new row reader for a random-access table.
@@ -23,37 +32,52 @@ public class RandomJELRowReader extends StarTableJELRowReader {
     public RandomJELRowReader( StarTable table ) {
         super( table );
         table_ = table;
+        stateLocal_ = ThreadLocal.withInitial( EvalState::new );
     }
 
     /**
-     * Returns the current row for evaluations.
+     * Returns the current row for evaluations in the calling thread.
      *
      * @return  current row
      */
     public long getCurrentRow() {
-        return lrow_;
+        return stateLocal_.get().lrow_;
     }
 
     /**
-     * Sets the current row for evaluations.
+     * Sets the current row for evaluations in the calling thread.
      *
      * @param  lrow  current row
      */
     public void setCurrentRow( long lrow ) {
-        lrow_ = lrow;
+        stateLocal_.get().lrow_ = lrow;
     }
 
     /**
      * Evaluates a given compiled expression at a given row.
      * The returned value is wrapped up as an object if the result of
      * the expression is a primitive.
+     * This method may be called concurrently from multiple threads.
      *
      * @param  compEx  compiled expression
      */
-    public synchronized Object evaluateAtRow( CompiledExpression compEx,
-                                              long lrow ) throws Throwable {
-        setCurrentRow( lrow );
-        return evaluate( compEx );
+    public Object evaluateAtRow( CompiledExpression compEx, long lrow )
+            throws Throwable {
+        EvalState state = stateLocal_.get();
+        long lrow0 = state.lrow_;
+        boolean isNull0 = state.isNull_;
+        state.lrow_ = lrow;
+        try {
+            return evaluate( compEx );
+        }
+        finally {
+
+            /* Restore the previous state, in case this is a nested
+             * evaluation, for instance of a synthetic column referenced
+             * by another expression using the same reader. */
+            state.lrow_ = lrow0;
+            state.isNull_ = isNull0;
+        }
     }
 
     /**
@@ -63,6 +87,24 @@ public class RandomJELRowReader extends StarTableJELRowReader {
      * @return  cell at <tt>(getCurrentRow(),icol)</tt>
      */
     public Object getCell( int icol ) throws IOException {
-        return table_.getCell( lrow_, icol );
+        return table_.getCell( stateLocal_.get().lrow_, icol );
+    }
+
+    @Override
+    protected void setNullExpression( boolean isNull ) {
+        stateLocal_.get().isNull_ = isNull;
+    }
+
+    @Override
+    protected boolean isNullExpression() {
+        return stateLocal_.get().isNull_;
+    }
+
+    /**
+     * Per-thread evaluation state.
+     */
+    private static class EvalState {
+        long lrow_ = -1L;
+        boolean isNull_;
     }
 }
@@ -3,13 +3,16 @@ package uk.ac.starlink.ttools.join;
 import gnu.jel.CompilationException;
 import uk.ac.starlink.table.JoinFixAction;
 import uk.ac.starlink.table.ValueInfo;
+import uk.ac.starlink.table.join.EqualsMatchEngine;
 import uk.ac.starlink.table.join.JoinType;
 import uk.ac.starlink.table.join.MatchEngine;
 import uk.ac.starlink.table.join.PairMode;
 import uk.ac.starlink.table.join.ProgressIndicator;
+import uk.ac.starlink.task.BooleanParameter;
 import uk.ac.starlink.task.Environment;
 import uk.ac.starlink.task.ExecutionException;
 import uk.ac.starlink.task.Parameter;
+import uk.ac.starlink.task.ParameterValueException;
 import uk.ac.starlink.task.TaskException;
 import uk.ac.starlink.task.UsageException;
 import uk.ac.starlink.ttools.task.InputTableSpec;
@@ -32,6 +35,7 @@ public class Match2Mapper implements TableMapper {
     private final FindModeParameter modeParam_;
     private final JoinFixActionParameter fixcolParam_;
     private final ProgressIndicatorParameter progressParam_;
+    private final BooleanParameter presortedParam_;
 
     /**
      * Constructor.
@@ -46,6 +50,24 @@ public class Match2Mapper implements TableMapper {
         joinParam_ = new JoinTypeParameter( "join" );
         modeParam_ = new FindModeParameter( "find" );
         progressParam_ = new ProgressIndicatorParameter( "progress" );
+        presortedParam_ = new BooleanParameter( "presorted" );
+        presortedParam_.setBooleanDefault( false );
+        presortedParam_.setDescription( new String[] {
+            "<p>Asserts that both input tables are already sorted",
+            "in ascending order of the matched values.",
+            "If true, the match is done by walking through the two",
+            "tables in step (a merge join) rather than by building an",
+            "index, so that memory use does not depend on table size",
+            "and inputs that can only be read sequentially,",
+            "for instance streamed or compressed files, can be joined",
+            "without first being copied.",
+            "Output rows then appear in key order.",
+            "The sort order is checked during the match,",
+            "and an error results if it is violated.",
+            "This option is only available for",
+            "<code>" + matcherParam_.getName() + "=exact</code>.",
+            "</p>",
+        } );
     }
 
     public Parameter<?>[] getParameters() {
@@ -62,6 +84,7 @@ public class Match2Mapper implements TableMapper {
             fixcolParam_.createSuffixParameter( "2" ),
             matcherParam_.getScoreParameter(),
             progressParam_,
+            presortedParam_,
         };
     }
 
@@ -87,10 +110,17 @@ public class Match2Mapper implements TableMapper {
         ValueInfo scoreInfo = matcherParam_.getScoreInfo( env );
         ProgressIndicator progger =
             progressParam_.progressIndicatorValue( env );
+        boolean presorted = presortedParam_.booleanValue( env );
+        if ( presorted && ! ( matcher instanceof EqualsMatchEngine ) ) {
+            throw new ParameterValueException( presortedParam_,
+                                               "Only available for "
+                                             + matcherParam_.getName()
+                                             + "=exact" );
+        }
 
         /* Construct and return a mapping based on this lot. */
         return new Match2Mapping( matcher, tupleExprs[ 0 ], tupleExprs[ 1 ],
                                   join, pairMode, fixacts[ 0 ], fixacts[ 1 ],
-                                  scoreInfo, progger );
+                                  scoreInfo, progger, presorted );
     }
 }
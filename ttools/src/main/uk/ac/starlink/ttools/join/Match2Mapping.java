@@ -3,6 +3,7 @@ package uk.ac.starlink.ttools.join;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.logging.Logger;
+import uk.ac.starlink.table.ColumnInfo;
 import uk.ac.starlink.table.JoinFixAction;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.Tables;
@@ -11,11 +12,14 @@ import uk.ac.starlink.table.join.JoinType;
 import uk.ac.starlink.table.join.LinkSet;
 import uk.ac.starlink.table.join.MatchEngine;
 import uk.ac.starlink.table.join.MatchStarTables;
+import uk.ac.starlink.table.join.MergeJoinStarTable;
 import uk.ac.starlink.table.join.PairMode;
 import uk.ac.starlink.table.join.ProgressIndicator;
 import uk.ac.starlink.table.join.RowMatcher;
 import uk.ac.starlink.task.ExecutionException;
 import uk.ac.starlink.task.TaskException;
+import uk.ac.starlink.ttools.filter.AddColumnsTable;
+import uk.ac.starlink.ttools.filter.JELColumnSupplement;
 import uk.ac.starlink.ttools.jel.JELTable;
 import uk.ac.starlink.ttools.task.InputTableSpec;
 import uk.ac.starlink.ttools.task.TableMapping;
@@ -36,6 +40,7 @@ public class Match2Mapping implements TableMapping {
     final JoinType join_;
     final ValueInfo scoreInfo_;
     final ProgressIndicator progger_;
+    final boolean presorted_;
 
     private static final Logger logger =
         Logger.getLogger( "uk.ac.starlink.ttools.task" );
@@ -59,11 +64,15 @@ public class Match2Mapping implements TableMapping {
      * @param   scoreInfo  column description for inter-table match score
      *                     values, or null for no score column
      * @param   progger    progress indicator for matching
+     * @param   presorted  if true, both inputs are assumed sorted on
+     *                     their (single) tuple value and are merge joined
+     *                     sequentially
      */
     Match2Mapping( MatchEngine matchEngine, String[] exprTuple1,
                    String[] exprTuple2, JoinType join, PairMode pairMode,
                    JoinFixAction fixact1, JoinFixAction fixact2,
-                   ValueInfo scoreInfo, ProgressIndicator progger ) {
+                   ValueInfo scoreInfo, ProgressIndicator progger,
+                   boolean presorted ) {
         matchEngine_ = matchEngine;
         exprTuple1_ = exprTuple1;
         exprTuple2_ = exprTuple2;
@@ -72,6 +81,7 @@ public class Match2Mapping implements TableMapping {
         fixacts_ = new JoinFixAction[] { fixact1, fixact2, };
         scoreInfo_ = scoreInfo;
         progger_ = progger;
+        presorted_ = presorted;
     }
 
     public StarTable mapTables( InputTableSpec[] inSpecs )
@@ -86,6 +96,19 @@ public class Match2Mapping implements TableMapping {
         makeSubTable( inTable1, exprTuple1_ );
         makeSubTable( inTable2, exprTuple2_ );
 
+        /* For sorted input, a streaming merge does the whole job. */
+        if ( presorted_ ) {
+            return new MergeJoinStarTable( makeKeyedTable( inTable1,
+                                                           exprTuple1_ ),
+                                           inTable1.getColumnCount(),
+                                           makeKeyedTable( inTable2,
+                                                           exprTuple2_ ),
+                                           inTable2.getColumnCount(),
+                                           pairMode_, join_,
+                                           pairMode_.mayProduceGroups(),
+                                           fixacts_ );
+        }
+
         /* Now randomise the tables (currently required for the rest
          * of the matching) and create the subtables for real. */
         inTable1 = Tables.randomTable( inTable1 );
@@ -136,4 +159,28 @@ public class Match2Mapping implements TableMapping {
         return JELTable.createJELTable( inTable, matchEngine_.getTupleInfos(),
                                         exprTuple );
     }
+
+    /**
+     * Returns a table which is the input table with the matcher's
+     * tuple values appended as extra columns.
+     * The values are evaluated in the same pass as the input rows,
+     * so that no random access is required.
+     *
+     * @param  inTable  input table
+     * @param  exprTuple  array of JEL expressions giving the values of
+     *           the tuple elements required for the matcher
+     * @return  table with tuple columns following the input columns
+     */
+    private StarTable makeKeyedTable( StarTable inTable, String[] exprTuple )
+            throws IOException {
+        ValueInfo[] tupleInfos = matchEngine_.getTupleInfos();
+        ColumnInfo[] colInfos = new ColumnInfo[ tupleInfos.length ];
+        for ( int i = 0; i < tupleInfos.length; i++ ) {
+            colInfos[ i ] = new ColumnInfo( tupleInfos[ i ] );
+        }
+        return new AddColumnsTable( inTable,
+                                    new JELColumnSupplement( inTable,
+                                                             exprTuple,
+                                                             colInfos ) );
+    }
 }
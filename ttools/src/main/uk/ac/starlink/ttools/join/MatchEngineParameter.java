@@ -507,7 +507,12 @@ public class MatchEngineParameter extends Parameter<MatchEngine>
                                             + cName );
                 }
             }
-            components[ i ] = new HumanMatchEngine( component );
+
+            /* The exact matcher has no units to humanise; leaving it
+             * unwrapped lets the RowMatcher use its hash join path. */
+            components[ i ] = component instanceof EqualsMatchEngine
+                            ? component
+                            : new HumanMatchEngine( component );
         }
         return components.length == 1
              ? components[ 0 ]
@@ -45,7 +45,8 @@ public class SkyMatch2Mapping extends Match2Mapping {
                new String[] { raExpr1, decExpr1, }, 
                new String[] { raExpr2, decExpr2, }, join, pairMode,
                fixact1, fixact2, 
-               new HumanMatchEngine( matcher ).getMatchScoreInfo(), progger );
+               new HumanMatchEngine( matcher ).getMatchScoreInfo(), progger,
+               false );
     }
 
     protected StarTable makeSubTable( StarTable inTable, String[] exprTuple )
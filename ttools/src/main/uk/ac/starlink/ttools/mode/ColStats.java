@@ -2,6 +2,7 @@ package uk.ac.starlink.ttools.mode;
 
 import uk.ac.starlink.table.ColumnInfo;
 import uk.ac.starlink.table.Tables;
+import uk.ac.starlink.ttools.filter.UnivariateStats;
 
 /**
  * Accumulates statistics for the values in a given column.
@@ -119,6 +120,16 @@ public abstract class ColStats {
      */
     protected abstract void acceptDatum( Object value );
 
+    /**
+     * Incorporates the data accumulated by another stats object into
+     * this one.  The other object must have been created using the
+     * same column metadata, and should have accumulated data from
+     * a disjoint set of rows.
+     *
+     * @param  other  compatible stats object
+     */
+    protected abstract void combine( ColStats other );
+
     /**
      * Returns the mean of the accumulated data.
      *
@@ -187,6 +198,9 @@ public abstract class ColStats {
                 ngood_++;
             }
         }
+        protected void combine( ColStats other ) {
+            ngood_ += ((BasicColStats) other).ngood_;
+        }
         protected double getMeanValue() {
             return Double.NaN;
         }
@@ -221,6 +235,11 @@ public abstract class ColStats {
                 }
             }
         }
+        protected void combine( ColStats o ) {
+            BooleanColStats other = (BooleanColStats) o;
+            ngood_ += other.ngood_;
+            ntrue_ += other.ntrue_;
+        }
         protected double getMeanValue() {
             return (double) ntrue_ / (double) ngood_;
         }
@@ -233,57 +252,39 @@ public abstract class ColStats {
      * ColStats implementation for numeric data.
      */
     private static class NumberColStats extends ColStats {
-        private long ngood_;
-        private double sum_;
-        private double sum2_;
-        private double dmin_ = Double.MAX_VALUE;
-        private double dmax_ = -Double.MAX_VALUE;
-        private Object min_;
-        private Object max_;
+        private final UnivariateStats stats_;
 
         public NumberColStats( ColumnInfo colInfo ) {
             super( colInfo );
+            stats_ = UnivariateStats.createStats( Number.class );
         }
 
         protected void acceptDatum( Object obj ) {
-            if ( obj instanceof Number ) {
-                double dval = ((Number) obj).doubleValue();
-                if ( ! Double.isNaN( dval ) ) {
-                    ngood_++;
-                    sum_ += dval;
-                    sum2_ += dval * dval;
-                    if ( dval < dmin_ ) {
-                        dmin_ = dval;
-                        min_ = obj;
-                    }
-                    if ( dval > dmax_ ) {
-                        dmax_ = dval;
-                        max_ = obj;
-                    }
-                }
-            }
+            stats_.acceptDatum( obj );
+        }
+
+        protected void combine( ColStats other ) {
+            stats_.combine( ((NumberColStats) other).stats_ );
         }
 
         protected double getMeanValue() {
-            return ngood_ > 0 ? sum_ / ngood_
-                              : Double.NaN;
+            return stats_.getMean();
         }
 
         protected double getVarianceValue() {
-            return ngood_ > 0 ? ( sum2_ - sum_ * sum_ / ngood_ ) / ngood_
-                              : Double.NaN;
+            return stats_.getCentralSum2() / stats_.getCount();
         }
 
         protected Object getMinimumValue() {
-            return min_;
+            return stats_.getMinimum();
         }
 
         protected Object getMaximumValue() {
-            return max_;
+            return stats_.getMaximum();
         }
 
         protected long getGoodCountValue() {
-            return ngood_;
+            return stats_.getCount();
         }
     }
 }
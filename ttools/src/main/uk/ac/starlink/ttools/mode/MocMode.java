@@ -1,8 +1,5 @@
 package uk.ac.starlink.ttools.mode;
 
-import cds.healpix.Healpix;
-import cds.healpix.HealpixNested;
-import cds.healpix.HealpixNestedBMOC;
 import cds.moc.HealpixMoc;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -23,6 +20,7 @@ import uk.ac.starlink.ttools.cone.ConeQueryRowSequence;
 import uk.ac.starlink.ttools.cone.JELQuerySequenceFactory;
 import uk.ac.starlink.ttools.cone.MocFormat;
 import uk.ac.starlink.ttools.cone.QuerySequenceFactory;
+import uk.ac.starlink.ttools.cone.RangeMoc;
 import uk.ac.starlink.ttools.task.SkyCoordParameter;
 import uk.ac.starlink.util.Destination;
 
@@ -178,43 +176,23 @@ public class MocMode implements ProcessingMode {
      */
     private static HealpixMoc createMoc( int order, ConeQueryRowSequence qseq )
             throws IOException {
-        HealpixMoc moc;
-        try {
-            moc = new HealpixMoc( order );
-        }
-        catch ( Exception e ) {
-            throw (IOException) new IOException( "Error creating MOC"
-                                               + " (bad order " + order + "?)" )
-                               .initCause( e );
+        if ( order < 0 || order > RangeMoc.MAX_ORDER ) {
+            throw new IOException( "Error creating MOC"
+                                 + " (bad order " + order + "?)" );
         }
-        logger_.info( "New MOC order=" + order
-                    + ", resolution=" + (float) moc.getAngularRes() + "deg" );
-        HealpixNested hpx = Healpix.getNested( order );
-        setChecked( moc, false );
+        RangeMoc.Builder builder = new RangeMoc.Builder( order );
+        logger_.info( "New MOC order=" + order );
         while ( qseq.next() ) {
-            double raRad = Math.toRadians( qseq.getRa() );
-            double decRad = Math.toRadians( qseq.getDec() );
-            double radiusRad = Math.toRadians( qseq.getRadius() );
-            if ( ! Double.isNaN( raRad ) &&
-                 decRad >= -0.5 * Math.PI && decRad <= 0.5 * Math.PI &&
-                 radiusRad >= 0 ) {
-                HealpixNestedBMOC bmoc =
-                    hpx.newConeComputerApprox( radiusRad )
-                       .overlappingCells( raRad, decRad );
-                for ( HealpixNestedBMOC.CurrentValueAccessor vac : bmoc ) {
-                    try {
-                        moc.add( vac.getDepth(), vac.getHash() );
-                    }
-                    catch ( Exception e ) {
-                        throw (IOException)
-                              new IOException( "HEALPix/MOC error" )
-                             .initCause( e );
-                    }
-                }
+            double ra = qseq.getRa();
+            double dec = qseq.getDec();
+            double radius = qseq.getRadius();
+            if ( ! Double.isNaN( ra ) &&
+                 dec >= -90 && dec <= 90 &&
+                 radius >= 0 ) {
+                builder.addDisc( ra, dec, radius );
             }
         }
-        setChecked( moc, true );
-        return moc;
+        return builder.build().toHealpixMoc();
     }
 
     /**
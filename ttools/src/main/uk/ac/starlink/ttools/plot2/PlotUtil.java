@@ -106,6 +106,15 @@ public class PlotUtil {
     /** Minimum number of input differences that fill up a colour ramp. */
     public static final int MIN_RAMP_UNIT = 12;
 
+    /**
+     * Report key indicating whether a layer's plan was reused from
+     * a previous plot rather than being calculated afresh.
+     */
+    public static final ReportKey<Boolean> PLAN_REUSED_KEY =
+        ReportKey.createObjectKey( new ReportMeta( "plan_reused",
+                                                   "Plan Reused" ),
+                                   Boolean.class, false );
+
     /** Amount of padding added to data ranges for axis scaling. */
     private static final double PAD_FRACTION = 0.02;
 
@@ -692,6 +701,8 @@ public class PlotUtil {
         logger_.info( "Layers: " + nl + ", Paper: " + paperType );
         Drawing[] drawings = new Drawing[ nl ];
         Object[] plans = new Object[ nl ];
+        boolean[] reused = new boolean[ nl ];
+        int nReused = 0;
         Set<Object> knownPlans = new HashSet<Object>();
         if ( storedPlans != null ) {
             knownPlans.addAll( storedPlans );
@@ -701,7 +712,13 @@ public class PlotUtil {
                             .createDrawing( surface, auxSpans, paperType );
             plans[ il ] = drawings[ il ].calculatePlan( knownPlans.toArray(),
                                                         dataStore );
-            knownPlans.add( plans[ il ] );
+            reused[ il ] = ! knownPlans.add( plans[ il ] );
+            if ( reused[ il ] ) {
+                nReused++;
+            }
+        }
+        if ( nReused > 0 ) {
+            logger_.info( "Plans reused: " + nReused + "/" + nl );
         }
         if ( storedPlans != null ) {
             storedPlans.clear();
@@ -712,7 +729,9 @@ public class PlotUtil {
                                       cached );
         if ( logger_.isLoggable( REPORT_LEVEL ) ) {
             for ( int il = 0; il < nl; il++ ) {
-                ReportMap report = drawings[ il ].getReport( plans[ il ] );
+                ReportMap report =
+                    reportPlanReuse( drawings[ il ].getReport( plans[ il ] ),
+                                     reused[ il ] );
                 if ( report != null ) {
                     String rtxt = report.toString( false );
                     if ( rtxt.length() > 0 ) {
@@ -730,6 +749,24 @@ public class PlotUtil {
         return placer.createPlotIcon( dataIcon ); 
     }
 
+    /**
+     * Returns a report augmented with an entry indicating whether
+     * the plan it describes was reused from a previous plot.
+     * The input report is not modified.
+     *
+     * @param  report  report from a drawing, may be null
+     * @param  isReused  true iff the drawing's plan was obtained
+     *                   from a previous plot
+     * @return  new report including a {@link #PLAN_REUSED_KEY} entry
+     */
+    public static ReportMap reportPlanReuse( ReportMap report,
+                                             boolean isReused ) {
+        ReportMap report1 = report == null ? new ReportMap()
+                                           : new ReportMap( report );
+        report1.put( PLAN_REUSED_KEY, Boolean.valueOf( isReused ) );
+        return report1;
+    }
+
     /**
      * Determines which mouse button was changed at a given mouse event.
      * It's not really clear across the landscape of different mouse types
@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.function.Supplier;
 import uk.ac.starlink.ttools.plot2.data.DataSpec;
 import uk.ac.starlink.ttools.plot2.data.DataStore;
+import uk.ac.starlink.ttools.plot2.data.SpatialQuery;
 import uk.ac.starlink.ttools.plot2.data.TupleSequence;
 
 /**
@@ -63,12 +64,37 @@ public class PointCloud {
      */
     public Supplier<CoordSequence>
             createDataPosSupplier( DataStore dataStore ) {
+        return createDataPosSupplier( dataStore, null );
+    }
+
+    /**
+     * Returns an iterable over data positions which may be restricted
+     * to those visible on a given plot surface.
+     * All the positions visible on the surface will be included,
+     * but others may be too, so visibility must still be tested
+     * by the caller.
+     * If the data store maintains a spatial index, this may be much
+     * faster than iterating over all the positions when the surface
+     * covers only a small part of the data.
+     *
+     * @param  dataStore  data storage object
+     * @param  surface   plot surface restricting positions,
+     *                   or null for no restriction
+     * @return   iterable over usable data positions
+     */
+    public Supplier<CoordSequence>
+            createDataPosSupplier( DataStore dataStore, Surface surface ) {
         int nc = subClouds_.length;
         DataPosSequence.PositionCloud[] pclouds =
             new DataPosSequence.PositionCloud[ nc ];
         for ( int ic = 0; ic < nc; ic++ ) {
             final SubCloud subCloud = subClouds_[ ic ];
             final DataSpec dataSpec = subCloud.getDataSpec();
+            final SpatialQuery query =
+                  surface == null
+                ? null
+                : SpatialQuery.createQuery( surface, subCloud.getDataGeom(),
+                                            subCloud.getPosCoordIndex(), 1 );
             pclouds[ ic ] = new DataPosSequence.PositionCloud() {
                 public int getPosCoordIndex() {
                     return subCloud.getPosCoordIndex();
@@ -77,7 +103,7 @@ public class PointCloud {
                     return subCloud.getDataGeom();
                 }
                 public TupleSequence createTupleSequence( DataStore dstore ) {
-                    return dstore.getTupleSequence( dataSpec );
+                    return dstore.getTupleSequence( dataSpec, query );
                 }
                 public long getTupleCount() {
                     return dataSpec.getSourceTable().getRowCount();
@@ -1,16 +1,20 @@
 package uk.ac.starlink.ttools.plot2.data;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.ttools.plot2.DataGeom;
+import uk.ac.starlink.ttools.plot2.PlotUtil;
 import uk.ac.starlink.ttools.plot2.Slow;
 
 /**
@@ -19,6 +23,14 @@ import uk.ac.starlink.ttools.plot2.Slow;
  * The actual storage mechanism is provided by an externally supplied
  * {@link CachedColumnFactory}.
  *
+ * <p>The data stores produced also maintain spatial indexes
+ * to serve {@link SpatialQuery}-restricted tuple sequences.
+ * An index is built lazily, only when the same positional data
+ * has been queried more than once, since a single query is
+ * cheaper to satisfy by a full scan than by constructing an index.
+ * Once built, indexes are retained by subsequent data stores
+ * that hold the same mask and positional coordinate data.
+ *
  * @author   Mark Taylor
  * @since    11 Feb 2013
  */
@@ -26,6 +38,15 @@ public class CachedDataStoreFactory implements DataStoreFactory {
 
     private final CachedColumnFactory colFact_;
     private final TupleRunner runner_;
+
+    /** Number of queries of the same data before an index is built. */
+    private static final int INDEX_QUERY_THRESHOLD = 2;
+
+    /**
+     * Maximum fraction of the indexed rows that a query may return
+     * for an indexed sequence to be used in place of a full scan.
+     */
+    private static final double MAX_INDEX_FRACTION = 0.5;
     private static final Logger logger_ =
         Logger.getLogger( "uk.ac.starlink.ttools.plot2" );
 
@@ -323,21 +344,38 @@ public class CachedDataStoreFactory implements DataStoreFactory {
     private static class CacheData implements DataStore {
         private final Map<MaskSpec,CachedColumn> mMap_;
         private final Map<CoordSpec,CachedColumn> cMap_;
+        private final Map<IndexKey,IndexEntry> iMap_;
         private final TupleRunner runner_;
  
         /**
-         * Constructs a CacheData from data maps.
+         * Constructs a CacheData from data maps and index map.
          *
          * @param   runner  tuple runner
          * @param   mMap  map of mask data, keyed by mask spec
          * @param   cMap  map of coordinate data, keyed by coord spec
+         * @param   iMap  map of spatial index entries, keyed by index key
          */
         CacheData( TupleRunner runner,
                    Map<MaskSpec,CachedColumn> mMap,
-                   Map<CoordSpec,CachedColumn> cMap ) {
+                   Map<CoordSpec,CachedColumn> cMap,
+                   Map<IndexKey,IndexEntry> iMap ) {
             runner_ = runner;
             mMap_ = new HashMap<MaskSpec,CachedColumn>( mMap );
             cMap_ = new HashMap<CoordSpec,CachedColumn>( cMap );
+            iMap_ = new ConcurrentHashMap<IndexKey,IndexEntry>( iMap );
+        }
+
+        /**
+         * Constructs a CacheData from data maps.
+         *
+         * @param   runner  tuple runner
+         * @param   mMap  map of mask data, keyed by mask spec
+         * @param   cMap  map of coordinate data, keyed by coord spec
+         */
+        CacheData( TupleRunner runner,
+                   Map<MaskSpec,CachedColumn> mMap,
+                   Map<CoordSpec,CachedColumn> cMap ) {
+            this( runner, mMap, cMap, new HashMap<IndexKey,IndexEntry>() );
         }
 
         /**
@@ -347,7 +385,7 @@ public class CachedDataStoreFactory implements DataStoreFactory {
          * @param  cloned   object whos data is to be copied (by reference)
          */
         CacheData( TupleRunner runner, CacheData cloned ) {
-            this( cloned.runner_, cloned.mMap_, cloned.cMap_ );
+            this( cloned.runner_, cloned.mMap_, cloned.cMap_, cloned.iMap_ );
         }
 
         /**
@@ -376,9 +414,11 @@ public class CachedDataStoreFactory implements DataStoreFactory {
          * @return   new data object containing union
          */
         CacheData add( CacheData other ) {
-            CacheData result = new CacheData( runner_, this.mMap_, this.cMap_ );
+            CacheData result =
+                new CacheData( runner_, this.mMap_, this.cMap_, this.iMap_ );
             result.mMap_.putAll( other.mMap_ );
             result.cMap_.putAll( other.cMap_ );
+            result.iMap_.putAll( other.iMap_ );
             return result;
         }
 
@@ -390,9 +430,12 @@ public class CachedDataStoreFactory implements DataStoreFactory {
          * @return  new intersection data object
          */
         CacheData retain( CacheSpec spec ) {
-            CacheData result = new CacheData( runner_, this.mMap_, this.cMap_ );
+            CacheData result =
+                new CacheData( runner_, this.mMap_, this.cMap_, this.iMap_ );
             result.mMap_.keySet().retainAll( spec.mSet_ );
             result.cMap_.keySet().retainAll( spec.cSet_ );
+            result.iMap_.keySet()
+                  .removeIf( key -> ! key.isContainedIn( spec ) );
             return result;
         }
 
@@ -447,20 +490,168 @@ public class CachedDataStoreFactory implements DataStoreFactory {
             final CachedColumn mask = getMask( spec );
             long nrow = mask.getRowCount();
             Supplier<CachedReader> maskSupplier = mask::createReader;
-            final CachedColumn[] cols = getColumns( spec );
+            return new CachedTupleSequence( maskSupplier,
+                                            createColumnsSupplier( spec ),
+                                            nrow );
+        }
+
+        public TupleSequence getTupleSequence( DataSpec spec,
+                                               SpatialQuery query ) {
+            if ( query != null ) {
+                IndexEntry entry =
+                    iMap_.computeIfAbsent( new IndexKey( spec, query ),
+                                           k -> new IndexEntry() );
+                PositionIndex index = entry.getIndex( this, spec, query );
+                if ( index != null ) {
+                    int[] irows = index.queryRows( query.getDataLows(),
+                                                   query.getDataHighs() );
+                    if ( irows.length <=
+                         MAX_INDEX_FRACTION * index.getCount() ) {
+                        return new IndexedTupleSequence(
+                                       createColumnsSupplier( spec ), irows );
+                    }
+                }
+            }
+            return getTupleSequence( spec );
+        }
+
+        public TupleRunner getTupleRunner() {
+            return runner_;
+        }
+
+        /**
+         * Returns a supplier for readers of the coordinate data
+         * for a given data spec.
+         *
+         * @param   dataSpec  specification of required columns
+         * @return   supplier of column reader arrays
+         */
+        private Supplier<CachedReader[]>
+                createColumnsSupplier( DataSpec dataSpec ) {
+            final CachedColumn[] cols = getColumns( dataSpec );
             final int ncol = cols.length;
-            Supplier<CachedReader[]> colsSupplier = () -> {
+            return () -> {
                 CachedReader[] rdrs = new CachedReader[ ncol ];
                 for ( int ic = 0; ic < ncol; ic++ ) {
                     rdrs[ ic ] = cols[ ic ].createReader();
                 }
                 return rdrs;
             };
-            return new CachedTupleSequence( maskSupplier, colsSupplier, nrow );
         }
+    }
 
-        public TupleRunner getTupleRunner() {
-            return runner_;
+    /**
+     * Identifies the data indexed by a spatial index:
+     * an inclusion mask, the positional coordinates and the geom
+     * used to interpret them.
+     */
+    private static class IndexKey {
+        private final MaskSpec mask_;
+        private final CoordSpec[] coords_;
+        private final DataGeom geom_;
+
+        /**
+         * Constructor.
+         *
+         * @param  dataSpec  data spec
+         * @param  query   spatial query indicating positional coordinates
+         */
+        IndexKey( DataSpec dataSpec, SpatialQuery query ) {
+            mask_ = new MaskSpec( dataSpec );
+            geom_ = query.getDataGeom();
+            int ic0 = query.getPosCoordIndex();
+            int nc = geom_.getPosCoords().length;
+            coords_ = new CoordSpec[ nc ];
+            for ( int ic = 0; ic < nc; ic++ ) {
+                coords_[ ic ] = new CoordSpec( dataSpec, ic0 + ic );
+            }
+        }
+
+        /**
+         * Indicates whether all the data required by this key
+         * is present in a given cache specification.
+         *
+         * @param   spec  cache specification
+         * @return  true iff this key's mask and coords are all in spec
+         */
+        boolean isContainedIn( CacheSpec spec ) {
+            return spec.mSet_.contains( mask_ )
+                && spec.cSet_.containsAll( Arrays.asList( coords_ ) );
+        }
+
+        @Override
+        public int hashCode() {
+            int code = 55201;
+            code = 23 * code + mask_.hashCode();
+            code = 23 * code + Arrays.hashCode( coords_ );
+            code = 23 * code + geom_.hashCode();
+            return code;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            if ( o instanceof IndexKey ) {
+                IndexKey other = (IndexKey) o;
+                return this.mask_.equals( other.mask_ )
+                    && Arrays.equals( this.coords_, other.coords_ )
+                    && PlotUtil.equals( this.geom_, other.geom_ );
+            }
+            else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Manages lazy construction of a spatial index.
+     */
+    private static class IndexEntry {
+        private int nQuery_;
+        private boolean failed_;
+        private PositionIndex index_;
+
+        /**
+         * Returns the spatial index for this entry, building it if
+         * it has been requested enough times.
+         * If no index is available, null is returned.
+         *
+         * @param  data   data store supplying the indexed data
+         * @param  dataSpec   data spec
+         * @param  query   query indicating positional coordinates
+         * @return  index, or null
+         */
+        synchronized PositionIndex getIndex( CacheData data,
+                                             DataSpec dataSpec,
+                                             SpatialQuery query ) {
+            if ( index_ == null && ! failed_ &&
+                 ++nQuery_ >= INDEX_QUERY_THRESHOLD ) {
+                long nrow = data.getMask( dataSpec ).getRowCount();
+                if ( nrow > Integer.MAX_VALUE ) {
+                    failed_ = true;
+                    return null;
+                }
+                long start = System.currentTimeMillis();
+                try {
+                    index_ = PositionIndex
+                            .createIndex( data.getTupleSequence( dataSpec ),
+                                          query.getDataGeom(),
+                                          query.getPosCoordIndex() );
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                catch ( IllegalArgumentException e ) {
+                    logger_.log( Level.WARNING, "Can't build spatial index", e );
+                    failed_ = true;
+                    return null;
+                }
+                logger_.info( "Built spatial index for "
+                            + index_.getCount() + " positions in "
+                            + ( System.currentTimeMillis() - start )
+                            + "ms" );
+            }
+            return index_;
         }
     }
 }
@@ -46,6 +46,25 @@ public interface DataStore {
      */
     TupleSequence getTupleSequence( DataSpec spec );
 
+    /**
+     * Returns the data described by a given DataSpec as a sequence of
+     * tuples, optionally restricted to a region of data space.
+     * The returned sequence contains at least all those tuples
+     * that would be returned by {@link #getTupleSequence(DataSpec)}
+     * whose position lies within the query box;
+     * it may contain others as well, so users must still perform
+     * their own visibility tests.
+     * Implementations which do not maintain a spatial index
+     * may simply return the same result as the single-argument method.
+     * Must only be called if {@link #hasData} returns true for the
+     * given DataSpec; if not, behaviour is undefined.
+     *
+     * @param   spec   plot data specification object
+     * @param   query   spatial restriction, or null for all tuples
+     * @return  sequence of values which can be used to perform a plot
+     */
+    TupleSequence getTupleSequence( DataSpec spec, SpatialQuery query );
+
     /**
      * Returns an object that manages iteration over tuples.
      * Where possible, the returned TupleRunner should be used for iteration
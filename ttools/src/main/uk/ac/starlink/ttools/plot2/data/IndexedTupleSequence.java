@@ -0,0 +1,106 @@
+package uk.ac.starlink.ttools.plot2.data;
+
+import java.util.function.Supplier;
+
+/**
+ * TupleSequence implementation based on CachedColumns which iterates
+ * over an explicit list of row indices rather than over all rows.
+ * No mask is applied; the row list is assumed to contain only
+ * included rows.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class IndexedTupleSequence implements TupleSequence {
+
+    private final Supplier<CachedReader[]> colsSupplier_;
+    private final int[] irows_;
+    private final CachedReader[] colRdrs_;
+    private int ix_;
+    private int nx_;
+    private long irow_;
+
+    /**
+     * Public constructor.
+     *
+     * @param  colsSupplier  supplier for array of columns providing
+     *                       data cells per row
+     * @param  irows   row indices to iterate over, in iteration order
+     */
+    public IndexedTupleSequence( Supplier<CachedReader[]> colsSupplier,
+                                 int[] irows ) {
+        this( colsSupplier, irows, -1, irows.length );
+    }
+
+    /**
+     * Constructor for internal use (recursion).
+     *
+     * @param  colsSupplier  supplier for array of columns providing
+     *                       data cells per row
+     * @param  irows   row indices to iterate over, in iteration order
+     * @param  ix   index into irows immediately before start of
+     *              iteration range
+     * @param  nx   index into irows immediately after end of
+     *              iteration range
+     */
+    private IndexedTupleSequence( Supplier<CachedReader[]> colsSupplier,
+                                  int[] irows, int ix, int nx ) {
+        colsSupplier_ = colsSupplier;
+        irows_ = irows;
+        ix_ = ix;
+        nx_ = nx;
+        irow_ = -1;
+        colRdrs_ = colsSupplier.get();
+    }
+
+    public boolean next() {
+        if ( ++ix_ < nx_ ) {
+            irow_ = irows_[ ix_ ];
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+
+    public TupleSequence split() {
+        if ( nx_ - ix_ > 2 ) {
+            int mid = ( ix_ + nx_ ) / 2;
+            TupleSequence split =
+                new IndexedTupleSequence( colsSupplier_, irows_, ix_, mid );
+            ix_ = mid - 1;
+            return split;
+        }
+        else {
+            return null;
+        }
+    }
+
+    public long splittableSize() {
+        return nx_ - ix_;
+    }
+
+    public long getRowIndex() {
+        return irow_;
+    }
+
+    public Object getObjectValue( int icol ) {
+        return colRdrs_[ icol ].getObjectValue( irow_ );
+    }
+
+    public double getDoubleValue( int icol ) {
+        return colRdrs_[ icol ].getDoubleValue( irow_ );
+    }
+
+    public int getIntValue( int icol ) {
+        return colRdrs_[ icol ].getIntValue( irow_ );
+    }
+
+    public long getLongValue( int icol ) {
+        return colRdrs_[ icol ].getLongValue( irow_ );
+    }
+
+    public boolean getBooleanValue( int icol ) {
+        return colRdrs_[ icol ].getBooleanValue( irow_ );
+    }
+}
@@ -486,6 +486,11 @@ public class PersistentDataStoreFactory implements DataStoreFactory {
             return new CachedTupleSequence( maskSupplier, coordsSupplier,
                                             nrow );
         }
+
+        public TupleSequence getTupleSequence( DataSpec dspec,
+                                               SpatialQuery query ) {
+            return getTupleSequence( dspec );
+        }
     }
 
     /**
@@ -0,0 +1,321 @@
+package uk.ac.starlink.ttools.plot2.data;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import uk.ac.starlink.ttools.plot2.DataGeom;
+import uk.ac.starlink.util.SplitPolicy;
+
+/**
+ * Spatial index over the data space positions of a tuple sequence.
+ * It is implemented as a balanced k-d tree with implicit node layout;
+ * apart from the permuted row index array only the split values
+ * of the internal nodes are stored, so the memory footprint is
+ * a little over 4 bytes per indexed row.
+ *
+ * <p>Instances are immutable once constructed, and may be queried
+ * concurrently from multiple threads.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class PositionIndex {
+
+    private final int ndim_;
+    private final int nlevel_;
+    private final int[] irows_;
+    private final double[] splits_;
+
+    /** Maximum number of positions in a leaf node. */
+    private static final int LEAF_SIZE = 64;
+
+    /** Minimum node size at which tree construction is done in parallel. */
+    private static final int MIN_PARALLEL_SIZE =
+        SplitPolicy.DFLT_MIN_TASK_SIZE;
+
+    /**
+     * Constructor.  The supplied arrays are reordered in place.
+     *
+     * @param  ndim  dimensionality of data space
+     * @param  irows   row indices of indexed positions
+     * @param  coords  coordinates of indexed positions,
+     *                 <code>ndim</code> elements per row in the same
+     *                 order as <code>irows</code>
+     * @param  count   number of positions to use from the input arrays
+     * @param  parallel  true to build the tree using multiple threads
+     */
+    private PositionIndex( int ndim, int[] irows, double[] coords, int count,
+                           boolean parallel ) {
+        ndim_ = ndim;
+        irows_ = irows.length == count ? irows : Arrays.copyOf( irows, count );
+        int nlevel = 0;
+        for ( long n = count; n > LEAF_SIZE; n = ( n + 1 ) / 2 ) {
+            nlevel++;
+        }
+        nlevel_ = nlevel;
+        splits_ = new double[ ( 1 << nlevel ) - 1 ];
+        BuildTask root = new BuildTask( coords, 0, 0, count, 0 );
+        if ( parallel && count >= 2 * MIN_PARALLEL_SIZE ) {
+            ForkJoinPool.commonPool().invoke( root );
+        }
+        else {
+            root.compute();
+        }
+    }
+
+    /**
+     * Returns the number of positions in this index.
+     *
+     * @return   indexed position count
+     */
+    public int getCount() {
+        return irows_.length;
+    }
+
+    /**
+     * Returns the indices of all rows whose positions may lie
+     * within a given box in data space.
+     * All rows within the box are guaranteed to be included,
+     * but some rows outside it may also be present.
+     * The returned array is in ascending order.
+     *
+     * @param  dlos  lower bounds of box in data coordinates
+     * @param  dhis  upper bounds of box in data coordinates
+     * @return   sorted array of row indices
+     */
+    public int[] queryRows( double[] dlos, double[] dhis ) {
+        int[] ranges = new int[ 16 ];
+        int nr = 0;
+        int ntot = 0;
+
+        /* Traverse the tree non-recursively, accumulating (lo,hi) pairs
+         * giving ranges of the row index array within leaf nodes. */
+        int[] stack = new int[ 4 * ( nlevel_ + 2 ) ];
+        int sp = 0;
+        stack[ sp++ ] = 0;
+        stack[ sp++ ] = irows_.length;
+        stack[ sp++ ] = 0;
+        stack[ sp++ ] = 0;
+        while ( sp > 0 ) {
+            int level = stack[ --sp ];
+            int inode = stack[ --sp ];
+            int hi = stack[ --sp ];
+            int lo = stack[ --sp ];
+            if ( level == nlevel_ ) {
+                if ( hi > lo ) {
+                    if ( nr + 2 > ranges.length ) {
+                        ranges = Arrays.copyOf( ranges, ranges.length * 2 );
+                    }
+                    ranges[ nr++ ] = lo;
+                    ranges[ nr++ ] = hi;
+                    ntot += hi - lo;
+                }
+            }
+            else {
+                int idim = level % ndim_;
+                double split = splits_[ inode ];
+                int mid = ( lo + hi ) >>> 1;
+                if ( dhis[ idim ] >= split ) {
+                    stack[ sp++ ] = mid;
+                    stack[ sp++ ] = hi;
+                    stack[ sp++ ] = 2 * inode + 2;
+                    stack[ sp++ ] = level + 1;
+                }
+                if ( dlos[ idim ] <= split ) {
+                    stack[ sp++ ] = lo;
+                    stack[ sp++ ] = mid;
+                    stack[ sp++ ] = 2 * inode + 1;
+                    stack[ sp++ ] = level + 1;
+                }
+            }
+        }
+
+        /* Gather and sort the row indices. */
+        int[] result = new int[ ntot ];
+        int ir = 0;
+        for ( int i = 0; i < nr; i += 2 ) {
+            int lo = ranges[ i ];
+            int n = ranges[ i + 1 ] - lo;
+            System.arraycopy( irows_, lo, result, ir, n );
+            ir += n;
+        }
+        assert ir == ntot;
+        if ( ntot >= 2 * MIN_PARALLEL_SIZE ) {
+            Arrays.parallelSort( result );
+        }
+        else {
+            Arrays.sort( result );
+        }
+        return result;
+    }
+
+    /**
+     * Reads the positions from a tuple sequence and builds an index
+     * from them.  Tuples for which the position cannot be determined
+     * are not included in the index.
+     *
+     * @param  tseq  tuple sequence; it is iterated over sequentially
+     * @param  geom  data geom used to interpret positional coordinates
+     * @param  iPosCoord  index of the tuple field at which position
+     *                    information starts
+     * @return   new index
+     * @throws  IllegalArgumentException  if there are too many positions
+     *                                    to index
+     * @throws  InterruptedException  if the thread is interrupted
+     *                                during construction
+     */
+    public static PositionIndex createIndex( TupleSequence tseq,
+                                             DataGeom geom, int iPosCoord )
+            throws InterruptedException {
+        int ndim = geom.getDataDimCount();
+        int maxCount = ( Integer.MAX_VALUE - 8 ) / ndim;
+        double[] dpos = new double[ ndim ];
+        int[] irows = new int[ 1024 ];
+        double[] coords = new double[ irows.length * ndim ];
+        int n = 0;
+        while ( tseq.next() ) {
+            if ( geom.readDataPos( tseq, iPosCoord, dpos ) ) {
+                if ( n == irows.length ) {
+                    if ( n == maxCount ) {
+                        throw new IllegalArgumentException( "Too many rows" );
+                    }
+                    int size = (int) Math.min( 2L * n, maxCount );
+                    irows = Arrays.copyOf( irows, size );
+                    coords = Arrays.copyOf( coords, size * ndim );
+                }
+                irows[ n ] = (int) tseq.getRowIndex();
+                System.arraycopy( dpos, 0, coords, n * ndim, ndim );
+                n++;
+                if ( n % 100_000 == 0 && Thread.interrupted() ) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        return new PositionIndex( ndim, irows, coords, n, true );
+    }
+
+    /**
+     * Builds one node of the k-d tree and its descendants,
+     * by partitioning its range about the median in the relevant
+     * dimension.
+     */
+    private class BuildTask extends RecursiveAction {
+        private final double[] coords_;
+        private final int inode_;
+        private final int lo_;
+        private final int hi_;
+        private final int level_;
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor.
+         *
+         * @param  coords  coordinate array, ndim elements per row
+         * @param  inode   index of node in split value array
+         * @param  lo     index of first row in node
+         * @param  hi     index after last row in node
+         * @param  level  depth of node in tree
+         */
+        BuildTask( double[] coords, int inode, int lo, int hi, int level ) {
+            coords_ = coords;
+            inode_ = inode;
+            lo_ = lo;
+            hi_ = hi;
+            level_ = level;
+        }
+
+        protected void compute() {
+            if ( level_ < nlevel_ ) {
+                int idim = level_ % ndim_;
+                int mid = ( lo_ + hi_ ) >>> 1;
+                select( coords_, lo_, hi_ - 1, mid, idim );
+                splits_[ inode_ ] = coords_[ mid * ndim_ + idim ];
+                BuildTask left =
+                    new BuildTask( coords_, 2 * inode_ + 1, lo_, mid,
+                                   level_ + 1 );
+                BuildTask right =
+                    new BuildTask( coords_, 2 * inode_ + 2, mid, hi_,
+                                   level_ + 1 );
+                if ( hi_ - lo_ >= 2 * MIN_PARALLEL_SIZE &&
+                     getPool() != null ) {
+                    invokeAll( left, right );
+                }
+                else {
+                    left.compute();
+                    right.compute();
+                }
+            }
+        }
+    }
+
+    /**
+     * Partially sorts a range of rows so that the row at a given
+     * position has the value it would have if the range were fully
+     * sorted in a given dimension, with no greater values before it
+     * and no smaller values after it.
+     *
+     * @param  coords  coordinate array
+     * @param  lo   index of first row in range
+     * @param  hi   index of last row in range (inclusive)
+     * @param  k   target index
+     * @param  idim   dimension index
+     */
+    private void select( double[] coords, int lo, int hi, int k, int idim ) {
+        int nd = ndim_;
+        while ( hi > lo ) {
+
+            /* Median of three pivot. */
+            int mid = ( lo + hi ) >>> 1;
+            double a = coords[ lo * nd + idim ];
+            double b = coords[ mid * nd + idim ];
+            double c = coords[ hi * nd + idim ];
+            double pivot = a < b ? ( b < c ? b : ( a < c ? c : a ) )
+                                 : ( a < c ? a : ( b < c ? c : b ) );
+
+            /* Hoare partition. */
+            int i = lo;
+            int j = hi;
+            while ( i <= j ) {
+                while ( coords[ i * nd + idim ] < pivot ) {
+                    i++;
+                }
+                while ( coords[ j * nd + idim ] > pivot ) {
+                    j--;
+                }
+                if ( i <= j ) {
+                    swap( coords, i, j );
+                    i++;
+                    j--;
+                }
+            }
+            if ( k <= j ) {
+                hi = j;
+            }
+            else if ( k >= i ) {
+                lo = i;
+            }
+            else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Exchanges the positions of two rows.
+     *
+     * @param  coords  coordinate array
+     * @param  i   first row index
+     * @param  j   second row index
+     */
+    private void swap( double[] coords, int i, int j ) {
+        int nd = ndim_;
+        int itmp = irows_[ i ];
+        irows_[ i ] = irows_[ j ];
+        irows_[ j ] = itmp;
+        for ( int id = 0; id < nd; id++ ) {
+            double dtmp = coords[ i * nd + id ];
+            coords[ i * nd + id ] = coords[ j * nd + id ];
+            coords[ j * nd + id ] = dtmp;
+        }
+    }
+}
@@ -66,6 +66,14 @@ public class SimpleDataStoreFactory implements DataStoreFactory, DataStore {
         }
     }
 
+    /**
+     * No spatial index is maintained, so this returns all the tuples.
+     */
+    public TupleSequence getTupleSequence( DataSpec spec,
+                                           SpatialQuery query ) {
+        return getTupleSequence( spec );
+    }
+
     public TupleRunner getTupleRunner() {
         return runner_;
     }
@@ -0,0 +1,275 @@
+package uk.ac.starlink.ttools.plot2.data;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import uk.ac.starlink.ttools.plot2.DataGeom;
+import uk.ac.starlink.ttools.plot2.Surface;
+import uk.ac.starlink.ttools.plot2.geom.PlanarSurface;
+import uk.ac.starlink.ttools.plot2.geom.SkySurface;
+
+/**
+ * Characterises a restriction on the positions of data points
+ * in data space.
+ * It is used to request from a {@link DataStore} only those tuples
+ * which may be visible in a given region of a plot surface.
+ *
+ * <p>The region is represented as an axis-aligned box in the
+ * data coordinate space of the surface; for Cartesian surfaces this is
+ * just the range of data coordinates visible, and for sky surfaces
+ * it is a box in the (unit vector) data space that bounds a cap on the sky.
+ * The box is conservative, so that all points which are visible
+ * are guaranteed to lie within it, but some points within it may
+ * not be visible.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class SpatialQuery {
+
+    private final DataGeom geom_;
+    private final int iPosCoord_;
+    private final double[] dlos_;
+    private final double[] dhis_;
+
+    /** Number of samples taken along each edge of a sky plot boundary. */
+    private static final int SKY_EDGE_SAMPLES = 64;
+
+    /** Factor by which the sampled sky cap radius is enlarged. */
+    private static final double SKY_RADIUS_MARGIN = 1.05;
+
+    /** Cap radius above which sky queries are not considered worthwhile. */
+    private static final double MAX_SKY_RADIUS = 0.5 * Math.PI;
+
+    /**
+     * Constructor.
+     *
+     * @param  geom  data geom used to interpret positional coordinates
+     * @param  iPosCoord   index of the data spec coordinate at which
+     *                     the position information starts
+     * @param  dlos   lower bounds of the query box in data coordinates
+     * @param  dhis   upper bounds of the query box in data coordinates
+     */
+    public SpatialQuery( DataGeom geom, int iPosCoord,
+                         double[] dlos, double[] dhis ) {
+        geom_ = geom;
+        iPosCoord_ = iPosCoord;
+        dlos_ = dlos.clone();
+        dhis_ = dhis.clone();
+    }
+
+    /**
+     * Returns the data geom used to interpret positional coordinates.
+     *
+     * @return  geom
+     */
+    public DataGeom getDataGeom() {
+        return geom_;
+    }
+
+    /**
+     * Returns the index of the data spec coordinate at which the
+     * position information starts.
+     *
+     * @return  position coordinate index
+     */
+    public int getPosCoordIndex() {
+        return iPosCoord_;
+    }
+
+    /**
+     * Returns the lower bounds of the query box.
+     *
+     * @return   dataDimCount-element array of data space lower bounds
+     */
+    public double[] getDataLows() {
+        return dlos_.clone();
+    }
+
+    /**
+     * Returns the upper bounds of the query box.
+     *
+     * @return   dataDimCount-element array of data space upper bounds
+     */
+    public double[] getDataHighs() {
+        return dhis_.clone();
+    }
+
+    /**
+     * Indicates whether a given data position falls within this query's box.
+     *
+     * @param  dpos  data space position
+     * @return  true iff dpos is inside the box
+     */
+    public boolean contains( double[] dpos ) {
+        for ( int id = 0; id < dlos_.length; id++ ) {
+            double d = dpos[ id ];
+            if ( ! ( d >= dlos_[ id ] && d <= dhis_[ id ] ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuffer sbuf = new StringBuffer();
+        for ( int id = 0; id < dlos_.length; id++ ) {
+            if ( id > 0 ) {
+                sbuf.append( ", " );
+            }
+            sbuf.append( dlos_[ id ] )
+                .append( ".." )
+                .append( dhis_[ id ] );
+        }
+        return sbuf.toString();
+    }
+
+    /**
+     * Attempts to create a query that selects the data positions
+     * visible on a given plot surface.
+     * If the surface is of an unsupported type, or if the visible
+     * region cannot be determined or is not usefully restrictive,
+     * null is returned.
+     *
+     * @param  surface  plot surface
+     * @param  geom   data geom used to interpret positional coordinates
+     * @param  iPosCoord  index of the data spec coordinate at which
+     *                    the position information starts
+     * @param  pad   number of pixels outside the plot bounds for which
+     *               positions should also be included
+     * @return   query covering the visible region, or null
+     */
+    public static SpatialQuery createQuery( Surface surface, DataGeom geom,
+                                            int iPosCoord, int pad ) {
+        if ( geom == null || ! geom.hasPosition() ||
+             geom.getDataDimCount() != surface.getDataDimCount() ) {
+            return null;
+        }
+        Rectangle box = new Rectangle( surface.getPlotBounds() );
+        box.grow( pad, pad );
+        if ( surface instanceof PlanarSurface ) {
+            return createPlanarQuery( (PlanarSurface) surface, geom,
+                                      iPosCoord, box );
+        }
+        else if ( surface instanceof SkySurface ) {
+            return createSkyQuery( (SkySurface) surface, geom,
+                                   iPosCoord, box );
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a query for a two-dimensional Cartesian surface.
+     * The data limits are taken from the corners of the padded
+     * plot bounds.
+     *
+     * @param  surface  plot surface
+     * @param  geom   data geom
+     * @param  iPosCoord  position coordinate index
+     * @param  box   padded plot bounds in graphics coordinates
+     * @return   query, or null
+     */
+    private static SpatialQuery createPlanarQuery( PlanarSurface surface,
+                                                   DataGeom geom,
+                                                   int iPosCoord,
+                                                   Rectangle box ) {
+        double[] dlos = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+        double[] dhis = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        int[] gxs = { box.x, box.x + box.width };
+        int[] gys = { box.y, box.y + box.height };
+        for ( int gx : gxs ) {
+            for ( int gy : gys ) {
+                double[] dpos =
+                    surface.graphicsToData( new Point2D.Double( gx, gy ),
+                                            null );
+                if ( dpos == null ) {
+                    return null;
+                }
+                for ( int id = 0; id < 2; id++ ) {
+                    double d = dpos[ id ];
+                    if ( Double.isNaN( d ) ) {
+                        return null;
+                    }
+                    dlos[ id ] = Math.min( dlos[ id ], d );
+                    dhis[ id ] = Math.max( dhis[ id ], d );
+                }
+            }
+        }
+        return new SpatialQuery( geom, iPosCoord, dlos, dhis );
+    }
+
+    /**
+     * Creates a query for a sky surface.
+     * The visible region is approximated by a cap centred on the
+     * centre of the plot, with a radius determined by sampling the
+     * boundary of the padded plot bounds.
+     * If any part of that boundary lies off the sky, null is returned.
+     *
+     * @param  surface  plot surface
+     * @param  geom   data geom
+     * @param  iPosCoord  position coordinate index
+     * @param  box   padded plot bounds in graphics coordinates
+     * @return   query, or null
+     */
+    private static SpatialQuery createSkyQuery( SkySurface surface,
+                                                DataGeom geom, int iPosCoord,
+                                                Rectangle box ) {
+        double[] center =
+            surface.graphicsToData( new Point2D.Double( box.getCenterX(),
+                                                        box.getCenterY() ) );
+        if ( center == null ) {
+            return null;
+        }
+        double maxDist = 0;
+        int ns = SKY_EDGE_SAMPLES;
+        for ( int is = 0; is <= ns; is++ ) {
+            double fx = box.x + box.width * (double) is / ns;
+            double fy = box.y + box.height * (double) is / ns;
+            Point2D[] gps = new Point2D[] {
+                new Point2D.Double( fx, box.y ),
+                new Point2D.Double( fx, box.y + box.height ),
+                new Point2D.Double( box.x, fy ),
+                new Point2D.Double( box.x + box.width, fy ),
+            };
+            for ( Point2D gp : gps ) {
+                double[] dpos = surface.graphicsToData( gp );
+                if ( dpos == null ) {
+                    return null;
+                }
+                maxDist = Math.max( maxDist, angle( center, dpos ) );
+            }
+        }
+        double radius = maxDist * SKY_RADIUS_MARGIN;
+        if ( ! ( radius < MAX_SKY_RADIUS ) ) {
+            return null;
+        }
+
+        /* Bound the cap in each Cartesian direction.  For axis k,
+         * the component along that axis of points in the cap ranges
+         * over the cosines of the angles within radius of the angle
+         * between the centre and the axis. */
+        double[] dlos = new double[ 3 ];
+        double[] dhis = new double[ 3 ];
+        for ( int id = 0; id < 3; id++ ) {
+            double theta =
+                Math.acos( Math.max( -1.0, Math.min( 1.0, center[ id ] ) ) );
+            dlos[ id ] = Math.cos( Math.min( Math.PI, theta + radius ) );
+            dhis[ id ] = Math.cos( Math.max( 0.0, theta - radius ) );
+        }
+        return new SpatialQuery( geom, iPosCoord, dlos, dhis );
+    }
+
+    /**
+     * Returns the angle between two unit vectors.
+     *
+     * @param  r1  first unit vector
+     * @param  r2  second unit vector
+     * @return  angle in radians
+     */
+    private static double angle( double[] r1, double[] r2 ) {
+        double dot = r1[ 0 ] * r2[ 0 ] + r1[ 1 ] * r2[ 1 ] + r1[ 2 ] * r2[ 2 ];
+        return Math.acos( Math.max( -1.0, Math.min( 1.0, dot ) ) );
+    }
+}
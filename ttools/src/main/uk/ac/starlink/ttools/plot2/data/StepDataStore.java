@@ -30,6 +30,13 @@ public class StepDataStore implements DataStore {
                                       step_ );
     }
 
+    public TupleSequence getTupleSequence( DataSpec spec,
+                                           SpatialQuery query ) {
+        return new StepTupleSequence( baseStore_
+                                     .getTupleSequence( spec, query ),
+                                      step_ );
+    }
+
     public boolean hasData( DataSpec spec ) {
         return baseStore_.hasData( spec );
     }
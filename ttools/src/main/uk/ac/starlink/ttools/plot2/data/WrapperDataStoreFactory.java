@@ -102,6 +102,12 @@ public abstract class WrapperDataStoreFactory implements DataStoreFactory {
             return baseStore_.getTupleSequence( new WrapperDataSpec( spec ) );
         }
 
+        public TupleSequence getTupleSequence( DataSpec spec,
+                                               SpatialQuery query ) {
+            return baseStore_.getTupleSequence( new WrapperDataSpec( spec ),
+                                                query );
+        }
+
         public boolean hasData( DataSpec spec ) {
             return baseStore_.hasData( new WrapperDataSpec( spec ) );
         }
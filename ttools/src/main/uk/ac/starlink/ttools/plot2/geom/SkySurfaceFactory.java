@@ -28,6 +28,7 @@ import uk.ac.starlink.ttools.plot2.data.AbortTupleSequence;
 import uk.ac.starlink.ttools.plot2.data.DataSpec;
 import uk.ac.starlink.ttools.plot2.data.DataStore;
 import uk.ac.starlink.ttools.plot2.data.SkyCoord;
+import uk.ac.starlink.ttools.plot2.data.SpatialQuery;
 import uk.ac.starlink.ttools.plot2.data.TupleRunner;
 import uk.ac.starlink.ttools.plot2.data.TupleSequence;
 
@@ -336,6 +337,10 @@ public class SkySurfaceFactory
             public TupleRunner getTupleRunner() {
                 return dataStore.getTupleRunner();
             }
+            public TupleSequence getTupleSequence( DataSpec dataSpec,
+                                                   SpatialQuery query ) {
+                return getTupleSequence( dataSpec );
+            }
             public TupleSequence getTupleSequence( DataSpec dataSpec ) {
                 if ( isFullSky() ) {
                     return PlotUtil.EMPTY_TUPLE_SEQUENCE;
@@ -105,9 +105,15 @@ public class BinPlan {
                 return binner1;
             }
         };
+
+        /* Only positions visible on the surface are binned, so restrict
+         * the supplied positions accordingly; if the data store has
+         * a spatial index this can avoid scanning most of the data
+         * for zoomed-in views. */
         Binner binner =
             dataStore.getTupleRunner().coordRunner()
-           .collect( collector, pointCloud.createDataPosSupplier( dataStore ) );
+           .collect( collector,
+                     pointCloud.createDataPosSupplier( dataStore, surface ) );
         return new PointCloudBinPlan( binner, gridder, pointCloud, surface );
     }
 
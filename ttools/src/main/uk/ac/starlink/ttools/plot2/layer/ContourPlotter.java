@@ -5,10 +5,13 @@ import java.awt.Graphics;
 import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Arrays;
+import java.util.function.IntConsumer;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import uk.ac.starlink.ttools.gui.ResourceIcon;
 import uk.ac.starlink.ttools.plot2.AuxScale;
 import uk.ac.starlink.ttools.plot2.DataGeom;
@@ -35,6 +38,7 @@ import uk.ac.starlink.ttools.plot2.data.CoordGroup;
 import uk.ac.starlink.ttools.plot2.data.DataSpec;
 import uk.ac.starlink.ttools.plot2.data.DataStore;
 import uk.ac.starlink.ttools.plot2.data.FloatingCoord;
+import uk.ac.starlink.ttools.plot2.data.SpatialQuery;
 import uk.ac.starlink.ttools.plot2.data.TupleSequence;
 import uk.ac.starlink.ttools.plot2.paper.Paper;
 import uk.ac.starlink.ttools.plot2.paper.PaperType;
@@ -359,7 +363,8 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
          *               be populated
          * @return   populated pixel grid
          */
-        private NumberGrid readBinGrid( DataStore dataStore, int pad ) {
+        private NumberGrid readBinGrid( final DataStore dataStore,
+                                        int pad ) {
             Rectangle bounds = surface_.getPlotBounds();
             final int nx = bounds.width + 2 * pad;
             final int ny = bounds.height + 2 * pad;
@@ -417,14 +422,28 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
                     return acc1;
                 }
             };
+
+            /* Only positions near the visible region can contribute,
+             * so restrict the data scan accordingly if the data store
+             * is able to do that. */
+            final SpatialQuery query =
+                SpatialQuery.createQuery( surface_, geom_, icPos_, pad + 1 );
             final BinList.Result binResult =
-               PlotUtil.tupleCollect( collector, dataSpec_, dataStore )
-              .getResult();
-            return new NumberGrid( gridder ) {
-                public double getValue( int index ) {
-                    return binResult.getBinValue( index );
+                dataStore.getTupleRunner()
+               .collect( collector,
+                         () -> dataStore.getTupleSequence( dataSpec_, query ) )
+               .getResult();
+
+            /* Copy the result into an array, since it will be read
+             * many times during smoothing and level calculation. */
+            final double[] values = new double[ nbin ];
+            forEachRow( ny, iy -> {
+                for ( int ix = 0; ix < nx; ix++ ) {
+                    int index = gridder.getIndex( ix, iy );
+                    values[ index ] = binResult.getBinValue( index );
                 }
-            };
+            } );
+            return new ArrayGrid( gridder, values );
         }
 
         public void paintData( final Object plan, Paper paper,
@@ -493,26 +512,35 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
             int yoff = bounds.y - pad;
             int nx = bounds.width;
             int ny = bounds.height;
-            Gridder gridder = new Gridder( nx + 2 * pad, ny + 2 * pad );
+            final Gridder gridder =
+                new Gridder( nx + 2 * pad, ny + 2 * pad );
             final int leng = gridder.getLength();
 
             /* Set up a list of contour levels.  Contours are defined as
              * the boundaries of groups of contiguous pixels falling within
              * a single level. */
-            Leveller leveller = createLeveller( cplan );
+            final Leveller leveller = createLeveller( cplan );
 
-            /* For the contour generation, set up a grid which treats
-             * bad values as simply very low values.  This has the effect
-             * of making blank regions fall below the lowest contour. */
+            /* For the contour generation, work out the level of each
+             * pixel, treating bad values as simply very low values.
+             * This has the effect of making blank regions fall below
+             * the lowest contour.  Pixels are independent, so this
+             * classification is done in parallel, leaving only the
+             * painting itself to be done sequentially. */
             final NumberGrid smoothGrid = cplan.smoothGrid_;
             assert gridder.equals( smoothGrid.gridder_ );
-            NumberGrid plotGrid = new NumberGrid( smoothGrid.gridder_ ) {
-                public double getValue( int i ) {
-                    double value = smoothGrid.getValue( i );
-                    return Double.isNaN( value ) ? -Double.MAX_VALUE
-                                                 : value;
+            final int[] levelGrid = new int[ leng ];
+            final int gw = gridder.getWidth();
+            forEachRow( gridder.getHeight(), iy -> {
+                for ( int ix = 0; ix < gw; ix++ ) {
+                    int index = gridder.getIndex( ix, iy );
+                    double value = smoothGrid.getValue( index );
+                    levelGrid[ index ] =
+                        leveller.getLevel( Double.isNaN( value )
+                                         ? -Double.MAX_VALUE
+                                         : value );
                 }
-            };
+            } );
 
             /* For each pixel, see whether the next one along (+1 in X/Y
              * direction) is in a different level.  If so, paint a
@@ -529,9 +557,9 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
             int iy0 = Math.max( 0, pad - lw );
             int iy1 = Math.min( ny + pad + 2 * lw, gridder.getHeight() );
             for ( int ix = ix0; ix < ix1; ix++ ) {
-                int lev0 = leveller.getLevel( plotGrid.getValue( ix, 0 ) );
+                int lev0 = levelGrid[ gridder.getIndex( ix, 0 ) ];
                 for ( int iy = iy0 + 1; iy < iy1; iy++ ) {
-                    int lev1 = leveller.getLevel( plotGrid.getValue( ix, iy ) );
+                    int lev1 = levelGrid[ gridder.getIndex( ix, iy ) ];
                     if ( lev1 != lev0 ) {
                         g.fillRect( xoff + ix, yoff + iy - ioff, lw, lw );
                     }
@@ -539,9 +567,9 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
                 }
             }
             for ( int iy = iy0; iy < iy1; iy++ ) {
-                int lev0 = leveller.getLevel( plotGrid.getValue( 0, iy ) );
+                int lev0 = levelGrid[ gridder.getIndex( 0, iy ) ];
                 for ( int ix = ix0 + 1; ix < ix1; ix++ ) {
-                    int lev1 = leveller.getLevel( plotGrid.getValue( ix, iy ) );
+                    int lev1 = levelGrid[ gridder.getIndex( ix, iy ) ];
                     if ( lev1 != lev0 ) {
                         g.fillRect( xoff + ix - ioff, yoff + iy, lw, lw );
                     }
@@ -559,10 +587,11 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
      * @param   smooth   smoothing parameter
      * @return  smoothed grid data, NaNs where no input contribution
      */
-    private static NumberGrid smoothSum( NumberGrid inGrid, int smooth ) {
-        Gridder gridder = inGrid.gridder_;
-        int nx = gridder.getWidth();
-        int ny = gridder.getHeight();
+    private static NumberGrid smoothSum( final NumberGrid inGrid,
+                                         final int smooth ) {
+        final Gridder gridder = inGrid.gridder_;
+        final int nx = gridder.getWidth();
+        final int ny = gridder.getHeight();
         int npix = gridder.getLength();
 
         /* Smooth using a convolution with a Gaussian kernel,
@@ -582,14 +611,19 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
          * (blank=0, non-blank=1) with the same kernel.
          * Anywhere the mask convolution ends up zero corresponds to
          * no input data contribution. */
-        double[] a1 = new double[ npix ];
-        double[] b1 = new double[ npix ];
-        for ( int qx = 0; qx < smooth; qx++ ) {
-            double k = kernel[ qx ];
-            int px = qx - smooth / 2;
-            int ix0 = Math.max( 0, px );
-            int ix1 = Math.min( nx, nx + px );
-            for ( int iy = 0; iy < ny; iy++ ) {
+        /* Each pass is done row by row (or column by column) in parallel;
+         * each output pixel is written by only one task, and kernel
+         * contributions are summed in the same order as for a
+         * sequential calculation. */
+        final double[] kernel1 = kernel;
+        final double[] a1 = new double[ npix ];
+        final double[] b1 = new double[ npix ];
+        forEachRow( ny, iy -> {
+            for ( int qx = 0; qx < smooth; qx++ ) {
+                double k = kernel1[ qx ];
+                int px = qx - smooth / 2;
+                int ix0 = Math.max( 0, px );
+                int ix1 = Math.min( nx, nx + px );
                 for ( int ix = ix0; ix < ix1; ix++ ) {
                     int jx = ix - px;
                     double d = inGrid.getValue( gridder.getIndex( jx, iy ) );
@@ -600,26 +634,7 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
                     }
                 }
             }
-        }
-        double[] a2 = new double[ npix ];
-        double[] b2 = new double[ npix ];
-        for ( int qy = 0; qy < smooth; qy++ ) {
-            double k = kernel[ qy ];
-            int py = qy - smooth / 2;
-            int iy0 = Math.max( 0, py );
-            int iy1 = Math.min( ny, ny + py );
-            for ( int iy = iy0; iy < iy1; iy++ ) {
-                for ( int ix = 0; ix < nx; ix++ ) {
-                    int jy = iy - py;
-                    int index2 = gridder.getIndex( ix, iy );
-                    int index1 = gridder.getIndex( ix, jy );
-                    a2[ index2 ] += k * a1[ index1 ];
-                    b2[ index2 ] += k * b1[ index1 ];
-                }
-            }
-        }
-        final double[] out = a2;
-        final double[] mask = b2;
+        } );
 
         /* Calculate the normalisation factor. */
         double sk = 0;
@@ -628,22 +643,37 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
                 sk += kernel[ i ] * kernel[ j ];
             }
         }
-        double factor = 1.0 / sk;
-
-        /* For each value in the convolved grid: apply the normalisation
-         * factor if the mask says it had contributions from the input,
-         * or set it NaN if the mask says it had no contributions. */
-        for ( int i = 0; i < out.length; i++ ) {
-            out[ i ] = mask[ i ] > 0 ? out[ i ] * factor
-                                     : Double.NaN;
-        }
+        final double factor = 1.0 / sk;
 
-        /* Return the result as a NumberGrid. */
-        return new NumberGrid( gridder ) {
-            public double getValue( int i ) {
-                return out[ i ];
+        /* Do the second pass.  For each value in the convolved grid,
+         * apply the normalisation factor if the mask says it had
+         * contributions from the input, or set it NaN if the mask says
+         * it had no contributions. */
+        final double[] out = new double[ npix ];
+        forEachRow( ny, iy -> {
+            double[] mask = new double[ nx ];
+            for ( int qy = 0; qy < smooth; qy++ ) {
+                double k = kernel1[ qy ];
+                int py = qy - smooth / 2;
+                int jy = iy - py;
+                if ( jy >= 0 && jy < ny ) {
+                    for ( int ix = 0; ix < nx; ix++ ) {
+                        int index2 = gridder.getIndex( ix, iy );
+                        int index1 = gridder.getIndex( ix, jy );
+                        out[ index2 ] += k * a1[ index1 ];
+                        mask[ ix ] += k * b1[ index1 ];
+                    }
+                }
             }
-        };
+            for ( int ix = 0; ix < nx; ix++ ) {
+                int index = gridder.getIndex( ix, iy );
+                out[ index ] = mask[ ix ] > 0 ? out[ index ] * factor
+                                              : Double.NaN;
+            }
+        } );
+
+        /* Return the result as a NumberGrid. */
+        return new ArrayGrid( gridder, out );
     }
 
     /**
@@ -653,10 +683,11 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
      * @param  smooth  smoothing kernel size
      * @return  smoothed grid data, NaNs where no input contribution
      */
-    private static NumberGrid smoothMean( NumberGrid inGrid, int smooth ) {
-        Gridder gridder = inGrid.gridder_;
-        int nx = gridder.getWidth();
-        int ny = gridder.getHeight();
+    private static NumberGrid smoothMean( final NumberGrid inGrid,
+                                          final int smooth ) {
+        final Gridder gridder = inGrid.gridder_;
+        final int nx = gridder.getWidth();
+        final int ny = gridder.getHeight();
         int npix = gridder.getLength();
 
         /* We can't decompose this into two 1-d convolutions, since we
@@ -665,41 +696,55 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
          * The effective kernel used for the smoothing is a circular top hat.
          * A Gaussian isn't a good choice here, since its main job is going
          * to be covering up for missing values, and it doesn't need to
-         * be separable. */
-        BinList outBinList = Combiner.MEAN.createArrayBinList( npix );
-        double q0 = 0.5 * ( smooth - 1 );
-        double qr = 0.5 * ( smooth - 1 ) + 0.5;
-        for ( int qx = 0; qx < smooth; qx++ ) {
-            int px = qx - smooth / 2;
-            int ix0 = Math.max( 0, px );
-            int ix1 = Math.min( nx, nx + px );
-            for ( int qy = 0; qy < smooth; qy++ ) {
-                int py = qy - smooth / 2;
-                int iy0 = Math.max( 0, py );
-                int iy1 = Math.min( ny, ny + py );
-                double r = Math.hypot( qx - q0, qy - q0 );
-                if ( r <= qr ) {
-                    for ( int iy = iy0; iy < iy1; iy++ ) {
-                        int jy = iy - py;
+         * be separable.
+         * Output rows are independent, so are calculated in parallel.
+         * Within each row, sums and counts are accumulated as for the
+         * mean combiner. */
+        final double q0 = 0.5 * ( smooth - 1 );
+        final double qr = 0.5 * ( smooth - 1 ) + 0.5;
+        final double[] out = new double[ npix ];
+        forEachRow( ny, iy -> {
+            double[] sums = new double[ nx ];
+            int[] counts = new int[ nx ];
+            for ( int qx = 0; qx < smooth; qx++ ) {
+                int px = qx - smooth / 2;
+                int ix0 = Math.max( 0, px );
+                int ix1 = Math.min( nx, nx + px );
+                for ( int qy = 0; qy < smooth; qy++ ) {
+                    int py = qy - smooth / 2;
+                    int jy = iy - py;
+                    double r = Math.hypot( qx - q0, qy - q0 );
+                    if ( r <= qr && jy >= 0 && jy < ny ) {
                         for ( int ix = ix0; ix < ix1; ix++ ) {
                             int jx = ix - px;
                             double d =
                                 inGrid.getValue( gridder.getIndex( jx, jy ) );
                             if ( ! Double.isNaN( d ) ) {
-                                int ig = gridder.getIndex( ix, iy );
-                                outBinList.submitToBin( ig, d );
+                                sums[ ix ] += d;
+                                counts[ ix ]++;
                             }
                         }
                     }
                 }
             }
-        }
-        final BinList.Result binResult = outBinList.getResult();
-        return new NumberGrid( gridder ) {
-            public double getValue( int i ) {
-                return binResult.getBinValue( i );
+            for ( int ix = 0; ix < nx; ix++ ) {
+                out[ gridder.getIndex( ix, iy ) ] =
+                    counts[ ix ] > 0 ? sums[ ix ] / counts[ ix ] : Double.NaN;
             }
-        };
+        } );
+        return new ArrayGrid( gridder, out );
+    }
+
+    /**
+     * Performs an operation for each row of a grid.
+     * Rows may be processed concurrently, so the operation must be
+     * thread-safe for distinct row indices.
+     *
+     * @param  ny  number of rows
+     * @param  rowWork  operation taking a row index
+     */
+    private static void forEachRow( int ny, IntConsumer rowWork ) {
+        IntStream.range( 0, ny ).parallel().forEach( rowWork );
     }
 
     /**
@@ -859,10 +904,34 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
         }
     }
 
+    /**
+     * NumberGrid implementation backed by an array.
+     */
+    private static class ArrayGrid extends NumberGrid {
+        final double[] values_;
+
+        /**
+         * Constructor.
+         *
+         * @param  gridder  grid geometry object
+         * @param  values   array of values, one for each grid pixel
+         */
+        ArrayGrid( Gridder gridder, double[] values ) {
+            super( gridder );
+            values_ = values;
+        }
+        public double getValue( int i ) {
+            return values_[ i ];
+        }
+    }
+
     /**
      * Aggregates accumulated grid data with information that characterises its
      * scope of applicability.
      * It combines a raw and smoothed grid.
+     * A few recently used smoothed grids are cached alongside the
+     * raw grid, so that changing the smoothing back and forth
+     * does not require repeated convolutions.
      */
     private static class ContourPlan {
         final Combiner combiner_;
@@ -873,6 +942,10 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
         final NumberGrid rawGrid_;
         final int smooth_;
         final NumberGrid smoothGrid_;
+        final Map<Integer,NumberGrid> smoothCache_;
+
+        /** Maximum number of smoothed grids cached for each raw grid. */
+        private static final int MAX_SMOOTH_CACHE = 4;
 
         /**
          * Constructor.
@@ -892,6 +965,39 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
         ContourPlan( Combiner combiner, Surface surface, DataSpec dataSpec,
                      DataGeom geom, int pad, NumberGrid rawGrid,
                      int smooth, NumberGrid smoothGrid ) {
+            this( combiner, surface, dataSpec, geom, pad, rawGrid,
+                  smooth, smoothGrid,
+                  new LinkedHashMap<Integer,NumberGrid>( 16, 0.75f, true ) {
+                      @Override
+                      protected boolean removeEldestEntry(
+                              Map.Entry<Integer,NumberGrid> entry ) {
+                          return size() > MAX_SMOOTH_CACHE;
+                      }
+                  } );
+        }
+
+        /**
+         * Constructor with explicit smoothed grid cache.
+         *
+         * @param  combiner  combination method for values
+         * @param  surface   plot surface
+         * @param  dataSpec   data specification
+         * @param  geom     geom
+         * @param  pad     number of pixels around the visible plot bounds
+         *                 that are populated in the bin grid
+         * @param  rawGrid  accumulated weight data
+         * @param  smooth   smoothing width
+         * @param  smoothGrid   rawGrid data smoothed by the supplied smoothing
+         *                      parameter
+         * @param  smoothCache  map from smoothing width to smoothed grid
+         *                      for rawGrid, shared between plans;
+         *                      access must be synchronized on the map
+         */
+        private ContourPlan( Combiner combiner, Surface surface,
+                             DataSpec dataSpec, DataGeom geom, int pad,
+                             NumberGrid rawGrid, int smooth,
+                             NumberGrid smoothGrid,
+                             Map<Integer,NumberGrid> smoothCache ) {
             combiner_ = combiner;
             surface_ = surface;
             dataSpec_ = dataSpec;
@@ -900,6 +1006,7 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
             rawGrid_ = rawGrid;
             smooth_ = smooth;
             smoothGrid_ = smoothGrid;
+            smoothCache_ = smoothCache;
         }
 
         /**
@@ -918,19 +1025,28 @@ public class ContourPlotter extends AbstractPlotter<ContourStyle> {
                 /* Note that the smoothed grid, like the raw grid, must have
                  * NaNs for missing data not zeros, otherwise contour level
                  * calculation won't work correctly. */
-                final NumberGrid sgrid;
-                if ( smooth == 1 ) {
-                    sgrid = rawGrid_;
+                Integer smoothKey = Integer.valueOf( smooth );
+                NumberGrid sgrid;
+                synchronized ( smoothCache_ ) {
+                    sgrid = smoothCache_.get( smoothKey );
                 }
-                else if ( combiner_.getType().isExtensive() ) {
-                    sgrid = smoothSum( rawGrid_, smooth );
-                }
-                else {
-                    sgrid = smoothMean( rawGrid_, smooth );
+                if ( sgrid == null ) {
+                    if ( smooth == 1 ) {
+                        sgrid = rawGrid_;
+                    }
+                    else if ( combiner_.getType().isExtensive() ) {
+                        sgrid = smoothSum( rawGrid_, smooth );
+                    }
+                    else {
+                        sgrid = smoothMean( rawGrid_, smooth );
+                    }
+                    synchronized ( smoothCache_ ) {
+                        smoothCache_.put( smoothKey, sgrid );
+                    }
                 }
                 return new ContourPlan( combiner_, surface_, dataSpec_,
                                         geom_, pad_, rawGrid_,
-                                        smooth, sgrid );
+                                        smooth, sgrid, smoothCache_ );
             }
         }
 
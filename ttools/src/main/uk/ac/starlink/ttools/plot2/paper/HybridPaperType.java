@@ -0,0 +1,383 @@
+package uk.ac.starlink.ttools.plot2.paper;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+import uk.ac.starlink.ttools.plot.MarkShape;
+import uk.ac.starlink.ttools.plot.PictureImageIcon;
+import uk.ac.starlink.ttools.plot2.Decal;
+import uk.ac.starlink.ttools.plot2.Drawing;
+import uk.ac.starlink.ttools.plot2.PlotUtil;
+import uk.ac.starlink.ttools.plot2.Slow;
+import uk.ac.starlink.ttools.plot2.Surface;
+import uk.ac.starlink.ttools.plot2.data.DataStore;
+
+/**
+ * Vector paper type abstract superclass which rasterises dense content.
+ *
+ * <p>Graphics primitives (glyphs and decals) placed on the paper
+ * are held back until either a group of drawings is complete,
+ * or the number of them exceeds a given limit.
+ * In the first case they are painted as vector graphics using a
+ * {@link PaintPaperType}.  In the second, they and all subsequent
+ * primitives in the same group are instead rendered to a bitmap
+ * at the resolution of the plot surface, and that bitmap is painted
+ * into the vector graphics context as a single image.
+ * Axes, labels and other decorations are not affected, since they
+ * are not painted by the paper.
+ *
+ * <p>For large datasets this can make vector output files very much
+ * smaller and faster to produce, while sparse content retains
+ * the appearance of pure vector output.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public abstract class HybridPaperType implements PaperType {
+
+    private final String name_;
+    private final PaintPaperType vectorType_;
+    private final int maxVectorCount_;
+    private final boolean perLayer_;
+
+    private static final GraphicsConfiguration HEADLESS_GC =
+        PaintPaperType
+       .createHeadlessGraphicsConfig( BufferedImage.TYPE_INT_RGB );
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.ttools.plot2.paper" );
+
+    /**
+     * Constructor.
+     *
+     * @param  name  paper type name
+     * @param  vectorType  paper type used for painting content as vectors;
+     *                     it must render layers in ascending order
+     * @param  maxVectorCount  maximum number of primitives in a group
+     *                         that will be painted as vectors
+     * @param  perLayer  if true, each layer is a separate group;
+     *                   if false, all layers together form a single group
+     */
+    protected HybridPaperType( String name, PaintPaperType vectorType,
+                               int maxVectorCount, boolean perLayer ) {
+        name_ = name;
+        vectorType_ = vectorType;
+        maxVectorCount_ = maxVectorCount;
+        perLayer_ = perLayer;
+    }
+
+    /**
+     * Returns false.
+     */
+    public boolean isBitmap() {
+        return false;
+    }
+
+    /**
+     * Returns the maximum number of primitives in a group that will
+     * be painted as vectors.
+     *
+     * @return  vector primitive limit
+     */
+    public int getMaxVectorCount() {
+        return maxVectorCount_;
+    }
+
+    public Icon createDataIcon( Surface surface, Drawing[] drawings,
+                                Object[] plans, DataStore dataStore,
+                                boolean cached ) {
+        HybridIcon icon =
+            new HybridIcon( surface, drawings, plans, dataStore, this );
+        if ( cached ) {
+            BufferedImage image =
+                PictureImageIcon.createImage( PlotUtil.toPicture( icon ),
+                                              HEADLESS_GC, Color.WHITE, null );
+            return new ImageIcon( image );
+        }
+        else {
+            return icon;
+        }
+    }
+
+    public void placeDecal( Paper paper, final Decal decal ) {
+        place( paper, ( ptype, p ) -> ptype.placeDecal( p, decal ) );
+    }
+
+    @Override
+    public String toString() {
+        return name_;
+    }
+
+    /**
+     * Submits a graphics primitive for placement on a paper instance
+     * created by this paper type.
+     *
+     * @param  paper  paper created by this type
+     * @param  placement  placement operation
+     */
+    protected void place( Paper paper, Placement placement ) {
+        ((HybridPaper) paper).place( placement );
+    }
+
+    /**
+     * Creates a bitmap sheet on which rasterised content can be placed.
+     *
+     * @param  surface  plot surface
+     * @param  isOpaque  true if the sheet must paint the plot background,
+     *                   false if it should be transparent
+     *                   where no content is placed
+     * @return  new sheet
+     */
+    protected abstract RasterSheet createRasterSheet( Surface surface,
+                                                      boolean isOpaque );
+
+    /**
+     * Defines the placement of a single graphics primitive.
+     * It may be applied either to vector or to bitmap paper.
+     */
+    protected interface Placement {
+
+        /**
+         * Places this primitive.
+         *
+         * @param  ptype  paper type on which to place it
+         * @param  paper  paper on which to place it, of a type
+         *                appropriate for ptype
+         */
+        void place( PaperType ptype, Paper paper );
+    }
+
+    /**
+     * Bitmap destination for rasterised content.
+     */
+    protected interface RasterSheet {
+
+        /**
+         * Returns the paper type used for placing primitives on this sheet.
+         *
+         * @return  paper type
+         */
+        PaperType getPaperType();
+
+        /**
+         * Returns the paper on which primitives are placed.
+         *
+         * @return  paper
+         */
+        Paper getPaper();
+
+        /**
+         * Completes rendering and paints the resulting bitmap to a
+         * graphics context at the position of the plot bounds.
+         *
+         * @param  g  graphics context in plot surface coordinates
+         */
+        void paintSheet( Graphics g );
+    }
+
+    /**
+     * Creates a raster sheet based on a paint paper type rendering
+     * to an in-memory image.  Graphics are painted in the same way
+     * as by the vector paper type, but as pixels.
+     *
+     * @param  paintType  paint paper type
+     * @param  surface  plot surface
+     * @param  isOpaque  whether the sheet should paint the plot background
+     * @return  new raster sheet
+     */
+    static RasterSheet createPaintRasterSheet( final PaintPaperType paintType,
+                                               Surface surface,
+                                               boolean isOpaque ) {
+        final Rectangle bounds = surface.getPlotBounds();
+        final BufferedImage image =
+            new BufferedImage( bounds.width, bounds.height,
+                               BufferedImage.TYPE_INT_ARGB );
+        final Graphics2D g2 = image.createGraphics();
+        g2.setRenderingHint( MarkShape.OUTLINE_CIRCLE_HINT, Boolean.TRUE );
+        g2.translate( -bounds.x, -bounds.y );
+        if ( isOpaque ) {
+            surface.paintBackground( g2 );
+        }
+        final Paper paper = paintType.createPaper( g2, bounds );
+        return new RasterSheet() {
+            public PaperType getPaperType() {
+                return paintType;
+            }
+            public Paper getPaper() {
+                return paper;
+            }
+            public void paintSheet( Graphics g ) {
+                paintType.flushPaper( paper );
+                g2.dispose();
+                g.drawImage( image, bounds.x, bounds.y, null );
+            }
+        };
+    }
+
+    /**
+     * Icon which paints drawings using this paper type.
+     */
+    private static class HybridIcon implements Icon {
+        private final Surface surface_;
+        private final Drawing[] drawings_;
+        private final Object[] plans_;
+        private final DataStore dataStore_;
+        private final HybridPaperType paperType_;
+        private final Rectangle plotBounds_;
+
+        /**
+         * Constructor.
+         *
+         * @param  surface   plot surface
+         * @param  drawings  drawings to paint
+         * @param  plans   array of plans, one for each drawing
+         * @param  dataStore  data storage object
+         * @param  paperType  paper type which created this icon
+         */
+        HybridIcon( Surface surface, Drawing[] drawings, Object[] plans,
+                    DataStore dataStore, HybridPaperType paperType ) {
+            surface_ = surface;
+            drawings_ = drawings;
+            plans_ = plans;
+            dataStore_ = dataStore;
+            paperType_ = paperType;
+            plotBounds_ = surface.getPlotBounds();
+        }
+
+        public int getIconWidth() {
+            return plotBounds_.width;
+        }
+
+        public int getIconHeight() {
+            return plotBounds_.height;
+        }
+
+        @Slow
+        public void paintIcon( Component c, Graphics g, int x, int y ) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setRenderingHint( MarkShape.OUTLINE_CIRCLE_HINT,
+                                 Boolean.FALSE );
+            g2.translate( x - plotBounds_.x, y - plotBounds_.y );
+            g2.clipRect( plotBounds_.x, plotBounds_.y,
+                         plotBounds_.width, plotBounds_.height );
+            surface_.paintBackground( g2 );
+            HybridPaper paper = new HybridPaper( paperType_, surface_, g2 );
+            for ( int il = 0; il < drawings_.length; il++ ) {
+                drawings_[ il ].paintData( plans_[ il ], paper, dataStore_ );
+                if ( paperType_.perLayer_ ) {
+                    paper.endGroup();
+                }
+            }
+            long startFlush = System.currentTimeMillis();
+            paper.endGroup();
+            paperType_.vectorType_.flushPaper( paper.vectorPaper_ );
+            PlotUtil.logTimeFromStart( logger_, "Flush", startFlush );
+            if ( paper.nRaster_ > 0 ) {
+                logger_.info( "Rasterised " + paper.nRaster_ + "/"
+                            + ( paperType_.perLayer_ ? drawings_.length : 1 )
+                            + " dense layer groups for vector output" );
+            }
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Paper implementation for use with this paper type.
+     */
+    private static class HybridPaper implements Paper {
+
+        final HybridPaperType paperType_;
+        final Surface surface_;
+        final Graphics2D g2_;
+        final Paper vectorPaper_;
+        final List<Placement> pending_;
+        RasterSheet raster_;
+        int nRaster_;
+
+        /**
+         * Constructor.
+         *
+         * @param  paperType  paper type which created this paper
+         * @param  surface  plot surface
+         * @param  g2  graphics destination
+         */
+        HybridPaper( HybridPaperType paperType, Surface surface,
+                     Graphics2D g2 ) {
+            paperType_ = paperType;
+            surface_ = surface;
+            g2_ = g2;
+            vectorPaper_ =
+                paperType.vectorType_
+               .createPaper( g2, surface.getPlotBounds() );
+            pending_ = new ArrayList<Placement>();
+        }
+
+        public PaperType getPaperType() {
+            return paperType_;
+        }
+
+        public boolean canMerge() {
+            return false;
+        }
+
+        public Paper createSheet() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void mergeSheet( Paper other ) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Accepts a primitive for placement.
+         * It is either held for later vector painting,
+         * or placed on the current raster sheet.
+         *
+         * @param  placement  placement operation
+         */
+        void place( Placement placement ) {
+            if ( raster_ != null ) {
+                placement.place( raster_.getPaperType(), raster_.getPaper() );
+            }
+            else {
+                pending_.add( placement );
+                if ( pending_.size() > paperType_.maxVectorCount_ ) {
+                    raster_ = paperType_
+                             .createRasterSheet( surface_,
+                                                 ! paperType_.perLayer_ );
+                    nRaster_++;
+                    for ( Placement p : pending_ ) {
+                        p.place( raster_.getPaperType(), raster_.getPaper() );
+                    }
+                    pending_.clear();
+                }
+            }
+        }
+
+        /**
+         * Called at the end of a group of drawings to commit
+         * the placed primitives to the output graphics context.
+         */
+        void endGroup() {
+            if ( raster_ != null ) {
+                raster_.paintSheet( g2_ );
+                raster_ = null;
+            }
+            else {
+                PaperType vtype = paperType_.vectorType_;
+                for ( Placement p : pending_ ) {
+                    p.place( vtype, vectorPaper_ );
+                }
+                pending_.clear();
+            }
+        }
+    }
+}
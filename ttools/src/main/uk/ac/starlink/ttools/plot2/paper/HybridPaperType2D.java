@@ -0,0 +1,57 @@
+package uk.ac.starlink.ttools.plot2.paper;
+
+import java.awt.Color;
+import uk.ac.starlink.ttools.plot2.Glyph;
+import uk.ac.starlink.ttools.plot2.Surface;
+
+/**
+ * HybridPaperType for 2-dimensional plots.
+ * Each layer is considered separately, so that dense layers are
+ * embedded as transparent bitmaps while sparse layers,
+ * and the stacking order of all layers, are preserved in the
+ * vector output.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class HybridPaperType2D extends HybridPaperType
+                               implements PaperType2D {
+
+    private final PaintPaperType2D paintType_;
+
+    /**
+     * Constructor.
+     *
+     * @param  maxVectorCount  maximum number of primitives in a layer
+     *                         that will be painted as vectors
+     */
+    public HybridPaperType2D( int maxVectorCount ) {
+        this( PaintPaperType2D.createPaperType( true ), maxVectorCount );
+    }
+
+    /**
+     * Constructor with explicit paint paper type.
+     *
+     * @param  paintType  paper type used both for vector painting
+     *                    and for painting to rasterised layers
+     * @param  maxVectorCount  maximum number of primitives in a layer
+     *                         that will be painted as vectors
+     */
+    private HybridPaperType2D( PaintPaperType2D paintType,
+                               int maxVectorCount ) {
+        super( "Hybrid2D", paintType, maxVectorCount, true );
+        paintType_ = paintType;
+    }
+
+    public void placeGlyph( Paper paper, final double dx, final double dy,
+                            final Glyph glyph, final Color color ) {
+        place( paper, ( ptype, p ) ->
+                      ((PaperType2D) ptype).placeGlyph( p, dx, dy,
+                                                        glyph, color ) );
+    }
+
+    protected RasterSheet createRasterSheet( Surface surface,
+                                             boolean isOpaque ) {
+        return createPaintRasterSheet( paintType_, surface, isOpaque );
+    }
+}
@@ -0,0 +1,80 @@
+package uk.ac.starlink.ttools.plot2.paper;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import uk.ac.starlink.ttools.plot2.Decal;
+import uk.ac.starlink.ttools.plot2.Glyph;
+import uk.ac.starlink.ttools.plot2.Surface;
+
+/**
+ * HybridPaperType for 3-dimensional plots.
+ * Since depth ordering applies across all layers, the decision
+ * whether to rasterise is made for the plot content as a whole:
+ * if the total number of primitives is small, they are depth-sorted
+ * and painted as vectors by a {@link SortedPaperType3D},
+ * and otherwise they are all rendered by a bitmapped 3D paper type.
+ * In the latter case the memory-hungry sorting of all the glyphs
+ * is avoided.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class HybridPaperType3D extends HybridPaperType
+                               implements PaperType3D {
+
+    private final RgbPaperType rasterType_;
+
+    /**
+     * Constructor.
+     *
+     * @param  rasterType  bitmapped paper type used for rasterised content;
+     *                     must also implement {@link PaperType3D}
+     * @param  maxVectorCount  maximum number of primitives in the plot
+     *                         that will be painted as vectors
+     */
+    public HybridPaperType3D( RgbPaperType rasterType, int maxVectorCount ) {
+        super( "Hybrid3D", new SortedPaperType3D(), maxVectorCount, false );
+        if ( ! ( rasterType instanceof PaperType3D ) ) {
+            throw new IllegalArgumentException( "Not 3D: " + rasterType );
+        }
+        rasterType_ = rasterType;
+    }
+
+    public void placeGlyph( Paper paper, final double dx, final double dy,
+                            final double dz, final Glyph glyph,
+                            final Color color ) {
+        place( paper, ( ptype, p ) ->
+                      ((PaperType3D) ptype).placeGlyph( p, dx, dy, dz,
+                                                        glyph, color ) );
+    }
+
+    protected RasterSheet createRasterSheet( final Surface surface,
+                                             boolean isOpaque ) {
+        final Rectangle bounds = surface.getPlotBounds();
+        final RgbPaperType.RgbPaper paper = rasterType_.createPaper( bounds );
+        if ( isOpaque ) {
+            rasterType_.placeDecal( paper, new Decal() {
+                public void paintDecal( Graphics g ) {
+                    surface.paintBackground( g );
+                }
+                public boolean isOpaque() {
+                    return true;
+                }
+            } );
+        }
+        return new RasterSheet() {
+            public PaperType getPaperType() {
+                return rasterType_;
+            }
+            public Paper getPaper() {
+                return paper;
+            }
+            public void paintSheet( Graphics g ) {
+                paper.flush();
+                g.drawImage( paper.getRgbImage().getImage(),
+                             bounds.x, bounds.y, null );
+            }
+        };
+    }
+}
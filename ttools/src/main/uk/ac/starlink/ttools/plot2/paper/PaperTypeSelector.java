@@ -45,6 +45,24 @@ public abstract class PaperTypeSelector {
     public abstract PaperType getPixelPaperType( LayerOpt[] opts,
                                                  Compositor compositor );
 
+    /**
+     * Supplies a PaperType for rendering to a vector output medium,
+     * which paints dense content as embedded bitmaps rather than
+     * as vector graphics primitives.
+     *
+     * @param  opts  layer options
+     * @param  compositor  compositor for combining colours in bitmapped
+     *                     content (relevant only if some transparency
+     *                     is present)
+     * @param  maxVectorCount  maximum number of graphics primitives
+     *                         painted as vectors in a group
+     * @return  paper type
+     * @see   HybridPaperType
+     */
+    public abstract PaperType getHybridPaperType( LayerOpt[] opts,
+                                                  Compositor compositor,
+                                                  int maxVectorCount );
+
     /**
      * Constructs the default selector for 2D plots.
      *
@@ -62,6 +80,10 @@ public abstract class PaperTypeSelector {
             PaperType createGeneralPixelPaperType( Compositor compos ) {
                 return new CompositePaperType2D( compos );
             }
+            PaperType createHybridPaperType( PaperType pixelType,
+                                             int maxVectorCount ) {
+                return new HybridPaperType2D( maxVectorCount );
+            }
         };
     }
 
@@ -76,6 +98,11 @@ public abstract class PaperTypeSelector {
             PaperType createGeneralPixelPaperType( Compositor compos ) {
                 return new PixelStackPaperType3D( compos, 1e-4f );
             }
+            PaperType createHybridPaperType( PaperType pixelType,
+                                             int maxVectorCount ) {
+                return new HybridPaperType3D( (RgbPaperType) pixelType,
+                                              maxVectorCount );
+            }
         };
     }
 
@@ -96,6 +123,11 @@ public abstract class PaperTypeSelector {
                                                 Compositor compositor ) {
                 return ptype;
             }
+            public PaperType getHybridPaperType( LayerOpt[] opts,
+                                                 Compositor compositor,
+                                                 int maxVectorCount ) {
+                return ptype;
+            }
         };
     }
 
@@ -186,6 +218,13 @@ public abstract class PaperTypeSelector {
             return createGeneralPixelPaperType( compos );
         }
 
+        public PaperType getHybridPaperType( LayerOpt[] opts,
+                                             Compositor compos,
+                                             int maxVectorCount ) {
+            return createHybridPaperType( getPixelPaperType( opts, compos ),
+                                          maxVectorCount );
+        }
+
         /**
          * Returns a paper type for rendering pixel output without
          * constraints.  A compositor is supplied.
@@ -194,5 +233,17 @@ public abstract class PaperTypeSelector {
          * @return   paper type
          */
         abstract PaperType createGeneralPixelPaperType( Compositor compos );
+
+        /**
+         * Returns a hybrid vector/bitmap paper type.
+         *
+         * @param  pixelType  paper type that would be used for
+         *                    pixel output of the same layers
+         * @param  maxVectorCount  maximum number of graphics primitives
+         *                         painted as vectors in a group
+         * @return  paper type
+         */
+        abstract PaperType createHybridPaperType( PaperType pixelType,
+                                                  int maxVectorCount );
     }
 }
@@ -9,19 +9,22 @@ import java.awt.Rectangle;
 import java.awt.Shape;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.Icon;
@@ -136,6 +139,7 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
     private final BooleanParameter legopaqueParam_;
     private final StringMultiParameter legseqParam_;
     private final BooleanParameter bitmapParam_;
+    private final IntegerParameter vectorLimitParam_;
     private final Parameter<Compositor> compositorParam_;
     private final InputTableParameter animateParam_;
     private final FilterParameter animateFilterParam_;
@@ -383,6 +387,32 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
         bitmapParam_.setBooleanDefault( false );
         plist.add( bitmapParam_ );
 
+        vectorLimitParam_ = new IntegerParameter( "vectorlimit" );
+        vectorLimitParam_.setPrompt( "Maximum vector primitives per layer" );
+        vectorLimitParam_.setDescription( new String[] {
+            "<p>If set, this gives the maximum number of graphics primitives",
+            "(typically markers) in each plot layer",
+            "that will be painted using vector graphics.",
+            "Any layer with more than this number will instead be",
+            "rendered to a bitmap, which is embedded in the output",
+            "along with the other layers, axes and labels,",
+            "which remain as vector graphics.",
+            "For 3-d plots, the limit applies to the plot content",
+            "as a whole rather than to each layer.",
+            "</p>",
+            "<p>When writing to vector graphics formats (PDF, SVG,",
+            "PostScript) this can give much smaller output files,",
+            "produced much faster, for plots containing very many points,",
+            "while sparse layers are still drawn as vectors.",
+            "If null, the default, all layers are painted as vectors.",
+            "This parameter has no effect if",
+            "<code>" + bitmapParam_.getName() + "</code> is true.",
+            "</p>",
+        } );
+        vectorLimitParam_.setMinimum( 0 );
+        vectorLimitParam_.setNullPermitted( true );
+        plist.add( vectorLimitParam_ );
+
         compositorParam_ = new CompositorParameter( "compositor" );
         plist.add( compositorParam_ );
 
@@ -532,7 +562,7 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
                     /* For a static plot, generate and plot
                      * the fixed icon here. */
                     else {
-                        Icon plot = executor.createPlotIcon( dataStore );
+                        Icon plot = executor.createPlotIcon( dataStore, null );
                         painter.paintPicture( PlotUtil.toPicture( plot ) );
                     }
                 }
@@ -712,6 +742,16 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
      * Paints a sequence of animation frames under control of a parameter
      * table, outputting the result to a sequence of files.
      *
+     * <p>Frame configuration and data store preparation are done
+     * sequentially on the calling thread, with each frame's data store
+     * built from the previous one so that cached data is shared
+     * between frames.  Rendering and output of the frames is done
+     * concurrently by a pool of worker threads.
+     * Completed frames are collected in frame order, and the number
+     * of frames in progress at any one time is limited, so that
+     * memory use is bounded however long the animation,
+     * and any rendering error is reported as soon as it is reached.
+     *
      * @param  baseEnv  base execution environment
      * @param  context  plot context
      * @param  animateTable  table providing per-frame adjustments
@@ -726,13 +766,27 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
         ColumnInfo[] infos = Tables.getColumnInfos( animateTable );
         long nrow = animateTable.getRowCount();
         int nthr = parallel;
+        int maxPending = 2 * nthr;
         ExecutorService paintService =
-            new ThreadPoolExecutor( nthr, nthr, 60, TimeUnit.SECONDS,
-                                    new ArrayBlockingQueue<Runnable>( nthr ),
-                                    new ThreadPoolExecutor.CallerRunsPolicy() );
+            Executors.newFixedThreadPool( nthr, new ThreadFactory() {
+                int ithread_;
+                public synchronized Thread newThread( Runnable r ) {
+                    Thread thread =
+                        new Thread( r, "Animation Frame " + ++ithread_ );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        Deque<Future<String>> pending = new ArrayDeque<Future<String>>();
         RowSequence aseq = animateTable.getRowSequence();
         DataStore lastDataStore = null;
         String lastOutName = null;
+        long nframe = 0;
+
+        /* Plans are shared between frames, so that frames differing
+         * only in non-data-related configuration, such as styling,
+         * can reuse the results of earlier frames' data scans. */
+        final List<Set<Object>> zonePlans = new ArrayList<Set<Object>>();
         try {
             for ( long irow = 0; aseq.next(); irow++ ) {
                 Environment frameEnv =
@@ -744,29 +798,73 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
                 final DataStore dstore =
                     executor.createDataStore( lastDataStore );
                 final String outName = getPainterOutputName( frameEnv );
-                paintService.submit( new Callable<Void>() {
-                    public Void call() throws IOException {
+                pending.add( paintService.submit( new Callable<String>() {
+                    public String call() throws IOException {
                         long start = System.currentTimeMillis();
-                        Icon plot = executor.createPlotIcon( dstore );
+                        Icon plot = executor.createPlotIcon( dstore,
+                                                             zonePlans );
                         painter.paintPicture( PlotUtil.toPicture( plot ) );
                         PlotUtil.logTimeFromStart( logger_, "Plot " + outName,
                                                    start );
-                        return null;
+                        return outName;
                     }
-                } );
-                lastOutName = outName;
+                } ) );
                 lastDataStore = dstore;
+
+                /* Collect any frames that are complete, in order.
+                 * If too many are outstanding, wait for the earliest. */
+                while ( pending.size() >= maxPending ||
+                        ( pending.size() > 0 && pending.peek().isDone() ) ) {
+                    lastOutName = completeFrame( pending.remove() );
+                    nframe++;
+                }
+            }
+            while ( pending.size() > 0 ) {
+                lastOutName = completeFrame( pending.remove() );
+                nframe++;
             }
         }
         finally {
             aseq.close();
+            for ( Future<String> future : pending ) {
+                future.cancel( true );
+            }
+            paintService.shutdownNow();
         }
-        paintService.shutdown();
-        paintService.awaitTermination( Long.MAX_VALUE, TimeUnit.SECONDS );
-        logger_.warning( "Wrote " + nrow + " frames, "
+        logger_.warning( "Wrote " + nframe + " frames, "
                        + out0 + " .. " + lastOutName );
     }
 
+    /**
+     * Waits for an animation frame to complete, rethrowing any
+     * exception encountered during its rendering.
+     *
+     * @param  future  future for frame rendering task
+     * @return   output name of the frame
+     */
+    private static String completeFrame( Future<String> future )
+            throws IOException, TaskException, InterruptedException {
+        try {
+            return future.get();
+        }
+        catch ( java.util.concurrent.ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+                throw (IOException) cause;
+            }
+            else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            else if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            else {
+                throw new TaskException( "Frame rendering error: " + cause,
+                                         cause );
+            }
+        }
+    }
+
     /**
      * Paints a sequence of animation frames under control of a parameter
      * table, displaying the results in a screen component.
@@ -907,7 +1005,8 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
         dstoreParam_.setDefaultCaching( false );
         PlotExecutor<?,?> executor =
             createPlotExecutor( env, getPlotContext( env ) );
-        return executor.createPlotIcon( executor.createDataStore( null ) );
+        return executor.createPlotIcon( executor.createDataStore( null ),
+                                        null );
     }
 
     /**
@@ -1211,6 +1310,10 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
         final int xpix = xpixParam_.intValue( env );
         final int ypix = ypixParam_.intValue( env );
         final boolean forceBitmap = bitmapParam_.booleanValue( env );
+        Integer vectorLimitObj = vectorLimitParam_.objectValue( env );
+        final int vectorLimit = vectorLimitObj == null
+                              ? -1
+                              : vectorLimitObj.intValue();
         final DataStoreFactory storeFact = dstoreParam_.objectValue( env );
         final Compositor compositor = compositorParam_.objectValue( env );
         Padding padding = paddingParam_.objectValue( env );
@@ -1367,7 +1470,8 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
                 return panel;
             }
 
-            public Icon createPlotIcon( DataStore dataStore ) {
+            public Icon createPlotIcon( DataStore dataStore,
+                                        List<Set<Object>> zonePlans ) {
                 A[] aspects = PlotUtil.createAspectArray( surfFact, nz );
                 long t0 = System.currentTimeMillis();
                 for ( int iz = 0; iz < nz; iz++ ) {
@@ -1387,7 +1491,8 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
                                        nz, contents, profiles, aspects,
                                        shadeFacts, shadeFixSpans,
                                        ptSel, compositor, dataStore,
-                                       xpix, ypix, forceBitmap );
+                                       xpix, ypix, forceBitmap, vectorLimit,
+                                       zonePlans );
             }
         };
     }
@@ -2667,6 +2772,57 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
      *                       false to use default behaviour
      * @return  icon  icon for plotting
      */
+    public static <P,A> Icon
+            createPlotIcon( Ganger<P,A> ganger, SurfaceFactory<P,A> surfFact,
+                            int nz, ZoneContent[] contents,
+                            P[] profiles, A[] aspects,
+                            ShadeAxisFactory[] shadeFacts,
+                            Span[] shadeFixSpans, PaperTypeSelector ptSel,
+                            Compositor compositor, DataStore dataStore,
+                            int xpix, int ypix, boolean forceBitmap ) {
+        return createPlotIcon( ganger, surfFact, nz, contents, profiles,
+                               aspects, shadeFacts, shadeFixSpans, ptSel,
+                               compositor, dataStore, xpix, ypix, forceBitmap,
+                               -1, null );
+    }
+
+    /**
+     * Creates an icon which will paint the content of a plot.
+     * This icon is expected to be painted once and then discarded,
+     * so it's not cached.
+     *
+     * <p>If the <code>zonePlans</code> list is supplied, it is used
+     * to store the plans calculated for each zone when the icon is
+     * painted, and plans already present in it are reused where they
+     * match.  Since plans depend only on the data-related parts of
+     * each layer, this means that repeated plots differing only in
+     * styling do not need to rescan the data.
+     * The list may be shared between icons painted concurrently.
+     *
+     * @param  ganger  defines plot surface grouping
+     * @param  surfFact   surface factory
+     * @param  nz   number of plot zones in gang
+     * @param  contents   zone contents (nz-element array)
+     * @param  aspects    plot surface aspects by zone (nz-element array)
+     * @param  shadeFacts   shader axis factories by zone (nz-element array),
+     *                      elements may be null if not required
+     * @param  shadeFixSpans  fixed shader ranges by zone (nz-element array)
+     *                        elements may be null for auto-range or if no
+     *                        shade axis
+     * @param  ptSel    paper type selector
+     * @param  compositor  compositor for pixel composition
+     * @param  dataStore   data storage object
+     * @param  xpix    horizontal size of icon in pixels
+     * @param  ypix    vertical size of icon in pixels
+     * @param  forceBitmap   true to force bitmap output of vector graphics,
+     *                       false to use default behaviour
+     * @param  vectorLimit  maximum number of graphics primitives per layer
+     *                      painted as vectors if not forcing bitmap output,
+     *                      or -1 for no limit
+     * @param  zonePlans   per-zone list of sets of plans from previous
+     *                     plots, updated on exit; may be empty or null
+     * @return  icon  icon for plotting
+     */
     public static <P,A> Icon
             createPlotIcon( Ganger<P,A> ganger,
                             final SurfaceFactory<P,A> surfFact,
@@ -2678,11 +2834,11 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
                             final Compositor compositor,
                             final DataStore dataStore,
                             final int xpix, final int ypix,
-                            final boolean forceBitmap ) {
+                            final boolean forceBitmap,
+                            final int vectorLimit,
+                            final List<Set<Object>> zonePlans ) {
         final Rectangle extBox = new Rectangle( 0, 0, xpix, ypix );
         final boolean cached = false;
-        final Object[] planArray = null;
-        final Set<Object> planSet = null;
         final boolean withScroll = false;
 
         /* Acquire nominal plot bounds that are good enough for working
@@ -2706,10 +2862,13 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
             Surface approxSurf =
                 surfFact.createSurface( approxGang.getZonePlotBounds( iz ),
                                         profiles[ iz ], aspects[ iz ] );
+            Set<Object> planSet = getStoredPlans( zonePlans, iz );
             Map<AuxScale,Span> auxSpans =
                 PlotDisplay.getAuxSpans( content.getLayers(), approxSurf,
                                          shadeFixSpans[ iz ], shadeFact,
-                                         planArray, dataStore );
+                                         planSet == null ? null
+                                                         : planSet.toArray(),
+                                         dataStore );
             auxSpanList.add( auxSpans );
             Span shadeSpan = auxSpans.get( AuxScale.COLOR );
             if ( shadeFact != null && shadeSpan != null ) {
@@ -2751,19 +2910,28 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
                     PlotPlacement placer =
                         new PlotPlacement( extBox, surface, decs );
                     LayerOpt[] opts = PaperTypeSelector.getOpts( layers );
-                    PaperType paperType =
-                          forceBitmap
-                        ? ptSel.getPixelPaperType( opts, compositor )
-                        : ptSel.getVectorPaperType( opts );
+                    final PaperType paperType;
+                    if ( forceBitmap ) {
+                        paperType = ptSel.getPixelPaperType( opts, compositor );
+                    }
+                    else if ( vectorLimit >= 0 ) {
+                        paperType = ptSel.getHybridPaperType( opts, compositor,
+                                                              vectorLimit );
+                    }
+                    else {
+                        paperType = ptSel.getVectorPaperType( opts );
+                    }
                     if ( clip != null &&
                          ! clip.intersects( surface.getPlotBounds() ) ) {
                         layers = new PlotLayer[ 0 ];
                     }
                     long planStart = System.currentTimeMillis();
+                    Set<Object> planSet = getStoredPlans( zonePlans, iz );
                     Icon zicon =
                         PlotUtil
                        .createPlotIcon( placer, layers, auxSpanList.get( iz ),
                                         dataStore, paperType, cached, planSet );
+                    setStoredPlans( zonePlans, iz, planSet );
                     planMillis += System.currentTimeMillis() - planStart;
                     long paintStart = System.currentTimeMillis();
                     zicon.paintIcon( c, g, 0, 0 );
@@ -2776,6 +2944,47 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
         };
     }
 
+    /**
+     * Returns a copy of the plans stored for a given zone in a
+     * shared per-zone plan list.
+     *
+     * @param  zonePlans  per-zone plan list, or null
+     * @param  iz   zone index
+     * @return   new set containing stored plans for zone iz,
+     *           or null if zonePlans is null
+     */
+    private static Set<Object> getStoredPlans( List<Set<Object>> zonePlans,
+                                               int iz ) {
+        if ( zonePlans == null ) {
+            return null;
+        }
+        synchronized ( zonePlans ) {
+            return iz < zonePlans.size()
+                 ? new HashSet<Object>( zonePlans.get( iz ) )
+                 : new HashSet<Object>();
+        }
+    }
+
+    /**
+     * Records the plans used for a given zone in a shared per-zone
+     * plan list, replacing any previously stored ones.
+     *
+     * @param  zonePlans  per-zone plan list, or null
+     * @param  iz   zone index
+     * @param  plans   plans to store
+     */
+    private static void setStoredPlans( List<Set<Object>> zonePlans, int iz,
+                                        Set<Object> plans ) {
+        if ( zonePlans != null ) {
+            synchronized ( zonePlans ) {
+                while ( zonePlans.size() <= iz ) {
+                    zonePlans.add( new HashSet<Object>() );
+                }
+                zonePlans.set( iz, plans );
+            }
+        }
+    }
+
     /**
      * Returns a list of parameters suffixed by zone based on a list of
      * ConfigKeys.
@@ -2921,8 +3130,15 @@ public abstract class AbstractPlot2Task implements Task, DynamicTask {
          * Generates an icon which will draw the plot.
          * This may be slow to paint.
          *
+         * <p>If a plan list is supplied, plans stored in it from
+         * previous plots may be reused, and on exit it will contain
+         * the plans used for this one, so that a sequence of plots
+         * differing only in styling can avoid recalculating them.
+         *
          * @param  dataStore  object containing plot data
+         * @param  zonePlans  per-zone list of sets of plans from
+         *                    previous plots, or null
          */
-        Icon createPlotIcon( DataStore dataStore );
+        Icon createPlotIcon( DataStore dataStore, List<Set<Object>> zonePlans );
     }
 }
@@ -0,0 +1,352 @@
+package uk.ac.starlink.ttools.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.starlink.table.ColumnData;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.ColumnStarTable;
+import uk.ac.starlink.table.JoinFixAction;
+import uk.ac.starlink.table.JoinStarTable;
+import uk.ac.starlink.table.RowPermutedStarTable;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.StarTableOutput;
+import uk.ac.starlink.table.StarTableWriter;
+import uk.ac.starlink.table.TableFormatException;
+import uk.ac.starlink.ttools.Stilts;
+import uk.ac.starlink.ttools.cone.HealpixConeIndex;
+import uk.ac.starlink.votable.VOSerializer;
+import uk.ac.starlink.votable.VOTableWriter;
+
+/**
+ * HTTP handler which serves positional queries on a single indexed table.
+ *
+ * <p>Queries may be made using the Simple Cone Search parameters
+ * <code>RA</code>, <code>DEC</code> and <code>SR</code> (all in degrees),
+ * or using a DALI-style <code>POS=CIRCLE ra dec radius</code> parameter.
+ * The result, containing all the table rows within the given circle,
+ * is streamed back as a VOTable, unless the <code>RESPONSEFORMAT</code>
+ * parameter names some other STIL output format, for instance
+ * <code>fits</code>.
+ * Other parameters, such as the cone search <code>VERB</code>,
+ * are accepted but ignored.
+ * Errors are reported as VOTable documents with a
+ * <code>QUERY_STATUS</code> INFO element, following DAL conventions.
+ *
+ * <p>As required by the Cone Search standard, the result tables have
+ * an identifier column with UCD <code>ID_MAIN</code> and
+ * position columns with UCDs <code>POS_EQ_RA_MAIN</code> and
+ * <code>POS_EQ_DEC_MAIN</code>.  These are prepended to the columns
+ * of the served table, with values taken from the row index and
+ * the positions used to build the spatial index.
+ * Any existing columns with those UCDs have the UCD removed,
+ * so that clients are not confused by duplicates.
+ *
+ * <p>The table must be random access and will be queried concurrently,
+ * so this handler is safe for use from an HTTP server with a
+ * multi-threaded executor.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class ConeSearchHandler implements HttpHandler {
+
+    private final StarTable table_;
+    private final HealpixConeIndex index_;
+    private final StarTableOutput tableOutput_;
+    private static final String VOTABLE_MIME = "application/x-votable+xml";
+    private static final String ID_NAME = "_id";
+    private static final String RA_NAME = "_ra";
+    private static final String DEC_NAME = "_dec";
+    private static final String ID_UCD = "ID_MAIN";
+    private static final String RA_UCD = "POS_EQ_RA_MAIN";
+    private static final String DEC_UCD = "POS_EQ_DEC_MAIN";
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.ttools.server" );
+
+    /**
+     * Constructor.
+     *
+     * @param  table  random-access table to serve
+     * @param  index  spatial index of the table's rows
+     */
+    public ConeSearchHandler( StarTable table, HealpixConeIndex index ) {
+        if ( ! table.isRandom() ) {
+            throw new IllegalArgumentException( "Table not random access" );
+        }
+        table_ = createServiceTable( table, index );
+        index_ = index;
+        tableOutput_ = new StarTableOutput();
+    }
+
+    public void handle( HttpExchange exch ) throws IOException {
+        try {
+            exch.getResponseHeaders().set( "STILTS-Version",
+                                           Stilts.getVersion() );
+            Map<String,String> params =
+                parseQuery( exch.getRequestURI().getRawQuery() );
+            double[] cone;
+            StarTableWriter writer;
+            try {
+                cone = getCone( params );
+                writer = getWriter( params.get( "RESPONSEFORMAT" ) );
+            }
+            catch ( IllegalArgumentException e ) {
+                replyError( exch, 400, e.getMessage() );
+                return;
+            }
+            catch ( TableFormatException e ) {
+                replyError( exch, 400, e.getMessage() );
+                return;
+            }
+            long[] irows = index_.query( cone[ 0 ], cone[ 1 ], cone[ 2 ] );
+            logger_.config( "Cone: ra=" + cone[ 0 ] + "; dec=" + cone[ 1 ]
+                          + "; sr=" + cone[ 2 ] + " -> " + irows.length );
+            StarTable result = new RowPermutedStarTable( table_, irows );
+            exch.getResponseHeaders().set( "Content-Type",
+                                           writer.getMimeType() );
+            if ( "HEAD".equals( exch.getRequestMethod() ) ) {
+                exch.sendResponseHeaders( 200, -1 );
+                return;
+            }
+
+            /* Stream the output with chunked encoding. */
+            exch.sendResponseHeaders( 200, 0 );
+            OutputStream out =
+                new BufferedOutputStream( exch.getResponseBody() );
+            try {
+                writer.writeStarTable( result, out );
+            }
+            catch ( IOException e ) {
+                logger_.log( Level.WARNING, "Error writing cone result", e );
+            }
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            exch.close();
+        }
+    }
+
+    /**
+     * Returns a table containing the same data as a given table,
+     * but with the identifier and position columns required by
+     * the cone search standard prepended.
+     *
+     * @param  table  random-access table to serve
+     * @param  index  spatial index of the table's rows
+     * @return  random-access table with cone search metadata
+     */
+    static StarTable createServiceTable( StarTable table,
+                                         final HealpixConeIndex index ) {
+        ColumnStarTable posTable =
+            ColumnStarTable.makeTableWithRows( table.getRowCount() );
+        ColumnInfo idInfo =
+            new ColumnInfo( ID_NAME, Long.class, "Row index" );
+        idInfo.setUCD( ID_UCD );
+        posTable.addColumn( new ColumnData( idInfo ) {
+            public Object readValue( long irow ) {
+                return Long.valueOf( irow );
+            }
+        } );
+        ColumnInfo raInfo =
+            new ColumnInfo( RA_NAME, Double.class, "Right ascension" );
+        raInfo.setUnitString( "deg" );
+        raInfo.setUCD( RA_UCD );
+        posTable.addColumn( new ColumnData( raInfo ) {
+            public Object readValue( long irow ) {
+                return Double.valueOf( index.getRa( irow ) );
+            }
+        } );
+        ColumnInfo decInfo =
+            new ColumnInfo( DEC_NAME, Double.class, "Declination" );
+        decInfo.setUnitString( "deg" );
+        decInfo.setUCD( DEC_UCD );
+        posTable.addColumn( new ColumnData( decInfo ) {
+            public Object readValue( long irow ) {
+                return Double.valueOf( index.getDec( irow ) );
+            }
+        } );
+        int npos = posTable.getColumnCount();
+        JoinStarTable result =
+            new JoinStarTable( new StarTable[] { posTable, table },
+                               new JoinFixAction[] {
+                                   JoinFixAction
+                                  .makeRenameDuplicatesAction( "_cs" ),
+                                   JoinFixAction.NO_ACTION,
+                               } );
+        result.setName( table.getName() );
+        for ( int ic = npos; ic < result.getColumnCount(); ic++ ) {
+            ColumnInfo info = result.getColumnInfo( ic );
+            String ucd = info.getUCD();
+            if ( ID_UCD.equals( ucd ) || RA_UCD.equals( ucd ) ||
+                 DEC_UCD.equals( ucd ) ) {
+                info.setUCD( null );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Extracts the cone specification from request parameters.
+     *
+     * @param  params   request parameter map
+     * @return  3-element array giving (ra, dec, radius) in degrees
+     * @throws  IllegalArgumentException  if no valid cone is specified
+     */
+    static double[] getCone( Map<String,String> params ) {
+        String pos = params.get( "POS" );
+        final double ra;
+        final double dec;
+        final double sr;
+        if ( pos != null ) {
+            String[] words = pos.trim().split( "\\s+" );
+            if ( words.length != 4 ||
+                 ! "CIRCLE".equalsIgnoreCase( words[ 0 ] ) ) {
+                throw new IllegalArgumentException( "Unsupported POS value \""
+                                                  + pos + "\" - use "
+                                                  + "CIRCLE ra dec radius" );
+            }
+            ra = parseDouble( "POS", words[ 1 ] );
+            dec = parseDouble( "POS", words[ 2 ] );
+            sr = parseDouble( "POS", words[ 3 ] );
+        }
+        else {
+            ra = parseDouble( "RA", params.get( "RA" ) );
+            dec = parseDouble( "DEC", params.get( "DEC" ) );
+            sr = parseDouble( "SR", params.get( "SR" ) );
+        }
+        if ( Double.isNaN( ra ) || Double.isInfinite( ra ) ) {
+            throw new IllegalArgumentException( "Bad RA value " + ra );
+        }
+        if ( ! ( dec >= -90 && dec <= 90 ) ) {
+            throw new IllegalArgumentException( "Dec " + dec
+                                              + " out of range" );
+        }
+        if ( ! ( sr >= 0 ) ) {
+            throw new IllegalArgumentException( "Bad radius value " + sr );
+        }
+        return new double[] { ra, dec, sr };
+    }
+
+    /**
+     * Returns the output handler for a requested output format.
+     *
+     * @param  format  requested format name or MIME type, may be null
+     * @return   table writer
+     */
+    private StarTableWriter getWriter( String format )
+            throws TableFormatException {
+        if ( format == null || format.trim().length() == 0 ||
+             format.toLowerCase().startsWith( VOTABLE_MIME ) ||
+             "text/xml".equalsIgnoreCase( format ) ) {
+            return new VOTableWriter();
+        }
+        else if ( "application/fits".equalsIgnoreCase( format ) ) {
+            return tableOutput_.getHandler( "fits" );
+        }
+        else {
+            return tableOutput_.getHandler( format );
+        }
+    }
+
+    /**
+     * Parses a numeric parameter value.
+     *
+     * @param  name  parameter name
+     * @param  txt   parameter value
+     * @return   numeric value
+     * @throws  IllegalArgumentException  if the value is absent or
+     *                                    not numeric
+     */
+    private static double parseDouble( String name, String txt ) {
+        if ( txt == null ) {
+            throw new IllegalArgumentException( "Missing parameter " + name );
+        }
+        try {
+            return Double.parseDouble( txt.trim() );
+        }
+        catch ( NumberFormatException e ) {
+            throw new IllegalArgumentException( "Bad " + name + " value \""
+                                              + txt + "\"" );
+        }
+    }
+
+    /**
+     * Parses a URL query string into a map of parameter values.
+     * Parameter names are normalised to upper case,
+     * as required for DAL services.
+     *
+     * @param  query  raw query string, may be null
+     * @return  name-&gt;value map
+     */
+    static Map<String,String> parseQuery( String query ) {
+        Map<String,String> map = new HashMap<String,String>();
+        if ( query != null ) {
+            for ( String pair : query.split( "&" ) ) {
+                int ieq = pair.indexOf( '=' );
+                if ( ieq > 0 ) {
+                    String name = decode( pair.substring( 0, ieq ) );
+                    String value = decode( pair.substring( ieq + 1 ) );
+                    map.put( name.toUpperCase(), value );
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Decodes a URL-encoded string.
+     *
+     * @param  txt  encoded text
+     * @return  decoded text
+     */
+    private static String decode( String txt ) {
+        try {
+            return URLDecoder.decode( txt, "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e ) {
+            throw new AssertionError( "No UTF-8??" );
+        }
+        catch ( IllegalArgumentException e ) {
+            return txt;
+        }
+    }
+
+    /**
+     * Sends an error response in the form of a DAL error VOTable.
+     *
+     * @param  exch  exchange
+     * @param  code  HTTP status code
+     * @param  msg   error message
+     */
+    private static void replyError( HttpExchange exch, int code, String msg )
+            throws IOException {
+        String txt = new StringBuffer()
+            .append( "<?xml version='1.0'?>\n" )
+            .append( "<VOTABLE version='1.3' " )
+            .append( "xmlns='http://www.ivoa.net/xml/VOTable/v1.3'>\n" )
+            .append( "<RESOURCE type='results'>\n" )
+            .append( "<INFO name='QUERY_STATUS' value='ERROR'>" )
+            .append( VOSerializer.formatText( msg ) )
+            .append( "</INFO>\n" )
+            .append( "</RESOURCE>\n" )
+            .append( "</VOTABLE>\n" )
+            .toString();
+        byte[] buf = txt.getBytes( "UTF-8" );
+        exch.getResponseHeaders().set( "Content-Type", VOTABLE_MIME );
+        exch.sendResponseHeaders( code, buf.length );
+        OutputStream out = exch.getResponseBody();
+        out.write( buf );
+        out.close();
+    }
+}
@@ -46,6 +46,8 @@ public class CdsUploadSkyMatch extends SingleMapperTask {
     private final StringParameter cdstableParam_;
     private final ChoiceParameter<UserFindMode> findParam_;
     private final IntegerParameter chunkParam_;
+    private final IntegerParameter parallelParam_;
+    private final IntegerParameter retryParam_;
     private final IntegerParameter maxrecParam_;
     private final ContentCodingParameter codingParam_;
     private final URLParameter urlParam_;
@@ -176,6 +178,13 @@ public class CdsUploadSkyMatch extends SingleMapperTask {
         paramList.add( findParam_ );
         paramList.add( chunkParam_ );
 
+        parallelParam_ =
+            BlockUploader.createParallelParameter( chunkParam_.getName(),
+                                                   "CDS Xmatch service" );
+        retryParam_ = BlockUploader.createRetryParameter();
+        paramList.add( parallelParam_ );
+        paramList.add( retryParam_ );
+
         maxrecParam_ = new IntegerParameter( "maxrec" );
         maxrecParam_.setPrompt( "Maximum number of output rows" );
         maxrecParam_.setDescription( new String[] {
@@ -281,6 +290,8 @@ public class CdsUploadSkyMatch extends SingleMapperTask {
         ServiceFindMode serviceMode = userMode.getServiceMode();
         boolean oneToOne = userMode.isOneToOne();
         int blocksize = chunkParam_.intValue( env );
+        int parallelism = parallelParam_.intValue( env );
+        int nRetry = retryParam_.intValue( env );
         long maxrec = maxrecParam_.intValue( env );
         ContentCoding coding = codingParam_.codingValue( env );
         URL url = urlParam_.objectValue( env );
@@ -304,6 +315,8 @@ public class CdsUploadSkyMatch extends SingleMapperTask {
                                inFixAct, cdsFixAct, serviceMode, oneToOne,
                                uploadEmpty );
         blocker.setTruncationAdvice( "Reduce " + chunkParam_.getName() + "?" );
+        blocker.setParallelism( parallelism );
+        blocker.setRetries( nRetry );
 
         /* Create and return an object which will produce the result. */
         return new TableProducer() {
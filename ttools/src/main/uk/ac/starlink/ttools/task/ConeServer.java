@@ -0,0 +1,160 @@
+package uk.ac.starlink.ttools.task;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.astrogrid.samp.SampUtils;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.Tables;
+import uk.ac.starlink.task.Environment;
+import uk.ac.starlink.task.Executable;
+import uk.ac.starlink.task.IntegerParameter;
+import uk.ac.starlink.task.Parameter;
+import uk.ac.starlink.task.StringParameter;
+import uk.ac.starlink.task.Task;
+import uk.ac.starlink.task.TaskException;
+import uk.ac.starlink.ttools.cone.HealpixConeIndex;
+import uk.ac.starlink.ttools.cone.JELQuerySequenceFactory;
+import uk.ac.starlink.ttools.server.ConeSearchHandler;
+
+/**
+ * Runs an HTTP server providing a cone search service on a local table.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class ConeServer implements Task {
+
+    private final InputTableParameter inParam_;
+    private final StringParameter raParam_;
+    private final StringParameter decParam_;
+    private final IntegerParameter orderParam_;
+    private final IntegerParameter portParam_;
+    private final StringParameter baseParam_;
+    private final IntegerParameter threadsParam_;
+
+    /**
+     * Constructor.
+     */
+    public ConeServer() {
+        inParam_ = new InputTableParameter( "in" );
+        inParam_.setUsage( "<table>" );
+        inParam_.setPrompt( "Table to serve" );
+        inParam_.setPosition( 1 );
+
+        String inDescrip = "the input table";
+        raParam_ =
+            SkyCoordParameter.createRaParameter( "ra", null, inDescrip );
+        decParam_ =
+            SkyCoordParameter.createDecParameter( "dec", null, inDescrip );
+
+        orderParam_ = new IntegerParameter( "order" );
+        orderParam_.setPrompt( "HEALPix order of spatial index" );
+        orderParam_.setMinimum( 0 );
+        orderParam_.setMaximum( 15 );
+        orderParam_.setNullPermitted( true );
+        orderParam_.setDescription( new String[] {
+            "<p>HEALPix order at which the table rows are indexed.",
+            "Each query examines only the rows in the index cells",
+            "overlapping the requested cone, so larger values",
+            "give faster queries for small cones,",
+            "at the cost of visiting more cells for large ones.",
+            "If left blank, a value is chosen based on the size",
+            "of the table, giving a few rows per cell on average.",
+            "</p>",
+        } );
+
+        portParam_ = new IntegerParameter( "port" );
+        portParam_.setPrompt( "Server port" );
+        portParam_.setDescription( new String[] {
+            "<p>Port number on which the server should run.",
+            "</p>",
+        } );
+        portParam_.setIntDefault( 2113 );
+
+        baseParam_ = new StringParameter( "basepath" );
+        baseParam_.setPrompt( "Path of service URL" );
+        String baseDefault = "/cone";
+        baseParam_.setDescription( new String[] {
+            "<p>Path on the server at which the service is provided.",
+            "The default is <code>" + baseDefault + "</code>, which means",
+            "that queries should be directed to URLs like",
+            "<code>http://host:portnum" + baseDefault
+                + "?RA=180&amp;DEC=0&amp;SR=0.1</code>",
+            "</p>",
+        } );
+        baseParam_.setStringDefault( baseDefault );
+
+        threadsParam_ = new IntegerParameter( "threads" );
+        threadsParam_.setPrompt( "Number of request threads" );
+        threadsParam_.setMinimum( 1 );
+        threadsParam_.setDescription( new String[] {
+            "<p>Maximum number of requests that will be processed",
+            "concurrently.",
+            "Further requests wait until a thread becomes free.",
+            "</p>",
+        } );
+        threadsParam_.setIntDefault( 16 );
+    }
+
+    public String getPurpose() {
+        return "Runs an HTTP cone search service on a local table";
+    }
+
+    public Parameter<?>[] getParameters() {
+        return new Parameter<?>[] {
+            inParam_,
+            inParam_.getFormatParameter(),
+            raParam_,
+            decParam_,
+            orderParam_,
+            portParam_,
+            baseParam_,
+            threadsParam_,
+        };
+    }
+
+    public Executable createExecutable( Environment env ) throws TaskException {
+        final StarTable inTable = inParam_.tableValue( env );
+        String raString = raParam_.stringValue( env );
+        String decString = decParam_.stringValue( env );
+        final JELQuerySequenceFactory qsFact =
+            new JELQuerySequenceFactory( raString, decString, "0" );
+        Integer order = orderParam_.objectValue( env );
+        final int iorder = order == null ? -1 : order.intValue();
+        final int port = portParam_.intValue( env );
+        String path = baseParam_.stringValue( env );
+        final String base = path.startsWith( "/" ) ? path : "/" + path;
+        final int nthread = threadsParam_.intValue( env );
+        final PrintStream out = env.getOutputStream();
+        return new Executable() {
+            public void execute() throws IOException {
+                StarTable table = Tables.randomTable( inTable );
+                HealpixConeIndex index =
+                    HealpixConeIndex.createIndex( table, qsFact, iorder );
+                HttpServer server =
+                    HttpServer.create( new InetSocketAddress( port ), 0 );
+                server.createContext( base,
+                                      new ConeSearchHandler( table, index ) );
+                ExecutorService executor =
+                        Executors.newFixedThreadPool( nthread,
+                                                      new ThreadFactory() {
+                    public Thread newThread( Runnable r ) {
+                        Thread th = new Thread( r, "Cone Server" );
+                        th.setDaemon( true );
+                        return th;
+                    }
+                } );
+                server.setExecutor( executor );
+                server.start();
+                out.println( "Cone search service running at http://"
+                           + SampUtils.getLocalhost() + ":"
+                           + server.getAddress().getPort() + base + "?" );
+            }
+        };
+    }
+}
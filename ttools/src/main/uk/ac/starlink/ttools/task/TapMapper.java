@@ -3,6 +3,7 @@ package uk.ac.starlink.ttools.task;
 import adql.parser.ParseException;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
@@ -265,13 +266,30 @@ public class TapMapper implements TableMapper {
         final VOTableWriter vowriter = vowriterParam_.objectValue( env );
         final long uploadLimit = -1;
         if ( sync ) {
+            final boolean stream =
+                resultReader_.getStreamParameter().booleanValue( env );
+            final boolean progress =
+                resultReader_.getProgressParameter().booleanValue( env );
+            final PrintStream errStream = env.getErrorStream();
             return new TableMapping() {
                 public StarTable mapTables( InputTableSpec[] inSpecs )
                         throws TaskException, IOException {
                     TapQuery tq =
                         createTapQuery( tapService, adql, extraParams, upNames,
                                         inSpecs, uploadLimit, vowriter );
-                    return tq.executeSync( tfact.getStoragePolicy(), coding );
+                    if ( stream ) {
+                        URLConnection conn = tq.createSyncConnection( coding );
+                        StarTable table =
+                            TapQuery.streamResultTable( conn, coding );
+                        return progress
+                             ? TapResultReader
+                              .createProgressTable( table, errStream )
+                             : table;
+                    }
+                    else {
+                        return tq.executeSync( tfact.getStoragePolicy(),
+                                               coding );
+                    }
                 }
             };
         }
@@ -8,9 +8,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
+import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.StarTableFactory;
 import uk.ac.starlink.table.StoragePolicy;
+import uk.ac.starlink.table.WrapperRowSequence;
 import uk.ac.starlink.table.WrapperStarTable;
 import uk.ac.starlink.task.BooleanParameter;
 import uk.ac.starlink.task.ChoiceParameter;
@@ -35,6 +37,7 @@ public class TapResultReader {
 
     private final IntegerParameter pollParam_;
     private final BooleanParameter progressParam_;
+    private final BooleanParameter streamParam_;
     private final ChoiceParameter<DeleteMode> deleteParam_;
     private final Parameter<?>[] parameters_;
     private static final Logger logger_ =
@@ -47,15 +50,21 @@ public class TapResultReader {
         List<Parameter<?>> paramList = new ArrayList<Parameter<?>>();
 
         pollParam_ = new IntegerParameter( "poll" );
-        pollParam_.setPrompt( "Polling interval in milliseconds" );
+        pollParam_.setPrompt( "Maximum polling interval in milliseconds" );
         int minPoll = 50;
         pollParam_.setMinimum( minPoll );
         pollParam_.setDescription( new String[] {
-            "<p>Interval to wait between polling attempts, in milliseconds.",
+            "<p>Maximum interval to wait between polling attempts,",
+            "in milliseconds.",
             "Asynchronous TAP queries can only find out when they are",
             "complete by repeatedly polling the server to find out the",
-            "job's status.  This parameter allows you to set how often",
-            "that happens.",
+            "job's status.  Polls are made frequently at first,",
+            "and progressively less often while the job's phase",
+            "stays the same, up to the interval set here.",
+            "This parameter allows you to set how often",
+            "that happens for long-running jobs.",
+            "If the service supports UWS 1.1 blocking requests,",
+            "those are used instead of polling.",
             "Attempts to set it too low (&lt;" + minPoll + ")",
             "will be rejected on the assumption that you're thinking in",
             "seconds.",
@@ -75,6 +84,29 @@ public class TapResultReader {
         progressParam_.setBooleanDefault( true );
         paramList.add( progressParam_ );
 
+        streamParam_ = new BooleanParameter( "stream" );
+        streamParam_.setPrompt( "Stream result while downloading?" );
+        streamParam_.setDescription( new String[] {
+            "<p>If true, the result table is decoded as it is downloaded",
+            "and its rows passed on straight away",
+            "to the rest of the processing,",
+            "rather than first being read and stored in its entirety.",
+            "For large results this can considerably reduce the",
+            "total time taken, since output can proceed",
+            "at the same time as the download.",
+            "If <code>" + progressParam_.getName() + "</code> is true,",
+            "the number of rows received is also reported.",
+            "</p>",
+            "<p>The streamed table can only be read once,",
+            "so this option is not suitable if the processing",
+            "needs more than one pass through the data;",
+            "in that case you will see an error like",
+            "\"Can't re-read data from stream\".",
+            "</p>",
+        } );
+        streamParam_.setBooleanDefault( false );
+        paramList.add( streamParam_ );
+
         deleteParam_ = new ChoiceParameter<DeleteMode>( "delete",
                                                         DeleteMode.values() );
         deleteParam_.setPrompt( "Delete job on exit?" );
@@ -117,6 +149,16 @@ public class TapResultReader {
         return progressParam_;
     }
 
+    /**
+     * Returns the parameter which indicates whether results should be
+     * streamed rather than stored before use.
+     *
+     * @return  stream parameter
+     */
+    public BooleanParameter getStreamParameter() {
+        return streamParam_;
+    }
+
     /**
      * Returns an object which can acquire a table from a TAP query object.
      *
@@ -129,6 +171,7 @@ public class TapResultReader {
             throws TaskException {
         final int pollMillis = pollParam_.intValue( env );
         final boolean progress = progressParam_.booleanValue( env );
+        final boolean stream = streamParam_.booleanValue( env );
         final PrintStream errStream = env.getErrorStream();
         final DeleteMode delete = deleteParam_.objectValue( env );
         final StarTableFactory tfact =
@@ -185,8 +228,18 @@ public class TapResultReader {
                     Runtime.getRuntime().addShutdownHook( deleteThread );
                 }
                 try {
-                    table = TapQuery.waitForResult( tapJob, coding,
-                                                    storage, pollMillis );
+                    if ( stream ) {
+                        StarTable streamTable =
+                            TapQuery.waitForStreamedResult( tapJob, coding,
+                                                            pollMillis );
+                        table = progress
+                              ? createProgressTable( streamTable, errStream )
+                              : streamTable;
+                    }
+                    else {
+                        table = TapQuery.waitForResult( tapJob, coding,
+                                                        storage, pollMillis );
+                    }
                 }
                 catch ( InterruptedException e ) {
                     considerDeletionEarly( tapJob );
@@ -301,6 +354,45 @@ public class TapResultReader {
         };
     }
 
+    /**
+     * Returns a table that reports the number of rows read
+     * as its data is streamed.
+     *
+     * @param  table  base table
+     * @param  errStream  destination for progress reports
+     * @return  table with same data as input
+     */
+    public static StarTable createProgressTable( StarTable table,
+                                                 final PrintStream errStream ) {
+        return new WrapperStarTable( table ) {
+            public RowSequence getRowSequence() throws IOException {
+                errStream.println( "STREAMING ..." );
+                errStream.flush();
+                return new WrapperRowSequence( super.getRowSequence() ) {
+                    long nrow_;
+                    boolean ended_;
+                    public boolean next() throws IOException {
+                        if ( super.next() ) {
+                            if ( ++nrow_ % 1000000 == 0 ) {
+                                errStream.println( nrow_ + " rows ..." );
+                                errStream.flush();
+                            }
+                            return true;
+                        }
+                        else {
+                            if ( ! ended_ ) {
+                                ended_ = true;
+                                errStream.println( nrow_ + " rows" );
+                                errStream.flush();
+                            }
+                            return false;
+                        }
+                    }
+                };
+            }
+        };
+    }
+
     /**
      * Enumeration of UWS job deletion modes.
      */
@@ -46,6 +46,8 @@ public class TapUploadSkyMatch extends SingleMapperTask {
     private final StringMultiParameter tapcolsParam_;
     private final ChoiceParameter<UserFindMode> findParam_;
     private final IntegerParameter chunkParam_;
+    private final IntegerParameter parallelParam_;
+    private final IntegerParameter retryParam_;
     private final IntegerParameter maxrecParam_;
     private final BooleanParameter syncParam_;
     private final LongParameter tapmaxrecParam_;
@@ -221,6 +223,13 @@ public class TapUploadSkyMatch extends SingleMapperTask {
         paramList.add( findParam_ );
         paramList.add( chunkParam_ );
 
+        parallelParam_ =
+            BlockUploader.createParallelParameter( chunkParam_.getName(),
+                                                   "TAP service" );
+        retryParam_ = BlockUploader.createRetryParameter();
+        paramList.add( parallelParam_ );
+        paramList.add( retryParam_ );
+
         maxrecParam_ = new IntegerParameter( "maxrec" );
         maxrecParam_.setPrompt( "Maximum number of output rows" );
         maxrecParam_.setDescription( new String[] {
@@ -305,6 +314,8 @@ public class TapUploadSkyMatch extends SingleMapperTask {
         ServiceFindMode serviceMode = userMode.getServiceMode();
         boolean oneToOne = userMode.isOneToOne();
         int blocksize = chunkParam_.intValue( env );
+        int parallelism = parallelParam_.intValue( env );
+        int nRetry = retryParam_.intValue( env );
         final long maxrec = maxrecParam_.intValue( env );
         boolean isSync = syncParam_.booleanValue( env );
         Map<String,String> extraParams = new LinkedHashMap<String,String>();
@@ -337,6 +348,8 @@ public class TapUploadSkyMatch extends SingleMapperTask {
         blocker.setTruncationAdvice( "Reduce " + chunkParam_.getName() + "? "
                                    + "Increase " + tapmaxrecParam_.getName()
                                    + "?" );
+        blocker.setParallelism( parallelism );
+        blocker.setRetries( nRetry );
 
         /* Create and return an object which will produce the result. */
         return new TableProducer() {
@@ -0,0 +1,177 @@
+package uk.ac.starlink.ttools.cone;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import junit.framework.TestCase;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.JoinFixAction;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.StoragePolicy;
+import uk.ac.starlink.table.TableSink;
+
+public class BlockUploaderTest extends TestCase {
+
+    public BlockUploaderTest( String name ) {
+        super( name );
+    }
+
+    public void testBlocks() throws IOException {
+        RowListStarTable inTable = new RowListStarTable( new ColumnInfo[] {
+            new ColumnInfo( "ra", Double.class, null ),
+            new ColumnInfo( "dec", Double.class, null ),
+        } );
+        int nrow = 1000;
+        for ( int i = 0; i < nrow; i++ ) {
+            double ra = i % 17 == 0 ? Double.NaN : i * 0.1;
+            inTable.addRow( new Object[] { Double.valueOf( ra ),
+                                           Double.valueOf( 0 ) } );
+        }
+        QuerySequenceFactory qsFact =
+            new JELQuerySequenceFactory( "ra", "dec", "0" );
+        StoragePolicy storage = StoragePolicy.PREFER_MEMORY;
+
+        List<Object[]> seqRows =
+            readRows( createUploader( new EchoMatcher( -1 ), -1 )
+                     .runMatch( inTable, qsFact, storage ) );
+        assertEquals( nrow - ( nrow + 16 ) / 17, seqRows.size() );
+
+        BlockUploader parUploader =
+            createUploader( new EchoMatcher( 3 ), -1 );
+        parUploader.setParallelism( 4 );
+        parUploader.setRetries( 1 );
+        assertRowsEqual( seqRows,
+                         readRows( parUploader
+                                  .runMatch( inTable, qsFact, storage ) ) );
+
+        BlockUploader failUploader =
+            createUploader( new EchoMatcher( 3 ), -1 );
+        failUploader.setParallelism( 4 );
+        try {
+            failUploader.runMatch( inTable, qsFact, storage );
+            fail();
+        }
+        catch ( IOException e ) {
+        }
+
+        BlockUploader limitUploader =
+            createUploader( new EchoMatcher( -1 ), 150 );
+        limitUploader.setParallelism( 3 );
+        assertRowsEqual( seqRows.subList( 0, 150 ),
+                         readRows( limitUploader
+                                  .runMatch( inTable, qsFact, storage ) ) );
+    }
+
+    private static BlockUploader createUploader( UploadMatcher umatcher,
+                                                 long maxrec ) {
+        JoinFixAction fixAct = JoinFixAction.makeRenameDuplicatesAction( "_x" );
+        return new BlockUploader( umatcher, 40, maxrec, "test",
+                                  fixAct, fixAct, ServiceFindMode.ALL,
+                                  false, true );
+    }
+
+    private static List<Object[]> readRows( StarTable table )
+            throws IOException {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        RowSequence rseq = table.getRowSequence();
+        while ( rseq.next() ) {
+            rows.add( rseq.getRow() );
+        }
+        rseq.close();
+        return rows;
+    }
+
+    private static void assertRowsEqual( List<Object[]> rows1,
+                                         List<Object[]> rows2 ) {
+        assertEquals( rows1.size(), rows2.size() );
+        for ( int i = 0; i < rows1.size(); i++ ) {
+            assertTrue( Arrays.equals( rows1.get( i ), rows2.get( i ) ) );
+        }
+    }
+
+    /**
+     * Matcher that returns one result row per query, after a random delay,
+     * and optionally fails the first attempt at a given block.
+     */
+    private static class EchoMatcher implements UploadMatcher {
+        private final int failBlock_;
+        private final Set<Long> failed_;
+        private final Random rnd_;
+
+        EchoMatcher( int failBlock ) {
+            failBlock_ = failBlock;
+            failed_ = new HashSet<Long>();
+            rnd_ = new Random( 442 );
+        }
+
+        public boolean streamRawResult( ConeQueryRowSequence coneSeq,
+                                        TableSink sink, RowMapper<?> mapper,
+                                        long maxrec )
+                throws IOException {
+            sink.acceptMetadata( new RowListStarTable( new ColumnInfo[] {
+                new ColumnInfo( "id", mapper.getIdClass(), null ),
+                new ColumnInfo( "ra_rem", Double.class, null ),
+            } ) );
+            int delay;
+            synchronized ( rnd_ ) {
+                delay = rnd_.nextInt( 20 );
+            }
+            try {
+                Thread.sleep( delay );
+            }
+            catch ( InterruptedException e ) {
+                throw new IOException( "Interrupted" );
+            }
+            long nout = 0;
+            boolean isFirst = true;
+            while ( coneSeq.next() ) {
+                long index = coneSeq.getIndex();
+                if ( isFirst ) {
+                    isFirst = false;
+                    Long block = Long.valueOf( index / 40 );
+                    synchronized ( failed_ ) {
+                        if ( block.longValue() == failBlock_ &&
+                             failed_.add( block ) ) {
+                            throw new IOException( "Block failure" );
+                        }
+                    }
+                }
+                if ( maxrec >= 0 && nout >= maxrec ) {
+                    sink.endRows();
+                    return true;
+                }
+                sink.acceptRow( new Object[] {
+                    mapper.rowIndexToId( index ),
+                    Double.valueOf( coneSeq.getRa() ),
+                } );
+                nout++;
+            }
+            sink.endRows();
+            return false;
+        }
+
+        public ColumnPlan getColumnPlan( ColumnInfo[] resultCols,
+                                         final ColumnInfo[] uploadCols ) {
+            return new ColumnPlan() {
+                public int getOutputColumnCount() {
+                    return uploadCols.length + 1;
+                }
+                public int getOutputColumnLocation( int icol ) {
+                    return icol < uploadCols.length ? -icol - 1 : 1;
+                }
+                public int getResultIdColumnIndex() {
+                    return 0;
+                }
+                public int getResultScoreColumnIndex() {
+                    return -1;
+                }
+            };
+        }
+    }
+}
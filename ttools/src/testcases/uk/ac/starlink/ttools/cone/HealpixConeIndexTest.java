@@ -0,0 +1,77 @@
+package uk.ac.starlink.ttools.cone;
+
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+import uk.ac.starlink.ttools.func.CoordsDegrees;
+
+public class HealpixConeIndexTest extends TestCase {
+
+    public HealpixConeIndexTest( String name ) {
+        super( name );
+    }
+
+    public void testQueries() {
+        Random rnd = new Random( 23001L );
+        int n = 20000;
+        double[] ras = new double[ n ];
+        double[] decs = new double[ n ];
+        for ( int i = 0; i < n; i++ ) {
+            if ( i % 100 == 7 ) {
+                ras[ i ] = Double.NaN;
+                decs[ i ] = Double.NaN;
+            }
+            else if ( i % 500 == 3 ) {
+                ras[ i ] = rnd.nextDouble() * 360;
+                decs[ i ] = i % 1000 == 3 ? 90 : -90;
+            }
+            else {
+                ras[ i ] = rnd.nextDouble() * 360;
+                decs[ i ] = Math.toDegrees( Math.asin( 2 * rnd.nextDouble()
+                                                       - 1 ) );
+            }
+        }
+        int[] orders = new int[] { 0, 3, HealpixConeIndex.getDefaultOrder( n ),
+                                   12 };
+        for ( int order : orders ) {
+            HealpixConeIndex index = new HealpixConeIndex( ras, decs, order );
+            assertEquals( order, index.getOrder() );
+            assertEquals( n, index.getRowCount() );
+            for ( int i = 0; i < n; i++ ) {
+                assertEquals( ras[ i ], index.getRa( i ) );
+                assertEquals( decs[ i ], index.getDec( i ) );
+            }
+            for ( int iq = 0; iq < 200; iq++ ) {
+                double ra = rnd.nextDouble() * 360;
+                double dec = iq % 50 == 0
+                           ? 89.9
+                           : Math.toDegrees( Math.asin( 2 * rnd.nextDouble()
+                                                        - 1 ) );
+                double sr = iq % 40 == 0 ? 45 : rnd.nextDouble() * 3;
+                assertArrayEquals( bruteQuery( ras, decs, ra, dec, sr ),
+                                   index.query( ra, dec, sr ) );
+            }
+            assertEquals( n - n / 100,
+                          index.query( 0, 0, 180 ).length );
+            assertEquals( 0, index.query( Double.NaN, 0, 1 ).length );
+            assertEquals( 0, index.query( 0, 0, -1 ).length );
+        }
+    }
+
+    private static long[] bruteQuery( double[] ras, double[] decs,
+                                      double ra, double dec, double sr ) {
+        long[] found = new long[ ras.length ];
+        int nf = 0;
+        for ( int i = 0; i < ras.length; i++ ) {
+            if ( CoordsDegrees.skyDistanceDegrees( ra, dec, ras[ i ],
+                                                   decs[ i ] ) <= sr ) {
+                found[ nf++ ] = i;
+            }
+        }
+        return Arrays.copyOf( found, nf );
+    }
+
+    private static void assertArrayEquals( long[] expected, long[] actual ) {
+        assertEquals( Arrays.toString( expected ), Arrays.toString( actual ) );
+    }
+}
@@ -0,0 +1,151 @@
+package uk.ac.starlink.ttools.cone;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.StarTableFactory;
+import uk.ac.starlink.ttools.TestHttpServer;
+import uk.ac.starlink.util.CgiQuery;
+import uk.ac.starlink.vo.ConeSearch;
+
+public class HostLimiterTest extends TestCase {
+
+    public HostLimiterTest( String name ) {
+        super( name );
+        Logger.getLogger( "uk.ac.starlink.vo" ).setLevel( Level.WARNING );
+    }
+
+    public void testLimit() throws Exception {
+        final HostLimiter limiter = new HostLimiter( 2 );
+        final URL url1 = new URL( "http://example.com/a" );
+        final URL url2 = new URL( "http://EXAMPLE.com:80/b" );
+        final AtomicInteger nActive = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        Thread[] threads = new Thread[ 8 ];
+        for ( int i = 0; i < threads.length; i++ ) {
+            final URL url = i % 2 == 0 ? url1 : url2;
+            threads[ i ] = new Thread() {
+                public void run() {
+                    for ( int j = 0; j < 20; j++ ) {
+                        try {
+                            limiter.acquire( url );
+                        }
+                        catch ( IOException e ) {
+                            return;
+                        }
+                        try {
+                            int n = nActive.incrementAndGet();
+                            synchronized ( maxActive ) {
+                                maxActive.set( Math.max( n,
+                                                         maxActive.get() ) );
+                            }
+                            Thread.sleep( 1 );
+                        }
+                        catch ( InterruptedException e ) {
+                            return;
+                        }
+                        finally {
+                            nActive.decrementAndGet();
+                            limiter.release( url );
+                        }
+                    }
+                }
+            };
+            threads[ i ].start();
+        }
+        for ( Thread thread : threads ) {
+            thread.join();
+        }
+        assertTrue( maxActive.get() <= 2 );
+        assertTrue( maxActive.get() > 0 );
+    }
+
+    public void testConeService() throws IOException {
+        final Set<Integer> clientPorts = new HashSet<Integer>();
+        TestHttpServer server = new TestHttpServer();
+        server.addHandler( "/cone", new HttpHandler() {
+            public void handle( HttpExchange exch ) throws IOException {
+                synchronized ( clientPorts ) {
+                    clientPorts.add( Integer.valueOf( exch.getRemoteAddress()
+                                                          .getPort() ) );
+                }
+                String query = exch.getRequestURI().getQuery();
+                String ra = query.replaceFirst( ".*RA=([^&]*).*", "$1" );
+                byte[] buf = createVOTable( ra ).getBytes( "UTF-8" );
+                exch.getResponseHeaders()
+                    .set( "Content-Type", "application/x-votable+xml" );
+                exch.sendResponseHeaders( 200, buf.length );
+                OutputStream out = exch.getResponseBody();
+                out.write( buf );
+                out.close();
+            }
+        } );
+        server.start();
+        try {
+            String url = server.getBaseUrl() + "/cone?";
+            ConeSearcher searcher =
+                new ServiceConeSearcher( new ConeSearch( url ), -1, false,
+                                         new StarTableFactory() );
+            RowListStarTable inTable = new RowListStarTable( new ColumnInfo[] {
+                new ColumnInfo( "ra", Double.class, null ),
+                new ColumnInfo( "dec", Double.class, null ),
+            } );
+            int nq = 60;
+            for ( int i = 0; i < nq; i++ ) {
+                inTable.addRow( new Object[] { Double.valueOf( i ),
+                                               Double.valueOf( 0 ) } );
+            }
+            ConeQueryRowSequence qseq =
+                new JELQuerySequenceFactory( "ra", "dec", "0.01" )
+               .createQuerySequence( inTable );
+            ConeResultRowSequence rseq =
+                new ParallelResultRowSequence( qseq, searcher,
+                                               ConeErrorPolicy.ABORT, null,
+                                               false, false, null, 4 );
+            int iq = 0;
+            while ( rseq.next() ) {
+                StarTable result = rseq.getConeResult();
+                assertEquals( 1L, result.getRowCount() );
+                assertEquals( (double) iq,
+                              ((Number) result.getCell( 0, 1 ))
+                             .doubleValue() );
+                iq++;
+            }
+            rseq.close();
+            assertEquals( nq, iq );
+
+            /* Connections should have been reused. */
+            assertTrue( clientPorts.size() < nq / 2 );
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    private static String createVOTable( String ra ) {
+        String raVal = CgiQuery.formatDouble( Double.parseDouble( ra ) );
+        return new StringBuffer()
+            .append( "<VOTABLE version='1.2'><RESOURCE><TABLE>" )
+            .append( "<FIELD name='id' datatype='int'/>" )
+            .append( "<FIELD name='ra' datatype='double'" )
+            .append( " ucd='POS_EQ_RA_MAIN'/>" )
+            .append( "<FIELD name='dec' datatype='double'" )
+            .append( " ucd='POS_EQ_DEC_MAIN'/>" )
+            .append( "<DATA><TABLEDATA><TR><TD>1</TD><TD>" )
+            .append( raVal )
+            .append( "</TD><TD>0</TD></TR></TABLEDATA></DATA>" )
+            .append( "</TABLE></RESOURCE></VOTABLE>" )
+            .toString();
+    }
+}
@@ -0,0 +1,185 @@
+package uk.ac.starlink.ttools.cone;
+
+import cds.healpix.Healpix;
+import cds.healpix.HealpixNestedBMOC;
+import cds.moc.HealpixMoc;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class RangeMocTest extends TestCase {
+
+    private final Random rnd_ = new Random( 5501L );
+
+    public RangeMocTest( String name ) {
+        super( name );
+    }
+
+    public void testBuilder() throws Exception {
+        RangeMoc.Builder builder = new RangeMoc.Builder( 6 );
+        assertTrue( builder.build().isEmpty() );
+        for ( int i = 0; i < 12; i++ ) {
+            builder.addCell( 0, i );
+        }
+        RangeMoc all = builder.build();
+        assertTrue( all.isAllSky() );
+        assertEquals( 1, all.getRangeCount() );
+        assertEquals( 1.0, all.getCoverage() );
+
+        /* Adjacent and overlapping cells are merged. */
+        builder = new RangeMoc.Builder( 10 );
+        builder.addCell( 3, 5 );
+        builder.addCell( 3, 6 );
+        builder.addCell( 4, 21 );
+        builder.addCell( 12, 9 << 18 );
+        RangeMoc moc = builder.build();
+        assertEquals( 2, moc.getRangeCount() );
+        assertTrue( moc.containsCell( 3, 5 ) );
+        assertTrue( moc.containsCell( 10, 9 << 14 ) );
+        assertFalse( moc.containsCell( 10, ( 9 << 14 ) + 1 ) );
+        assertFalse( moc.containsCell( 2, 1 ) );
+        assertTrue( moc.intersectsCell( 2, 1 ) );
+        assertFalse( moc.intersectsCell( 3, 4 ) );
+        assertEquals( 2 / 768. + 1. / ( 12 << 20 ), moc.getCoverage(),
+                      1e-12 );
+    }
+
+    public void testAgainstHealpixMoc() throws Exception {
+        for ( int itest = 0; itest < 4; itest++ ) {
+            int order = 4 + 3 * itest;
+            HealpixMoc hmoc1 = randomHealpixMoc( order );
+            HealpixMoc hmoc2 = randomHealpixMoc( order );
+            RangeMoc rmoc1 = RangeMoc.fromHealpixMoc( hmoc1 );
+            RangeMoc rmoc2 = RangeMoc.fromHealpixMoc( hmoc2 );
+            assertEquals( hmoc1.getCoverage(), rmoc1.getCoverage(), 1e-10 );
+            assertEquals( rmoc1,
+                          RangeMoc.fromHealpixMoc( rmoc1.toHealpixMoc() ) );
+            assertEquals( hmoc1.getSize(), rmoc1.toHealpixMoc().getSize() );
+
+            RangeMoc union = rmoc1.union( rmoc2 );
+            RangeMoc inter = rmoc1.intersection( rmoc2 );
+            assertEquals( RangeMoc.fromHealpixMoc( hmoc1.union( hmoc2 ) ),
+                          union );
+            assertEquals( hmoc1.intersection( hmoc2 ).getCoverage(),
+                          inter.getCoverage(), 1e-10 );
+            assertEquals( rmoc1.getCoverage() + rmoc2.getCoverage(),
+                          union.getCoverage() + inter.getCoverage(), 1e-10 );
+
+            int n = 5000;
+            double[] ras = new double[ n ];
+            double[] decs = new double[ n ];
+            for ( int i = 0; i < n; i++ ) {
+                ras[ i ] = rnd_.nextDouble() * 360;
+                decs[ i ] = Math.toDegrees( Math.asin( 2 * rnd_.nextDouble()
+                                                       - 1 ) );
+            }
+            ras[ 0 ] = Double.NaN;
+            decs[ 1 ] = 91;
+            boolean[] flags = new boolean[ n ];
+            rmoc1.containsPoints( ras, decs, n, flags );
+            CdsHealpix hpi = CdsHealpix.getInstance();
+            for ( int i = 0; i < n; i++ ) {
+                boolean in = rmoc1.containsPoint( ras[ i ], decs[ i ] );
+                assertEquals( in, flags[ i ] );
+                if ( i > 1 ) {
+                    assertEquals( hmoc1.contains( hpi, ras[ i ], decs[ i ] ),
+                                  in );
+                    assertEquals( in || inter.containsPoint( ras[ i ],
+                                                             decs[ i ] ),
+                                  in );
+                    double radius = rnd_.nextDouble() * 2;
+                    Boolean hpxOverlap =
+                        hpxDiscOverlaps( hmoc1, ras[ i ], decs[ i ], radius );
+                    if ( hpxOverlap != null ) {
+                        assertEquals( hpxOverlap.booleanValue(),
+                                      rmoc1.discOverlaps( ras[ i ], decs[ i ],
+                                                          radius ) );
+                    }
+                }
+                else {
+                    assertFalse( rmoc1.discOverlaps( ras[ i ], decs[ i ],
+                                                     1.0 ) );
+                }
+            }
+        }
+    }
+
+    public void testSerialization() throws Exception {
+        RangeMoc moc = RangeMoc.fromHealpixMoc( randomHealpixMoc( 11 ) );
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        moc.writeBinary( bout );
+        byte[] buf = bout.toByteArray();
+        assertTrue( buf.length < moc.getRangeCount() * 2 * 8 / 2 );
+        assertEquals( moc,
+                      RangeMoc.readBinary( new ByteArrayInputStream( buf ) ) );
+        try {
+            buf[ 0 ] = 'X';
+            RangeMoc.readBinary( new ByteArrayInputStream( buf ) );
+            fail();
+        }
+        catch ( IOException e ) {
+        }
+
+        bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream( bout );
+        oout.writeObject( moc );
+        oout.close();
+        Object moc2 =
+            new ObjectInputStream( new ByteArrayInputStream( bout
+                                                            .toByteArray() ) )
+           .readObject();
+        assertEquals( moc, moc2 );
+    }
+
+    /**
+     * Returns a MOC containing a few random clumps of cells.
+     */
+    private HealpixMoc randomHealpixMoc( int order ) throws Exception {
+        HealpixMoc moc = new HealpixMoc( order );
+        moc.setCheckConsistencyFlag( false );
+        long npix = 12L << ( 2 * order );
+        for ( int ic = 0; ic < 40; ic++ ) {
+            long ipix0 = (long) ( rnd_.nextDouble() * npix );
+            int nc = rnd_.nextInt( 500 );
+            for ( int i = 0; i < nc; i++ ) {
+                moc.add( order, Math.min( npix - 1,
+                                          ipix0 + rnd_.nextInt( 2000 ) ) );
+            }
+        }
+        moc.setCheckConsistencyFlag( true );
+        return moc;
+    }
+
+    /**
+     * Disc overlap test using HealpixMoc, as formerly used by MocCoverage.
+     * Returns null if the calculation fails.
+     */
+    private static Boolean hpxDiscOverlaps( HealpixMoc moc, double ra,
+                                            double dec, double radius ) {
+        int order = moc.getMaxOrder();
+        long center = CdsHealpix.getInstance().ang2pix( order, ra, dec );
+        if ( moc.isIntersecting( order, center ) ) {
+            return Boolean.TRUE;
+        }
+        HealpixNestedBMOC bmoc;
+        try {
+            bmoc = Healpix.getNested( order )
+                          .newConeComputerApprox( Math.toRadians( radius ) )
+                          .overlappingCells( Math.toRadians( ra ),
+                                             Math.toRadians( dec ) );
+        }
+        catch ( RuntimeException e ) {
+            return null;
+        }
+        for ( HealpixNestedBMOC.CurrentValueAccessor vac : bmoc ) {
+            if ( moc.isIntersecting( vac.getDepth(), vac.getHash() ) ) {
+                return Boolean.TRUE;
+            }
+        }
+        return Boolean.FALSE;
+    }
+}
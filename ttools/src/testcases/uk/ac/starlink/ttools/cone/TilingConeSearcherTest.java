@@ -0,0 +1,119 @@
+package uk.ac.starlink.ttools.cone;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.ttools.func.CoordsDegrees;
+
+public class TilingConeSearcherTest extends TestCase {
+
+    public TilingConeSearcherTest( String name ) {
+        super( name );
+        Logger.getLogger( "uk.ac.starlink.ttools.cone" )
+              .setLevel( Level.WARNING );
+    }
+
+    public void testTiling() throws IOException {
+        Random rnd = new Random( 440022 );
+        CatalogueSearcher base = new CatalogueSearcher( rnd, 20000, 10. );
+        double sr = 0.05;
+        int order = 7;
+        TilingConeSearcher tiler =
+            new TilingConeSearcher( base, order, sr, 4 );
+        int nq = 400;
+        for ( int iq = 0; iq < nq; iq++ ) {
+            double ra = 90 + rnd.nextDouble() * 10.0;
+            double dec = -5 + rnd.nextDouble() * 10.0;
+            double r = iq % 50 == 0 ? 0.5 : sr * rnd.nextDouble();
+            SortedSet<Integer> expect =
+                getIds( base.performSearch( ra, dec, r ) );
+            assertEquals( expect, getIds( tiler.performSearch( ra, dec, r ) ) );
+        }
+
+        /* Sorted queries share tile results. */
+        int nt0 = tiler.getTileQueryCount();
+        int nsorted = 0;
+        for ( int i = 0; i < 20; i++ ) {
+            for ( int j = 0; j < 20; j++ ) {
+                double ra = 94 + i * 0.01;
+                double dec = 1 + j * 0.01;
+                SortedSet<Integer> expect =
+                    getIds( base.performSearch( ra, dec, sr ) );
+                assertEquals( expect,
+                              getIds( tiler.performSearch( ra, dec, sr ) ) );
+                nsorted++;
+            }
+        }
+        assertTrue( tiler.getTileQueryCount() - nt0 < nsorted / 20 );
+        tiler.close();
+    }
+
+    private static SortedSet<Integer> getIds( StarTable table )
+            throws IOException {
+        SortedSet<Integer> ids = new TreeSet<Integer>();
+        if ( table != null ) {
+            RowSequence rseq = table.getRowSequence();
+            while ( rseq.next() ) {
+                assertTrue( ids.add( (Integer) rseq.getCell( 0 ) ) );
+            }
+            rseq.close();
+        }
+        return ids;
+    }
+
+    /**
+     * ConeSearcher which does a brute force search on a random catalogue
+     * in a patch of sky.
+     */
+    private static class CatalogueSearcher implements ConeSearcher {
+        final double[] ras_;
+        final double[] decs_;
+
+        CatalogueSearcher( Random rnd, int n, double size ) {
+            ras_ = new double[ n ];
+            decs_ = new double[ n ];
+            for ( int i = 0; i < n; i++ ) {
+                ras_[ i ] = 90 + rnd.nextDouble() * size;
+                decs_[ i ] = -size / 2 + rnd.nextDouble() * size;
+            }
+        }
+
+        public StarTable performSearch( double ra, double dec, double sr ) {
+            RowListStarTable table = new RowListStarTable( new ColumnInfo[] {
+                new ColumnInfo( "id", Integer.class, null ),
+                new ColumnInfo( "ra", Double.class, null ),
+                new ColumnInfo( "dec", Double.class, null ),
+            } );
+            for ( int i = 0; i < ras_.length; i++ ) {
+                if ( CoordsDegrees.skyDistanceDegrees( ra, dec, ras_[ i ],
+                                                       decs_[ i ] ) <= sr ) {
+                    table.addRow( new Object[] {
+                        Integer.valueOf( i ),
+                        Double.valueOf( ras_[ i ] ),
+                        Double.valueOf( decs_[ i ] ),
+                    } );
+                }
+            }
+            return table;
+        }
+
+        public int getRaIndex( StarTable result ) {
+            return 1;
+        }
+
+        public int getDecIndex( StarTable result ) {
+            return 2;
+        }
+
+        public void close() {
+        }
+    }
+}
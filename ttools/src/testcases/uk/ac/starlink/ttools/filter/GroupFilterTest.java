@@ -0,0 +1,138 @@
+package uk.ac.starlink.ttools.filter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+
+public class GroupFilterTest extends TestCase {
+
+    public GroupFilterTest( String name ) {
+        super( name );
+        Logger.getLogger( "uk.ac.starlink.ttools.filter" )
+              .setLevel( Level.WARNING );
+    }
+
+    public void testGroup() throws IOException, ArgException {
+        int nrow = 5000;
+        RowListStarTable table = new RowListStarTable( new ColumnInfo[] {
+            new ColumnInfo( "k", Integer.class, null ),
+            new ColumnInfo( "s", String.class, null ),
+            new ColumnInfo( "v", Double.class, null ),
+        } );
+        Random rnd = new Random( 441 );
+        Map<String,double[]> sums = new HashMap<String,double[]>();
+        List<String> order = new ArrayList<String>();
+        for ( int i = 0; i < nrow; i++ ) {
+            Integer k = Integer.valueOf( rnd.nextInt( 40 ) );
+            String s = rnd.nextBoolean() ? "a" : null;
+            Double v = i % 10 == 0 ? null
+                                   : Double.valueOf( rnd.nextGaussian() );
+            table.addRow( new Object[] { k, s, v } );
+            String key = k + ":" + s;
+            double[] acc = sums.get( key );
+            if ( acc == null ) {
+                acc = new double[ 3 ];
+                sums.put( key, acc );
+                order.add( key );
+            }
+            acc[ 0 ]++;
+            if ( v != null ) {
+                acc[ 1 ]++;
+                acc[ 2 ] += v.doubleValue();
+            }
+        }
+
+        String[] args = {
+            "k s", "count", "ngood(v)", "mean(v)", "min(v)", "max(v)",
+            "median(v)", "stdev(v)",
+        };
+        StarTable t1 = group( table, args, -1 );
+        StarTable t2 = group( table, args, 3 );
+        assertEquals( 9, t1.getColumnCount() );
+        assertEquals( "v_mean", t1.getColumnInfo( 4 ).getName() );
+        assertEquals( Double.class, t1.getColumnInfo( 5 ).getContentClass() );
+        Object[][] rows1 = readRows( t1 );
+        Object[][] rows2 = readRows( t2 );
+        assertEquals( order.size(), rows1.length );
+        assertEquals( order.size(), rows2.length );
+        for ( int ir = 0; ir < rows1.length; ir++ ) {
+            Object[] row = rows1[ ir ];
+            String key = row[ 0 ] + ":" + row[ 1 ];
+            assertEquals( order.get( ir ), key );
+            double[] acc = sums.get( key );
+            assertEquals( (long) acc[ 0 ], ((Long) row[ 2 ]).longValue() );
+            assertEquals( (long) acc[ 1 ], ((Long) row[ 3 ]).longValue() );
+            assertEquals( acc[ 2 ] / acc[ 1 ],
+                          ((Double) row[ 4 ]).doubleValue(), 1e-10 );
+            assertTrue( ((Double) row[ 5 ]).doubleValue()
+                     <= ((Double) row[ 7 ]).doubleValue() );
+            assertTrue( ((Double) row[ 7 ]).doubleValue()
+                     <= ((Double) row[ 6 ]).doubleValue() );
+
+            /* Partitioned result should match in-memory result. */
+            Object[] row2 = rows2[ ir ];
+            for ( int ic = 0; ic < row.length; ic++ ) {
+                if ( row[ ic ] instanceof Double ) {
+                    assertEquals( ((Double) row[ ic ]).doubleValue(),
+                                  ((Double) row2[ ic ]).doubleValue(),
+                                  1e-10 );
+                }
+                else {
+                    assertEquals( row[ ic ], row2[ ic ] );
+                }
+            }
+        }
+    }
+
+    public void testArgs() {
+        GroupFilter filter = new GroupFilter();
+        String[][] badArgs = {
+            {},
+            { "" },
+            { "k", "mean" },
+            { "k", "foo(v)" },
+            { "k", "mean(v" },
+        };
+        for ( String[] args : badArgs ) {
+            try {
+                filter.createStep( iterator( args ) );
+                fail( Arrays.toString( args ) );
+            }
+            catch ( ArgException e ) {
+            }
+        }
+    }
+
+    private static StarTable group( StarTable table, String[] args,
+                                    long limit )
+            throws IOException, ArgException {
+        return new GroupFilter().createStep( iterator( args ), limit )
+                                .wrap( table );
+    }
+
+    private static Iterator<String> iterator( String[] args ) {
+        return new ArrayList<String>( Arrays.asList( args ) ).iterator();
+    }
+
+    private static Object[][] readRows( StarTable table ) throws IOException {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        RowSequence rseq = table.getRowSequence();
+        while ( rseq.next() ) {
+            rows.add( rseq.getRow().clone() );
+        }
+        rseq.close();
+        return rows.toArray( new Object[ 0 ][] );
+    }
+}
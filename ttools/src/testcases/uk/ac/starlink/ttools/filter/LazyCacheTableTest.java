@@ -0,0 +1,201 @@
+package uk.ac.starlink.ttools.filter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import junit.framework.TestCase;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.WrapperStarTable;
+
+public class LazyCacheTableTest extends TestCase {
+
+    public LazyCacheTableTest( String name ) {
+        super( name );
+    }
+
+    public void testCache() throws IOException {
+        int nrow = 1000;
+        RowListStarTable table = new RowListStarTable( new ColumnInfo[] {
+            new ColumnInfo( "d", Double.class, null ),
+            new ColumnInfo( "f", Float.class, null ),
+            new ColumnInfo( "l", Long.class, null ),
+            new ColumnInfo( "i", Integer.class, null ),
+            new ColumnInfo( "s", Short.class, null ),
+            new ColumnInfo( "b", Byte.class, null ),
+            new ColumnInfo( "z", Boolean.class, null ),
+            new ColumnInfo( "t", String.class, null ),
+        } );
+        for ( int i = 0; i < nrow; i++ ) {
+            boolean blank = i % 7 == 0;
+            table.addRow( new Object[] {
+                blank ? null : Double.valueOf( i + 0.5 ),
+                blank ? null : Float.valueOf( i * 0.25f ),
+                blank ? null : Long.valueOf( i * 1000000000L ),
+                blank ? null : Integer.valueOf( -i ),
+                blank ? null : Short.valueOf( (short) i ),
+                blank ? null : Byte.valueOf( (byte) i ),
+                blank ? null : Boolean.valueOf( i % 3 == 0 ),
+                blank ? null : "r" + i,
+            } );
+        }
+        final int[] nread = new int[ 1 ];
+        StarTable seqTable = new WrapperStarTable( table ) {
+            public boolean isRandom() {
+                return false;
+            }
+            public long getRowCount() {
+                return -1;
+            }
+            public RowSequence getRowSequence() throws IOException {
+                nread[ 0 ]++;
+                return super.getRowSequence();
+            }
+        };
+        int ncol = table.getColumnCount();
+
+        /* Unlimited cache: each column is read once only. */
+        LazyCacheTable cache = new LazyCacheTable( seqTable, Long.MAX_VALUE );
+        assertTrue( cache.isRandom() );
+        assertEquals( 0, nread[ 0 ] );
+        assertEquals( nrow, cache.getRowCount() );
+        assertEquals( 1, nread[ 0 ] );
+        assertEquals( table.getCell( 99, 3 ), cache.getCell( 99, 3 ) );
+        assertEquals( table.getCell( 98, 3 ), cache.getCell( 98, 3 ) );
+        assertEquals( 2, nread[ 0 ] );
+        assertTrue( cache.isCached( 3 ) );
+        assertFalse( cache.isCached( 4 ) );
+        assertSameData( table, cache );
+        assertEquals( 3, nread[ 0 ] );
+        assertSameData( table, cache );
+        assertEquals( 3, nread[ 0 ] );
+        for ( int ic = 0; ic < ncol; ic++ ) {
+            assertTrue( cache.isCached( ic ) );
+        }
+
+        /* Small budget: columns are evicted, but data is still correct. */
+        LazyCacheTable small = new LazyCacheTable( table, 10000 );
+        for ( int ic = 0; ic < ncol; ic++ ) {
+            for ( int ir = 0; ir < nrow; ir++ ) {
+                assertEquals( table.getCell( ir, ic ),
+                              small.getCell( ir, ic ) );
+            }
+            assertTrue( small.isCached( ic ) );
+
+            /* The previous column is retained regardless of budget,
+             * since it was in use at the last load. */
+            if ( ic > 0 ) {
+                assertTrue( small.isCached( ic - 1 ) );
+            }
+        }
+        int ncached = 0;
+        for ( int ic = 0; ic < ncol; ic++ ) {
+            ncached += small.isCached( ic ) ? 1 : 0;
+        }
+        assertTrue( ncached < ncol );
+        assertSameData( table, small );
+    }
+
+    public void testReload() throws IOException {
+        int nrow = 100;
+        int ncol = 4;
+        ColumnInfo[] infos = new ColumnInfo[ ncol ];
+        for ( int ic = 0; ic < ncol; ic++ ) {
+            infos[ ic ] = new ColumnInfo( "c" + ic, Double.class, null );
+        }
+        RowListStarTable table = new RowListStarTable( infos );
+        for ( int ir = 0; ir < nrow; ir++ ) {
+            Object[] row = new Object[ ncol ];
+            for ( int ic = 0; ic < ncol; ic++ ) {
+                row[ ic ] = Double.valueOf( ir * 10 + ic );
+            }
+            table.addRow( row );
+        }
+        int[] nread = new int[ 1 ];
+
+        /* Budget for about two columns. */
+        LazyCacheTable cache =
+            new LazyCacheTable( countReads( table, nread ), 1700 );
+        for ( int ic = 0; ic < ncol; ic++ ) {
+            assertEquals( table.getCell( 5, ic ), cache.getCell( 5, ic ) );
+        }
+        assertEquals( ncol, nread[ 0 ] );
+
+        /* Column 0 was evicted when column 2 was loaded, but came back
+         * in the same pass as column 3, so it needs no pass of its own. */
+        assertTrue( cache.isCached( 0 ) );
+        assertFalse( cache.isCached( 1 ) );
+        assertEquals( table.getCell( 7, 0 ), cache.getCell( 7, 0 ) );
+        assertEquals( ncol, nread[ 0 ] );
+        assertEquals( table.getCell( 7, 1 ), cache.getCell( 7, 1 ) );
+        assertEquals( ncol + 1, nread[ 0 ] );
+
+        /* A table with no columns can still count its rows. */
+        nread[ 0 ] = 0;
+        RowListStarTable empty = new RowListStarTable( new ColumnInfo[ 0 ] );
+        for ( int ir = 0; ir < nrow; ir++ ) {
+            empty.addRow( new Object[ 0 ] );
+        }
+        LazyCacheTable emptyCache =
+            new LazyCacheTable( countReads( empty, nread ), 1700 );
+        assertEquals( nrow, emptyCache.getRowCount() );
+        assertEquals( nrow, emptyCache.getRowCount() );
+        assertEquals( 0, emptyCache.getRow( 3 ).length );
+        assertEquals( 1, nread[ 0 ] );
+    }
+
+    private static StarTable countReads( StarTable table,
+                                         final int[] nread ) {
+        return new WrapperStarTable( table ) {
+            public boolean isRandom() {
+                return false;
+            }
+            public long getRowCount() {
+                return -1;
+            }
+            public RowSequence getRowSequence() throws IOException {
+                nread[ 0 ]++;
+                return super.getRowSequence();
+            }
+        };
+    }
+
+    public void testParse() throws ArgException, IOException {
+        assertEquals( 200L, CacheFilter.parseBytes( "200" ) );
+        assertEquals( 3L * 1024, CacheFilter.parseBytes( "3k" ) );
+        assertEquals( 2L * 1024 * 1024 * 1024,
+                      CacheFilter.parseBytes( "2G" ) );
+        for ( String bad : new String[] { "", "M", "x", "-1" } ) {
+            try {
+                CacheFilter.parseBytes( bad );
+                fail( bad );
+            }
+            catch ( ArgException e ) {
+            }
+        }
+        assertTrue( new CacheFilter()
+                   .createStep( new ArrayList<String>( Arrays.asList(
+                                    new String[] { "-lazy" } ) ).iterator() )
+                   .wrap( new RowListStarTable( new ColumnInfo[ 0 ] ) )
+                   instanceof LazyCacheTable );
+    }
+
+    private static void assertSameData( StarTable t1, StarTable t2 )
+            throws IOException {
+        RowSequence rseq1 = t1.getRowSequence();
+        RowSequence rseq2 = t2.getRowSequence();
+        long irow = 0;
+        while ( rseq1.next() ) {
+            assertTrue( rseq2.next() );
+            assertTrue( Arrays.equals( rseq1.getRow(), rseq2.getRow() ) );
+            assertTrue( Arrays.equals( t1.getRow( irow ),
+                                       t2.getRow( irow ) ) );
+            irow++;
+        }
+        assertFalse( rseq2.next() );
+        rseq1.close();
+        rseq2.close();
+    }
+}
@@ -22,12 +22,14 @@ public class QuantCalcTest extends TestCase {
         final QuantCalc c3;
         final QuantCalc c4;
         final QuantCalc c5;
+        final SpillQuantCalc c6;
         QuantCalc[] calcs = new QuantCalc[] {
             c1 = new QuantCalc.DoubleListQuantCalc( Double.class ),
             c2 = new QuantCalc.FloatArrayQuantCalc( Long.class, values.length ),
             c3 = new QuantCalc.ByteSlotQuantCalc(),
             c4 = new QuantCalc.ShortSlotQuantCalc(),
             c5 = new QuantCalc.CountMapQuantCalc( Integer.class ),
+            c6 = new SpillQuantCalc( Double.class, 1000 ),
         };
 
         for ( int ic = 0; ic < calcs.length; ic++ ) {
@@ -44,7 +46,9 @@ public class QuantCalcTest extends TestCase {
             c3.acceptDatum( new Byte( (byte) ival ) );
             c4.acceptDatum( new Short( (short) ival ) );
             c5.acceptDatum( new Integer( ival ) );
+            c6.acceptDatum( new Double( ival ) );
         }
+        assertTrue( c6.isSpilled() );
 
         for ( int ic = 0; ic < calcs.length; ic++ ) {
             QuantCalc qc = calcs[ ic ];
@@ -83,6 +87,67 @@ public class QuantCalcTest extends TestCase {
         assertEquals( Byte.class, c3.getQuantile( 0.5 ).getClass() );
         assertEquals( Short.class, c4.getQuantile( 0.5 ).getClass() );
         assertEquals( Integer.class, c5.getQuantile( 0.5 ).getClass() );
+        assertEquals( Double.class, c6.getQuantile( 0.5 ).getClass() );
+        c6.close();
+    }
+
+    public void testSketch() throws IOException {
+        int n = 200000;
+        int[] values = shuffle( range( n ) );
+        SketchQuantCalc sc = new SketchQuantCalc( Integer.class );
+        SketchQuantCalc sc1 = new SketchQuantCalc( Integer.class );
+        SketchQuantCalc sc2 = new SketchQuantCalc( Integer.class );
+        for ( int i = 0; i < n; i++ ) {
+            Integer value = new Integer( values[ i ] );
+            sc.acceptDatum( value );
+            ( i % 3 == 0 ? sc1 : sc2 ).acceptDatum( value );
+        }
+        sc.acceptDatum( null );
+        sc.acceptDatum( new Double( Double.NaN ) );
+        sc1.merge( sc2 );
+        assertTrue( sc.getRetainedCount() < 4 * SketchQuantCalc.DEFAULT_K );
+        for ( SketchQuantCalc qc : new SketchQuantCalc[] { sc, sc1 } ) {
+            qc.ready();
+            assertEquals( n, qc.getValueCount() );
+            assertEquals( 0, qc.getQuantile( 0.0 ).intValue() );
+            assertEquals( n - 1, qc.getQuantile( 1.0 ).intValue() );
+            assertEquals( Integer.class, qc.getQuantile( 0.5 ).getClass() );
+            for ( double q = 0.05; q < 1; q += 0.05 ) {
+                assertEquals( q * n, qc.getQuantile( q ).doubleValue(),
+                              0.01 * n );
+            }
+            assertEquals( 0.25 * n,
+                          QuantCalc.calculateMedianAbsoluteDeviation( qc ),
+                          0.01 * n );
+            long nv = 0;
+            for ( Iterator<Number> it = qc.getValueIterator(); it.hasNext(); ) {
+                it.next();
+                nv++;
+            }
+            assertEquals( n, nv );
+        }
+    }
+
+    public void testHyperLogLog() {
+        HyperLogLog hll = new HyperLogLog();
+        assertEquals( 0, hll.getCardinality() );
+        for ( int i = 0; i < 10; i++ ) {
+            hll.acceptDatum( new Integer( i ) );
+            hll.acceptDatum( "x" + i );
+            hll.acceptDatum( null );
+        }
+        assertEquals( 20, hll.getCardinality() );
+
+        int n = 100000;
+        HyperLogLog h1 = new HyperLogLog();
+        HyperLogLog h2 = new HyperLogLog();
+        for ( int i = 0; i < n; i++ ) {
+            h1.acceptDatum( new Double( i ) );
+            h2.acceptDatum( new Double( i + n / 2 ) );
+        }
+        assertEquals( n, h1.getCardinality(), 0.03 * n );
+        h1.merge( h2 );
+        assertEquals( 1.5 * n, h1.getCardinality(), 0.03 * n );
     }
 
     public void testMad() throws IOException {
@@ -107,6 +172,14 @@ public class QuantCalcTest extends TestCase {
         return values;
     }
 
+    private static int[] range( int n ) {
+        int[] values = new int[ n ];
+        for ( int i = 0; i < n; i++ ) {
+            values[ i ] = i;
+        }
+        return values;
+    }
+
     private static int[] shuffle( int[] array ) {
         List list = new ArrayList();
         for ( int i = 0; i < array.length; i++ ) {
@@ -0,0 +1,133 @@
+package uk.ac.starlink.ttools.filter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.WrapperStarTable;
+
+public class SampleFilterTest extends TestCase {
+
+    public SampleFilterTest( String name ) {
+        super( name );
+    }
+
+    public void testSample() throws IOException, ArgException {
+        int nrow = 20000;
+        RowListStarTable table = new RowListStarTable( new ColumnInfo[] {
+            new ColumnInfo( "i", Integer.class, null ),
+            new ColumnInfo( "c", Integer.class, null ),
+        } );
+        for ( int i = 0; i < nrow; i++ ) {
+            int c = i < 100 ? 1 : ( i % 50 == 0 ? 2 : 0 );
+            table.addRow( new Object[] { Integer.valueOf( i ),
+                                         Integer.valueOf( c ) } );
+        }
+        StarTable seqTable = new WrapperStarTable( table ) {
+            public boolean isRandom() {
+                return false;
+            }
+        };
+
+        /* Uniform sample is the same size, in order, and independent
+         * of access mode. */
+        List<Object[]> rows = readRows( sample( table, "500" ) );
+        assertEquals( 500, rows.size() );
+        for ( int ir = 1; ir < rows.size(); ir++ ) {
+            assertTrue( ((Integer) rows.get( ir - 1 )[ 0 ]).intValue()
+                      < ((Integer) rows.get( ir )[ 0 ]).intValue() );
+        }
+        assertRowsEqual( rows, readRows( sample( seqTable, "500" ) ) );
+        assertFalse( sameRows( rows,
+                               readRows( sample( table,
+                                                 "-seed 23 500" ) ) ) );
+        assertEquals( nrow, readRows( sample( table, "99999" ) ).size() );
+
+        /* The sample should be spread through the table. */
+        int nlow = 0;
+        for ( Object[] row : rows ) {
+            if ( ((Integer) row[ 0 ]).intValue() < nrow / 2 ) {
+                nlow++;
+            }
+        }
+        assertTrue( nlow > 200 && nlow < 300 );
+
+        /* Stratified sample gets up to n rows for each category. */
+        List<Object[]> srows = readRows( sample( table, "-strata c 150" ) );
+        Map<Object,Integer> counts = new HashMap<Object,Integer>();
+        for ( Object[] row : srows ) {
+            Integer n = counts.get( row[ 1 ] );
+            counts.put( row[ 1 ], Integer.valueOf( n == null
+                                                   ? 1 : n.intValue() + 1 ) );
+        }
+        assertEquals( Integer.valueOf( 150 ), counts.get( 0 ) );
+        assertEquals( Integer.valueOf( 100 ), counts.get( 1 ) );
+        assertEquals( Integer.valueOf( 150 ), counts.get( 2 ) );
+        assertRowsEqual( srows,
+                         readRows( sample( seqTable, "-strata c 150" ) ) );
+    }
+
+    public void testArgs() {
+        String[][] badArgs = {
+            {},
+            { "0" },
+            { "x" },
+            { "-seed", "x", "10" },
+        };
+        for ( String[] args : badArgs ) {
+            try {
+                new SampleFilter()
+                   .createStep( new ArrayList<String>( Arrays.asList( args ) )
+                               .iterator() );
+                fail( Arrays.toString( args ) );
+            }
+            catch ( ArgException e ) {
+            }
+        }
+    }
+
+    private static StarTable sample( StarTable table, String args )
+            throws IOException, ArgException {
+        Iterator<String> argIt =
+            new ArrayList<String>( Arrays.asList( args.split( " " ) ) )
+           .iterator();
+        return new SampleFilter().createStep( argIt ).wrap( table );
+    }
+
+    private static List<Object[]> readRows( StarTable table )
+            throws IOException {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        RowSequence rseq = table.getRowSequence();
+        while ( rseq.next() ) {
+            rows.add( rseq.getRow().clone() );
+        }
+        rseq.close();
+        return rows;
+    }
+
+    private static boolean sameRows( List<Object[]> rows1,
+                                     List<Object[]> rows2 ) {
+        if ( rows1.size() != rows2.size() ) {
+            return false;
+        }
+        for ( int i = 0; i < rows1.size(); i++ ) {
+            if ( ! Arrays.equals( rows1.get( i ), rows2.get( i ) ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void assertRowsEqual( List<Object[]> rows1,
+                                         List<Object[]> rows2 ) {
+        assertTrue( sameRows( rows1, rows2 ) );
+    }
+}
@@ -0,0 +1,76 @@
+package uk.ac.starlink.ttools.filter;
+
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class UnivariateStatsTest extends TestCase {
+
+    public UnivariateStatsTest( String name ) {
+        super( name );
+    }
+
+    public void testOffset() {
+        double offset = 1e9;
+        UnivariateStats stats = UnivariateStats.createStats( Double.class );
+        for ( int i = 0; i < 1000; i++ ) {
+            stats.acceptDatum( new Double( offset + ( i % 4 ) ) );
+        }
+        assertEquals( 1000, stats.getCount() );
+        assertEquals( offset + 1.5, stats.getMean(), 1e-6 );
+
+        /* Naive sum of squares loses all precision here. */
+        assertEquals( 1.25, stats.getCentralSum2() / 1000, 1e-6 );
+        assertEquals( 0.0, stats.getCentralSum3() / 1000, 1e-6 );
+    }
+
+    public void testCombine() {
+        Random rnd = new Random( 2301 );
+        int n = 5000;
+        double[] data = new double[ n ];
+        for ( int i = 0; i < n; i++ ) {
+            data[ i ] = i % 97 == 0 ? Double.NaN
+                                    : 100 + rnd.nextGaussian() * 3;
+        }
+        UnivariateStats all = UnivariateStats.createStats( Double.class );
+        for ( int i = 0; i < n; i++ ) {
+            all.acceptDatum( new Double( data[ i ] ), i );
+        }
+        UnivariateStats[] parts = new UnivariateStats[ 3 ];
+        int[] bounds = new int[] { 0, 1234, 1235, n };
+        for ( int ip = 0; ip < parts.length; ip++ ) {
+            parts[ ip ] = UnivariateStats.createStats( Double.class );
+            for ( int i = bounds[ ip ]; i < bounds[ ip + 1 ]; i++ ) {
+                parts[ ip ].acceptDatum( new Double( data[ i ] ), i );
+            }
+        }
+        UnivariateStats empty = UnivariateStats.createStats( Double.class );
+        parts[ 2 ].combine( empty );
+        parts[ 0 ].combine( parts[ 1 ] );
+        parts[ 0 ].combine( parts[ 2 ] );
+        UnivariateStats comb = parts[ 0 ];
+
+        assertEquals( all.getCount(), comb.getCount() );
+        assertEquals( all.getMean(), comb.getMean(), 1e-10 );
+        assertEquals( all.getSum(), comb.getSum(), 1e-8 );
+        assertEquals( 1.0, comb.getCentralSum2() / all.getCentralSum2(),
+                      1e-10 );
+        assertEquals( all.getCentralSum3(), comb.getCentralSum3(),
+                      1e-8 * Math.abs( all.getCentralSum4() ) );
+        assertEquals( 1.0, comb.getCentralSum4() / all.getCentralSum4(),
+                      1e-10 );
+        assertEquals( all.getMinimum(), comb.getMinimum() );
+        assertEquals( all.getMaximum(), comb.getMaximum() );
+        assertEquals( all.getMinPos(), comb.getMinPos() );
+        assertEquals( all.getMaxPos(), comb.getMaxPos() );
+
+        UnivariateStats bstats = UnivariateStats.createStats( Boolean.class );
+        UnivariateStats bstats2 = UnivariateStats.createStats( Boolean.class );
+        bstats.acceptDatum( Boolean.TRUE, 0 );
+        bstats.acceptDatum( Boolean.FALSE, 1 );
+        bstats2.acceptDatum( Boolean.TRUE, 2 );
+        bstats2.acceptDatum( null, 3 );
+        bstats.combine( bstats2 );
+        assertEquals( 3, bstats.getCount() );
+        assertEquals( 2.0 / 3.0, bstats.getMean(), 1e-10 );
+    }
+}
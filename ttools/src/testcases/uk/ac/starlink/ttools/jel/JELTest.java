@@ -142,6 +142,55 @@ public class JELTest extends TableTestCase {
         assertEquals( null, rdr.evaluateAtRow( sExpr, 1 ) );
     }
 
+    public void testConcurrent() throws Throwable {
+        final int nrow = 20000;
+        Integer[] ivals = new Integer[ nrow ];
+        double[] dvals = new double[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            ivals[ i ] = i % 7 == 0 ? null : new Integer( i );
+            dvals[ i ] = 0.5 * i;
+        }
+        StarTable t3 = new QuickTable( nrow, new ColumnData[] {
+            col( "i", ivals ),
+            col( "d", dvals ),
+        } );
+        final RandomJELRowReader rdr = new RandomJELRowReader( t3 );
+        Library lib = JELUtils.getLibrary( rdr );
+        final CompiledExpression compEx =
+            JELUtils.compile( lib, t3, "i + d + $index" );
+        final Throwable[] error = new Throwable[ 1 ];
+        Thread[] threads = new Thread[ 4 ];
+        for ( int it = 0; it < threads.length; it++ ) {
+            final int ioff = it;
+            threads[ it ] = new Thread( () -> {
+                try {
+                    for ( int i = ioff; i < nrow; i += 3 ) {
+                        Object val = rdr.evaluateAtRow( compEx, i );
+                        if ( i % 7 == 0 ) {
+                            assertNull( val );
+                        }
+                        else {
+                            assertEquals( 2.5 * i + 1,
+                                          ((Number) val).doubleValue() );
+                        }
+                    }
+                }
+                catch ( Throwable e ) {
+                    error[ 0 ] = e;
+                }
+            } );
+        }
+        for ( Thread th : threads ) {
+            th.start();
+        }
+        for ( Thread th : threads ) {
+            th.join();
+        }
+        if ( error[ 0 ] != null ) {
+            throw error[ 0 ];
+        }
+    }
+
     public static class FuncLib {
         public static int triplePrim( int a ) {
             return 3 * a;
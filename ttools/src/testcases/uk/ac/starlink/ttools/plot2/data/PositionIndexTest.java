@@ -0,0 +1,92 @@
+package uk.ac.starlink.ttools.plot2.data;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.function.Supplier;
+import uk.ac.starlink.ttools.plot2.geom.PlaneDataGeom;
+import uk.ac.starlink.util.TestCase;
+
+public class PositionIndexTest extends TestCase {
+
+    public void testQueries() throws IOException, InterruptedException {
+        Random rnd = new Random( 230977L );
+        for ( int n : new int[] { 0, 1, 63, 64, 65, 1000, 54321, 250000 } ) {
+            exerciseIndex( rnd, n );
+        }
+    }
+
+    private void exerciseIndex( Random rnd, int n )
+            throws IOException, InterruptedException {
+        CachedColumnFactory fact = new MemoryColumnFactory();
+        CachedColumn xcol = fact.createColumn( StorageType.DOUBLE, n );
+        CachedColumn ycol = fact.createColumn( StorageType.DOUBLE, n );
+        double[] xs = new double[ n ];
+        double[] ys = new double[ n ];
+        for ( int i = 0; i < n; i++ ) {
+            boolean isBad = i % 11 == 3;
+            xs[ i ] = isBad ? Double.NaN : rnd.nextGaussian();
+
+            /* Include plenty of duplicates. */
+            ys[ i ] = Math.floor( rnd.nextDouble() * 20 ) / 20.;
+            xcol.add( new Double( xs[ i ] ) );
+            ycol.add( new Double( ys[ i ] ) );
+        }
+        xcol.endAdd();
+        ycol.endAdd();
+        Supplier<CachedReader[]> colsSupplier = () -> new CachedReader[] {
+            xcol.createReader(), ycol.createReader(),
+        };
+        PositionIndex index =
+            PositionIndex
+           .createIndex( new CachedTupleSequence( null, colsSupplier, n ),
+                         PlaneDataGeom.INSTANCE, 0 );
+        int ngood = 0;
+        for ( int i = 0; i < n; i++ ) {
+            if ( ! Double.isNaN( xs[ i ] ) ) {
+                ngood++;
+            }
+        }
+        assertEquals( ngood, index.getCount() );
+
+        for ( int iq = 0; iq < 50; iq++ ) {
+            double x0 = rnd.nextGaussian();
+            double y0 = rnd.nextDouble();
+            double[] dlos = { x0, y0 };
+            double[] dhis = { x0 + rnd.nextDouble(), y0 + 0.2 };
+            int[] irows = index.queryRows( dlos, dhis );
+            for ( int i = 1; i < irows.length; i++ ) {
+                assertTrue( irows[ i ] > irows[ i - 1 ] );
+            }
+            boolean[] found = new boolean[ n ];
+            for ( int ir : irows ) {
+                found[ ir ] = true;
+            }
+            int nin = 0;
+            for ( int i = 0; i < n; i++ ) {
+                if ( xs[ i ] >= dlos[ 0 ] && xs[ i ] <= dhis[ 0 ] &&
+                     ys[ i ] >= dlos[ 1 ] && ys[ i ] <= dhis[ 1 ] ) {
+                    assertTrue( found[ i ] );
+                    nin++;
+                }
+            }
+            assertTrue( irows.length >= nin );
+            if ( n > 10000 ) {
+                assertTrue( irows.length < n / 2 );
+            }
+
+            TupleSequence tseq =
+                new IndexedTupleSequence( colsSupplier, irows );
+            TupleSequence tseq2 = tseq.split();
+            int count = 0;
+            for ( TupleSequence ts : new TupleSequence[] { tseq2, tseq } ) {
+                while ( ts != null && ts.next() ) {
+                    int irow = (int) ts.getRowIndex();
+                    assertTrue( found[ irow ] );
+                    assertEquals( xs[ irow ], ts.getDoubleValue( 0 ) );
+                    count++;
+                }
+            }
+            assertEquals( irows.length, count );
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package uk.ac.starlink.ttools.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.StarTableFactory;
+import uk.ac.starlink.ttools.TestHttpServer;
+import uk.ac.starlink.ttools.cone.DalConeSearcher;
+import uk.ac.starlink.ttools.cone.HealpixConeIndex;
+import uk.ac.starlink.util.URLDataSource;
+
+public class ConeSearchHandlerTest extends TestCase {
+
+    public ConeSearchHandlerTest( String name ) {
+        super( name );
+        Logger.getLogger( "uk.ac.starlink.ttools.server" )
+              .setLevel( Level.WARNING );
+    }
+
+    public void testParams() {
+        Map<String,String> params =
+            ConeSearchHandler.parseQuery( "ra=10&Dec=-5.5&SR=0.1&x=a%20b" );
+        assertEquals( "a b", params.get( "X" ) );
+        assertEquals( 3, ConeSearchHandler.getCone( params ).length );
+        assertEquals( -5.5, ConeSearchHandler.getCone( params )[ 1 ] );
+        double[] cone =
+            ConeSearchHandler
+           .getCone( ConeSearchHandler
+                    .parseQuery( "POS=CIRCLE+1+2+0.5" ) );
+        assertEquals( 1.0, cone[ 0 ] );
+        assertEquals( 2.0, cone[ 1 ] );
+        assertEquals( 0.5, cone[ 2 ] );
+        String[] badQueries = {
+            null, "RA=1&DEC=2", "RA=1&DEC=99&SR=1", "RA=1&DEC=2&SR=-1",
+            "POS=RANGE+1+2+3+4",
+        };
+        for ( String query : badQueries ) {
+            try {
+                ConeSearchHandler.getCone( ConeSearchHandler
+                                          .parseQuery( query ) );
+                fail( query );
+            }
+            catch ( IllegalArgumentException e ) {
+            }
+        }
+    }
+
+    public void testServer() throws IOException {
+        Random rnd = new Random( 99L );
+        int n = 5000;
+        double[] ras = new double[ n ];
+        double[] decs = new double[ n ];
+        ColumnInfo raInfo = new ColumnInfo( "ra", Double.class, null );
+        raInfo.setUCD( "POS_EQ_RA_MAIN" );
+        RowListStarTable table = new RowListStarTable( new ColumnInfo[] {
+            new ColumnInfo( "id", Integer.class, null ),
+            raInfo,
+            new ColumnInfo( "dec", Double.class, null ),
+        } );
+        for ( int i = 0; i < n; i++ ) {
+            ras[ i ] = 20 + rnd.nextDouble() * 10;
+            decs[ i ] = 40 + rnd.nextDouble() * 10;
+            table.addRow( new Object[] { Integer.valueOf( i ),
+                                         Double.valueOf( ras[ i ] ),
+                                         Double.valueOf( decs[ i ] ) } );
+        }
+        HealpixConeIndex index = new HealpixConeIndex( ras, decs, 8 );
+        TestHttpServer server = new TestHttpServer();
+        server.addHandler( "/cone", new ConeSearchHandler( table, index ) );
+        server.setExecutor( Executors.newFixedThreadPool( 4 ) );
+        server.start();
+        try {
+            String base = server.getBaseUrl() + "/cone?";
+            StarTableFactory tfact = new StarTableFactory();
+            StarTable t1 =
+                tfact.makeStarTable( new URLDataSource(
+                    new URL( base + "RA=25&DEC=45&SR=0.5" ) ) );
+            t1 = tfact.randomTable( t1 );
+            assertEquals( index.query( 25, 45, 0.5 ).length,
+                          t1.getRowCount() );
+            assertTrue( t1.getRowCount() > 10 );
+            assertEquals( 6, t1.getColumnCount() );
+            assertEquals( "ID_MAIN", t1.getColumnInfo( 0 ).getUCD() );
+            assertEquals( "POS_EQ_RA_MAIN", t1.getColumnInfo( 1 ).getUCD() );
+            assertEquals( "POS_EQ_DEC_MAIN", t1.getColumnInfo( 2 ).getUCD() );
+            assertNull( t1.getColumnInfo( 4 ).getUCD() );
+            DalConeSearcher dcs = new DalConeSearcher( "cone", "1.03",
+                                                       false );
+            assertEquals( 1, dcs.getUcd1RaIndex( t1 ) );
+            assertEquals( 2, dcs.getUcd1DecIndex( t1 ) );
+            long[] irows = index.query( 25, 45, 0.5 );
+            for ( int i = 0; i < irows.length; i++ ) {
+                int ir = (int) irows[ i ];
+                assertEquals( Long.valueOf( ir ), t1.getCell( i, 0 ) );
+                assertEquals( Double.valueOf( ras[ ir ] ), t1.getCell( i, 1 ) );
+                assertEquals( Double.valueOf( decs[ ir ] ),
+                              t1.getCell( i, 2 ) );
+                assertEquals( Integer.valueOf( ir ), t1.getCell( i, 3 ) );
+            }
+
+            StarTable t2 =
+                tfact.makeStarTable( new URLDataSource(
+                    new URL( base + "POS=CIRCLE%2025%2045%200.5"
+                                  + "&RESPONSEFORMAT=fits" ) ) );
+            t2 = tfact.randomTable( t2 );
+            assertEquals( t1.getRowCount(), t2.getRowCount() );
+
+            HttpURLConnection conn =
+                (HttpURLConnection)
+                new URL( base + "RA=25&DEC=45" ).openConnection();
+            assertEquals( 400, conn.getResponseCode() );
+            InputStream err = conn.getErrorStream();
+            byte[] buf = new byte[ 4096 ];
+            int nb = 0;
+            for ( int nr; ( nr = err.read( buf, nb, buf.length - nb ) ) > 0; ) {
+                nb += nr;
+            }
+            err.close();
+            assertTrue( new String( buf, 0, nb, "UTF-8" )
+                       .indexOf( "QUERY_STATUS" ) > 0 );
+        }
+        finally {
+            server.stop();
+        }
+    }
+}
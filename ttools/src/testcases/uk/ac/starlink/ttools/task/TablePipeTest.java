@@ -20,6 +20,7 @@ import uk.ac.starlink.table.DefaultValueInfo;
 import uk.ac.starlink.table.DescribedValue;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.Tables;
+import uk.ac.starlink.table.WrapperStarTable;
 import uk.ac.starlink.task.TaskException;
 import uk.ac.starlink.ttools.TableTestCase;
 import uk.ac.starlink.ttools.QuickTable;
@@ -27,6 +28,10 @@ import uk.ac.starlink.ttools.convert.SkySystem;
 import uk.ac.starlink.ttools.convert.SkyUnits;
 import uk.ac.starlink.ttools.filter.ArgException;
 import uk.ac.starlink.ttools.filter.AssertException;
+import uk.ac.starlink.ttools.filter.FusedJELStep;
+import uk.ac.starlink.ttools.filter.FusedJELTable;
+import uk.ac.starlink.ttools.filter.ProcessingStep;
+import uk.ac.starlink.ttools.filter.StepFactory;
 import uk.ac.starlink.votable.FitsPlusTableWriter;
 
 public class TablePipeTest extends TableTestCase {
@@ -215,6 +220,102 @@ public class TablePipeTest extends TableTestCase {
 
     }
 
+    public void testFusedJEL() throws Exception {
+        String[] cmds = {
+            "addcol e a*2",
+            "select e>2",
+            "addcol -before a f e+b+$index",
+            "select !NULL_d",
+            "addcol g f*10+$0",
+        };
+        String fusedCmd = String.join( "; ", cmds );
+        String unfusedCmd = String.join( "; check; ", cmds );
+        ProcessingStep[] steps =
+            StepFactory.getInstance().createSteps( fusedCmd );
+        assertEquals( 1, steps.length );
+        assertTrue( steps[ 0 ] instanceof FusedJELStep );
+        assertEquals( cmds.length * 2 - 1,
+                      StepFactory.getInstance().createSteps( unfusedCmd )
+                                 .length );
+
+        StarTable fused = apply( fusedCmd );
+        StarTable unfused = apply( unfusedCmd );
+        assertArrayEquals( new String[] { "f", "a", "b", "c", "d", "e", "g" },
+                           getColNames( fused ) );
+        assertArrayEquals( getColNames( unfused ), getColNames( fused ) );
+        for ( int ic = 0; ic < fused.getColumnCount(); ic++ ) {
+            assertArrayEquals( getColData( unfused, ic ),
+                               getColData( fused, ic ) );
+        }
+        assertArrayEquals( box( new double[] { 25., 38. } ),
+                           getColData( fused, 0 ) );
+    }
+
+    public void testFusedJELBlocks() throws Exception {
+        int nrow = FusedJELTable.BLOCK_SIZE * 2 + 101;
+        int[] ivals = new int[ nrow ];
+        double[] xvals = new double[ nrow ];
+        Integer[] nvals = new Integer[ nrow ];
+        String[] svals = new String[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            ivals[ i ] = i;
+            xvals[ i ] = i % 7 == 0 ? Double.NaN : i * 0.5;
+            nvals[ i ] = i % 5 == 0 ? null : new Integer( i % 100 );
+            svals[ i ] = i % 11 == 0 ? null : "s" + i;
+        }
+        StarTable randTable = new QuickTable( nrow, new ColumnData[] {
+            col( "i", ivals ),
+            col( "x", xvals ),
+            col( "n", nvals ),
+            col( "s", svals ),
+        } );
+        assertTrue( randTable.isRandom() );
+        StarTable seqTable = new WrapperStarTable( randTable ) {
+            public boolean isRandom() {
+                return false;
+            }
+        };
+        String[] cmds = {
+            "addcol y x*2+i",
+            "select i%3!=0",
+            "addcol -before i k n*2",
+            "select !NULL_x||k>10",
+            "addcol f (float)y",
+            "addcol flag k>50",
+            "addcol ch \"(char)('a'+i%26)\"",
+            "addcol t s.length()+k",
+            "select flag||i%4==1",
+            "addcol z $index*1000+y",
+            "addcol r RANDOM",
+        };
+        String fusedCmd = String.join( "; ", cmds );
+        String unfusedCmd = String.join( "; check; ", cmds );
+        for ( StarTable in : new StarTable[] { randTable, seqTable } ) {
+            StarTable fused = process( in, fusedCmd );
+            StarTable unfused = process( in, unfusedCmd );
+            assertArrayEquals( getColNames( unfused ), getColNames( fused ) );
+
+            /* RANDOM values depend on the compilation, so for that column
+             * only check that sequential and random access agree. */
+            int ir = getColIndex( fused, "r" );
+            for ( int ic = 0; ic < fused.getColumnCount(); ic++ ) {
+                Object[] fusedData = getColData( fused, ic );
+                if ( ic != ir ) {
+                    assertArrayEquals( getColData( unfused, ic ), fusedData );
+                }
+            }
+        }
+
+        /* Single steps are fused as well. */
+        ProcessingStep[] steps =
+            StepFactory.getInstance().createSteps( "select x>5" );
+        assertEquals( 1, steps.length );
+        assertTrue( steps[ 0 ] instanceof FusedJELStep );
+        StarTable sel = process( randTable, "select x>5" );
+        StarTable unsel = process( randTable, "check; select x>5" );
+        assertArrayEquals( getColData( unsel, 1 ), getColData( sel, 1 ) );
+    }
+
     public void testAssert() throws Exception {
         apply( "select index<4; assert '((int) a+b) % 11 == 0'" );
         try {
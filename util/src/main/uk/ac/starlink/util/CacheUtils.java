@@ -0,0 +1,98 @@
+package uk.ac.starlink.util;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+/**
+ * Utilities for locating the persistent caches used by starjava
+ * applications.
+ *
+ * <p>All such caches are kept in subdirectories of a single base
+ * directory, given by the {@link #DIR_PROP} system property,
+ * or by default <code>~/.starjava/cache</code>.
+ * Persistent caching is enabled by default; setting the property
+ * to an empty string or "<code>none</code>" disables it for all caches.
+ * Other configuration properties for an individual cache are named
+ * <code>star.cache.&lt;name&gt;.&lt;key&gt;</code>,
+ * see {@link #getPropertyName}.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class CacheUtils {
+
+    /**
+     * Name of system property giving the base directory for
+     * persistent caches.
+     * If empty or "<code>none</code>", no persistent caches are used.
+     */
+    public static final String DIR_PROP = "star.cache.dir";
+
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.util" );
+
+    /**
+     * Private constructor prevents instantiation.
+     */
+    private CacheUtils() {
+    }
+
+    /**
+     * Returns the directory to be used by a named persistent cache.
+     * The directory is not created by this method.
+     *
+     * @param  name  cache name, used as the subdirectory name
+     * @return  cache directory, or null if persistent caching is disabled
+     */
+    public static File getCacheDirectory( String name ) {
+        String baseName;
+        File home;
+        try {
+            baseName = System.getProperty( DIR_PROP );
+            home = new File( System.getProperty( "user.home" ) );
+        }
+        catch ( SecurityException e ) {
+            return null;
+        }
+        final File baseDir;
+        if ( baseName == null ) {
+            baseDir = new File( new File( home, ".starjava" ), "cache" );
+        }
+        else if ( baseName.trim().length() == 0 ||
+                  "none".equalsIgnoreCase( baseName.trim() ) ) {
+            logger_.config( "Persistent caching disabled" );
+            return null;
+        }
+        else {
+            baseDir = new File( baseName.trim() );
+        }
+        return new File( baseDir, name );
+    }
+
+    /**
+     * Returns the name of a system property configuring a named cache.
+     *
+     * @param  name  cache name
+     * @param  key   configuration item
+     * @return  <code>star.cache.&lt;name&gt;.&lt;key&gt;</code>
+     */
+    public static String getPropertyName( String name, String key ) {
+        return "star.cache." + name + "." + key;
+    }
+
+    /**
+     * Returns the value of a system property configuring a named cache.
+     *
+     * @param  name  cache name
+     * @param  key   configuration item
+     * @return  property value, or null if not set or not accessible
+     */
+    public static String getProperty( String name, String key ) {
+        try {
+            return System.getProperty( getPropertyName( name, key ) );
+        }
+        catch ( SecurityException e ) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,1156 @@
+package uk.ac.starlink.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded cache for the bodies of HTTP GET responses.
+ *
+ * <p>Responses are stored only if the server permits it according to
+ * the <code>Cache-Control</code> header (<code>no-store</code> responses
+ * are never stored), and only if they can be reused:
+ * either they have a freshness lifetime given by
+ * <code>Cache-Control: max-age</code> or <code>Expires</code>,
+ * during which they are used without contacting the server,
+ * or they have <code>ETag</code> or <code>Last-Modified</code>
+ * validators, in which case a conditional request is made and
+ * the stored copy is used if the server responds
+ * <code>304 Not Modified</code>.
+ * No heuristic freshness is applied.
+ * Stored bodies are the decoded content, so HTTP-level compression
+ * negotiated by a {@link ContentCoding} is transparent to the cache.
+ *
+ * <p>Bodies are held on disk in files named by a digest of their
+ * content, so that identical responses from different URLs
+ * are only stored once.
+ * When the total size exceeds a given limit, the least recently used
+ * entries are discarded.
+ * Small bodies are additionally kept in memory,
+ * also subject to a total size limit with LRU eviction.
+ *
+ * <p>A response is only stored if it is read to the end;
+ * a stream closed before that point leaves the cache unchanged.
+ * Failures to read or write the cache are logged but otherwise ignored,
+ * so in the worst case the cache just has no effect.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class HttpCache {
+
+    private final File dir_;
+    private final long maxDiskBytes_;
+    private final long maxMemBytes_;
+    private final int maxMemEntryBytes_;
+    private final LinkedHashMap<String,Entry> entries_;
+    private final Map<String,Body> bodies_;
+    private final LinkedHashMap<String,byte[]> memBodies_;
+    private long diskBytes_;
+    private long memBytes_;
+    private boolean loaded_;
+    private static HttpCache instance_;
+    private static boolean instanceInit_;
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.util" );
+
+    /** Name of the default cache, used for its directory and properties. */
+    public static final String CACHE_NAME = "http";
+
+    /**
+     * Name of system property giving the maximum size in bytes
+     * of the default cache's on-disk storage.
+     */
+    public static final String SIZE_PROP =
+        CacheUtils.getPropertyName( CACHE_NAME, "size" );
+
+    /** Default maximum size in bytes of on-disk storage. */
+    public static final long DFLT_MAX_DISK = 256L * 1024 * 1024;
+
+    /** Default maximum size in bytes of in-memory storage. */
+    public static final long DFLT_MAX_MEM = 8L * 1024 * 1024;
+
+    /** Default maximum size in bytes of a body held in memory. */
+    public static final int DFLT_MAX_MEM_ENTRY = 64 * 1024;
+
+    private static final String META_SUFFIX = ".meta";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TMP_SUFFIX = ".part";
+    private static final int DRAIN_LIMIT = 64 * 1024;
+
+    /**
+     * Constructor.
+     *
+     * @param  dir  directory in which to store response bodies,
+     *              created if necessary;
+     *              if null, only the in-memory tier is used
+     * @param  maxDiskBytes  maximum total size of bodies stored on disk
+     * @param  maxMemBytes   maximum total size of bodies held in memory
+     * @param  maxMemEntryBytes  maximum size of a body eligible for
+     *                           holding in memory
+     */
+    public HttpCache( File dir, long maxDiskBytes, long maxMemBytes,
+                      int maxMemEntryBytes ) {
+        dir_ = dir;
+        maxDiskBytes_ = maxDiskBytes;
+        maxMemBytes_ = maxMemBytes;
+        maxMemEntryBytes_ = maxMemEntryBytes;
+        entries_ = new LinkedHashMap<String,Entry>( 16, 0.75f, true );
+        bodies_ = new HashMap<String,Body>();
+        memBodies_ = new LinkedHashMap<String,byte[]>( 16, 0.75f, true );
+    }
+
+    /**
+     * Returns the directory in which this cache stores response bodies.
+     *
+     * @return  cache directory, or null for a memory-only cache
+     */
+    public File getDirectory() {
+        return dir_;
+    }
+
+    /**
+     * Returns a stream giving the content of a URL,
+     * from the cache if possible.
+     * URLs which are not HTTP or HTTPS, or which contain user information,
+     * are read directly without reference to the cache.
+     * HTTP redirects are followed as for
+     * {@link URLUtils#followRedirects URLUtils.followRedirects}.
+     *
+     * @param  url  URL to read
+     * @param  coding  content coding policy for any network request
+     * @return  decoded content of URL
+     */
+    public InputStream openStream( URL url, ContentCoding coding )
+            throws IOException {
+        if ( ! isCacheable( url ) ) {
+            return openDirect( url, coding );
+        }
+        String key = getKey( url );
+        Entry entry = getEntry( key );
+        long now = System.currentTimeMillis();
+        if ( entry != null && now < entry.expires_ ) {
+            InputStream in = openBody( key, entry );
+            if ( in != null ) {
+                logger_.config( "HTTP cache hit for " + url );
+                return in;
+            }
+            entry = null;
+        }
+        URLConnection conn = connect( url, coding, entry );
+        if ( conn instanceof HttpURLConnection ) {
+            HttpURLConnection hconn = (HttpURLConnection) conn;
+            int code = hconn.getResponseCode();
+            if ( code == HttpURLConnection.HTTP_NOT_MODIFIED &&
+                 entry != null ) {
+                discardBody( hconn );
+                InputStream in = openBody( key, entry );
+                if ( in != null ) {
+                    logger_.config( "HTTP cache revalidated " + url );
+                    putEntry( key, entry.revalidate( hconn, now ) );
+                    return in;
+                }
+
+                /* The stored body has gone away in the mean time;
+                 * try again unconditionally. */
+                conn = connect( url, coding, null );
+                hconn = conn instanceof HttpURLConnection
+                      ? (HttpURLConnection) conn
+                      : null;
+                code = hconn == null ? -1 : hconn.getResponseCode();
+            }
+            if ( code == HttpURLConnection.HTTP_OK ) {
+                Entry template = Entry.fromResponse( hconn, now );
+                if ( template != null &&
+                     hconn.getContentLengthLong() <= getMaxBodySize() ) {
+                    return new CachingInputStream( coding
+                                                  .getInputStream( conn ),
+                                                   key, template );
+                }
+            }
+        }
+        return coding.getInputStream( conn );
+    }
+
+    /**
+     * Discards any stored response for a given URL.
+     *
+     * @param  url  URL
+     */
+    public synchronized void remove( URL url ) {
+        load();
+        String key = getKey( url );
+        Entry entry = entries_.remove( key );
+        if ( entry != null ) {
+            removeEntry( key, entry );
+        }
+    }
+
+    /**
+     * Discards all stored responses.
+     */
+    public synchronized void clear() {
+        load();
+        for ( Iterator<Map.Entry<String,Entry>> it =
+                  entries_.entrySet().iterator();
+              it.hasNext(); ) {
+            Map.Entry<String,Entry> mapEntry = it.next();
+            it.remove();
+            removeEntry( mapEntry.getKey(), mapEntry.getValue() );
+        }
+        memBodies_.clear();
+        memBytes_ = 0;
+    }
+
+    /**
+     * Returns the number of URLs for which responses are stored.
+     *
+     * @return  entry count
+     */
+    synchronized int getEntryCount() {
+        load();
+        return entries_.size();
+    }
+
+    /**
+     * Returns the total size of bodies currently stored on disk.
+     *
+     * @return  size in bytes
+     */
+    synchronized long getDiskBytes() {
+        load();
+        return diskBytes_;
+    }
+
+    /**
+     * Returns the total size of bodies currently held in memory.
+     *
+     * @return  size in bytes
+     */
+    synchronized long getMemoryBytes() {
+        return memBytes_;
+    }
+
+    /**
+     * Returns the default instance of this class.
+     * Its location is given by {@link CacheUtils#getCacheDirectory},
+     * and its size by the {@link #SIZE_PROP} system property.
+     *
+     * @return  default cache, or null if none is in use
+     */
+    public static synchronized HttpCache getInstance() {
+        if ( ! instanceInit_ ) {
+            instanceInit_ = true;
+            File dir = CacheUtils.getCacheDirectory( CACHE_NAME );
+            long maxDisk = DFLT_MAX_DISK;
+            String size = CacheUtils.getProperty( CACHE_NAME, "size" );
+            if ( size != null && size.trim().length() > 0 ) {
+                try {
+                    maxDisk = Long.parseLong( size.trim() );
+                }
+                catch ( NumberFormatException e ) {
+                    logger_.warning( "Bad value for " + SIZE_PROP
+                                   + ": " + size );
+                }
+            }
+            if ( dir != null ) {
+                instance_ = new HttpCache( dir, maxDisk, DFLT_MAX_MEM,
+                                           DFLT_MAX_MEM_ENTRY );
+            }
+        }
+        return instance_;
+    }
+
+    /**
+     * Utility method to return a stream giving the content of a URL
+     * using the default cache if there is one.
+     *
+     * @param  url  URL to read
+     * @param  coding  content coding policy for any network request
+     * @return  decoded content of URL
+     */
+    public static InputStream openCachedStream( URL url, ContentCoding coding )
+            throws IOException {
+        HttpCache cache = getInstance();
+        return cache == null ? openDirect( url, coding )
+                             : cache.openStream( url, coding );
+    }
+
+    /**
+     * Returns the largest body size that will be stored.
+     *
+     * @return  size limit in bytes
+     */
+    private long getMaxBodySize() {
+        return dir_ == null ? maxMemEntryBytes_
+                            : Math.max( maxMemEntryBytes_, maxDiskBytes_ / 4 );
+    }
+
+    /**
+     * Returns the entry for a given key, without checking whether
+     * its body is still available.
+     *
+     * @param  key  URL key
+     * @return  entry, or null
+     */
+    private synchronized Entry getEntry( String key ) {
+        load();
+        return entries_.get( key );
+    }
+
+    /**
+     * Adds or replaces an entry for a given key, whose body must
+     * already be stored.
+     *
+     * @param  key  URL key
+     * @param  entry  new entry
+     */
+    private synchronized void putEntry( String key, Entry entry ) {
+        Entry oldEntry = entries_.put( key, entry );
+        Body body = bodies_.get( entry.hash_ );
+        if ( body == null ) {
+            body = new Body( entry.size_ );
+            bodies_.put( entry.hash_, body );
+            if ( dir_ != null ) {
+                diskBytes_ += entry.size_;
+            }
+        }
+        body.nref_++;
+        if ( oldEntry != null ) {
+            releaseBody( oldEntry.hash_ );
+        }
+        if ( dir_ != null ) {
+            writeMeta( key, entry );
+        }
+        evict();
+    }
+
+    /**
+     * Returns a stream containing the stored body for an entry.
+     * If the body is unavailable, the entry is discarded.
+     *
+     * @param  key  URL key
+     * @param  entry  entry
+     * @return  body content stream, or null
+     */
+    private synchronized InputStream openBody( String key, Entry entry ) {
+        byte[] buf = memBodies_.get( entry.hash_ );
+        if ( buf != null ) {
+            touchMeta( key );
+            return new ByteArrayInputStream( buf );
+        }
+        if ( dir_ != null ) {
+            File file = getBodyFile( entry.hash_ );
+            if ( file.length() == entry.size_ ) {
+                try {
+                    InputStream in = new FileInputStream( file );
+                    touchMeta( key );
+
+                    /* Promote small bodies to the memory tier. */
+                    if ( entry.size_ <= maxMemEntryBytes_ ) {
+                        buf = new byte[ (int) entry.size_ ];
+                        try {
+                            new DataInputStream( in ).readFully( buf );
+                        }
+                        finally {
+                            in.close();
+                        }
+                        memBodies_.put( entry.hash_, buf );
+                        memBytes_ += buf.length;
+                        evict();
+                        return new ByteArrayInputStream( buf );
+                    }
+                    return in;
+                }
+                catch ( IOException e ) {
+                    logger_.info( "Can't read HTTP cache file " + file );
+                }
+            }
+        }
+        if ( entries_.get( key ) == entry ) {
+            entries_.remove( key );
+            removeEntry( key, entry );
+        }
+        return null;
+    }
+
+    /**
+     * Stores a newly read body and its entry.
+     *
+     * @param  key  URL key
+     * @param  entry  entry, including content hash and size
+     * @param  tmpFile  temporary file containing body, or null
+     * @param  buf   byte array containing body, or null
+     */
+    private synchronized void storeBody( String key, Entry entry,
+                                         File tmpFile, byte[] buf ) {
+        load();
+        if ( dir_ != null ) {
+            File bodyFile = getBodyFile( entry.hash_ );
+            if ( bodyFile.length() == entry.size_ ) {
+                tmpFile.delete();
+            }
+            else if ( ! tmpFile.renameTo( bodyFile ) ) {
+                bodyFile.delete();
+                if ( ! tmpFile.renameTo( bodyFile ) ) {
+                    logger_.warning( "Failed to write HTTP cache file "
+                                   + bodyFile );
+                    tmpFile.delete();
+                    return;
+                }
+            }
+        }
+        if ( buf != null && ! memBodies_.containsKey( entry.hash_ ) ) {
+            memBodies_.put( entry.hash_, buf );
+            memBytes_ += buf.length;
+        }
+        putEntry( key, entry );
+    }
+
+    /**
+     * Tidies up storage associated with an entry that has been removed
+     * from the entries map.
+     *
+     * @param  key  URL key
+     * @param  entry  removed entry
+     */
+    private void removeEntry( String key, Entry entry ) {
+        if ( dir_ != null ) {
+            getMetaFile( key ).delete();
+        }
+        releaseBody( entry.hash_ );
+    }
+
+    /**
+     * Decrements the reference count of a stored body,
+     * discarding it if it is no longer used.
+     *
+     * @param  hash  content hash
+     */
+    private void releaseBody( String hash ) {
+        Body body = bodies_.get( hash );
+        if ( body != null && --body.nref_ <= 0 ) {
+            bodies_.remove( hash );
+            if ( dir_ != null ) {
+                getBodyFile( hash ).delete();
+                diskBytes_ -= body.size_;
+            }
+            byte[] buf = memBodies_.remove( hash );
+            if ( buf != null ) {
+                memBytes_ -= buf.length;
+            }
+        }
+    }
+
+    /**
+     * Discards least recently used items until the size limits
+     * are respected.
+     */
+    private void evict() {
+        for ( Iterator<Map.Entry<String,Entry>> it =
+                  entries_.entrySet().iterator();
+              diskBytes_ > maxDiskBytes_ && it.hasNext(); ) {
+            Map.Entry<String,Entry> mapEntry = it.next();
+            it.remove();
+            logger_.config( "HTTP cache evicting " + mapEntry.getKey() );
+            removeEntry( mapEntry.getKey(), mapEntry.getValue() );
+        }
+        for ( Iterator<byte[]> it = memBodies_.values().iterator();
+              memBytes_ > maxMemBytes_ && it.hasNext(); ) {
+            memBytes_ -= it.next().length;
+            it.remove();
+        }
+
+        /* For a memory-only cache, entries whose bodies have gone are
+         * no use. */
+        if ( dir_ == null ) {
+            for ( Iterator<Map.Entry<String,Entry>> it =
+                      entries_.entrySet().iterator();
+                  it.hasNext(); ) {
+                Map.Entry<String,Entry> mapEntry = it.next();
+                String hash = mapEntry.getValue().hash_;
+                if ( ! memBodies_.containsKey( hash ) ) {
+                    it.remove();
+                    releaseBody( hash );
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the index of stored entries from the cache directory
+     * if that has not already been done.
+     * The least recently used order is taken from metadata file
+     * modification times.
+     */
+    private void load() {
+        if ( loaded_ ) {
+            return;
+        }
+        loaded_ = true;
+        if ( dir_ == null ) {
+            return;
+        }
+        File[] files = dir_.listFiles();
+        if ( files == null ) {
+            return;
+        }
+        List<File> metaFiles = new ArrayList<File>();
+        for ( File f : files ) {
+            String name = f.getName();
+            if ( name.endsWith( META_SUFFIX ) ) {
+                metaFiles.add( f );
+            }
+            else if ( name.endsWith( TMP_SUFFIX ) &&
+                      f.lastModified() <
+                      System.currentTimeMillis() - 24 * 60 * 60 * 1000L ) {
+                f.delete();
+            }
+        }
+        File[] metas = metaFiles.toArray( new File[ 0 ] );
+        final Map<File,Long> mtimeMap = new HashMap<File,Long>();
+        for ( File f : metas ) {
+            mtimeMap.put( f, Long.valueOf( f.lastModified() ) );
+        }
+        Arrays.sort( metas, new Comparator<File>() {
+            public int compare( File f1, File f2 ) {
+                return mtimeMap.get( f1 ).compareTo( mtimeMap.get( f2 ) );
+            }
+        } );
+        for ( File f : metas ) {
+            Properties props = new Properties();
+            try {
+                InputStream in = new FileInputStream( f );
+                try {
+                    props.load( in );
+                }
+                finally {
+                    in.close();
+                }
+                String key = props.getProperty( "url" );
+                Entry entry = Entry.fromProperties( props );
+                if ( key != null && f.equals( getMetaFile( key ) ) &&
+                     getBodyFile( entry.hash_ ).length() == entry.size_ ) {
+                    entries_.put( key, entry );
+                    Body body = bodies_.get( entry.hash_ );
+                    if ( body == null ) {
+                        body = new Body( entry.size_ );
+                        bodies_.put( entry.hash_, body );
+                        diskBytes_ += entry.size_;
+                    }
+                    body.nref_++;
+                }
+                else {
+                    f.delete();
+                }
+            }
+            catch ( Exception e ) {
+                logger_.log( Level.INFO,
+                             "Discarding unusable HTTP cache entry " + f, e );
+                f.delete();
+            }
+        }
+
+        /* Remove any bodies that are no longer referenced. */
+        for ( File f : files ) {
+            String name = f.getName();
+            if ( name.endsWith( BODY_SUFFIX ) &&
+                 ! bodies_.containsKey( name.substring( 0, name.length()
+                                                 - BODY_SUFFIX.length() ) ) ) {
+                f.delete();
+            }
+        }
+        logger_.config( "HTTP cache " + dir_ + ": " + entries_.size()
+                      + " entries, " + diskBytes_ + " bytes" );
+        evict();
+    }
+
+    /**
+     * Writes the metadata file for an entry.
+     *
+     * @param  key  URL key
+     * @param  entry  entry
+     */
+    private void writeMeta( String key, Entry entry ) {
+        File file = getMetaFile( key );
+        try {
+            Properties props = entry.toProperties();
+            props.setProperty( "url", key );
+            OutputStream out =
+                new BufferedOutputStream( new FileOutputStream( file ) );
+            try {
+                props.store( out, null );
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch ( IOException e ) {
+            logger_.log( Level.WARNING,
+                         "Failed to write HTTP cache entry " + file, e );
+            file.delete();
+        }
+    }
+
+    /**
+     * Marks the metadata file for an entry as recently used.
+     *
+     * @param  key  URL key
+     */
+    private void touchMeta( String key ) {
+        if ( dir_ != null ) {
+            getMetaFile( key ).setLastModified( System.currentTimeMillis() );
+        }
+    }
+
+    /**
+     * Returns the file used to store metadata for a given key.
+     *
+     * @param  key  URL key
+     * @return  metadata file
+     */
+    private File getMetaFile( String key ) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance( "SHA-1" )
+                                  .digest( key.getBytes( "UTF-8" ) );
+        }
+        catch ( NoSuchAlgorithmException e ) {
+            throw new AssertionError( e );
+        }
+        catch ( UnsupportedEncodingException e ) {
+            throw new AssertionError( e );
+        }
+        return new File( dir_, toHex( digest ) + META_SUFFIX );
+    }
+
+    /**
+     * Returns the file used to store a body with a given content hash.
+     *
+     * @param  hash  content hash
+     * @return  body file
+     */
+    private File getBodyFile( String hash ) {
+        return new File( dir_, hash + BODY_SUFFIX );
+    }
+
+    /**
+     * Opens a connection to a URL, optionally with request headers
+     * that ask the server to confirm that a stored entry is current.
+     *
+     * @param  url  URL
+     * @param  coding  content coding policy
+     * @param  entry  entry to revalidate, or null
+     * @return   connection following any redirects
+     */
+    private static URLConnection connect( URL url, ContentCoding coding,
+                                          Entry entry )
+            throws IOException {
+        URLConnection conn = coding.openConnection( url );
+        if ( entry != null ) {
+            if ( entry.etag_ != null ) {
+                conn.setRequestProperty( "If-None-Match", entry.etag_ );
+            }
+            if ( entry.lastModified_ != null ) {
+                conn.setRequestProperty( "If-Modified-Since",
+                                         entry.lastModified_ );
+            }
+        }
+        return URLUtils.followRedirects( conn, null );
+    }
+
+    /**
+     * Reads a URL without reference to any cache.
+     *
+     * @param  url  URL
+     * @param  coding  content coding policy
+     * @return  decoded content
+     */
+    private static InputStream openDirect( URL url, ContentCoding coding )
+            throws IOException {
+        URLConnection conn =
+            URLUtils.followRedirects( coding.openConnection( url ), null );
+        return coding.getInputStream( conn );
+    }
+
+    /**
+     * Reads and discards any response body so that the connection
+     * can be reused.
+     *
+     * @param  hconn  connection
+     */
+    private static void discardBody( HttpURLConnection hconn ) {
+        try {
+            InputStream in = hconn.getInputStream();
+            byte[] buf = new byte[ 256 ];
+            while ( in.read( buf ) >= 0 ) {
+            }
+            in.close();
+        }
+        catch ( IOException e ) {
+            hconn.disconnect();
+        }
+    }
+
+    /**
+     * Indicates whether responses from a given URL may be cached.
+     *
+     * @param  url  URL
+     * @return  true for HTTP(S) URLs with no user information
+     */
+    private static boolean isCacheable( URL url ) {
+        String proto = url.getProtocol().toLowerCase();
+        return ( "http".equals( proto ) || "https".equals( proto ) )
+            && url.getUserInfo() == null;
+    }
+
+    /**
+     * Returns the key used to identify a URL's entry in the cache.
+     *
+     * @param  url  URL
+     * @return  key string
+     */
+    private static String getKey( URL url ) {
+        String txt = url.toString();
+        int ihash = txt.indexOf( '#' );
+        return ihash >= 0 ? txt.substring( 0, ihash ) : txt;
+    }
+
+    /**
+     * Returns a hexadecimal representation of a byte array.
+     *
+     * @param  bytes  byte array
+     * @return  lower-case hex string
+     */
+    private static String toHex( byte[] bytes ) {
+        StringBuffer sbuf = new StringBuffer( bytes.length * 2 );
+        for ( byte b : bytes ) {
+            sbuf.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) )
+                .append( Character.forDigit( b & 0xf, 16 ) );
+        }
+        return sbuf.toString();
+    }
+
+    /**
+     * Stream wrapper that copies the content it reads into the cache.
+     * The copy is committed to the cache only if end of stream
+     * is reached.
+     */
+    private class CachingInputStream extends FilterInputStream {
+
+        private final String key_;
+        private final Entry template_;
+        private final MessageDigest digest_;
+        private final long maxSize_;
+        private File tmpFile_;
+        private OutputStream fileOut_;
+        private ByteArrayOutputStream memOut_;
+        private long size_;
+        private boolean active_;
+
+        /**
+         * Constructor.
+         *
+         * @param  in  network stream
+         * @param  key  URL key
+         * @param  template  entry containing response metadata
+         *                   but no content information
+         */
+        CachingInputStream( InputStream in, String key, Entry template ) {
+            super( in );
+            key_ = key;
+            template_ = template;
+            maxSize_ = getMaxBodySize();
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance( "SHA-256" );
+            }
+            catch ( NoSuchAlgorithmException e ) {
+                throw new AssertionError( e );
+            }
+            digest_ = digest;
+            memOut_ = new ByteArrayOutputStream();
+            active_ = true;
+            if ( dir_ != null ) {
+                try {
+                    if ( ! dir_.isDirectory() && ! dir_.mkdirs() ) {
+                        throw new IOException( "Can't create directory "
+                                             + dir_ );
+                    }
+                    tmpFile_ = File.createTempFile( "tmp", TMP_SUFFIX, dir_ );
+                    fileOut_ = new BufferedOutputStream(
+                                   new FileOutputStream( tmpFile_ ) );
+                }
+                catch ( IOException e ) {
+                    logger_.log( Level.WARNING,
+                                 "Can't write HTTP cache file", e );
+                    abandon();
+                }
+            }
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if ( b >= 0 ) {
+                copy( new byte[] { (byte) b }, 0, 1 );
+            }
+            else {
+                commit();
+            }
+            return b;
+        }
+
+        public int read( byte[] b, int off, int len ) throws IOException {
+            int n = super.read( b, off, len );
+            if ( n > 0 ) {
+                copy( b, off, n );
+            }
+            else if ( n < 0 ) {
+                commit();
+            }
+            return n;
+        }
+
+        public long skip( long n ) throws IOException {
+            byte[] buf = new byte[ (int) Math.min( n, 8192 ) ];
+            return Math.max( 0, read( buf, 0, buf.length ) );
+        }
+
+        public boolean markSupported() {
+            return false;
+        }
+
+        public void close() throws IOException {
+
+            /* Readers such as XML parsers may stop just short of the end
+             * of the stream.  In that case read the last few bytes,
+             * so that the content can still be stored.
+             * Don't read more than the caller has already read though,
+             * so that a stream opened just to look at its first few bytes
+             * is not pointlessly downloaded. */
+            long nleft = Math.min( DRAIN_LIMIT, size_ );
+            if ( active_ && nleft > 0 ) {
+                byte[] buf = new byte[ 4096 ];
+                try {
+
+                    /* Ask for one more byte than the limit, so that
+                     * end of stream can be detected just at the limit. */
+                    while ( active_ && nleft >= 0 ) {
+                        int n = read( buf, 0,
+                                      (int) Math.min( nleft + 1,
+                                                      buf.length ) );
+                        if ( n < 0 ) {
+                            break;
+                        }
+                        nleft -= n;
+                    }
+                }
+                catch ( IOException e ) {
+                    abandon();
+                }
+            }
+            abandon();
+            super.close();
+        }
+
+        /**
+         * Records bytes that have been read.
+         *
+         * @param  b  buffer
+         * @param  off  offset of data
+         * @param  len  length of data
+         */
+        private void copy( byte[] b, int off, int len ) {
+            if ( active_ ) {
+                size_ += len;
+                if ( size_ > maxSize_ ) {
+                    abandon();
+                    return;
+                }
+                digest_.update( b, off, len );
+                if ( memOut_ != null ) {
+                    if ( size_ <= maxMemEntryBytes_ ) {
+                        memOut_.write( b, off, len );
+                    }
+                    else {
+                        memOut_ = null;
+                    }
+                }
+                if ( fileOut_ != null ) {
+                    try {
+                        fileOut_.write( b, off, len );
+                    }
+                    catch ( IOException e ) {
+                        logger_.log( Level.WARNING,
+                                     "Error writing HTTP cache file", e );
+                        abandon();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Stores the copied content in the cache.
+         */
+        private void commit() {
+            if ( ! active_ ) {
+                return;
+            }
+            active_ = false;
+            try {
+                if ( fileOut_ != null ) {
+                    fileOut_.close();
+                    fileOut_ = null;
+                }
+            }
+            catch ( IOException e ) {
+                logger_.log( Level.WARNING,
+                             "Error writing HTTP cache file", e );
+                abandon();
+                return;
+            }
+            if ( dir_ == null && memOut_ == null ) {
+                return;
+            }
+            Entry entry =
+                template_.withContent( toHex( digest_.digest() ), size_ );
+            byte[] buf = memOut_ == null ? null : memOut_.toByteArray();
+            logger_.config( "HTTP cache storing " + size_ + " bytes for "
+                          + key_ );
+            storeBody( key_, entry, tmpFile_, buf );
+            tmpFile_ = null;
+        }
+
+        /**
+         * Gives up on storing the copied content.
+         */
+        private void abandon() {
+            active_ = false;
+            memOut_ = null;
+            if ( fileOut_ != null ) {
+                try {
+                    fileOut_.close();
+                }
+                catch ( IOException e ) {
+                }
+                fileOut_ = null;
+            }
+            if ( tmpFile_ != null ) {
+                tmpFile_.delete();
+                tmpFile_ = null;
+            }
+        }
+    }
+
+    /**
+     * Reference-counted record of a stored body.
+     */
+    private static class Body {
+        final long size_;
+        int nref_;
+
+        /**
+         * Constructor.
+         *
+         * @param  size  body size in bytes
+         */
+        Body( long size ) {
+            size_ = size;
+        }
+    }
+
+    /**
+     * Metadata for a stored response.
+     */
+    private static class Entry {
+        final String hash_;
+        final long size_;
+        final String etag_;
+        final String lastModified_;
+        final long expires_;
+
+        /**
+         * Constructor.
+         *
+         * @param  hash  content hash, or null
+         * @param  size  content size in bytes
+         * @param  etag  ETag header value, or null
+         * @param  lastModified  Last-Modified header value, or null
+         * @param  expires  epoch time in milliseconds at which the
+         *                  response becomes stale
+         */
+        Entry( String hash, long size, String etag, String lastModified,
+               long expires ) {
+            hash_ = hash;
+            size_ = size;
+            etag_ = etag;
+            lastModified_ = lastModified;
+            expires_ = expires;
+        }
+
+        /**
+         * Returns a copy of this entry with content information added.
+         *
+         * @param  hash  content hash
+         * @param  size  content size
+         * @return  new entry
+         */
+        Entry withContent( String hash, long size ) {
+            return new Entry( hash, size, etag_, lastModified_, expires_ );
+        }
+
+        /**
+         * Returns a copy of this entry updated by the headers of
+         * a 304 Not Modified response.
+         *
+         * @param  hconn  connection with 304 response
+         * @param  now  time of request
+         * @return  new entry
+         */
+        Entry revalidate( HttpURLConnection hconn, long now ) {
+            String etag = hconn.getHeaderField( "ETag" );
+            String lastMod = hconn.getHeaderField( "Last-Modified" );
+            long expires = getExpiry( hconn, now );
+            return new Entry( hash_, size_,
+                              etag == null ? etag_ : etag,
+                              lastMod == null ? lastModified_ : lastMod,
+                              Math.max( expires, now ) );
+        }
+
+        /**
+         * Returns a template entry with no content information
+         * for a 200 OK response, if it is eligible for storage.
+         *
+         * @param  hconn  connection with 200 response
+         * @param  now  time of request
+         * @return  template entry, or null if the response
+         *          should not be stored
+         */
+        static Entry fromResponse( HttpURLConnection hconn, long now ) {
+            long expires = getExpiry( hconn, now );
+            String etag = hconn.getHeaderField( "ETag" );
+            String lastMod = hconn.getHeaderField( "Last-Modified" );
+            String vary = hconn.getHeaderField( "Vary" );
+            boolean isVary =
+                vary != null &&
+                ! vary.trim().equalsIgnoreCase( "Accept-Encoding" );
+            if ( expires < 0 || isVary ||
+                 ( expires <= now && etag == null && lastMod == null ) ) {
+                return null;
+            }
+            return new Entry( null, -1, etag, lastMod, expires );
+        }
+
+        /**
+         * Reconstructs an entry from its serialized form.
+         *
+         * @param  props  properties written by toProperties
+         * @return  entry
+         */
+        static Entry fromProperties( Properties props ) {
+            String hash = props.getProperty( "hash" );
+            if ( hash == null ) {
+                throw new IllegalArgumentException( "No hash" );
+            }
+            return new Entry( hash,
+                              Long.parseLong( props.getProperty( "size" ) ),
+                              props.getProperty( "etag" ),
+                              props.getProperty( "lastModified" ),
+                              Long.parseLong( props
+                                             .getProperty( "expires" ) ) );
+        }
+
+        /**
+         * Returns a serialized form of this entry.
+         *
+         * @return  properties
+         */
+        Properties toProperties() {
+            Properties props = new Properties();
+            props.setProperty( "hash", hash_ );
+            props.setProperty( "size", Long.toString( size_ ) );
+            props.setProperty( "expires", Long.toString( expires_ ) );
+            if ( etag_ != null ) {
+                props.setProperty( "etag", etag_ );
+            }
+            if ( lastModified_ != null ) {
+                props.setProperty( "lastModified", lastModified_ );
+            }
+            return props;
+        }
+
+        /**
+         * Works out when a response becomes stale,
+         * from its Cache-Control or Expires headers.
+         *
+         * @param  conn  connection
+         * @param  now   time of request
+         * @return  expiry epoch time in milliseconds,
+         *          or -1 if the response must not be stored
+         */
+        private static long getExpiry( URLConnection conn, long now ) {
+            String cc = conn.getHeaderField( "Cache-Control" );
+            long maxAge = -1;
+            if ( cc != null ) {
+                for ( String token : cc.toLowerCase().split( "," ) ) {
+                    token = token.trim();
+                    if ( token.equals( "no-store" ) ) {
+                        return -1;
+                    }
+                    else if ( token.equals( "no-cache" ) ) {
+                        return now;
+                    }
+                    else if ( token.startsWith( "max-age=" ) ) {
+                        try {
+                            maxAge = Long.parseLong( token.substring( 8 )
+                                                    .replace( "\"", "" ) );
+                        }
+                        catch ( NumberFormatException e ) {
+                            return now;
+                        }
+                    }
+                }
+            }
+            String pragma = conn.getHeaderField( "Pragma" );
+            if ( cc == null && pragma != null &&
+                 pragma.toLowerCase().contains( "no-cache" ) ) {
+                return now;
+            }
+            if ( maxAge >= 0 ) {
+                long age = Math.max( 0, conn.getHeaderFieldInt( "Age", 0 ) );
+                return now + 1000 * ( maxAge - age );
+            }
+            if ( conn.getHeaderField( "Expires" ) != null ) {
+                long expires = conn.getHeaderFieldDate( "Expires", 0 );
+                long date = conn.getHeaderFieldDate( "Date", now );
+                return expires > date ? now + ( expires - date ) : now;
+            }
+            return now;
+        }
+    }
+}
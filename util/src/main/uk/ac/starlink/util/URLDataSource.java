@@ -60,11 +60,22 @@ public class URLDataSource extends DataSource {
 
     protected InputStream getRawInputStream() throws IOException {
 
+        /* Use the HTTP response cache if there is one.
+         * It does not handle URLs with authentication. */
+        String userInfo = url_.getUserInfo();
+        HttpCache cache = userInfo == null ? HttpCache.getInstance() : null;
+        if ( cache != null ) {
+            return new FilterInputStream( cache.openStream( url_, coding_ ) ) {
+                public boolean markSupported() {
+                    return false;
+                }
+            };
+        }
+
         //  Contact the resource.
         URLConnection connection = url_.openConnection();
 
         /* Handle basic authentication if present. */
-        String userInfo = url_.getUserInfo();
         setBasicAuth( connection, userInfo );
 
         /* Use content-coding to control HTTP-level compression. */
@@ -0,0 +1,288 @@
+package uk.ac.starlink.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+
+public class HttpCacheTest extends TestCase {
+
+    private TestHttpServer server_;
+    private File dir_;
+    private final Map<String,Resource> resources_ =
+        new HashMap<String,Resource>();
+
+    public HttpCacheTest( String name ) {
+        super( name );
+    }
+
+    public void setUp() throws IOException {
+        server_ = new TestHttpServer();
+        server_.addHandler( "/", new HttpHandler() {
+            public void handle( HttpExchange exch ) throws IOException {
+                Resource res;
+                synchronized ( resources_ ) {
+                    res = resources_.get( exch.getRequestURI().getPath() );
+                }
+                if ( res == null ) {
+                    exch.sendResponseHeaders( 404, -1 );
+                    exch.close();
+                    return;
+                }
+                res.nreq_++;
+                if ( res.cacheControl_ != null ) {
+                    exch.getResponseHeaders()
+                        .set( "Cache-Control", res.cacheControl_ );
+                }
+                if ( res.etag_ != null ) {
+                    exch.getResponseHeaders().set( "ETag", res.etag_ );
+                    String match = exch.getRequestHeaders()
+                                       .getFirst( "If-None-Match" );
+                    if ( res.etag_.equals( match ) ) {
+                        res.n304_++;
+                        exch.sendResponseHeaders( 304, -1 );
+                        exch.close();
+                        return;
+                    }
+                }
+                exch.sendResponseHeaders( 200, res.body_.length );
+                OutputStream out = exch.getResponseBody();
+                out.write( res.body_ );
+                out.close();
+            }
+        } );
+        server_.start();
+        dir_ = Files.createTempDirectory( "httpcache" ).toFile();
+    }
+
+    public void tearDown() {
+        server_.stop();
+        File[] files = dir_.listFiles();
+        if ( files != null ) {
+            for ( File f : files ) {
+                f.delete();
+            }
+        }
+        dir_.delete();
+    }
+
+    public void testFreshness() throws IOException {
+        HttpCache cache = new HttpCache( dir_, 1 << 20, 1 << 16, 1 << 12 );
+        Resource fresh = addResource( "/fresh", 1000, "max-age=600", null );
+        Resource nostore = addResource( "/nostore", 1000, "no-store", "x" );
+        Resource plain = addResource( "/plain", 1000, null, null );
+        for ( int i = 0; i < 3; i++ ) {
+            assertEquals( fresh, read( cache, "/fresh" ) );
+            assertEquals( nostore, read( cache, "/nostore" ) );
+            assertEquals( plain, read( cache, "/plain" ) );
+        }
+        assertEquals( 1, fresh.nreq_ );
+        assertEquals( 3, nostore.nreq_ );
+        assertEquals( 3, plain.nreq_ );
+        assertEquals( 1, cache.getEntryCount() );
+
+        /* Entries persist between cache instances. */
+        HttpCache cache2 = new HttpCache( dir_, 1 << 20, 1 << 16, 1 << 12 );
+        assertEquals( fresh, read( cache2, "/fresh" ) );
+        assertEquals( 1, fresh.nreq_ );
+        assertEquals( 1000, cache2.getDiskBytes() );
+
+        cache2.remove( server_.getUrl( "/fresh" ) );
+        assertEquals( 0, cache2.getEntryCount() );
+        assertEquals( fresh, read( cache2, "/fresh" ) );
+        assertEquals( 2, fresh.nreq_ );
+    }
+
+    public void testRevalidation() throws IOException {
+        HttpCache cache = new HttpCache( dir_, 1 << 20, 1 << 16, 1 << 12 );
+        Resource res = addResource( "/etag", 5000, "no-cache", "\"v1\"" );
+        for ( int i = 0; i < 3; i++ ) {
+            assertEquals( res, read( cache, "/etag" ) );
+        }
+        assertEquals( 3, res.nreq_ );
+        assertEquals( 2, res.n304_ );
+
+        /* Changed content is picked up. */
+        Resource res2 = addResource( "/etag", 6000, "no-cache", "\"v2\"" );
+        assertEquals( res2, read( cache, "/etag" ) );
+        assertEquals( res2, read( cache, "/etag" ) );
+        assertEquals( 1, res2.n304_ );
+        assertEquals( 1, cache.getEntryCount() );
+        assertEquals( 6000, cache.getDiskBytes() );
+
+        /* A partly read response is not stored. */
+        Resource res3 = addResource( "/partial", 200000, "max-age=600", null );
+        InputStream in =
+            cache.openStream( server_.getUrl( "/partial" ),
+                              ContentCoding.NONE );
+        in.read( new byte[ 100 ] );
+        in.close();
+        assertEquals( 1, cache.getEntryCount() );
+        assertEquals( res3, read( cache, "/partial" ) );
+        assertEquals( 2, cache.getEntryCount() );
+        assertEquals( 2, res3.nreq_ );
+        assertEquals( res3, read( cache, "/partial" ) );
+        assertEquals( 2, res3.nreq_ );
+    }
+
+    public void testDrain() throws IOException {
+        HttpCache cache = new HttpCache( dir_, 1 << 20, 1 << 16, 1 << 12 );
+        addResource( "/d", 2000, "max-age=600", null );
+        URL url = server_.getUrl( "/d" );
+
+        /* A stream closed after reading only a few bytes is not drained. */
+        InputStream in1 = cache.openStream( url, ContentCoding.NONE );
+        assertEquals( 10, in1.read( new byte[ 10 ] ) );
+        in1.close();
+        assertEquals( 0, cache.getEntryCount() );
+
+        /* A stream closed near the end is drained, and stored. */
+        InputStream in2 = cache.openStream( url, ContentCoding.NONE );
+        byte[] buf = new byte[ 1500 ];
+        for ( int nb = 0; nb < buf.length; ) {
+            nb += in2.read( buf, nb, buf.length - nb );
+        }
+        in2.close();
+        assertEquals( 1, cache.getEntryCount() );
+    }
+
+    public void testCacheDirectory() {
+        String dirProp = CacheUtils.DIR_PROP;
+        String dirName = dir_.toString();
+        assertEquals( "star.cache.http.size", HttpCache.SIZE_PROP );
+        try {
+            System.setProperty( dirProp, dirName );
+            assertEquals( new File( dir_, "http" ),
+                          CacheUtils.getCacheDirectory( "http" ) );
+            System.setProperty( dirProp, "none" );
+            assertNull( CacheUtils.getCacheDirectory( "http" ) );
+            System.setProperty( dirProp, "" );
+            assertNull( CacheUtils.getCacheDirectory( "http" ) );
+        }
+        finally {
+            System.clearProperty( dirProp );
+        }
+        assertTrue( CacheUtils.getCacheDirectory( "meta" ).getPath()
+                   .endsWith( "meta" ) );
+    }
+
+    public void testEviction() throws IOException {
+        HttpCache cache = new HttpCache( dir_, 25000, 1 << 16, 1 << 12 );
+        for ( int i = 0; i < 5; i++ ) {
+            addResource( "/r" + i, 6000 + i, "max-age=600", null );
+        }
+        read( cache, "/r0" );
+        read( cache, "/r1" );
+        read( cache, "/r2" );
+        read( cache, "/r3" );
+        read( cache, "/r0" );
+        read( cache, "/r4" );
+        assertEquals( 4, cache.getEntryCount() );
+        assertTrue( cache.getDiskBytes() <= 25000 );
+        Resource r0 = resources_.get( "/r0" );
+        Resource r1 = resources_.get( "/r1" );
+        assertEquals( r0, read( cache, "/r0" ) );
+        assertEquals( 1, r0.nreq_ );
+        assertEquals( r1, read( cache, "/r1" ) );
+        assertEquals( 2, r1.nreq_ );
+        assertEquals( 4, countFiles( ".body" ) );
+
+        /* Identical content from different URLs is stored once. */
+        cache.clear();
+        assertEquals( 0, countFiles( ".body" ) );
+        Resource a = addResource( "/a", 3000, "max-age=600", null );
+        Resource b = addResource( "/b", 3000, "max-age=600", null );
+        System.arraycopy( a.body_, 0, b.body_, 0, 3000 );
+        read( cache, "/a" );
+        read( cache, "/b" );
+        assertEquals( 2, cache.getEntryCount() );
+        assertEquals( 1, countFiles( ".body" ) );
+        assertEquals( 3000, cache.getDiskBytes() );
+        cache.remove( server_.getUrl( "/a" ) );
+        assertEquals( b, read( cache, "/b" ) );
+        assertEquals( 1, b.nreq_ );
+    }
+
+    public void testMemory() throws IOException {
+        HttpCache cache = new HttpCache( null, 0, 3000, 1000 );
+        Resource small1 = addResource( "/s1", 900, "max-age=600", null );
+        Resource small2 = addResource( "/s2", 900, "max-age=600", null );
+        Resource big = addResource( "/big", 2000, "max-age=600", null );
+        for ( int i = 0; i < 2; i++ ) {
+            assertEquals( small1, read( cache, "/s1" ) );
+            assertEquals( small2, read( cache, "/s2" ) );
+            assertEquals( big, read( cache, "/big" ) );
+        }
+        assertEquals( 1, small1.nreq_ );
+        assertEquals( 1, small2.nreq_ );
+        assertEquals( 2, big.nreq_ );
+        assertEquals( 1800, cache.getMemoryBytes() );
+        for ( int i = 3; i < 6; i++ ) {
+            addResource( "/s" + i, 900, "max-age=600", null );
+            read( cache, "/s" + i );
+        }
+        assertTrue( cache.getMemoryBytes() <= 3000 );
+        assertEquals( 3, cache.getEntryCount() );
+        assertEquals( 0, cache.getDiskBytes() );
+    }
+
+    private Resource addResource( String path, int size, String cacheControl,
+                                  String etag ) {
+        byte[] body = new byte[ size ];
+        for ( int i = 0; i < size; i++ ) {
+            body[ i ] = (byte) ( i * 7 + path.hashCode() + size );
+        }
+        Resource res = new Resource( body, cacheControl, etag );
+        synchronized ( resources_ ) {
+            resources_.put( path, res );
+        }
+        return res;
+    }
+
+    private Resource read( HttpCache cache, String path ) throws IOException {
+        InputStream in =
+            cache.openStream( server_.getUrl( path ), ContentCoding.GZIP );
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte[] buf = new byte[ 1000 ];
+        for ( int n; ( n = in.read( buf ) ) >= 0; ) {
+            bout.write( buf, 0, n );
+        }
+        in.close();
+        Resource res = resources_.get( path );
+        return Arrays.equals( bout.toByteArray(), res.body_ )
+             ? res
+             : null;
+    }
+
+    private int countFiles( String suffix ) {
+        int n = 0;
+        for ( File f : dir_.listFiles() ) {
+            if ( f.getName().endsWith( suffix ) ) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static class Resource {
+        final byte[] body_;
+        final String cacheControl_;
+        final String etag_;
+        int nreq_;
+        int n304_;
+        Resource( byte[] body, String cacheControl, String etag ) {
+            body_ = body;
+            cacheControl_ = cacheControl;
+            etag_ = etag;
+        }
+    }
+}
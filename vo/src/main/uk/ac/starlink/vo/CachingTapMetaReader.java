@@ -0,0 +1,180 @@
+package uk.ac.starlink.vo;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * TapMetaReader implementation that wraps another one and keeps
+ * the results of its top-level {@link #readSchemas} call in a
+ * persistent {@link MetadataCache}.
+ * Other read methods, which are generally invoked lazily for
+ * individual schemas or tables, are delegated directly to the base reader.
+ *
+ * <p>Where the base reader takes its metadata from a VOSI tables
+ * endpoint, that endpoint is used to revalidate stale cache entries.
+ *
+ * <p>Names fixed up by the base reader's {@link MetaNameFixer}
+ * are cached along with the schemas, so that the lazily invoked
+ * read methods can use the original names even when the schemas
+ * come from the cache.  This only works for the reader implementations
+ * known to this class; see {@link #isCacheable}.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class CachingTapMetaReader implements TapMetaReader {
+
+    private final TapMetaReader base_;
+    private final MetadataCache cache_;
+    private final String key_;
+    private final URL validationUrl_;
+
+    /**
+     * Constructor.
+     *
+     * @param  base  reader supplying the actual metadata
+     * @param  cache   persistent cache
+     */
+    public CachingTapMetaReader( TapMetaReader base, MetadataCache cache ) {
+        base_ = base;
+        cache_ = cache;
+        key_ = "tapmeta " + base.getMeans() + " " + base.getSource();
+        validationUrl_ = getValidationUrl( base );
+    }
+
+    /**
+     * Returns the reader to which this reader delegates.
+     *
+     * @return  base reader
+     */
+    public TapMetaReader getBaseReader() {
+        return base_;
+    }
+
+    public SchemaMeta[] readSchemas() throws IOException {
+        final MetaNameFixer fixer = getNameFixer( base_ );
+        CachedSchemas cached =
+            cache_.getValue( key_, CachedSchemas.class, validationUrl_,
+                             new MetadataCache.Fetcher<CachedSchemas>() {
+            public CachedSchemas fetch() throws IOException {
+                SchemaMeta[] schemas = base_.readSchemas();
+                return new CachedSchemas( schemas,
+                                          fixer == null
+                                              ? null
+                                              : fixer.getFixedNames() );
+            }
+        } );
+        if ( fixer != null && cached.fixedNames_ != null ) {
+            fixer.addFixedNames( cached.fixedNames_ );
+        }
+        return cached.schemas_;
+    }
+
+    public TableMeta[] readTables( SchemaMeta schema ) throws IOException {
+        return base_.readTables( schema );
+    }
+
+    public ColumnMeta[] readColumns( TableMeta table ) throws IOException {
+        return base_.readColumns( table );
+    }
+
+    public ForeignMeta[] readForeignKeys( TableMeta table )
+            throws IOException {
+        return base_.readForeignKeys( table );
+    }
+
+    public String getSource() {
+        return base_.getSource();
+    }
+
+    public String getMeans() {
+        return base_.getMeans();
+    }
+
+    /**
+     * Indicates whether a given reader can safely be wrapped by an
+     * instance of this class.
+     * This is the case only for reader implementations whose
+     * name-fixing state is understood.
+     *
+     * @param  rdr  metadata reader
+     * @return  true iff rdr may be used as the base of a caching reader
+     */
+    public static boolean isCacheable( TapMetaReader rdr ) {
+        return rdr instanceof TableSetTapMetaReader
+            || rdr instanceof Vosi11TapMetaReader
+            || rdr instanceof VizierTapMetaReader
+            || rdr instanceof TapSchemaTapMetaReader;
+    }
+
+    /**
+     * Returns the name fixer used by a given reader.
+     *
+     * @param  rdr  metadata reader
+     * @return  name fixer, or null if none is known
+     */
+    private static MetaNameFixer getNameFixer( TapMetaReader rdr ) {
+        if ( rdr instanceof TableSetTapMetaReader ) {
+            return ((TableSetTapMetaReader) rdr).getNameFixer();
+        }
+        else if ( rdr instanceof Vosi11TapMetaReader ) {
+            return ((Vosi11TapMetaReader) rdr).getNameFixer();
+        }
+        else if ( rdr instanceof VizierTapMetaReader ) {
+            return ((VizierTapMetaReader) rdr).getNameFixer();
+        }
+        else if ( rdr instanceof TapSchemaTapMetaReader ) {
+            return ((TapSchemaTapMetaReader) rdr).getNameFixer();
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a URL that can be used to revalidate cached metadata
+     * from a given reader.
+     *
+     * @param  rdr  metadata reader
+     * @return  validation URL, or null if none is known
+     */
+    private static URL getValidationUrl( TapMetaReader rdr ) {
+        if ( rdr instanceof TableSetTapMetaReader ||
+             rdr instanceof Vosi11TapMetaReader ||
+             rdr instanceof VizierTapMetaReader ) {
+            try {
+                return new URL( rdr.getSource() );
+            }
+            catch ( MalformedURLException e ) {
+                return null;
+            }
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Value stored in the cache, containing schemas and
+     * the name fixes that were made when acquiring them.
+     */
+    private static class CachedSchemas implements Serializable {
+        final SchemaMeta[] schemas_;
+        final MetaNameFixer.FixedNames fixedNames_;
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor.
+         *
+         * @param  schemas  schema metadata
+         * @param  fixedNames  names fixed by the reader, or null
+         */
+        CachedSchemas( SchemaMeta[] schemas,
+                       MetaNameFixer.FixedNames fixedNames ) {
+            schemas_ = schemas;
+            fixedNames_ = fixedNames;
+        }
+    }
+}
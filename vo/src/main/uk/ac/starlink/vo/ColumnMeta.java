@@ -1,5 +1,6 @@
 package uk.ac.starlink.vo;
 
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -14,7 +15,7 @@ import java.util.Map;
  * @see  <a href="http://www.ivoa.net/Documents/TAP/"
  *          >IVOA TAP Recommendation</a>
  */
-public class ColumnMeta {
+public class ColumnMeta implements Serializable {
 
     String name_;
     String description_;
@@ -26,6 +27,7 @@ public class ColumnMeta {
     String xtype_;
     String[] flags_;
     Map<String,Object> extras_;
+    private static final long serialVersionUID = 1L;
 
     /**
      * Constructor.
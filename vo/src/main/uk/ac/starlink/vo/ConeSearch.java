@@ -1,6 +1,7 @@
 package uk.ac.starlink.vo;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.logging.Logger;
@@ -132,15 +133,21 @@ public class ConeSearch {
         /* Submit the CGI query and create a DOM from the resulting stream. */
         StoragePolicy storage = tfact.getStoragePolicy();
         VOElement topEl;
+        InputStream in = coding_.openStream( qurl );
         try {
             topEl = new VOElementFactory( storage )
-                   .makeVOElement( coding_.openStream( qurl ),
-                                   qurl.toString() );
+                   .makeVOElement( in, qurl.toString() );
         }
         catch ( SAXException e ) {
             throw (IOException) new IOException( e.getMessage() )
                                .initCause( e );
         }
+        finally {
+
+            /* Closing the stream after a complete read allows the
+             * connection to be reused for subsequent queries. */
+            in.close();
+        }
 
         /* If there is a TABLE in the resulting DOM, return it. */
         NodeList tableEls = topEl.getElementsByTagName( "TABLE" );
@@ -1,15 +1,15 @@
 package uk.ac.starlink.vo;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.logging.Logger;
 import org.xml.sax.InputSource;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.StarTableFactory;
 import uk.ac.starlink.util.CgiQuery;
 import uk.ac.starlink.util.ContentCoding;
-import uk.ac.starlink.util.URLUtils;
+import uk.ac.starlink.util.HttpCache;
 import uk.ac.starlink.votable.VOElementFactory;
 
 /**
@@ -143,10 +143,18 @@ public class DalQuery {
         logger_.info( "Submitting query: " + qurl );
         VOElementFactory vofact =
             new VOElementFactory( tfact.getStoragePolicy() );
-        URLConnection conn = coding.openConnection( qurl );
-        conn = URLUtils.followRedirects( conn, null );
-        InputSource inSrc = new InputSource( coding.getInputStream( conn ) );
+        InputStream in = HttpCache.openCachedStream( qurl, coding );
+        InputSource inSrc = new InputSource( in );
         inSrc.setSystemId( qurl.toString() );
-        return DalResultXMLFilter.getDalResultTable( vofact, inSrc );
+
+        /* Closing the stream after a complete read allows the
+         * connection to be reused for subsequent queries,
+         * and the response to be cached where permitted. */
+        try {
+            return DalResultXMLFilter.getDalResultTable( vofact, inSrc );
+        }
+        finally {
+            in.close();
+        }
     }
 }
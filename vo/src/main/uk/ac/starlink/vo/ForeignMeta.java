@@ -1,5 +1,6 @@
 package uk.ac.starlink.vo;
 
+import java.io.Serializable;
 import java.util.Arrays;
 
 /**
@@ -10,13 +11,14 @@ import java.util.Arrays;
  * @see  <a href="http://www.ivoa.net/Documents/VODataService/"
  *          >IVOA VODataService Recommendation</a>
  */
-public class ForeignMeta {
+public class ForeignMeta implements Serializable {
 
     String targetTable_;
     String description_;
     String utype_;
     String keyId_;
     Link[] links_;
+    private static final long serialVersionUID = 1L;
 
     /**
      * Constructor.
@@ -90,10 +92,11 @@ public class ForeignMeta {
      * Represents a linkage from a column in the source table to a column
      * in the target table.
      */
-    public static class Link {
+    public static class Link implements Serializable {
 
         String from_;
         String target_;
+        private static final long serialVersionUID = 1L;
 
         protected Link() {
         }
@@ -1,7 +1,9 @@
 package uk.ac.starlink.vo;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -57,8 +59,8 @@ public abstract class MetaNameFixer {
      * Constructor.
      */
     protected MetaNameFixer() {
-        origTableNames_ = new HashMap<String,String>();
-        origColumnNames_ = new HashMap<String,String>();
+        origTableNames_ = new ConcurrentHashMap<String,String>();
+        origColumnNames_ = new ConcurrentHashMap<String,String>();
     }
 
     /**
@@ -156,6 +158,30 @@ public abstract class MetaNameFixer {
         return origName == null ? tname : origName;
     }
 
+    /**
+     * Returns a record of the names that have been fixed to date
+     * by this object.
+     *
+     * @return  serializable record of fixed names
+     */
+    FixedNames getFixedNames() {
+        return new FixedNames( origTableNames_, origColumnNames_ );
+    }
+
+    /**
+     * Adds a record of fixed names to the ones known by this object.
+     * This can be used so that {@link #getOriginalTableName} and
+     * {@link #getOriginalColumnName} work for metadata items which were
+     * fixed earlier, for instance by a different instance whose
+     * results have been cached.
+     *
+     * @param  names  record of fixed names
+     */
+    void addFixedNames( FixedNames names ) {
+        origTableNames_.putAll( names.tableNames_ );
+        origColumnNames_.putAll( names.columnNames_ );
+    }
+
     /**
      * Ensures that the given table and its contents have acceptable names.
      *
@@ -284,6 +310,27 @@ public abstract class MetaNameFixer {
         };
     }
 
+    /**
+     * Serializable record of the original names of fixed tables and columns.
+     */
+    static class FixedNames implements Serializable {
+        private final Map<String,String> tableNames_;
+        private final Map<String,String> columnNames_;
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor.
+         *
+         * @param  tableNames  map from fixed to original table name
+         * @param  columnNames  map from fixed to original column name
+         */
+        FixedNames( Map<String,String> tableNames,
+                    Map<String,String> columnNames ) {
+            tableNames_ = new HashMap<String,String>( tableNames );
+            columnNames_ = new HashMap<String,String>( columnNames );
+        }
+    }
+
     /**
      * Aggregates two integers indicating how many fixes a fixer has made.
      */
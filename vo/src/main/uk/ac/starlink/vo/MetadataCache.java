@@ -0,0 +1,530 @@
+package uk.ac.starlink.vo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.starlink.util.CacheUtils;
+
+/**
+ * Persistent on-disk cache for service metadata,
+ * such as TAP table metadata or the results of registry queries,
+ * which is expensive to acquire but changes only rarely.
+ *
+ * <p>Values are stored using Java serialization, keyed by a string
+ * which should identify the service and request.
+ * A cached value younger than a given maximum age is used
+ * without further checks.
+ * An older value may be revalidated against the HTTP
+ * <code>ETag</code> or <code>Last-Modified</code> headers of
+ * a supplied URL, in which case a cheap HEAD request is all that's
+ * required to confirm that it is still current.
+ * If no such revalidation is possible, a stale value
+ * is used anyway, as long as it is not too old,
+ * and a fresh copy is acquired in a background thread
+ * for use next time.
+ *
+ * <p>Failures to read or write the cache are logged but otherwise ignored,
+ * so in the worst case the cache just has no effect.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class MetadataCache {
+
+    private final File dir_;
+    private final long maxAgeMillis_;
+    private final long maxStaleMillis_;
+    private final ExecutorService refreshExecutor_;
+    private final Set<String> refreshingKeys_;
+    private volatile long expiryTime_;
+    private static MetadataCache instance_;
+    private static boolean instanceInit_;
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.vo" );
+
+    /** Name of the default cache, used for its directory. */
+    public static final String CACHE_NAME = "meta";
+
+    /** Default maximum age in milliseconds for use without checking. */
+    public static final long DFLT_MAX_AGE = 60 * 60 * 1000L;
+
+    /** Default maximum age in milliseconds for use of stale values. */
+    public static final long DFLT_MAX_STALE = 7 * 24 * 60 * 60 * 1000L;
+
+    /**
+     * Constructor.
+     *
+     * @param  dir  directory in which to store cached values;
+     *              will be created if necessary
+     * @param  maxAgeMillis  age in milliseconds below which cached values
+     *                       will be used without checking
+     * @param  maxStaleMillis  age in milliseconds above which cached values
+     *                         will not be used unless revalidated
+     */
+    public MetadataCache( File dir, long maxAgeMillis, long maxStaleMillis ) {
+        dir_ = dir;
+        maxAgeMillis_ = maxAgeMillis;
+        maxStaleMillis_ = maxStaleMillis;
+        refreshingKeys_ = new HashSet<String>();
+        expiryTime_ = Long.MIN_VALUE;
+        refreshExecutor_ =
+            Executors.newSingleThreadExecutor( new ThreadFactory() {
+                public Thread newThread( Runnable r ) {
+                    Thread th = new Thread( r, "Metadata Cache Refresh" );
+                    th.setDaemon( true );
+                    return th;
+                }
+            } );
+    }
+
+    /**
+     * Returns the directory in which this cache stores its values.
+     *
+     * @return  cache directory
+     */
+    public File getDirectory() {
+        return dir_;
+    }
+
+    /**
+     * Returns a value, from the cache if possible,
+     * and otherwise by acquiring it and storing it in the cache.
+     *
+     * <p>Note that a value fetched by the supplied fetcher is serialized
+     * to the cache before this method returns, so the caller is free
+     * to modify the returned object.
+     *
+     * @param  key   unique key identifying the value
+     * @param  clazz  required value type
+     * @param  validationUrl  URL whose HTTP validation headers indicate
+     *                        whether the value has changed,
+     *                        or null if none is available
+     * @param  fetcher   acquires the value if a cached one cannot be used
+     * @return  value
+     */
+    public <T> T getValue( String key, Class<T> clazz, URL validationUrl,
+                           Fetcher<T> fetcher )
+            throws IOException {
+        Entry entry = readEntry( key );
+        if ( entry != null && clazz.isInstance( entry.value_ ) ) {
+            T value = clazz.cast( entry.value_ );
+            long age = System.currentTimeMillis() - entry.time_;
+            boolean expired = entry.time_ <= expiryTime_;
+            if ( age >= 0 && age < maxAgeMillis_ && ! expired ) {
+                logger_.info( "Using cached metadata for " + key );
+                return value;
+            }
+            else if ( validationUrl != null && entry.hasValidators() ) {
+                Entry vEntry = readValidators( validationUrl, entry );
+                if ( vEntry != null && vEntry.matches( entry ) ) {
+                    logger_.info( "Revalidated cached metadata for " + key );
+                    writeEntry( key, new Entry( vEntry.etag_,
+                                                vEntry.lastModified_,
+                                                value ) );
+                    return value;
+                }
+            }
+            else if ( age >= 0 && age < maxStaleMillis_ && ! expired ) {
+                logger_.info( "Using stale cached metadata for " + key
+                            + "; refresh in background" );
+                scheduleRefresh( key, validationUrl, fetcher );
+                return value;
+            }
+        }
+        return fetchValue( key, validationUrl, fetcher );
+    }
+
+    /**
+     * Marks all values currently in the cache as expired.
+     * Subsequent requests for them will reacquire them,
+     * unless they can be revalidated against the service.
+     * This can be used to force a refresh from the user interface.
+     */
+    public void expireAll() {
+        expiryTime_ = System.currentTimeMillis();
+    }
+
+    /**
+     * Discards any cached value for a given key.
+     *
+     * @param  key  value key
+     */
+    public void remove( String key ) {
+        getFile( key ).delete();
+    }
+
+    /**
+     * Deletes files from the cache directory which are too old to be
+     * used without revalidation.
+     */
+    public void prune() {
+        File[] files = dir_.listFiles();
+        if ( files != null ) {
+            long minTime = System.currentTimeMillis() - maxStaleMillis_;
+            for ( File f : files ) {
+                if ( f.getName().endsWith( ".ser" ) &&
+                     f.lastModified() < minTime ) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the default instance of this class.
+     * Its location is given by {@link CacheUtils#getCacheDirectory}.
+     *
+     * @return  default cache, or null if none is in use
+     */
+    public static synchronized MetadataCache getInstance() {
+        if ( ! instanceInit_ ) {
+            instanceInit_ = true;
+            File dir = CacheUtils.getCacheDirectory( CACHE_NAME );
+            if ( dir != null ) {
+                final MetadataCache cache =
+                    new MetadataCache( dir, DFLT_MAX_AGE, DFLT_MAX_STALE );
+                cache.refreshExecutor_.execute( new Runnable() {
+                    public void run() {
+                        cache.prune();
+                    }
+                } );
+                instance_ = cache;
+            }
+        }
+        return instance_;
+    }
+
+    /**
+     * Acquires a value using a fetcher and stores it in the cache.
+     *
+     * @param  key   value key
+     * @param  validationUrl  validation URL, or null
+     * @param  fetcher  value fetcher
+     * @return   value
+     */
+    private <T> T fetchValue( String key, URL validationUrl,
+                              Fetcher<T> fetcher )
+            throws IOException {
+
+        /* Get validators before the value, so that any change in between
+         * will cause a harmless refetch next time. */
+        Entry vEntry = validationUrl == null
+                     ? null
+                     : readValidators( validationUrl, null );
+        T value = fetcher.fetch();
+        writeEntry( key, vEntry == null
+                       ? new Entry( null, null, value )
+                       : new Entry( vEntry.etag_, vEntry.lastModified_,
+                                    value ) );
+        return value;
+    }
+
+    /**
+     * Arranges for a value to be reacquired and stored in the cache
+     * at some point in the near future.
+     *
+     * @param  key   value key
+     * @param  validationUrl  validation URL, or null
+     * @param  fetcher  value fetcher
+     */
+    private <T> void scheduleRefresh( final String key,
+                                      final URL validationUrl,
+                                      final Fetcher<T> fetcher ) {
+        synchronized ( refreshingKeys_ ) {
+            if ( ! refreshingKeys_.add( key ) ) {
+                return;
+            }
+        }
+        refreshExecutor_.execute( new Runnable() {
+            public void run() {
+                try {
+                    fetchValue( key, validationUrl, fetcher );
+                }
+                catch ( Throwable e ) {
+                    logger_.log( Level.WARNING,
+                                 "Metadata refresh failed for " + key, e );
+                }
+                finally {
+                    synchronized ( refreshingKeys_ ) {
+                        refreshingKeys_.remove( key );
+                    }
+                }
+            }
+        } );
+    }
+
+    /**
+     * Reads a cache entry from disk.
+     *
+     * @param  key  value key
+     * @return  entry, or null if there is no usable entry
+     */
+    private Entry readEntry( String key ) {
+        File file = getFile( key );
+        if ( ! file.isFile() ) {
+            return null;
+        }
+        try {
+            InputStream in =
+                new BufferedInputStream( new FileInputStream( file ) );
+            try {
+                ObjectInputStream oin = new ObjectInputStream( in );
+                String fileKey = (String) oin.readObject();
+                if ( ! key.equals( fileKey ) ) {
+                    return null;
+                }
+                long time = oin.readLong();
+                String etag = (String) oin.readObject();
+                String lastModified = (String) oin.readObject();
+                Object value = oin.readObject();
+                Entry entry = new Entry( etag, lastModified, value );
+                entry.time_ = time;
+                return entry;
+            }
+            finally {
+                in.close();
+            }
+        }
+
+        /* Entries that fail to deserialize, for instance following
+         * incompatible changes to the stored classes since the entry
+         * was written, are not an error, but say what happened. */
+        catch ( ObjectStreamException e ) {
+            logger_.info( "Discarding metadata cache entry " + file
+                        + " which failed to deserialize (" + e + ")" );
+            file.delete();
+            return null;
+        }
+        catch ( ClassNotFoundException e ) {
+            logger_.info( "Discarding metadata cache entry " + file
+                        + " which failed to deserialize (" + e + ")" );
+            file.delete();
+            return null;
+        }
+        catch ( Exception e ) {
+            logger_.log( Level.INFO,
+                         "Discarding unusable metadata cache entry "
+                       + file, e );
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes a cache entry to disk.
+     *
+     * @param  key  value key
+     * @param  entry  entry to write
+     */
+    private void writeEntry( String key, Entry entry ) {
+
+        /* Make sure that a value acquired following an expireAll call
+         * is not itself considered expired. */
+        if ( entry.time_ <= expiryTime_ ) {
+            entry.time_ = expiryTime_ + 1;
+        }
+        File file = getFile( key );
+        File tmpFile = null;
+        try {
+            if ( ! dir_.isDirectory() && ! dir_.mkdirs() ) {
+                throw new IOException( "Can't create directory " + dir_ );
+            }
+            tmpFile = File.createTempFile( "tmp", ".part", dir_ );
+            OutputStream out =
+                new BufferedOutputStream( new FileOutputStream( tmpFile ) );
+            try {
+                ObjectOutputStream oout = new ObjectOutputStream( out );
+                oout.writeObject( key );
+                oout.writeLong( entry.time_ );
+                oout.writeObject( entry.etag_ );
+                oout.writeObject( entry.lastModified_ );
+                oout.writeObject( entry.value_ );
+                oout.flush();
+            }
+            finally {
+                out.close();
+            }
+            Files.move( tmpFile.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING );
+            tmpFile = null;
+        }
+        catch ( IOException e ) {
+            logger_.log( Level.WARNING,
+                         "Failed to write metadata cache entry " + file, e );
+        }
+        finally {
+            if ( tmpFile != null ) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the file used to store the entry with a given key.
+     *
+     * @param  key  value key
+     * @return  cache file
+     */
+    private File getFile( String key ) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance( "SHA-1" )
+                                  .digest( key.getBytes( "UTF-8" ) );
+        }
+        catch ( NoSuchAlgorithmException e ) {
+            throw new AssertionError( e );
+        }
+        catch ( UnsupportedEncodingException e ) {
+            throw new AssertionError( e );
+        }
+        StringBuffer sbuf = new StringBuffer();
+        for ( byte b : digest ) {
+            sbuf.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) )
+                .append( Character.forDigit( b & 0xf, 16 ) );
+        }
+        return new File( dir_, sbuf.append( ".ser" ).toString() );
+    }
+
+    /**
+     * Makes a HEAD request to acquire HTTP validation headers for a URL.
+     *
+     * @param  url  validation URL
+     * @param  lastEntry  entry whose validators are to be offered
+     *                    as request conditions, or null
+     * @return  entry containing validators and no value, or null if
+     *          the request fails; if the server says that lastEntry
+     *          is still current, lastEntry's validators are returned
+     */
+    private static Entry readValidators( URL url, Entry lastEntry ) {
+        try {
+            URLConnection conn = url.openConnection();
+            if ( ! ( conn instanceof HttpURLConnection ) ) {
+                return null;
+            }
+            HttpURLConnection hconn = (HttpURLConnection) conn;
+            hconn.setRequestMethod( "HEAD" );
+            if ( lastEntry != null ) {
+                if ( lastEntry.etag_ != null ) {
+                    hconn.setRequestProperty( "If-None-Match",
+                                              lastEntry.etag_ );
+                }
+                if ( lastEntry.lastModified_ != null ) {
+                    hconn.setRequestProperty( "If-Modified-Since",
+                                              lastEntry.lastModified_ );
+                }
+            }
+            int code = hconn.getResponseCode();
+            Entry entry;
+            if ( code == HttpURLConnection.HTTP_NOT_MODIFIED &&
+                 lastEntry != null ) {
+                entry = new Entry( lastEntry.etag_, lastEntry.lastModified_,
+                                   null );
+            }
+            else if ( code == HttpURLConnection.HTTP_OK ) {
+                entry = new Entry( hconn.getHeaderField( "ETag" ),
+                                   hconn.getHeaderField( "Last-Modified" ),
+                                   null );
+            }
+            else {
+                entry = null;
+            }
+            hconn.disconnect();
+            return entry;
+        }
+        catch ( IOException e ) {
+            logger_.info( "Failed to read validators from " + url
+                        + ": " + e );
+            return null;
+        }
+    }
+
+    /**
+     * Interface for acquiring a value to be cached.
+     */
+    public interface Fetcher<T> {
+
+        /**
+         * Acquires the value.
+         * May be slow.
+         *
+         * @return  value, which must be serializable
+         */
+        T fetch() throws IOException;
+    }
+
+    /**
+     * Cache entry.
+     */
+    private static class Entry {
+        final String etag_;
+        final String lastModified_;
+        final Object value_;
+        long time_;
+
+        /**
+         * Constructs an entry timestamped with the current time.
+         *
+         * @param  etag  ETag header value, or null
+         * @param  lastModified  Last-Modified header value, or null
+         * @param  value   cached value
+         */
+        Entry( String etag, String lastModified, Object value ) {
+            etag_ = etag;
+            lastModified_ = lastModified;
+            value_ = value;
+            time_ = System.currentTimeMillis();
+        }
+
+        /**
+         * Indicates whether this entry has any validation information.
+         *
+         * @return  true iff ETag or Last-Modified is present
+         */
+        boolean hasValidators() {
+            return etag_ != null || lastModified_ != null;
+        }
+
+        /**
+         * Indicates whether the validation information in this entry
+         * shows that it is the same version as another one.
+         * ETags are preferred for the comparison if present.
+         *
+         * @param  other  other entry
+         * @return  true iff the entries match
+         */
+        boolean matches( Entry other ) {
+            if ( etag_ != null && other.etag_ != null ) {
+                return etag_.equals( other.etag_ );
+            }
+            else if ( lastModified_ != null && other.lastModified_ != null ) {
+                return lastModified_.equals( other.lastModified_ );
+            }
+            else {
+                return false;
+            }
+        }
+    }
+}
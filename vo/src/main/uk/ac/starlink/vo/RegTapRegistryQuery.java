@@ -1,6 +1,7 @@
 package uk.ac.starlink.vo;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -227,6 +228,31 @@ public class RegTapRegistryQuery implements RegistryQuery {
     }
 
     public RegResource[] getQueryResources() throws IOException {
+        MetadataCache cache = MetadataCache.getInstance();
+        if ( cache == null ) {
+            return readQueryResources();
+        }
+        else {
+            String key = "regtap " + tapService_.getIdentity() + " " + adql_;
+            return cache.getValue( key, RegResource[].class, null,
+                                   new MetadataCache.Fetcher<RegResource[]>() {
+                public RegResource[] fetch() throws IOException {
+                    return readQueryResources();
+                }
+            } );
+        }
+    }
+
+    public Iterator<RegResource> getQueryIterator() throws IOException {
+        return Arrays.asList( getQueryResources() ).iterator();
+    }
+
+    /**
+     * Performs the registry query.
+     *
+     * @return  resources resulting from query
+     */
+    private RegResource[] readQueryResources() throws IOException {
         logger_.info( adql_ );
         TapQuery query = new TapQuery( tapService_, adql_, null );
         QuerySink sink = new QuerySink();
@@ -258,10 +284,6 @@ public class RegTapRegistryQuery implements RegistryQuery {
         return resources;
     }
 
-    public Iterator<RegResource> getQueryIterator() throws IOException {
-        return Arrays.asList( getQueryResources() ).iterator();
-    }
-
     /**
      * Returns text that can be used as part of a WHERE clause to supply
      * to this class that tests for a keyword in a given RR field.
@@ -375,7 +397,8 @@ public class RegTapRegistryQuery implements RegistryQuery {
     /**
      * RegResource implementation for use with this class.
      */
-    private static class RegTapResource implements RegResource {
+    private static class RegTapResource
+            implements RegResource, Serializable {
         final String ivoid_;
         final String shortName_;
         final String title_;
@@ -385,6 +408,7 @@ public class RegTapRegistryQuery implements RegistryQuery {
         String publisherName_;
         String[] subjects_;
         Map<Object,RegCapabilityInterface> capMap_;
+        private static final long serialVersionUID = 1L;
 
         /**
          * Constructor.
@@ -453,6 +477,57 @@ public class RegTapRegistryQuery implements RegistryQuery {
         }
     }
 
+    /**
+     * RegCapabilityInterface implementation for use with this class.
+     */
+    private static class RegTapCapability
+            implements RegCapabilityInterface, Serializable {
+        final String accessUrl_;
+        final String standardId_;
+        final String xsiType_;
+        final String description_;
+        final String version_;
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor.
+         *
+         * @param  accessUrl  access URL
+         * @param  standardId  standard identifier
+         * @param  xsiType   capability type
+         * @param  description  capability description
+         * @param  version   standard version
+         */
+        RegTapCapability( String accessUrl, String standardId, String xsiType,
+                          String description, String version ) {
+            accessUrl_ = accessUrl;
+            standardId_ = standardId;
+            xsiType_ = xsiType;
+            description_ = description;
+            version_ = version;
+        }
+
+        public String getAccessUrl() {
+            return accessUrl_;
+        }
+
+        public String getStandardId() {
+            return standardId_;
+        }
+
+        public String getXsiType() {
+            return xsiType_;
+        }
+
+        public String getDescription() {
+            return description_;
+        }
+
+        public String getVersion() {
+            return version_;
+        }
+    }
+
     /**
      * Receives table rows to build up a list of RegResource objects that
      * it represents.
@@ -538,23 +613,11 @@ public class RegTapRegistryQuery implements RegistryQuery {
             if ( intfIndex != null ) {
                 if ( ! resource.capMap_.containsKey( intfIndex ) ) {
                     resource.capMap_.put( intfIndex,
-                                          new RegCapabilityInterface() {
-                        public String getAccessUrl() {
-                            return accessUrl;
-                        }
-                        public String getStandardId() {
-                            return standardId;
-                        }
-                        public String getXsiType() {
-                            return capType;
-                        }
-                        public String getDescription() {
-                            return capDescription;
-                        }
-                        public String getVersion() {
-                            return stdVersion;
-                        }
-                    } );
+                                          new RegTapCapability( accessUrl,
+                                                                standardId,
+                                                                capType,
+                                                                capDescription,
+                                                                stdVersion ) );
                 }
             }
         }
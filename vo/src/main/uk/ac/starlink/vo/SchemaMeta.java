@@ -1,5 +1,6 @@
 package uk.ac.starlink.vo;
 
+import java.io.Serializable;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -16,7 +17,7 @@ import java.util.Map;
  * @see  <a href="http://www.ivoa.net/Documents/VODataService/"
  *          >IVOA VODataService Recommendation</a>
  */
-public class SchemaMeta {
+public class SchemaMeta implements Serializable {
 
     String name_;
     String title_;
@@ -24,6 +25,7 @@ public class SchemaMeta {
     String utype_;
     Map<String,Object> extras_;
     private TableMeta[] tables_;
+    private static final long serialVersionUID = 1L;
 
     /**
      * Constructor.
@@ -1,5 +1,6 @@
 package uk.ac.starlink.vo;
 
+import java.io.Serializable;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -16,7 +17,7 @@ import java.util.Map;
  * @see  <a href="http://www.ivoa.net/Documents/VODataService/"
  *          >IVOA VODataService Recommendation</a>
  */
-public class TableMeta {
+public class TableMeta implements Serializable {
 
     String type_;
     String name_;
@@ -26,6 +27,7 @@ public class TableMeta {
     Map<String,Object> extras_;
     private ColumnMeta[] columns_;
     private ForeignMeta[] foreignKeys_;
+    private static final long serialVersionUID = 1L;
 
     /**
      * Constructor.
@@ -92,6 +92,16 @@ public class TableSetTapMetaReader implements TapMetaReader {
         return "VOSI TableSet, preload everything";
     }
 
+    /**
+     * Returns the object used by this reader to fix up
+     * syntactically unacceptable names.
+     *
+     * @return  name fixer, may be null
+     */
+    MetaNameFixer getNameFixer() {
+        return fixer_;
+    }
+
     /**
      * Returns a new UnsupportedOperationException indicating that a
      * read method is never needed.
@@ -21,8 +21,10 @@ import org.xml.sax.SAXException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import uk.ac.starlink.table.ByteStore;
+import uk.ac.starlink.table.OnceRowPipe;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.StoragePolicy;
+import uk.ac.starlink.table.TableFormatException;
 import uk.ac.starlink.table.TableSink;
 import uk.ac.starlink.table.Tables;
 import uk.ac.starlink.table.storage.DiscardByteStore;
@@ -119,6 +121,9 @@ public class TapQuery {
      * Constructs a query with uploaded tables.
      * May throw an IOException if the tables specified for
      * upload exceed the stated upload limit.
+     * Note that checking the limit requires an extra serialization
+     * pass over each uploaded table, so if no check is required,
+     * a negative limit should be given.
      *
      * @param  service   TAP service description
      * @param  adql   text of ADQL query
@@ -380,6 +385,32 @@ public class TapQuery {
                                   storage );
     }
 
+    /**
+     * Blocks until the TAP query represented by a given UWS job has completed,
+     * then returns a one-shot table which streams the result as it is
+     * downloaded.
+     * In case of job failure, an exception will be thrown instead.
+     *
+     * @param  uwsJob  started UWS job representing an async TAP query
+     * @param  coding  configures HTTP compression
+     * @param  pollMillis  polling interval in milliseconds
+     * @return  non-random result table which may only be read once
+     * @see  #streamResultTable
+     */
+    public static StarTable waitForStreamedResult( UwsJob uwsJob,
+                                                   ContentCoding coding,
+                                                   long pollMillis )
+            throws IOException, InterruptedException {
+        URL resultUrl;
+        try {
+            resultUrl = waitForResultUrl( uwsJob, pollMillis );
+        }
+        catch ( UwsJob.UnexpectedResponseException e ) {
+            throw asIOException( e, null );
+        }
+        return streamResultTable( coding.openConnection( resultUrl ), coding );
+    }
+
     /**
      * Reads and returns the table that resulted from a successful TAP query,
      * represented by a given UWS job.  The query is assumed to have
@@ -539,11 +570,15 @@ public class TapQuery {
 
     /**
      * Creates a new stream parameter based on a given table.
+     * If an upload limit is given, the table is serialized once
+     * up front to check its size, and an IOException is thrown
+     * straight away if it is too large.
      *
      * @param   table  table to upload
      * @param   uploadLimit  maximum number of bytes permitted; -1 if no limit
      * @param   vowriter   serializer for producing content of uploaded tables
      * @return  stream parameter
+     * @throws  IOException  if the upload limit is exceeded
      */
     private static HttpStreamParam
                    createUploadStreamParam( final StarTable table,
@@ -552,49 +587,34 @@ public class TapQuery {
             throws IOException {
         final Map<String,String> headerMap = new LinkedHashMap<String,String>();
         headerMap.put( "Content-Type", "application/x-votable+xml" );
-        if ( uploadLimit < 0 ) {
-            return new HttpStreamParam() {
-                public Map<String,String> getHttpHeaders() {
-                    return headerMap;
-                }
-                public void writeContent( OutputStream out )
-                        throws IOException {
-                    vowriter.writeStarTable( table, out );
-                }
-                public long getContentLength() {
-                    return -1;
-                }
-            };
-        }
 
         /* If there's an upload limit, write the data to a limited-size
          * buffer which will throw an IOException if the limit is exceeded.
-         * The written bytes are discarded at this stage.  We could take
-         * the opportunity to cache the resulting output so we didn't
-         * have to regenerate it later, but likely the effort taken to
-         * regenerate it is not enough to warrant the potential
-         * inconvenience of caching the bytes. */
-        else {
-            final ByteStore hbuf =
+         * This means that an oversize upload is reported at query
+         * construction time, before any network activity, which is
+         * important for interactive use.
+         * The cost is that the table is serialized twice,
+         * so callers who do not need this check should not supply a limit;
+         * in that case the content is serialized straight into the
+         * request body. */
+        if ( uploadLimit >= 0 ) {
+            ByteStore hbuf =
                 new LimitByteStore( new DiscardByteStore(), uploadLimit );
             OutputStream tout = hbuf.getOutputStream();
             vowriter.writeStarTable( table, tout );
             tout.close();
-            final long count = hbuf.getLength();
-            assert count <= uploadLimit;
-            return new HttpStreamParam() {
-                public Map<String,String> getHttpHeaders() {
-                    return headerMap;
-                }
-                public void writeContent( OutputStream out )
-                        throws IOException {
-                    vowriter.writeStarTable( table, out );
-                }
-                public long getContentLength() {
-                    return count;
-                }
-            };
         }
+        return new HttpStreamParam() {
+            public Map<String,String> getHttpHeaders() {
+                return headerMap;
+            }
+            public void writeContent( OutputStream out ) throws IOException {
+                vowriter.writeStarTable( table, out );
+            }
+            public long getContentLength() {
+                return -1;
+            }
+        };
     }
 
     /**
@@ -716,6 +736,89 @@ public class TapQuery {
         return overflow;
     }
 
+    /**
+     * Returns a table which streams the result of a TAP query
+     * as it is downloaded.
+     * Decoding starts straight away in a separate thread,
+     * and rows are available to the caller as soon as they have been
+     * parsed, so that processing can proceed at the same time as the
+     * download rather than waiting for the whole result to be stored.
+     * If the response represents an error (in accordance with the TAP rules
+     * for expressing this), an exception will be thrown.
+     *
+     * <p>The returned table is not random-access, and
+     * <code>getRowSequence</code> may only be called on it once.
+     * The row sequence should be closed when no longer required;
+     * if it is closed before the end of the data, the download is
+     * abandoned and the connection released.
+     *
+     * @param   conn  connection to table resource
+     * @param  coding  HTTP content coding policy used to prepare connection
+     * @return   one-shot streamed table
+     */
+    public static StarTable streamResultTable( final URLConnection conn,
+                                               final ContentCoding coding )
+            throws IOException {
+        final OnceRowPipe pipe = new OnceRowPipe( 1024 );
+        final boolean[] gotMeta = new boolean[ 1 ];
+        final TableSink sink = new TableSink() {
+            public void acceptMetadata( StarTable meta )
+                    throws TableFormatException {
+                gotMeta[ 0 ] = true;
+                pipe.acceptMetadata( meta );
+            }
+            public void acceptRow( Object[] row ) throws IOException {
+                pipe.acceptRow( row );
+            }
+            public void endRows() throws IOException {
+                pipe.endRows();
+            }
+        };
+        Thread streamer = new Thread( "TAP Result Streamer" ) {
+            public void run() {
+                try {
+                    InputStream in = getVOTableStream( conn, coding );
+                    try {
+                        boolean overflow =
+                            DalResultStreamer
+                           .streamResultTable( new InputSource( in ), sink );
+                        if ( overflow ) {
+                            logger_.warning( "TAP result truncated" );
+                        }
+                    }
+                    finally {
+                        in.close();
+                    }
+                    if ( ! gotMeta[ 0 ] ) {
+                        pipe.setError( new IOException( "No TABLE in "
+                                                      + "results resource" ) );
+                    }
+                }
+                catch ( IOException e ) {
+                    pipe.setError( e );
+                }
+                catch ( SAXException e ) {
+                    pipe.setError( (IOException)
+                                   new IOException( "TAP response parse error: "
+                                                  + e.getMessage() )
+                                  .initCause( e ) );
+                }
+
+                /* Anything else must still be reported to the pipe,
+                 * otherwise the reading thread waits for ever. */
+                catch ( Throwable e ) {
+                    pipe.setError( (IOException)
+                                   new IOException( "TAP result streaming "
+                                                  + "failed: " + e )
+                                  .initCause( e ) );
+                }
+            }
+        };
+        streamer.setDaemon( true );
+        streamer.start();
+        return pipe.waitForStarTable();
+    }
+
     /**
      * Gets an input stream from a URL connection that should contain
      * a VOTable.
@@ -93,6 +93,16 @@ public class TapSchemaTapMetaReader implements TapMetaReader {
         return "TAP_SCHEMA queries; preload " + ibuf.toString();
     }
 
+    /**
+     * Returns the object used by this reader to fix up
+     * syntactically unacceptable names.
+     *
+     * @return  name fixer, may be null
+     */
+    MetaNameFixer getNameFixer() {
+        return fixer_;
+    }
+
     public SchemaMeta[] readSchemas() throws IOException {
         SchemaMeta[] schemas = 
             tsi_.readSchemas( populateSchemas_, populateTables_,
@@ -336,8 +336,13 @@ public class TapServiceKit {
                 rdrFuture_ = new FutureTask<TapMetaReader>(
                                  new Callable<TapMetaReader>() {
                     public TapMetaReader call() {
-                        return metaPolicy_
-                              .createMetaReader( service_, coding_ );
+                        TapMetaReader rdr =
+                            metaPolicy_.createMetaReader( service_, coding_ );
+                        MetadataCache cache = MetadataCache.getInstance();
+                        return cache != null &&
+                               CachingTapMetaReader.isCacheable( rdr )
+                             ? new CachingTapMetaReader( rdr, cache )
+                             : rdr;
                     }
                 } );
             }
@@ -224,6 +224,13 @@ public class TapTableLoadDialog extends AbstractTableLoadDialog
         /* Reload action. */
         reloadAct_ = new AbstractAction( "Reload" ) {
             public void actionPerformed( ActionEvent evt ) {
+
+                /* Make sure that metadata really comes from the server,
+                 * not from the persistent cache. */
+                MetadataCache metaCache = MetadataCache.getInstance();
+                if ( metaCache != null ) {
+                    metaCache.expireAll();
+                }
                 int itab = tabber_.getSelectedIndex();
                 if ( itab == searchTabIndex_ ) {
                     searchPanel_.reload();
@@ -16,10 +16,12 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 import org.xml.sax.SAXException;
 import uk.ac.starlink.table.ByteStore;
 import uk.ac.starlink.table.StoragePolicy;
@@ -43,10 +45,24 @@ public class UwsJob {
     private static final Logger logger_ =
         Logger.getLogger( "uk.ac.starlink.vo" );
     private static final String UTF8 = "UTF-8";
+    private static final Random pollRandom_ = new Random();
+
+    /** Initial polling interval in milliseconds for job status reads. */
+    public static long MIN_POLL_MILLIS = 250;
 
     /** Chunk size for HTTP transfer encoding; if &lt;=0, don't chunk. */
     public static int HTTP_CHUNK_SIZE = 1024 * 1024;
 
+    /**
+     * Whether to gzip-compress the body of multipart POST requests
+     * that include streamed (upload) parameters.
+     * This can greatly reduce the volume of table uploads,
+     * but since services do not advertise whether they accept
+     * compressed request bodies (Content-Encoding: gzip),
+     * it is off by default.
+     */
+    public static boolean HTTP_GZIP_UPLOAD = false;
+
     /**
      * Whether to trim whitespace from line text responses (like job/phase).
      * I'm not sure whether (trailing) whitespace is permitted in service
@@ -182,7 +198,13 @@ public class UwsJob {
      * Depending on the service's capabilities, this may be done
      * using polling or a blocking call.
      *
-     * @param   pollMillis   polling time in milliseconds to assess
+     * <p>If polling is required, the interval between polls starts
+     * small and increases exponentially, with some random jitter,
+     * up to the supplied maximum; it is reset when the phase changes.
+     * This gives prompt completion for short jobs without
+     * loading the server with frequent requests for long-running ones.
+     *
+     * @param   pollMillis   maximum polling time in milliseconds to assess
      *                       job completion, if polling is required
      * @return   job info corresponding to a completion state
      * @throws   UnexpectedResponseException  if HTTP responses other than
@@ -194,8 +216,28 @@ public class UwsJob {
         if ( info == null ) {
             info = readInfo();
         }
+        int ipoll = 0;
         while ( UwsStage.forPhase( info.getPhase() ) != UwsStage.FINISHED ) {
-            info = rereadInfo( info, pollMillis );
+            long delay = getPollDelay( ipoll, pollMillis,
+                                       pollRandom_.nextDouble() );
+            boolean useBlocking = hasBlocking( info );
+            long start = System.currentTimeMillis();
+            UwsJobInfo info1 = rereadInfo( info, useBlocking, delay );
+            if ( isSamePhase( info, info1 ) ) {
+                ipoll++;
+
+                /* If a blocking call returned early without a phase change,
+                 * the service may not really be honouring the WAIT
+                 * parameter, so pause before trying again. */
+                long elapsed = System.currentTimeMillis() - start;
+                if ( useBlocking && elapsed < delay ) {
+                    Thread.sleep( delay - elapsed );
+                }
+            }
+            else {
+                ipoll = 0;
+            }
+            info = info1;
             String phase = info.getPhase();
             switch ( UwsStage.forPhase( phase ) ) {
                 case UNSTARTED:
@@ -268,10 +310,12 @@ public class UwsJob {
      * of a UWS job might reasonably represent only a temporary issue.
      * 
      * @param  lastInfo   successfully 
+     * @param  useBlocking  whether to make a UWS 1.1 blocking call
+     * @param  pollMillis   wait before reading if not blocking
      */
-    private UwsJobInfo rereadInfo( UwsJobInfo lastInfo, long pollMillis )
+    private UwsJobInfo rereadInfo( UwsJobInfo lastInfo, boolean useBlocking,
+                                   long pollMillis )
             throws IOException, InterruptedException {
-        boolean useBlocking = hasBlocking( lastInfo );
         while ( true ) {
             boolean hasWaited = false;
             try {
@@ -293,8 +337,7 @@ public class UwsJob {
              * response codes (and headers) is not so easy,
              * so wait until somebody complains before doing it. */
             catch ( IOException e ) {
-                if ( e instanceof SocketException ||
-                     e instanceof UnknownHostException ) {
+                if ( isTransientFailure( e ) ) {
                     String msg = "Connection failure - keep trying"
                                + " (" + e + ")";
                     logger_.log( Level.WARNING, msg, e );
@@ -622,9 +665,14 @@ public class UwsJob {
                                   "multipart/form-data"
                                 + "; boundary=\"" + boundary + "\"" );
         coding.prepareRequest( hconn );
+        boolean isGzip = HTTP_GZIP_UPLOAD && streamMap.size() > 0;
+        if ( isGzip ) {
+            hconn.setRequestProperty( "Content-Encoding", "gzip" );
+        }
         hconn.setInstanceFollowRedirects( false );
         hconn.setDoOutput( true );
-        logger_.info( "POST params to " + url );
+        logger_.info( "POST params to " + url
+                    + ( isGzip ? " (gzip)" : "" ) );
 
         /* Open and buffer stream for POST content.  If we simply write to
          * the connection's output stream, the content will be buffered
@@ -641,6 +689,9 @@ public class UwsJob {
                 ? createChunkedHttpStream( hconn, HTTP_CHUNK_SIZE )
                 : createStoredHttpStream( hconn,
                                           StoragePolicy.getDefaultPolicy() );
+        if ( isGzip ) {
+            hout = new GZIPOutputStream( hout, 64 * 1024 );
+        }
         hout = new BufferedOutputStream( hout );
 
         /* Write string parameters.  See RFC 2046 Sec 4.1. */
@@ -944,6 +995,60 @@ public class UwsJob {
         };
     }
 
+    /**
+     * Returns the delay before a given poll of a job's status.
+     * The delay starts at {@link #MIN_POLL_MILLIS} and doubles for
+     * each subsequent poll, up to a given maximum.
+     * A random jitter of up to 25% either way is applied,
+     * so that many jobs started together do not poll in lockstep,
+     * but the result never exceeds the maximum.
+     *
+     * @param  ipoll  number of polls already made without a phase change
+     * @param  maxMillis  maximum delay in milliseconds
+     * @param  rnd   random value in the range 0..1
+     * @return   delay in milliseconds
+     */
+    static long getPollDelay( int ipoll, long maxMillis, double rnd ) {
+        long base = Math.min( MIN_POLL_MILLIS, maxMillis )
+                  << Math.min( Math.max( ipoll, 0 ), 30 );
+        if ( base <= 0 || base > maxMillis ) {
+            base = maxMillis;
+        }
+        long delay = Math.round( base * ( 0.75 + 0.5 * rnd ) );
+        return Math.max( 0, Math.min( delay, maxMillis ) );
+    }
+
+    /**
+     * Indicates whether two job status objects report the same phase.
+     *
+     * @param  info0  first status, may be null
+     * @param  info1  second status, may be null
+     * @return  true iff the phases are the same
+     */
+    static boolean isSamePhase( UwsJobInfo info0, UwsJobInfo info1 ) {
+        String phase0 = info0 == null ? null : info0.getPhase();
+        String phase1 = info1 == null ? null : info1.getPhase();
+        if ( TRIM_TEXT ) {
+            phase0 = phase0 == null ? null : phase0.trim();
+            phase1 = phase1 == null ? null : phase1.trim();
+        }
+        return phase1 == null ? phase0 == null
+                              : phase1.equals( phase0 );
+    }
+
+    /**
+     * Indicates whether an error encountered while reading job status
+     * looks like a temporary condition, so that it's worth trying again
+     * later.
+     *
+     * @param  error  exception
+     * @return  true if the read should be retried
+     */
+    static boolean isTransientFailure( IOException error ) {
+        return error instanceof SocketException
+            || error instanceof UnknownHostException;
+    }
+
     /**
      * Indicates whether the job represented by a given status object
      * supports UWS 1.1-style blocking calls.
@@ -951,7 +1056,7 @@ public class UwsJob {
      * @param  info   job status object
      * @return   true if the job is known to support blocking
      */
-    private static boolean hasBlocking( UwsJobInfo info ) {
+    static boolean hasBlocking( UwsJobInfo info ) {
         int[] majMin = getVersion( info );
         if ( majMin != null ) {
             int maj = majMin[ 0 ];
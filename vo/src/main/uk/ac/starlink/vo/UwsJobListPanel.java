@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -52,9 +53,13 @@ public class UwsJobListPanel extends JPanel {
     private final Action abortAction_;
     private final JToggleButton.ToggleButtonModel delOnExitModel_;
     private final Map<UwsJob,UwsJob.JobWatcher> jobWatcherMap_;
+    private final Map<UwsJob,Future<UwsJobInfo>> jobMonitorMap_;
     private static final Logger logger_ =
         Logger.getLogger( "uk.ac.starlink.vo" );
 
+    /** Maximum interval in milliseconds between job status updates. */
+    private static final long MONITOR_POLL_MILLIS = 30 * 1000;
+
     /**
      * Constructor.
      */
@@ -62,6 +67,7 @@ public class UwsJobListPanel extends JPanel {
         super( new BorderLayout() );
         listModel_ = new DefaultListModel<UwsJob>();
         jobWatcherMap_ = new HashMap<UwsJob,UwsJob.JobWatcher>();
+        jobMonitorMap_ = new HashMap<UwsJob,Future<UwsJobInfo>>();
 
         /* Set up JList of jobs. */
         jlist_ = new JList<UwsJob>( listModel_ );
@@ -192,6 +198,10 @@ public class UwsJobListPanel extends JPanel {
         };
         jobWatcherMap_.put( job, watcher );
         job.addJobWatcher( watcher );
+
+        /* Keep the displayed phase up to date. */
+        jobMonitorMap_.put( job, UwsJobMonitor.getInstance()
+                                .monitor( job, MONITOR_POLL_MILLIS ) );
     }
 
     /**
@@ -204,6 +214,10 @@ public class UwsJobListPanel extends JPanel {
         if ( listModel_.removeElement( job ) ) {
             UwsJob.JobWatcher watcher = jobWatcherMap_.remove( job );
             job.removeJobWatcher( watcher );
+            Future<UwsJobInfo> monitor = jobMonitorMap_.remove( job );
+            if ( monitor != null ) {
+                monitor.cancel( false );
+            }
         }
         if ( detail_.getJob() == job ) {
             detail_.setJob( null );
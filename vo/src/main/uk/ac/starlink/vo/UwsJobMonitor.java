@@ -0,0 +1,167 @@
+package uk.ac.starlink.vo;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of the status of any number of UWS jobs
+ * using a single shared thread.
+ * Each monitored job is polled with an interval that starts small
+ * and backs off exponentially (with jitter) while its phase is unchanged,
+ * as for {@link UwsJob#waitForFinish}.
+ * Job watchers registered on the monitored jobs are notified
+ * of phase changes in the usual way.
+ *
+ * <p>Since a blocking call would tie up the shared thread,
+ * UWS 1.1 blocking reads are not used here;
+ * clients wanting to wait for a single job with the lowest latency
+ * should use {@link UwsJob#waitForFinish} instead.
+ * If some other agent is already reading a monitored job's status,
+ * this monitor will skip its own reads for that job.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class UwsJobMonitor {
+
+    private final ScheduledExecutorService scheduler_;
+    private final Random random_;
+    private static UwsJobMonitor instance_;
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.vo" );
+
+    /**
+     * Constructor.
+     */
+    public UwsJobMonitor() {
+        scheduler_ =
+            Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+                public Thread newThread( Runnable r ) {
+                    Thread th = new Thread( r, "UWS Job Monitor" );
+                    th.setDaemon( true );
+                    return th;
+                }
+            } );
+        random_ = new Random();
+    }
+
+    /**
+     * Starts monitoring a job.
+     * The returned future completes when the job reaches a
+     * completion phase, or fails if its status cannot be read.
+     * Cancelling the future stops the monitoring.
+     *
+     * @param  job  job to monitor
+     * @param  maxPollMillis  maximum interval between status reads
+     *                        in milliseconds
+     * @return  future giving the job status in a completion phase
+     */
+    public Future<UwsJobInfo> monitor( UwsJob job, long maxPollMillis ) {
+        JobPoller poller = new JobPoller( job, maxPollMillis );
+        scheduler_.execute( poller );
+        return poller.future_;
+    }
+
+    /**
+     * Returns a shared instance of this class.
+     *
+     * @return  shared monitor
+     */
+    public static synchronized UwsJobMonitor getInstance() {
+        if ( instance_ == null ) {
+            instance_ = new UwsJobMonitor();
+        }
+        return instance_;
+    }
+
+    /**
+     * Task which reads the status of a single job and reschedules itself
+     * until the job finishes.
+     * It only ever runs on the scheduler thread, so needs no
+     * synchronization.
+     */
+    private class JobPoller implements Runnable {
+        final UwsJob job_;
+        final long maxPollMillis_;
+        final CompletableFuture<UwsJobInfo> future_;
+        UwsJobInfo lastInfo_;
+        int ipoll_;
+
+        /**
+         * Constructor.
+         *
+         * @param  job  job to monitor
+         * @param  maxPollMillis  maximum poll interval in milliseconds
+         */
+        JobPoller( UwsJob job, long maxPollMillis ) {
+            job_ = job;
+            maxPollMillis_ = maxPollMillis;
+            future_ = new CompletableFuture<UwsJobInfo>();
+        }
+
+        public void run() {
+            if ( future_.isDone() ) {
+                return;
+            }
+
+            /* If the job status has been updated since our last read,
+             * somebody else is reading it, so use that result
+             * rather than making another request. */
+            UwsJobInfo info = job_.getLastInfo();
+            if ( lastInfo_ == null || info == lastInfo_ ) {
+                try {
+                    info = job_.readInfo();
+                }
+                catch ( IOException e ) {
+                    if ( UwsJob.isTransientFailure( e ) ) {
+                        logger_.log( Level.WARNING,
+                                     "Connection failure for " + job_
+                                   + " - keep trying (" + e + ")", e );
+                        schedule();
+                    }
+                    else {
+                        future_.completeExceptionally( e );
+                    }
+                    return;
+                }
+            }
+            if ( UwsJob.isSamePhase( lastInfo_, info ) ) {
+                ipoll_++;
+            }
+            else {
+                ipoll_ = 0;
+            }
+            lastInfo_ = info;
+            String phase = info.getPhase();
+            switch ( UwsStage.forPhase( phase ) ) {
+                case FINISHED:
+                    future_.complete( info );
+                    return;
+                case ILLEGAL:
+                    future_.completeExceptionally(
+                        new IOException( "Illegal UWS job phase: "
+                                       + phase ) );
+                    return;
+                default:
+                    schedule();
+            }
+        }
+
+        /**
+         * Schedules the next status read for this job.
+         */
+        private void schedule() {
+            long delay = UwsJob.getPollDelay( ipoll_, maxPollMillis_,
+                                              random_.nextDouble() );
+            scheduler_.schedule( this, delay, TimeUnit.MILLISECONDS );
+        }
+    }
+}
@@ -128,4 +128,14 @@ public class VizierTapMetaReader implements TapMetaReader {
     public String getMeans() {
         return "VizieR-variant 2-stage VOSI TableSet";
     }
+
+    /**
+     * Returns the object used by this reader to fix up
+     * syntactically unacceptable names.
+     *
+     * @return  name fixer, may be null
+     */
+    MetaNameFixer getNameFixer() {
+        return fixer_;
+    }
 }
@@ -65,6 +65,16 @@ public class Vosi11TapMetaReader implements TapMetaReader {
         return url_.toString();
     }
 
+    /**
+     * Returns the object used by this reader to fix up
+     * syntactically unacceptable names.
+     *
+     * @return  name fixer, may be null
+     */
+    MetaNameFixer getNameFixer() {
+        return fixer_;
+    }
+
     public SchemaMeta[] readSchemas() throws IOException {
 
         /* Read the tableset document.  Either do or don't ask for restricted
@@ -0,0 +1,246 @@
+package uk.ac.starlink.vo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+import uk.ac.starlink.util.ContentCoding;
+
+public class MetadataCacheTest extends TestCase {
+
+    private File dir_;
+
+    public MetadataCacheTest( String name ) {
+        super( name );
+        Logger.getLogger( "uk.ac.starlink.vo" ).setLevel( Level.SEVERE );
+    }
+
+    public void setUp() throws IOException {
+        dir_ = Files.createTempDirectory( "metacache" ).toFile();
+    }
+
+    public void tearDown() {
+        File[] files = dir_.listFiles();
+        if ( files != null ) {
+            for ( File f : files ) {
+                f.delete();
+            }
+        }
+        dir_.delete();
+    }
+
+    public void testCacheReader() throws IOException {
+        CountingReader base = new CountingReader();
+        MetadataCache cache = new MetadataCache( dir_, 60000, 60000 );
+        SchemaMeta[] smetas1 =
+            new CachingTapMetaReader( base, cache ).readSchemas();
+        assertEquals( 1, base.nread_ );
+        assertEquals( "ivoa", smetas1[ 0 ].getName() );
+
+        /* Modifying the returned value does not affect the cache. */
+        smetas1[ 0 ].setTables( new TableMeta[ 0 ] );
+
+        /* A new reader, as in a new session, gets the cached copy. */
+        SchemaMeta[] smetas2 =
+            new CachingTapMetaReader( base, cache ).readSchemas();
+        assertEquals( 1, base.nread_ );
+        assertNotSame( smetas1[ 0 ], smetas2[ 0 ] );
+        TableMeta tmeta = smetas2[ 0 ].getTables()[ 0 ];
+        assertEquals( "ivoa.obscore", tmeta.getName() );
+        assertEquals( "s_ra", tmeta.getColumns()[ 0 ].getName() );
+        assertEquals( "deg", tmeta.getColumns()[ 0 ].getUnit() );
+        assertEquals( Integer.valueOf( 23 ), tmeta.getExtras().get( "n" ) );
+
+        /* Unserializable values are not cached, but still work. */
+        cache.remove( "x" );
+        final int[] count = new int[ 1 ];
+        for ( int i = 0; i < 2; i++ ) {
+            Object value =
+                cache.getValue( "x", Object.class, null,
+                                new MetadataCache.Fetcher<Object>() {
+                    public Object fetch() {
+                        count[ 0 ]++;
+                        return new Object();
+                    }
+                } );
+            assertNotNull( value );
+        }
+        assertEquals( 2, count[ 0 ] );
+    }
+
+    public void testFixedNames() throws IOException {
+        File tsFile = new File( dir_, "tables.xml" );
+        String tableset = new StringBuffer()
+            .append( "<vosi:tableset xmlns:vosi=" )
+            .append( "'http://www.ivoa.net/xml/VOSITables/v1.0'>" )
+            .append( "<schema><name>s</name>" )
+            .append( "<table><name>bad table</name>" )
+            .append( "<column><name>x</name></column>" )
+            .append( "</table></schema></vosi:tableset>" )
+            .toString();
+        Files.write( tsFile.toPath(), tableset.getBytes( "UTF-8" ) );
+        URL tsUrl = tsFile.toURI().toURL();
+        MetadataCache cache = new MetadataCache( dir_, 60000, 60000 );
+        String[] fixedNames = new String[ 2 ];
+        for ( int i = 0; i < 2; i++ ) {
+            MetaNameFixer fixer = MetaNameFixer.createDefaultFixer();
+            TapMetaReader base =
+                new TableSetTapMetaReader( tsUrl, fixer, ContentCoding.NONE );
+            assertTrue( CachingTapMetaReader.isCacheable( base ) );
+            TableMeta tmeta = new CachingTapMetaReader( base, cache )
+                             .readSchemas()[ 0 ].getTables()[ 0 ];
+            fixedNames[ i ] = tmeta.getName();
+            assertFalse( "bad table".equals( fixedNames[ i ] ) );
+            assertEquals( "bad table", fixer.getOriginalTableName( tmeta ) );
+
+            /* Second time round, the schemas come from the cache. */
+            tsFile.delete();
+        }
+        assertEquals( fixedNames[ 0 ], fixedNames[ 1 ] );
+        assertFalse( CachingTapMetaReader
+                    .isCacheable( new CountingReader() ) );
+    }
+
+    public void testExpireAll() throws IOException {
+        CountingFetcher fetcher = new CountingFetcher();
+        MetadataCache cache = new MetadataCache( dir_, 60000, 60000 );
+        cache.getValue( "k", String.class, null, fetcher );
+        cache.getValue( "k", String.class, null, fetcher );
+        assertEquals( 1, fetcher.count_ );
+        cache.expireAll();
+        assertEquals( "v2", cache.getValue( "k", String.class, null,
+                                            fetcher ) );
+        assertEquals( "v2", cache.getValue( "k", String.class, null,
+                                            fetcher ) );
+        assertEquals( 2, fetcher.count_ );
+    }
+
+    public void testDiscard() throws IOException {
+        CountingFetcher fetcher = new CountingFetcher();
+        MetadataCache cache = new MetadataCache( dir_, 60000, 60000 );
+        cache.getValue( "k", String.class, null, fetcher );
+        File[] files = dir_.listFiles();
+        assertEquals( 1, files.length );
+        OutputStream out = new FileOutputStream( files[ 0 ] );
+        out.write( new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 } );
+        out.close();
+        assertEquals( "v2", cache.getValue( "k", String.class, null,
+                                            fetcher ) );
+        assertEquals( "v2", cache.getValue( "k", String.class, null,
+                                            fetcher ) );
+        assertEquals( 2, fetcher.count_ );
+    }
+
+    public void testExpiry() throws IOException, InterruptedException {
+        CountingFetcher fetcher = new CountingFetcher();
+
+        /* Stale values are used, but refreshed in the background. */
+        MetadataCache cache = new MetadataCache( dir_, 0, 60000 );
+        assertEquals( "v1", cache.getValue( "k", String.class, null,
+                                            fetcher ) );
+        assertEquals( "v1", cache.getValue( "k", String.class, null,
+                                            fetcher ) );
+        waitForCount( fetcher, 2 );
+        Thread.sleep( 200 );
+        assertEquals( "v2", cache.getValue( "k", String.class, null,
+                                            fetcher ) );
+        waitForCount( fetcher, 3 );
+
+        /* Values too old are refetched synchronously. */
+        MetadataCache cache2 = new MetadataCache( dir_, 0, 0 );
+        int n0 = fetcher.count_;
+        String value = cache2.getValue( "k", String.class, null, fetcher );
+        assertEquals( n0 + 1, fetcher.count_ );
+        assertEquals( "v" + fetcher.count_, value );
+    }
+
+    public void testRevalidate() throws IOException {
+        TestHttpServer server = new TestHttpServer();
+        final String[] etag = new String[] { "\"a\"" };
+        server.addHandler( "/tables", new HttpHandler() {
+            public void handle( HttpExchange exch ) throws IOException {
+                String inm =
+                    exch.getRequestHeaders().getFirst( "If-None-Match" );
+                exch.getResponseHeaders().set( "ETag", etag[ 0 ] );
+                exch.sendResponseHeaders( etag[ 0 ].equals( inm ) ? 304 : 200,
+                                          -1 );
+                exch.close();
+            }
+        } );
+        server.start();
+        try {
+            URL url = server.getUrl( "/tables" );
+            CountingFetcher fetcher = new CountingFetcher();
+            MetadataCache cache = new MetadataCache( dir_, 0, 0 );
+            assertEquals( "v1", cache.getValue( "t", String.class, url,
+                                                fetcher ) );
+            assertEquals( "v1", cache.getValue( "t", String.class, url,
+                                                fetcher ) );
+            assertEquals( 1, fetcher.count_ );
+            etag[ 0 ] = "\"b\"";
+            assertEquals( "v2", cache.getValue( "t", String.class, url,
+                                                fetcher ) );
+            assertEquals( "v2", cache.getValue( "t", String.class, url,
+                                                fetcher ) );
+            assertEquals( 2, fetcher.count_ );
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    private static void waitForCount( CountingFetcher fetcher, int count )
+            throws InterruptedException {
+        for ( int i = 0; i < 100 && fetcher.count_ < count; i++ ) {
+            Thread.sleep( 50 );
+        }
+        assertEquals( count, fetcher.count_ );
+    }
+
+    private static class CountingFetcher
+            implements MetadataCache.Fetcher<String> {
+        volatile int count_;
+        public String fetch() {
+            return "v" + ++count_;
+        }
+    }
+
+    private static class CountingReader implements TapMetaReader {
+        int nread_;
+        public SchemaMeta[] readSchemas() {
+            nread_++;
+            ColumnMeta cmeta = new ColumnMeta();
+            cmeta.name_ = "s_ra";
+            cmeta.unit_ = "deg";
+            TableMeta tmeta = new TableMeta();
+            tmeta.name_ = "ivoa.obscore";
+            tmeta.extras_.put( "n", Integer.valueOf( 23 ) );
+            tmeta.setColumns( new ColumnMeta[] { cmeta } );
+            SchemaMeta smeta = SchemaMeta.createDummySchema( "ivoa" );
+            smeta.setTables( new TableMeta[] { tmeta } );
+            return new SchemaMeta[] { smeta };
+        }
+        public TableMeta[] readTables( SchemaMeta schema ) {
+            throw new UnsupportedOperationException();
+        }
+        public ColumnMeta[] readColumns( TableMeta table ) {
+            throw new UnsupportedOperationException();
+        }
+        public ForeignMeta[] readForeignKeys( TableMeta table ) {
+            throw new UnsupportedOperationException();
+        }
+        public String getSource() {
+            return "test:";
+        }
+        public String getMeans() {
+            return "counting";
+        }
+    }
+}
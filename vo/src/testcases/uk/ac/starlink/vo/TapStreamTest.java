@@ -0,0 +1,141 @@
+package uk.ac.starlink.vo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.util.ContentCoding;
+
+public class TapStreamTest extends TestCase {
+
+    private static final int NROW = 5000;
+
+    public TapStreamTest( String name ) {
+        super( name );
+        Logger.getLogger( "uk.ac.starlink.vo" ).setLevel( Level.SEVERE );
+    }
+
+    public void testStream() throws IOException {
+        TestHttpServer server = new TestHttpServer();
+        server.addHandler( "/ok", createHandler( "OK", true ) );
+        server.addHandler( "/error", createHandler( "ERROR", false ) );
+        server.addHandler( "/empty", createHandler( "OK", false ) );
+        server.start();
+        String base = server.getBaseUrl();
+        try {
+            StarTable table = streamTable( base + "/ok" );
+            assertFalse( table.isRandom() );
+            assertEquals( 2, table.getColumnCount() );
+            assertEquals( "x", table.getColumnInfo( 1 ).getName() );
+            RowSequence rseq = table.getRowSequence();
+            int irow = 0;
+            while ( rseq.next() ) {
+                assertEquals( Integer.valueOf( irow ), rseq.getCell( 0 ) );
+                assertEquals( Double.valueOf( irow * 0.5 ), rseq.getCell( 1 ) );
+                irow++;
+            }
+            rseq.close();
+            assertEquals( NROW, irow );
+
+            for ( String path : new String[] { "/error", "/empty" } ) {
+                try {
+                    streamTable( base + path );
+                    fail( path );
+                }
+                catch ( IOException e ) {
+                }
+            }
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    public void testAbandon() throws IOException, InterruptedException {
+        TestHttpServer server = new TestHttpServer();
+        server.addHandler( "/ok", createHandler( "OK", true ) );
+        server.start();
+        String base = server.getBaseUrl();
+        try {
+            Set<Thread> oldThreads = Thread.getAllStackTraces().keySet();
+            RowSequence rseq = streamTable( base + "/ok" ).getRowSequence();
+            assertTrue( rseq.next() );
+            Thread streamer = getStreamerThread( oldThreads );
+            assertNotNull( streamer );
+
+            /* Wait until the streamer is blocked on a full pipe. */
+            for ( int i = 0; i < 1000 &&
+                             streamer.getState() != Thread.State.WAITING;
+                  i++ ) {
+                Thread.sleep( 10 );
+            }
+            assertEquals( Thread.State.WAITING, streamer.getState() );
+            rseq.close();
+            streamer.join( 10000 );
+            assertFalse( streamer.isAlive() );
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    private static Thread getStreamerThread( Set<Thread> excludes ) {
+        for ( Thread th : Thread.getAllStackTraces().keySet() ) {
+            if ( "TAP Result Streamer".equals( th.getName() ) &&
+                 ! excludes.contains( th ) ) {
+                return th;
+            }
+        }
+        return null;
+    }
+
+    private static StarTable streamTable( String url ) throws IOException {
+        ContentCoding coding = ContentCoding.GZIP;
+        return TapQuery.streamResultTable( coding
+                                          .openConnection( new URL( url ) ),
+                                           coding );
+    }
+
+    private static HttpHandler createHandler( final String status,
+                                              final boolean hasTable ) {
+        return new HttpHandler() {
+            public void handle( HttpExchange exch ) throws IOException {
+                exch.getResponseHeaders()
+                    .set( "Content-Type", "application/x-votable+xml" );
+                exch.sendResponseHeaders( 200, 0 );
+                OutputStream out = exch.getResponseBody();
+                StringBuffer sbuf = new StringBuffer()
+                    .append( "<VOTABLE version='1.3'>" )
+                    .append( "<RESOURCE type='results'>" )
+                    .append( "<INFO name='QUERY_STATUS' value='" )
+                    .append( status )
+                    .append( "'>status</INFO>" );
+                if ( hasTable ) {
+                    sbuf.append( "<TABLE>" )
+                        .append( "<FIELD name='i' datatype='int'/>" )
+                        .append( "<FIELD name='x' datatype='double'/>" )
+                        .append( "<DATA><TABLEDATA>" );
+                }
+                out.write( sbuf.toString().getBytes( "UTF-8" ) );
+                if ( hasTable ) {
+                    for ( int i = 0; i < NROW; i++ ) {
+                        String tr = "<TR><TD>" + i + "</TD><TD>" + ( i * 0.5 )
+                                  + "</TD></TR>\n";
+                        out.write( tr.getBytes( "UTF-8" ) );
+                    }
+                    out.write( "</TABLEDATA></DATA></TABLE>"
+                              .getBytes( "UTF-8" ) );
+                }
+                out.write( "</RESOURCE></VOTABLE>".getBytes( "UTF-8" ) );
+                out.close();
+            }
+        };
+    }
+}
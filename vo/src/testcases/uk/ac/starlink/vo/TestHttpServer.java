@@ -0,0 +1,86 @@
+package uk.ac.starlink.vo;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.Executor;
+
+/**
+ * Minimal HTTP server running on an ephemeral port of the local host,
+ * for use by unit tests that need to talk to a real HTTP endpoint.
+ *
+ * <p>Typical usage is to add handlers, call {@link #start},
+ * and make sure that {@link #stop} is called in a <code>finally</code>
+ * block or <code>tearDown</code> method.
+ *
+ * @author   agent
+ * @since    19 Oct 2026
+ */
+public class TestHttpServer {
+
+    private final HttpServer server_;
+
+    /**
+     * Constructor.
+     */
+    public TestHttpServer() throws IOException {
+        server_ =
+            HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+    }
+
+    /**
+     * Adds a handler for a given path.
+     *
+     * @param  path  context path, starting with "/"
+     * @param  handler  handler for requests below that path
+     */
+    public void addHandler( String path, HttpHandler handler ) {
+        server_.createContext( path, handler );
+    }
+
+    /**
+     * Sets the executor used to service requests.
+     * If not called, requests are handled on a single thread.
+     *
+     * @param  executor  executor
+     */
+    public void setExecutor( Executor executor ) {
+        server_.setExecutor( executor );
+    }
+
+    /**
+     * Starts the server.
+     */
+    public void start() {
+        server_.start();
+    }
+
+    /**
+     * Stops the server immediately.
+     */
+    public void stop() {
+        server_.stop( 0 );
+    }
+
+    /**
+     * Returns the base URL of this server, with no trailing slash.
+     *
+     * @return  "http://localhost:&lt;port&gt;"
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + server_.getAddress().getPort();
+    }
+
+    /**
+     * Returns a URL on this server.
+     *
+     * @param  path  path part of the URL, starting with "/"
+     * @return  URL
+     */
+    public URL getUrl( String path ) throws MalformedURLException {
+        return new URL( getBaseUrl() + path );
+    }
+}
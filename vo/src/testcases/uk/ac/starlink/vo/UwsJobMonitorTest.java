@@ -0,0 +1,174 @@
+package uk.ac.starlink.vo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+
+public class UwsJobMonitorTest extends TestCase {
+
+    public UwsJobMonitorTest( String name ) {
+        super( name );
+        Logger.getLogger( "uk.ac.starlink.vo" ).setLevel( Level.SEVERE );
+    }
+
+    public void testMonitor()
+            throws IOException, InterruptedException, ExecutionException,
+                   TimeoutException {
+        TestHttpServer server = new TestHttpServer();
+        int njob = 20;
+        List<JobHandler> handlers = new ArrayList<JobHandler>();
+        for ( int i = 0; i < njob; i++ ) {
+            JobHandler handler = new JobHandler( 3 + i % 4, "1.0" );
+            handlers.add( handler );
+            server.addHandler( "/job" + i, handler );
+        }
+        JobHandler blockHandler = new JobHandler( 5, "1.1" );
+        server.addHandler( "/blockjob", blockHandler );
+        server.start();
+        String base = server.getBaseUrl();
+        try {
+
+            /* Many jobs polled from a single thread. */
+            UwsJobMonitor monitor = new UwsJobMonitor();
+            List<Future<UwsJobInfo>> futures =
+                new ArrayList<Future<UwsJobInfo>>();
+            for ( int i = 0; i < njob; i++ ) {
+                UwsJob job = new UwsJob( new URL( base + "/job" + i ) );
+                futures.add( monitor.monitor( job, 500 ) );
+            }
+            for ( Future<UwsJobInfo> future : futures ) {
+                UwsJobInfo info = future.get( 60, TimeUnit.SECONDS );
+                assertEquals( "COMPLETED", info.getPhase() );
+            }
+
+            /* Each job is read once per poll and not again after
+             * it has finished. */
+            for ( JobHandler handler : handlers ) {
+                assertEquals( handler.nread_, handler.nexec_ + 1 );
+            }
+
+            /* Polling waiter. */
+            JobHandler handler = handlers.get( 0 );
+            handler.reset();
+            UwsJob job = new UwsJob( new URL( base + "/job0" ) );
+            assertEquals( "COMPLETED",
+                          job.waitForFinish( 500 ).getPhase() );
+            assertEquals( 0, handler.nwait_ );
+
+            /* Blocking waiter; the test service returns immediately
+             * from blocking calls, which the client should tolerate. */
+            UwsJob bjob = new UwsJob( new URL( base + "/blockjob" ) );
+            assertEquals( "COMPLETED",
+                          bjob.waitForFinish( 500 ).getPhase() );
+            assertTrue( blockHandler.nwait_ > 0 );
+
+            /* Cancellation stops polling.  The handler cancels the job
+             * while serving its third read, after which the monitor
+             * will already have a further poll scheduled. */
+            handler.reset();
+            handler.nexec_ = 1000;
+            handler.cancelAt_ = 3;
+            Future<UwsJobInfo> future =
+                monitor.monitor( new UwsJob( new URL( base + "/job0" ) ),
+                                 100 );
+            handler.cancelTarget_.complete( future );
+            try {
+                future.get( 60, TimeUnit.SECONDS );
+                fail();
+            }
+            catch ( CancellationException e ) {
+            }
+
+            /* Polls are run in time order on a single thread,
+             * and the cancelled job's pending poll (at most 100ms away)
+             * falls due before the second poll of this job
+             * (at least 0.75*MIN_POLL_MILLIS away), so once this job
+             * has finished the cancelled one has had its chance to read. */
+            JobHandler handler1 = handlers.get( 1 );
+            handler1.reset();
+            handler1.nexec_ = 1;
+            Future<UwsJobInfo> future1 =
+                monitor.monitor( new UwsJob( new URL( base + "/job1" ) ),
+                                 1000 );
+            assertEquals( "COMPLETED",
+                          future1.get( 60, TimeUnit.SECONDS ).getPhase() );
+            assertEquals( 2, handler1.nread_ );
+            assertEquals( 3, handler.nread_ );
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Handler serving a UWS job document which reports EXECUTING
+     * phase for a given number of reads and COMPLETED thereafter.
+     */
+    private static class JobHandler implements HttpHandler {
+        final String version_;
+        final CompletableFuture<Future<?>> cancelTarget_;
+        volatile int nexec_;
+        volatile int cancelAt_;
+        volatile int nread_;
+        volatile int nwait_;
+
+        JobHandler( int nexec, String version ) {
+            nexec_ = nexec;
+            version_ = version;
+            cancelTarget_ = new CompletableFuture<Future<?>>();
+        }
+
+        void reset() {
+            nread_ = 0;
+            nwait_ = 0;
+        }
+
+        public void handle( HttpExchange exch ) throws IOException {
+            String query = exch.getRequestURI().getQuery();
+            if ( query != null && query.indexOf( "WAIT=" ) >= 0 ) {
+                nwait_++;
+            }
+            if ( nread_ + 1 == cancelAt_ ) {
+                try {
+                    cancelTarget_.get().cancel( false );
+                }
+                catch ( Exception e ) {
+                    throw (IOException)
+                          new IOException( "Cancel failed" ).initCause( e );
+                }
+            }
+            String phase = nread_++ < nexec_ ? "EXECUTING" : "COMPLETED";
+            byte[] buf = new StringBuffer()
+                .append( "<?xml version='1.0'?>\n" )
+                .append( "<uws:job xmlns:uws='http://www.ivoa.net/xml/UWS/" )
+                .append( "v1.0' version='" )
+                .append( version_ )
+                .append( "'>\n" )
+                .append( "<uws:jobId>1</uws:jobId>\n" )
+                .append( "<uws:phase>" )
+                .append( phase )
+                .append( "</uws:phase>\n" )
+                .append( "</uws:job>\n" )
+                .toString()
+                .getBytes( "UTF-8" );
+            exch.getResponseHeaders().set( "Content-Type", "text/xml" );
+            exch.sendResponseHeaders( 200, buf.length );
+            OutputStream out = exch.getResponseBody();
+            out.write( buf );
+            out.close();
+        }
+    }
+}
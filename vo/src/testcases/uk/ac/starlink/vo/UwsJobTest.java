@@ -1,10 +1,22 @@
 package uk.ac.starlink.vo;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 import junit.framework.TestCase;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.ColumnStarTable;
+import uk.ac.starlink.table.PrimitiveArrayColumn;
+import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.util.ContentCoding;
 
 public class UwsJobTest extends TestCase {
@@ -36,6 +48,139 @@ public class UwsJobTest extends TestCase {
                       new String( bos.toByteArray(), "UTF-8" ) );
     }
 
+    public void testPollDelay() {
+        long max = 5000;
+        long min = UwsJob.MIN_POLL_MILLIS;
+        assertEquals( min, UwsJob.getPollDelay( 0, max, 0.5 ) );
+        assertEquals( 2 * min, UwsJob.getPollDelay( 1, max, 0.5 ) );
+        assertEquals( 4 * min, UwsJob.getPollDelay( 2, max, 0.5 ) );
+        long last = 0;
+        for ( int ip = 0; ip < 100; ip++ ) {
+            long lo = UwsJob.getPollDelay( ip, max, 0.0 );
+            long hi = UwsJob.getPollDelay( ip, max, 0.999 );
+            assertTrue( lo < hi || hi == max );
+            assertTrue( lo >= last );
+            assertTrue( hi <= max );
+            last = lo;
+        }
+        assertEquals( max, UwsJob.getPollDelay( 1000, max, 0.999 ) );
+        assertEquals( 10, UwsJob.getPollDelay( 0, 10, 0.999 ) );
+        assertEquals( 10, UwsJob.getPollDelay( 5, 10, 0.5 ) );
+    }
+
+    public void testMultipartUpload() throws IOException {
+        final Map<String,String> reqHeaders =
+            new LinkedHashMap<String,String>();
+        final ByteArrayOutputStream reqBody = new ByteArrayOutputStream();
+        TestHttpServer server = new TestHttpServer();
+        server.addHandler( "/", new HttpHandler() {
+            public void handle( HttpExchange exch ) throws IOException {
+                for ( String key : new String[] { "Transfer-Encoding",
+                                                  "Content-Encoding" } ) {
+                    String value = exch.getRequestHeaders().getFirst( key );
+                    if ( value != null ) {
+                        reqHeaders.put( key, value );
+                    }
+                }
+                InputStream in = exch.getRequestBody();
+                if ( "gzip".equals( reqHeaders.get( "Content-Encoding" ) ) ) {
+                    in = new GZIPInputStream( in );
+                }
+                byte[] buf = new byte[ 4096 ];
+                for ( int n; ( n = in.read( buf ) ) >= 0; ) {
+                    reqBody.write( buf, 0, n );
+                }
+                exch.sendResponseHeaders( 200, -1 );
+                exch.close();
+            }
+        } );
+        server.start();
+        URL url = server.getUrl( "/sync" );
+        boolean gzip0 = UwsJob.HTTP_GZIP_UPLOAD;
+        try {
+            final byte[] content = new byte[ 100000 ];
+            for ( int i = 0; i < content.length; i++ ) {
+                content[ i ] = (byte) ( 'a' + i % 26 );
+            }
+            Map<String,HttpStreamParam> streamMap =
+                new LinkedHashMap<String,HttpStreamParam>();
+            streamMap.put( "upload_t", new HttpStreamParam() {
+                public Map<String,String> getHttpHeaders() {
+                    return Collections.emptyMap();
+                }
+                public void writeContent( OutputStream out )
+                        throws IOException {
+                    out.write( content );
+                }
+                public long getContentLength() {
+                    return -1;
+                }
+            } );
+            Map<String,String> stringMap = new LinkedHashMap<String,String>();
+            stringMap.put( "LANG", "ADQL" );
+            for ( boolean gzip : new boolean[] { false, true } ) {
+                UwsJob.HTTP_GZIP_UPLOAD = gzip;
+                reqHeaders.clear();
+                reqBody.reset();
+                HttpURLConnection hconn =
+                    UwsJob.postMultipartForm( url, ContentCoding.NONE,
+                                              stringMap, streamMap, null );
+                assertEquals( 200, hconn.getResponseCode() );
+                assertEquals( "chunked",
+                              reqHeaders.get( "Transfer-Encoding" ) );
+                assertEquals( gzip ? "gzip" : null,
+                              reqHeaders.get( "Content-Encoding" ) );
+                String body = new String( reqBody.toByteArray(), "UTF-8" );
+                assertTrue( body.contains( "name=\"LANG\"" ) );
+                assertTrue( body.contains( new String( content, "UTF-8" ) ) );
+            }
+        }
+        finally {
+            UwsJob.HTTP_GZIP_UPLOAD = gzip0;
+            server.stop();
+        }
+    }
+
+    public void testUploadLimit() throws IOException {
+        ColumnStarTable table = ColumnStarTable.makeTableWithRows( 1000 );
+        table.addColumn( PrimitiveArrayColumn
+                        .makePrimitiveColumn( new ColumnInfo( "x",
+                                                              Double.class,
+                                                              null ),
+                                              new double[ 1000 ] ) );
+        TapService service =
+            TapServices
+           .createDefaultTapService( new URL( "http://localhost/tap" ) );
+        Map<String,StarTable> uploadMap = new LinkedHashMap<String,StarTable>();
+        uploadMap.put( "t", table );
+        assertEquals( 1000, writeUpload( service, uploadMap, -1 ) );
+        assertEquals( 1000, writeUpload( service, uploadMap, 1000000 ) );
+
+        /* An oversize upload is reported when the query is constructed,
+         * before any attempt to contact the service. */
+        try {
+            new TapQuery( service, "SELECT * FROM TAP_UPLOAD.t",
+                          null, uploadMap, 2000, null );
+            fail();
+        }
+        catch ( IOException e ) {
+        }
+    }
+
+    private int writeUpload( TapService service,
+                             Map<String,StarTable> uploadMap, long limit )
+            throws IOException {
+        TapQuery tq = new TapQuery( service, "SELECT * FROM TAP_UPLOAD.t",
+                                    null, uploadMap, limit, null );
+        HttpStreamParam param =
+            tq.getStreamParams().values().iterator().next();
+        assertEquals( -1, param.getContentLength() );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        param.writeContent( out );
+        String txt = new String( out.toByteArray(), "UTF-8" );
+        return txt.split( "<TR>", -1 ).length - 1;
+    }
+
     private void checkStringBytes( String str, byte[] bytes ) {
         assertEquals( str.length(), bytes.length );
         for ( int i = 0; i < bytes.length; i++ ) {